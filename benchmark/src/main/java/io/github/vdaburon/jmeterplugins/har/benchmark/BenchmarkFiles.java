@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorProcess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Temporary files of a benchmark : the generated HAR and the files converted from the HAR.
+ */
+public class BenchmarkFiles {
+    private final File dir;
+
+    public BenchmarkFiles() throws IOException {
+        dir = Files.createTempDirectory("har-benchmark-").toFile();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public File file(String name) {
+        return new File(dir, name);
+    }
+
+    /**
+     * @param shape the HAR shape
+     * @return the HAR file generated in the benchmark directory
+     * @throws IOException if the HAR can't be written
+     */
+    public File generateHar(SyntheticHarGenerator.HarShape shape) throws IOException {
+        File har = file(shape.name().toLowerCase() + ".har");
+        SyntheticHarGenerator.generate(shape, har);
+        return har;
+    }
+
+    /**
+     * @param har the HAR to convert
+     * @param jmx the script to write
+     * @param recordXml the record xml to write or null
+     * @param isStreamingMode convert by chunks
+     * @return the parameters of the conversion
+     */
+    public static HarConvertorParameters createParameters(File har, File jmx, File recordXml, boolean isStreamingMode) {
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(jmx.getAbsolutePath());
+        parameters.setRecordXmlOut(recordXml == null ? "" : recordXml.getAbsolutePath());
+        parameters.setAddResultTreeRecord(recordXml != null);
+        parameters.setWebSocketPDoornbosch(true);
+        parameters.setStreamingMode(isStreamingMode);
+        // each iteration converts the HAR again
+        parameters.setCacheMaxMb(0);
+        return parameters;
+    }
+
+    /**
+     * Convert the HAR with the default options
+     * @throws Exception if the conversion failed
+     */
+    public static void convert(File har, File jmx, File recordXml, boolean isStreamingMode) throws Exception {
+        HarConvertorProcess.convert(createParameters(har, jmx, recordXml, isStreamingMode), new ConversionProgress());
+    }
+
+    public void delete() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole conversion by the converter library : parsing, transaction grouping, JMX and record xml writing.
+ * The grouping of the requests in Transaction Controllers is done inside the library, its cost is the conversion
+ * without record minus the parsing (HarParseBenchmark.readWholeTree) and the JMX writing (JmxWriteBenchmark).
+ * With streaming mode, the HAR is converted by chunks, run with -prof gc to compare the allocation and the heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class ConversionBenchmark {
+
+    @Param({ "SMALL_REQUESTS", "HUGE_BODIES", "WEBSOCKET_HEAVY" })
+    public SyntheticHarGenerator.HarShape shape;
+
+    @Param({ "false", "true" })
+    public boolean withRecord;
+
+    @Param({ "false", "true" })
+    public boolean streamingMode;
+
+    private BenchmarkFiles files;
+    private File har;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        files = new BenchmarkFiles();
+        har = files.generateHar(shape);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        files.delete();
+    }
+
+    @Benchmark
+    public long convert() throws Exception {
+        File jmx = files.file("script.jmx");
+        File record = withRecord ? files.file("record.xml") : null;
+        BenchmarkFiles.convert(har, jmx, record, streamingMode);
+        return jmx.length();
+    }
+}
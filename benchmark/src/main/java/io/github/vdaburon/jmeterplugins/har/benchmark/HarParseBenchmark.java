@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import io.github.vdaburon.jmeter.har.HarForJMeter;
+import io.github.vdaburon.jmeterplugins.har.stream.HarStreamReader;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing stage : the whole HAR in a json tree (as the converter library), the entries one at a time
+ * with the streaming reader and the index of the entries without the bodies (multi HAR merge).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class HarParseBenchmark {
+
+    @Param({ "SMALL_REQUESTS", "HUGE_BODIES", "WEBSOCKET_HEAVY" })
+    public SyntheticHarGenerator.HarShape shape;
+
+    private BenchmarkFiles files;
+    private File har;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        files = new BenchmarkFiles();
+        har = files.generateHar(shape);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        files.delete();
+    }
+
+    @Benchmark
+    public JsonNode readWholeTree() throws IOException {
+        ObjectMapper mapper = new ObjectMapper(HarStreamReader.createJsonFactory(HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT));
+        return mapper.readTree(har);
+    }
+
+    @Benchmark
+    public int readEntriesStreaming(Blackhole blackhole) throws IOException {
+        int count = 0;
+        try (HarStreamReader reader = new HarStreamReader(new BufferedInputStream(new FileInputStream(har), 256 * 1024),
+                HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT)) {
+            ObjectNode entry;
+            while ((entry = reader.nextEntry()) != null) {
+                blackhole.consume(entry);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long indexEntries() throws IOException {
+        long sum = 0;
+        try (HarStreamReader reader = new HarStreamReader(new BufferedInputStream(new FileInputStream(har), 256 * 1024),
+                HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT)) {
+            while (reader.skipEntry()) {
+                sum += reader.getEntryStartedMillis() + reader.getEntryEndOffset();
+            }
+        }
+        return sum;
+    }
+}
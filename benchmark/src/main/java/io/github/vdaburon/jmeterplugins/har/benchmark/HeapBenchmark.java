@@ -0,0 +1,160 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorProcess;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peak heap of the whole conversion of large HAR files, by default 100 MB, 1 GB and 4 GB of the SMALL_REQUESTS shape
+ * in streaming mode with the record xml. Not a JMH benchmark : one conversion by size is long and JMH doesn't measure
+ * the peak heap. For each size the HAR is generated, converted, then deleted with the converted files.
+ * "peak used" is the max heap used including the garbage not yet collected, "peak live" is the max heap used after a
+ * garbage collection, an upper bound of the memory kept by the conversion (a young collection doesn't collect the old
+ * generation). The script is written by chunks, so a small max heap converts all the sizes, e.g. -Xmx256m.
+ * e.g. java -Xmx4g -cp target/benchmarks.jar io.github.vdaburon.jmeterplugins.har.benchmark.HeapBenchmark
+ * java -Xmx8g -cp target/benchmarks.jar io.github.vdaburon.jmeterplugins.har.benchmark.HeapBenchmark -shape HUGE_BODIES -no_streaming 100
+ */
+public class HeapBenchmark {
+    private static final long MB = 1024 * 1024;
+    private static final long[] DEFAULT_SIZES_MB = { 100, 1024, 4096 };
+
+    private final AtomicLong peakLiveBytes = new AtomicLong();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final Set<String> heapPoolNames = new HashSet<>();
+
+    public HeapBenchmark() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+                heapPoolNames.add(pool.getName());
+            }
+        }
+        NotificationListener listener = this::handleGcNotification;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        SyntheticHarGenerator.HarShape shape = SyntheticHarGenerator.HarShape.SMALL_REQUESTS;
+        boolean isStreamingMode = true;
+        List<Long> sizesMb = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-shape".equals(args[i]) && i + 1 < args.length) {
+                shape = SyntheticHarGenerator.HarShape.valueOf(args[++i]);
+            } else if ("-no_streaming".equals(args[i])) {
+                isStreamingMode = false;
+            } else {
+                sizesMb.add(Long.parseLong(args[i]));
+            }
+        }
+        if (sizesMb.isEmpty()) {
+            for (long size : DEFAULT_SIZES_MB) {
+                sizesMb.add(size);
+            }
+        }
+
+        HeapBenchmark benchmark = new HeapBenchmark();
+        System.out.println("Shape " + shape + ", streaming mode " + isStreamingMode + ", max heap " + Runtime.getRuntime().maxMemory() / MB + " MB");
+        System.out.println(String.format("%10s %10s %10s %12s %14s %14s", "HAR MB", "entries", "samplers", "time ms", "peak used MB", "peak live MB"));
+        for (long sizeMb : sizesMb) {
+            System.out.println(benchmark.run(shape, sizeMb, isStreamingMode));
+        }
+    }
+
+    /**
+     * Generate a HAR of the size then convert it
+     * @return the result line
+     */
+    String run(SyntheticHarGenerator.HarShape shape, long sizeMb, boolean isStreamingMode) throws Exception {
+        BenchmarkFiles files = new BenchmarkFiles();
+        try {
+            File har = files.file(shape.name().toLowerCase() + "_" + sizeMb + "mb.har");
+            int entries = SyntheticHarGenerator.generate(shape, sizeMb * MB, har);
+            File jmx = files.file("script.jmx");
+            File record = files.file("record.xml");
+
+            System.gc();
+            resetPeaks();
+            long start = System.nanoTime();
+            ConversionProgress progress = new ConversionProgress();
+            HarConvertorProcess.convert(BenchmarkFiles.createParameters(har, jmx, record, isStreamingMode), progress);
+            long timeMs = (System.nanoTime() - start) / 1000000;
+            long peakLive = peakLiveBytes.get();
+            long peakUsed = getPeakUsed();
+
+            return String.format("%10d %10d %10d %12d %14d %14d", har.length() / MB, entries, progress.getMetrics().getSamplers(),
+                    timeMs, peakUsed / MB, peakLive / MB);
+        } finally {
+            files.delete();
+        }
+    }
+
+    private void resetPeaks() {
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        peakLiveBytes.set(0);
+    }
+
+    /**
+     * @return the sum of the peaks of the heap pools, an upper bound because the pools don't peak at the same time
+     */
+    private long getPeakUsed() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private void handleGcNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> usage : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            if (heapPoolNames.contains(usage.getKey())) {
+                used += usage.getValue().getUsed();
+            }
+        }
+        peakLiveBytes.accumulateAndGet(used, Math::max);
+    }
+}
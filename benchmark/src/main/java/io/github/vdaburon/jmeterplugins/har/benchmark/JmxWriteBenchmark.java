@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxChunkMerger;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMX serialization stage : load and save of the generated script (post processing of the script)
+ * and merge of 4 chunk scripts (streaming mode).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class JmxWriteBenchmark {
+    private static final int CHUNKS = 4;
+
+    @Param({ "SMALL_REQUESTS", "HUGE_BODIES", "WEBSOCKET_HEAVY" })
+    public SyntheticHarGenerator.HarShape shape;
+
+    private BenchmarkFiles files;
+    private File jmx;
+    private JmxDocument document;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        files = new BenchmarkFiles();
+        File har = files.generateHar(shape);
+        jmx = files.file("script.jmx");
+        BenchmarkFiles.convert(har, jmx, null, false);
+        document = JmxDocument.load(jmx);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        files.delete();
+    }
+
+    @Benchmark
+    public JmxDocument load() throws IOException {
+        return JmxDocument.load(jmx);
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        CountingNullOutputStream out = new CountingNullOutputStream();
+        document.save(out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long mergeChunks() throws IOException {
+        JmxChunkMerger merger = new JmxChunkMerger();
+        long samplers = 0;
+        for (int i = 0; i < CHUNKS; i++) {
+            samplers += merger.append(jmx, 5000).getSamplers();
+        }
+        return samplers;
+    }
+
+    private static class CountingNullOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
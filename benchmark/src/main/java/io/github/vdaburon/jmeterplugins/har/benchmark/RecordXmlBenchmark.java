@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import io.github.vdaburon.jmeterplugins.har.record.RecordXmlMerger;
+import io.github.vdaburon.jmeterplugins.har.stream.BodySpillStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record xml writing stage : merge of 4 chunk record xml files (streaming mode), plain or compressed by blocks in
+ * parallel, and the copy of the record xml with the restore of the spilled bodies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class RecordXmlBenchmark {
+    private static final int CHUNKS = 4;
+
+    @Param({ "SMALL_REQUESTS", "HUGE_BODIES", "WEBSOCKET_HEAVY" })
+    public SyntheticHarGenerator.HarShape shape;
+
+    private BenchmarkFiles files;
+    private File record;
+    private BodySpillStore spillStore;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        files = new BenchmarkFiles();
+        File har = files.generateHar(shape);
+        record = files.file("record.xml");
+        BenchmarkFiles.convert(har, files.file("script.jmx"), record, false);
+        spillStore = new BodySpillStore(files.file("bodies.spill"), 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        spillStore.close();
+        files.delete();
+    }
+
+    @Benchmark
+    public long mergeChunks() throws IOException {
+        File merged = files.file("merged.xml");
+        try (RecordXmlMerger merger = new RecordXmlMerger(merged)) {
+            for (int i = 0; i < CHUNKS; i++) {
+                merger.append(record);
+            }
+        }
+        return merged.length();
+    }
+
+    @Benchmark
+    public long mergeChunksGzip() throws IOException {
+        File merged = files.file("merged.xml.gz");
+        try (RecordXmlMerger merger = new RecordXmlMerger(merged)) {
+            for (int i = 0; i < CHUNKS; i++) {
+                merger.append(record);
+            }
+        }
+        return merged.length();
+    }
+
+    @Benchmark
+    public int restoreBodies() throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(record), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(files.file("restored.xml")), StandardCharsets.UTF_8))) {
+            return spillStore.restoreXml(in, out);
+        }
+    }
+}
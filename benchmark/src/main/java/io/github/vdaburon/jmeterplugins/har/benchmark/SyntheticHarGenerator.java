@@ -0,0 +1,320 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Generate HAR files with the structure of a Chrome HAR export for the benchmarks, always the same content for a shape.
+ * The HAR has the entries of the shape or, with a size, the entries of the shape repeated to reach the size.
+ * e.g. java -cp target/benchmarks.jar io.github.vdaburon.jmeterplugins.har.benchmark.SyntheticHarGenerator SMALL_REQUESTS small.har
+ * java -cp target/benchmarks.jar io.github.vdaburon.jmeterplugins.har.benchmark.SyntheticHarGenerator SMALL_REQUESTS big.har 1024
+ */
+public class SyntheticHarGenerator {
+
+    public enum HarShape {
+        /** many small requests on several hosts, a new page every 20 requests */
+        SMALL_REQUESTS(20000, 20, 0, 300, 0),
+        /** few requests, one in 4 with a huge response body */
+        HUGE_BODIES(40, 4, 0, 8 * 1024 * 1024, 0),
+        /** some http requests and WebSocket connections with many messages */
+        WEBSOCKET_HEAVY(200, 20, 10, 200, 2000);
+
+        private final int entries;
+        private final int entriesByPage;
+        private final int webSockets;
+        private final int bodySize;
+        private final int messagesByWebSocket;
+
+        HarShape(int entries, int entriesByPage, int webSockets, int bodySize, int messagesByWebSocket) {
+            this.entries = entries;
+            this.entriesByPage = entriesByPage;
+            this.webSockets = webSockets;
+            this.bodySize = bodySize;
+            this.messagesByWebSocket = messagesByWebSocket;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+    }
+
+    private static final long START_MS = 1714999198711L;
+    /** time between 2 pages, greater than the default new_tc_pause 5000 ms */
+    private static final long PAGE_GAP_MS = 6000;
+    private static final long REQUEST_GAP_MS = 40;
+    private static final String[] HOSTS = { "www.mysite.com", "api.mysite.com", "static.mysite.com", "cdn.thirdparty.net", "www.google-analytics.com" };
+    private static final String[] EXTENSIONS = { "", ".json", ".css", ".js", ".png" };
+
+    private final HarShape shape;
+    private final int entries;
+    private final Random random = new Random(42);
+    private final char[] bodyChars;
+
+    public SyntheticHarGenerator(HarShape shape) {
+        this(shape, shape.entries);
+    }
+
+    /**
+     * @param shape the shape of the HAR
+     * @param entries the count of entries, the pages and the WebSocket connections keep the proportions of the shape
+     */
+    public SyntheticHarGenerator(HarShape shape, int entries) {
+        this.shape = shape;
+        this.entries = entries;
+        this.bodyChars = new char[Math.max(shape.bodySize, 1)];
+        for (int i = 0; i < bodyChars.length; i++) {
+            bodyChars[i] = (char) ('a' + random.nextInt(26));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("usage: SyntheticHarGenerator SMALL_REQUESTS|HUGE_BODIES|WEBSOCKET_HEAVY <har_out> [size_mb]");
+            System.exit(1);
+        }
+        if (args.length == 3) {
+            generate(HarShape.valueOf(args[0]), Long.parseLong(args[2]) * 1024 * 1024, new File(args[1]));
+        } else {
+            generate(HarShape.valueOf(args[0]), new File(args[1]));
+        }
+    }
+
+    /**
+     * @param shape the shape of the HAR
+     * @param harFile the HAR file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void generate(HarShape shape, File harFile) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(harFile), 256 * 1024)) {
+            new SyntheticHarGenerator(shape).write(out);
+        }
+    }
+
+    /**
+     * @param shape the shape of the HAR
+     * @param sizeBytes the size of the HAR to write, the last entry is complete so the HAR is a little larger
+     * @param harFile the HAR file to write
+     * @return the count of entries written
+     * @throws IOException if the file can't be written
+     */
+    public static int generate(HarShape shape, long sizeBytes, File harFile) throws IOException {
+        int entries = getEntriesForSize(shape, sizeBytes);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(harFile), 256 * 1024)) {
+            new SyntheticHarGenerator(shape, entries).write(out);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the count of entries of the shape for a HAR of this size, from the mean size of an entry of the shape
+     */
+    static int getEntriesForSize(HarShape shape, long sizeBytes) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        new SyntheticHarGenerator(shape).write(counter);
+        long bytesByEntry = Math.max(1, counter.count / shape.entries);
+        long entries = (sizeBytes + bytesByEntry - 1) / bytesByEntry;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, entries));
+    }
+
+    void write(OutputStream out) throws IOException {
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeObjectFieldStart("log");
+            gen.writeStringField("version", "1.2");
+            gen.writeObjectFieldStart("creator");
+            gen.writeStringField("name", "SyntheticHarGenerator");
+            gen.writeStringField("version", "1.0");
+            gen.writeEndObject();
+
+            int pages = (entries + shape.entriesByPage - 1) / shape.entriesByPage;
+            gen.writeArrayFieldStart("pages");
+            for (int page = 0; page < pages; page++) {
+                gen.writeStartObject();
+                gen.writeStringField("startedDateTime", toIso(getStartedMs(page * shape.entriesByPage)));
+                gen.writeStringField("id", "page_" + (page + 1));
+                gen.writeStringField("title", "https://www.mysite.com/page" + (page + 1));
+                gen.writeObjectFieldStart("pageTimings");
+                gen.writeNumberField("onContentLoad", 120);
+                gen.writeNumberField("onLoad", 250);
+                gen.writeEndObject();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("entries");
+            int webSocketEvery = shape.webSockets == 0 ? 0 : shape.entries / shape.webSockets;
+            for (int i = 0; i < entries; i++) {
+                boolean isWebSocket = webSocketEvery > 0 && i % webSocketEvery == webSocketEvery - 1;
+                writeEntry(gen, i, isWebSocket);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+
+    private long getStartedMs(int index) {
+        int page = index / shape.entriesByPage;
+        return START_MS + page * PAGE_GAP_MS + index * REQUEST_GAP_MS;
+    }
+
+    private void writeEntry(JsonGenerator gen, int index, boolean isWebSocket) throws IOException {
+        long started = getStartedMs(index);
+        String host = HOSTS[index % HOSTS.length];
+        boolean isPost = !isWebSocket && index % 7 == 3;
+        boolean isHugeBody = shape == HarShape.HUGE_BODIES && index % 4 == 0;
+        String url = isWebSocket ? "wss://" + host + "/ws/" + index
+                : "https://" + host + "/app/resource" + index + EXTENSIONS[index % EXTENSIONS.length] + "?id=" + index + "&lang=en";
+
+        gen.writeStartObject();
+        gen.writeStringField("startedDateTime", toIso(started));
+        gen.writeNumberField("time", 35.5);
+        gen.writeStringField("pageref", "page_" + (index / shape.entriesByPage + 1));
+        if (isWebSocket) {
+            gen.writeStringField("_resourceType", "websocket");
+        }
+
+        gen.writeObjectFieldStart("request");
+        gen.writeStringField("method", isWebSocket ? "GET" : (isPost ? "POST" : "GET"));
+        gen.writeStringField("url", url);
+        gen.writeStringField("httpVersion", "HTTP/1.1");
+        gen.writeArrayFieldStart("headers");
+        writeHeader(gen, "Host", host);
+        writeHeader(gen, "User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/124.0.0.0 Safari/537.36");
+        writeHeader(gen, "Accept", "*/*");
+        writeHeader(gen, "Accept-Language", "en-US,en;q=0.9");
+        writeHeader(gen, "Cache-Control", "no-cache");
+        writeHeader(gen, "Cookie", "SESSIONID=ABC" + (index / 100) + "; lang=en");
+        if (isWebSocket) {
+            writeHeader(gen, "Upgrade", "websocket");
+            writeHeader(gen, "Connection", "Upgrade");
+            writeHeader(gen, "Sec-WebSocket-Key", "dGhlIHNhbXBsZSBub25jZQ==");
+            writeHeader(gen, "Sec-WebSocket-Version", "13");
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("queryString");
+        if (!isWebSocket) {
+            writeHeader(gen, "id", String.valueOf(index));
+            writeHeader(gen, "lang", "en");
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("cookies");
+        gen.writeEndArray();
+        gen.writeNumberField("headersSize", -1);
+        if (isPost) {
+            String postText = "{\"id\":" + index + ",\"value\":\"" + new String(bodyChars, 0, Math.min(bodyChars.length, 200)) + "\"}";
+            gen.writeNumberField("bodySize", postText.length());
+            gen.writeObjectFieldStart("postData");
+            gen.writeStringField("mimeType", "application/json");
+            gen.writeStringField("text", postText);
+            gen.writeEndObject();
+        } else {
+            gen.writeNumberField("bodySize", 0);
+        }
+        gen.writeEndObject();
+
+        int bodySize = isWebSocket ? 0 : (isHugeBody ? shape.bodySize : Math.min(shape.bodySize, 300));
+        gen.writeObjectFieldStart("response");
+        gen.writeNumberField("status", isWebSocket ? 101 : 200);
+        gen.writeStringField("statusText", isWebSocket ? "Switching Protocols" : "OK");
+        gen.writeStringField("httpVersion", "HTTP/1.1");
+        gen.writeArrayFieldStart("headers");
+        writeHeader(gen, "Content-Type", "text/plain; charset=utf-8");
+        writeHeader(gen, "Content-Length", String.valueOf(bodySize));
+        writeHeader(gen, "Date", "Mon, 06 May 2024 12:39:58 GMT");
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("cookies");
+        gen.writeEndArray();
+        gen.writeObjectFieldStart("content");
+        gen.writeNumberField("size", bodySize);
+        gen.writeStringField("mimeType", "text/plain");
+        if (bodySize > 0) {
+            gen.writeFieldName("text");
+            gen.writeString(bodyChars, 0, Math.min(bodySize, bodyChars.length));
+        }
+        gen.writeEndObject();
+        gen.writeStringField("redirectURL", "");
+        gen.writeNumberField("headersSize", -1);
+        gen.writeNumberField("bodySize", bodySize);
+        gen.writeEndObject();
+
+        gen.writeObjectFieldStart("cache");
+        gen.writeEndObject();
+        gen.writeObjectFieldStart("timings");
+        gen.writeNumberField("blocked", 1.5);
+        gen.writeNumberField("dns", -1);
+        gen.writeNumberField("connect", -1);
+        gen.writeNumberField("send", 0.2);
+        gen.writeNumberField("wait", 30.1);
+        gen.writeNumberField("receive", 3.7);
+        gen.writeNumberField("ssl", -1);
+        gen.writeEndObject();
+
+        if (isWebSocket) {
+            gen.writeArrayFieldStart("_webSocketMessages");
+            for (int m = 0; m < shape.messagesByWebSocket; m++) {
+                gen.writeStartObject();
+                gen.writeStringField("type", m % 5 == 0 ? "send" : "receive");
+                gen.writeNumberField("time", (started + 100 + m * 10L) / 1000.0);
+                gen.writeNumberField("opcode", 1);
+                gen.writeStringField("data", "{\"seq\":" + m + ",\"price\":" + (100 + random.nextInt(50)) + ".25,\"symbol\":\"ABC\"}");
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeHeader(JsonGenerator gen, String name, String value) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("name", name);
+        gen.writeStringField("value", value);
+        gen.writeEndObject();
+    }
+
+    private static String toIso(long epochMs) {
+        return Instant.ofEpochMilli(epochMs).toString();
+    }
+
+    /**
+     * Count the bytes of a HAR without writing it
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
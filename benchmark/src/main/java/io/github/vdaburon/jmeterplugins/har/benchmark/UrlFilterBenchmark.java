@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.benchmark;
+
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilter;
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilterStatistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Filtering stage : the URL filter rules (host map, prefix trie) against the same list as one alternation
+ * regular expression (the filter_exclude way), for 10000 urls of the site and of 40 third party domains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UrlFilterBenchmark {
+    private static final int THIRD_PARTY_DOMAINS = 40;
+    private static final int URLS = 10000;
+
+    private UrlFilter filter;
+    private Pattern excludeRegex;
+    private String[] urls;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> domains = new ArrayList<>();
+        for (int i = 0; i < THIRD_PARTY_DOMAINS; i++) {
+            domains.add("tracker" + i + ".thirdparty" + (i % 7) + ".com");
+        }
+
+        StringBuilder rules = new StringBuilder();
+        StringBuilder regex = new StringBuilder("https?://([^/]*\\.)?(");
+        for (int i = 0; i < domains.size(); i++) {
+            rules.append("exclude host ").append(domains.get(i)).append('\n');
+            regex.append(i == 0 ? "" : "|").append(Pattern.quote(domains.get(i)));
+        }
+        regex.append(")([:/?].*)?|https://www\\.mysite\\.com/static/.*|https://www\\.mysite\\.com/fonts/.*");
+        rules.append("exclude prefix https://www.mysite.com/static/\n");
+        rules.append("exclude prefix https://www.mysite.com/fonts/\n");
+        filter = UrlFilter.parse(new StringReader(rules.toString()));
+        excludeRegex = Pattern.compile(regex.toString());
+
+        urls = new String[URLS];
+        for (int i = 0; i < URLS; i++) {
+            if (i % 3 == 0) {
+                urls[i] = "https://" + domains.get(i % domains.size()) + "/collect?v=1&tid=UA-" + i;
+            } else if (i % 5 == 0) {
+                urls[i] = "https://www.mysite.com/static/img" + i + ".png";
+            } else {
+                urls[i] = "https://www.mysite.com/app/page" + i + "?id=" + i;
+            }
+        }
+    }
+
+    @Benchmark
+    public long filterRules() {
+        UrlFilterStatistics statistics = new UrlFilterStatistics(filter);
+        for (String url : urls) {
+            statistics.isKept(url);
+        }
+        return statistics.getKept();
+    }
+
+    @Benchmark
+    public long regexAlternation() {
+        long kept = 0;
+        for (String url : urls) {
+            if (!excludeRegex.matcher(url).matches()) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+}
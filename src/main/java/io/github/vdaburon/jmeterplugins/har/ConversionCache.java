@@ -0,0 +1,411 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Local cache of the conversions in &lt;JMETER_HOME&gt;/bin/har-convertor-cache (or the directory in the java system
+ * property har.convertor.cache.dir), to convert again the same HAR without reading it again.
+ * Two kinds of cache entries, the key is a SHA-256 of the content of the HAR files and of the options :
+ * <ul>
+ * <li>the result : the script and the record xml, reused when the HAR files and all the options are unchanged</li>
+ * <li>the entries : the HAR entries kept by the filter rules, merged in the startedDateTime order when several HAR files,
+ * written in one gzip HAR. Reused when only the options of the converter library change (pause, page numbering,
+ * headers to remove ...), the HAR files are then not indexed and filtered again</li>
+ * </ul>
+ * The digest of a HAR file is computed once, then kept by file path, size and last modified date.
+ * The cache size is bounded, the least recently used cache entries are deleted first.
+ * The cache is disabled by default (size 0), the digest reads all the HAR files before the conversion.
+ * One instance by cache directory, shared by the conversions in parallel (batch), the changes of the cache directory
+ * are synchronized on this instance.
+ */
+public class ConversionCache {
+    private static final Logger log = LoggerFactory.getLogger(ConversionCache.class);
+
+    public static final String CACHE_DIR_NAME = "har-convertor-cache";
+    /** System property to use another cache directory */
+    public static final String CACHE_DIR_PROPERTY = "har.convertor.cache.dir";
+    public static final long K_CACHE_MAX_MB_DEFAULT = 0;
+
+    public static final String STATUS_RESULT = "result";
+    public static final String STATUS_ENTRIES = "entries";
+    public static final String STATUS_MISS = "miss";
+
+    static final String ENTRIES_EXTENSION = ".entries.har.gz";
+    static final String RESULT_JMX_EXTENSION = ".result.jmx";
+    static final String RESULT_RECORD_EXTENSION = ".result.record";
+    static final String DIGESTS_FILE_NAME = "har-digests.properties";
+    private static final String TEMP_PREFIX = "tmp-";
+    // change the version when the content of the cache entries changes
+    private static final String FORMAT_VERSION = "1";
+
+    private static final Map<File, ConversionCache> CACHES = new HashMap<>();
+
+    private final File dir;
+    // the max size of the last conversion started
+    private volatile long maxBytes;
+
+    /**
+     * @param dir the cache directory, created if needed
+     * @param maxBytes the max size of the cache entries
+     */
+    ConversionCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param parameters the conversion parameters
+     * @return the cache of the JMeter home with the max size of the parameters, null if the cache is disabled (size 0)
+     */
+    public static ConversionCache create(HarConvertorParameters parameters) {
+        if (parameters.getCacheMaxMb() <= 0) {
+            return null;
+        }
+        return getShared(getDefaultDir(), parameters.getCacheMaxMb() * 1024 * 1024);
+    }
+
+    /**
+     * @param dir the cache directory
+     * @param maxBytes the max size of the cache entries
+     * @return the instance of the directory, the same instance for all the conversions so the changes are serialized
+     */
+    static ConversionCache getShared(File dir, long maxBytes) {
+        File key = dir.getAbsoluteFile();
+        synchronized (CACHES) {
+            ConversionCache cache = CACHES.computeIfAbsent(key, k -> new ConversionCache(k, maxBytes));
+            cache.maxBytes = maxBytes;
+            return cache;
+        }
+    }
+
+    static File getDefaultDir() {
+        String dirName = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dirName != null && !dirName.isEmpty()) {
+            return new File(dirName);
+        }
+        return new File(ConversionProfiles.getJMeterBinDir(), CACHE_DIR_NAME);
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * @param parameters the conversion parameters
+     * @return the key of the HAR entries : the content of the HAR files and of the filter rules file, the selection options
+     * @throws IOException if a HAR file can't be read
+     */
+    public String getEntriesKey(HarConvertorParameters parameters) throws IOException {
+        StringBuilder sb = new StringBuilder("entries ").append(FORMAT_VERSION);
+        for (String fileHarIn : parameters.getFilesHarIn()) {
+            sb.append('\n').append(getFileDigest(new File(fileHarIn)));
+        }
+        sb.append('\n').append(HarConvertorParameters.K_FILTER_RULES).append('=').append(getOptionalFileDigest(parameters.getFilterRulesFile()));
+        if (parameters.isEntrySelection()) {
+            sb.append('\n').append(HarConvertorParameters.K_SELECT_START).append('=').append(parameters.getSelectStart().trim());
+            sb.append('\n').append(HarConvertorParameters.K_SELECT_END).append('=').append(parameters.getSelectEnd().trim());
+            sb.append('\n').append(HarConvertorParameters.K_SELECT_EVERY_PAGE).append('=').append(parameters.getSelectEveryPage());
+            if (parameters.getSelectEveryPage() > 1) {
+                // the pages selected are cut with the time between 2 urls
+                sb.append('\n').append(HarConvertorParameters.K_NEW_TC_PAUSE).append('=').append(parameters.getCreateNewTransactionAfterRequestMs());
+            }
+        }
+        return toHex(sha256(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param parameters the conversion parameters
+     * @param entriesKey the key of the HAR entries
+     * @return the key of the result : the HAR entries, the content of the external file infos and all the options
+     * changing the script or the record xml (the HAR and record file names are written in the script)
+     * @throws IOException if the external file infos can't be read
+     */
+    public String getResultKey(HarConvertorParameters parameters, String entriesKey) throws IOException {
+        Map<String, String> options = new TreeMap<>(parameters.getOptions());
+        options.remove(HarConvertorParameters.K_JMX_OUT);
+        options.remove(HarConvertorParameters.K_METRICS_REPORT);
+        options.remove(HarConvertorParameters.K_CACHE_MAX_MB);
+        options.remove(HarConvertorParameters.K_MAPPED_READER);
+        options.put(HarConvertorParameters.K_EXTERNAL_FILE_INFOS, parameters.getExternalFileInfoIn() + " "
+                + getOptionalFileDigest(parameters.getExternalFileInfoIn()));
+        StringBuilder sb = new StringBuilder("result ").append(FORMAT_VERSION).append('\n').append(entriesKey);
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            sb.append('\n').append(option.getKey()).append('=').append(option.getValue());
+        }
+        return toHex(sha256(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Copy the cached script and record xml to the output files of the parameters
+     * @param resultKey the key of the result
+     * @param parameters the conversion parameters
+     * @return true if the result was in the cache and is copied, false if not in the cache
+     * @throws IOException if the output files can't be written
+     */
+    public synchronized boolean restoreResult(String resultKey, HarConvertorParameters parameters) throws IOException {
+        File jmx = new File(dir, resultKey + RESULT_JMX_EXTENSION);
+        File record = new File(dir, resultKey + RESULT_RECORD_EXTENSION);
+        boolean isWithRecord = !parameters.getRecordXmlOut().isEmpty();
+        if (!jmx.isFile() || (isWithRecord && !record.isFile())) {
+            return false;
+        }
+        touch(jmx, record);
+        Files.copy(jmx.toPath(), new File(parameters.getFileJmxOut()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (isWithRecord) {
+            Files.copy(record.toPath(), new File(parameters.getRecordXmlOut()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /**
+     * Copy the script and record xml written by the conversion in the cache, a copy error is logged only
+     * @param resultKey the key of the result
+     * @param parameters the conversion parameters with the output files written
+     */
+    public void putResult(String resultKey, HarConvertorParameters parameters) {
+        List<File> temps = new ArrayList<>();
+        try {
+            File jmxTemp = copyToTemp(new File(parameters.getFileJmxOut()), temps);
+            File recordTemp = parameters.getRecordXmlOut().isEmpty() ? null : copyToTemp(new File(parameters.getRecordXmlOut()), temps);
+            synchronized (this) {
+                // the script last because restoreResult() checks the script first
+                if (recordTemp != null) {
+                    moveTemp(recordTemp, new File(dir, resultKey + RESULT_RECORD_EXTENSION));
+                }
+                moveTemp(jmxTemp, new File(dir, resultKey + RESULT_JMX_EXTENSION));
+                evict();
+            }
+            log.info("Conversion result cached, key=" + resultKey);
+        } catch (IOException ex) {
+            log.warn("Can't write the conversion result in the cache " + dir + ", exception = " + ex);
+        } finally {
+            for (File temp : temps) {
+                deleteFile(temp);
+            }
+        }
+    }
+
+    /**
+     * @param entriesKey the key of the HAR entries
+     * @return the gzip HAR with the entries kept by the filter rules or null if not in the cache
+     */
+    public synchronized File getEntries(String entriesKey) {
+        File entries = new File(dir, entriesKey + ENTRIES_EXTENSION);
+        if (!entries.isFile()) {
+            return null;
+        }
+        touch(entries);
+        return entries;
+    }
+
+    /**
+     * @return a new temporary file in the cache directory to write the HAR entries, then call putEntries()
+     * @throws IOException if the file can't be created
+     */
+    public File createEntriesTemp() throws IOException {
+        createDir();
+        return File.createTempFile(TEMP_PREFIX, ENTRIES_EXTENSION, dir);
+    }
+
+    /**
+     * @param entriesKey the key of the HAR entries
+     * @param entriesTemp the temporary file written, moved in the cache
+     */
+    public synchronized void putEntries(String entriesKey, File entriesTemp) {
+        try {
+            moveTemp(entriesTemp, new File(dir, entriesKey + ENTRIES_EXTENSION));
+            evict();
+            log.info("HAR entries cached, key=" + entriesKey);
+        } catch (IOException ex) {
+            log.warn("Can't write the HAR entries in the cache " + dir + ", exception = " + ex);
+            deleteFile(entriesTemp);
+        }
+    }
+
+    /**
+     * Delete the least recently used cache entries until the cache size is lower than the max size.
+     * The files of a cache entry (script and record xml) are deleted together.
+     */
+    synchronized void evict() {
+        File[] files = dir.listFiles((d, name) -> !name.equals(DIGESTS_FILE_NAME) && !name.startsWith(TEMP_PREFIX));
+        if (files == null) {
+            return;
+        }
+        Map<String, List<File>> byKey = new TreeMap<>();
+        long total = 0;
+        for (File file : files) {
+            int dot = file.getName().indexOf('.');
+            byKey.computeIfAbsent(dot < 0 ? file.getName() : file.getName().substring(0, dot), k -> new ArrayList<>()).add(file);
+            total += file.length();
+        }
+        List<List<File>> lruFirst = new ArrayList<>(byKey.values());
+        lruFirst.sort((a, b) -> Long.compare(getLastUsed(a), getLastUsed(b)));
+        for (List<File> entry : lruFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            for (File file : entry) {
+                total -= file.length();
+                deleteFile(file);
+            }
+            log.info("Cache entry deleted (least recently used) " + entry);
+        }
+    }
+
+    private static long getLastUsed(List<File> files) {
+        long lastUsed = 0;
+        for (File file : files) {
+            lastUsed = Math.max(lastUsed, file.lastModified());
+        }
+        return lastUsed;
+    }
+
+    private static void touch(File... files) {
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (file.exists() && !file.setLastModified(now)) {
+                log.debug("Can't change the last modified date of " + file);
+            }
+        }
+    }
+
+    /**
+     * @param file a HAR file
+     * @return the SHA-256 of the content in hexadecimal, read once for a path, size and last modified date
+     * @throws IOException if the file can't be read or the digests file can't be written
+     */
+    String getFileDigest(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        String version = file.length() + ":" + file.lastModified() + ":";
+        String known;
+        synchronized (this) {
+            known = loadDigests().getProperty(path);
+        }
+        if (known != null && known.startsWith(version)) {
+            return known.substring(version.length());
+        }
+        // the HAR is read without the lock, the other conversions use the cache meanwhile
+        long start = System.currentTimeMillis();
+        String digest = toHex(sha256(file));
+        log.info("Digest of " + file + " computed in " + (System.currentTimeMillis() - start) + " ms");
+        synchronized (this) {
+            // read again, the digests of the other HAR files may be added meanwhile
+            Properties digests = loadDigests();
+            digests.setProperty(path, version + digest);
+            createDir();
+            File temp = File.createTempFile(TEMP_PREFIX, ".properties", dir);
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                digests.store(out, "SHA-256 of the HAR files, path=size:last modified:digest");
+            }
+            moveTemp(temp, new File(dir, DIGESTS_FILE_NAME));
+        }
+        return digest;
+    }
+
+    private Properties loadDigests() throws IOException {
+        File digestsFile = new File(dir, DIGESTS_FILE_NAME);
+        Properties digests = new Properties();
+        if (digestsFile.isFile()) {
+            try (InputStream in = Files.newInputStream(digestsFile.toPath())) {
+                digests.load(in);
+            }
+        }
+        return digests;
+    }
+
+    private String getOptionalFileDigest(String fileName) throws IOException {
+        if (fileName == null || fileName.isEmpty()) {
+            return "";
+        }
+        return toHex(sha256(new File(fileName)));
+    }
+
+    private File copyToTemp(File source, List<File> temps) throws IOException {
+        createDir();
+        File temp = File.createTempFile(TEMP_PREFIX, ".copy", dir);
+        temps.add(temp);
+        Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return temp;
+    }
+
+    private static void moveTemp(File temp, File target) throws IOException {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void createDir() throws IOException {
+        Files.createDirectories(dir.toPath());
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Can't delete the cache file " + file);
+        }
+    }
+
+    private static byte[] sha256(File file) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        return newSha256().digest(bytes);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is in all the java runtimes
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one conversion : the time of each stage, the entries read, filtered and converted, the size of the bodies
+ * and of the files written. Shown in the dialog, logged and written in the json report &lt;jmx_out_no_extension&gt;.metrics.json.
+ * The counts not known for a conversion (e.g. the entries when the HAR is converted by the library only) are -1
+ * and null in the json report.
+ */
+public class ConversionMetrics {
+    public static final String METRICS_REPORT_EXTENSION = ".metrics.json";
+
+    public static final String STAGE_LOAD_EXTERNAL_FILE = "load_external_file_infos";
+    public static final String STAGE_DIGEST_HAR = "digest_har_files";
+    public static final String STAGE_INDEX_HAR = "index_har_files";
+    public static final String STAGE_SCAN_HAR = "scan_har_entries";
+    public static final String STAGE_SELECT_HAR = "select_har_entries";
+    public static final String STAGE_PARSE_HAR = "parse_har";
+    public static final String STAGE_LIBRARY_CONVERSION = "library_conversion";
+    public static final String STAGE_MERGE_JMX = "merge_jmx";
+    public static final String STAGE_WRITE_RECORD = "write_record_xml";
+    public static final String STAGE_RESTORE_BODIES = "restore_bodies";
+    public static final String STAGE_CORRELATE = "correlate";
+    public static final String STAGE_COMPACT_HEADERS = "compact_headers";
+    public static final String STAGE_WRITE_JMX = "write_jmx";
+    public static final String STAGE_WRITE_FRAGMENTS = "write_fragments";
+
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private long startNanos = -1;
+    private long totalNanos = -1;
+    private long harBytes = -1;
+    private long entriesIn = -1;
+    private long entriesFiltered = -1;
+    private long entriesNotSelected = -1;
+    private long entriesOut = -1;
+    private long entriesCollapsed = -1;
+    private int embeddedResourceSamplers = -1;
+    private long bodyChars = -1;
+    private long spilledBodies = -1;
+    private long spilledBytes = -1;
+    private long dedupTexts = -1;
+    private long dedupTextBytes = -1;
+    private long dedupBodies = -1;
+    private long dedupBodyBytes = -1;
+    private int chunks = -1;
+    private int pages = -1;
+    private int samplers = -1;
+    private long jmxBytes = -1;
+    private long recordBytes = -1;
+    private String cacheStatus;
+    private int externalTransactions = -1;
+    private int externalTransactionsWithoutEntry = -1;
+    private int webSocketBatches = -1;
+    private int correlationValuesIndexed = -1;
+    private int correlationsFound = -1;
+    private int correlationsApplied = -1;
+    private long correlationReplacements = -1;
+    private int headerManagersAdded = -1;
+    private int headerManagersRemoved = -1;
+    private long headersRemoved = -1;
+    private long headerBytesSaved = -1;
+    private int webSocketSamplersRemoved = -1;
+    private long thinkTimeMean = -1;
+    private long thinkTimeStdDev = -1;
+    private long thinkTimeP90 = -1;
+    private long pageDurationMean = -1;
+    private long serverTimeMean = -1;
+    private double samplersPerMinute = -1;
+    private int timersAdded = -1;
+    private int fragments = -1;
+
+    public synchronized void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public synchronized void stop() {
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Add a time to a stage, the stages are in the order of their first time
+     * @param stage the stage name, e.g. STAGE_PARSE_HAR
+     * @param startNanos the System.nanoTime() at the start of the stage
+     */
+    public synchronized void addStageTime(String stage, long startNanos) {
+        addStageNanos(stage, System.nanoTime() - startNanos);
+    }
+
+    public synchronized void addStageNanos(String stage, long nanos) {
+        stageNanos.merge(stage, nanos, Long::sum);
+    }
+
+    public synchronized long getStageMillis(String stage) {
+        Long nanos = stageNanos.get(stage);
+        return nanos == null ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public synchronized long getTotalMillis() {
+        return totalNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(totalNanos);
+    }
+
+    public synchronized void setHarBytes(long harBytes) {
+        this.harBytes = harBytes;
+    }
+
+    /**
+     * Count an entry read from the HAR, kept or filtered
+     * @param isKept true if the entry is converted, false if filtered
+     * @param bodyChars the chars of the request and response bodies of the entry
+     */
+    public synchronized void addEntry(boolean isKept, long bodyChars) {
+        if (entriesIn < 0) {
+            entriesIn = 0;
+            entriesFiltered = 0;
+            entriesOut = 0;
+            this.bodyChars = 0;
+        }
+        entriesIn++;
+        if (isKept) {
+            entriesOut++;
+            this.bodyChars += bodyChars;
+        } else {
+            entriesFiltered++;
+        }
+    }
+
+    /**
+     * A static entry kept by the filters but collapsed in its page sampler, not converted
+     * @param bodyChars the chars of the bodies of the entry
+     */
+    public synchronized void collapseEntry(long bodyChars) {
+        if (entriesCollapsed < 0) {
+            entriesCollapsed = 0;
+        }
+        entriesCollapsed++;
+        entriesOut--;
+        this.bodyChars -= bodyChars;
+    }
+
+    /**
+     * @param embeddedResourceSamplers the page samplers retrieving the embedded resources collapsed
+     */
+    public synchronized void setEmbeddedResourceSamplers(int embeddedResourceSamplers) {
+        this.embeddedResourceSamplers = embeddedResourceSamplers;
+    }
+
+    /**
+     * @param entriesNotSelected the entries skipped without being decoded, outside the time window or the pages selected
+     */
+    public synchronized void setEntriesNotSelected(long entriesNotSelected) {
+        this.entriesNotSelected = entriesNotSelected;
+    }
+
+    /**
+     * @param externalTransactions the transactions of the external file infos
+     * @param withoutEntry the transactions without HAR entry in their time interval
+     */
+    public synchronized void setExternalTransactions(int externalTransactions, int withoutEntry) {
+        this.externalTransactions = externalTransactions;
+        this.externalTransactionsWithoutEntry = withoutEntry;
+    }
+
+    /**
+     * @param webSocketBatches the Loop Controllers created for the consecutive identical WebSocket samplers
+     * @param samplersRemoved the WebSocket samplers replaced by these loops
+     */
+    public synchronized void setWebSocketBatches(int webSocketBatches, int samplersRemoved) {
+        this.webSocketBatches = webSocketBatches;
+        this.webSocketSamplersRemoved = samplersRemoved;
+    }
+
+    /**
+     * @param valuesIndexed the token like values of the responses indexed
+     * @param found the values sent again by a later request
+     * @param applied the values with an extractor added to the producer sampler
+     * @param replacements the values replaced by a variable in the samplers
+     */
+    public synchronized void setCorrelations(int valuesIndexed, int found, int applied, long replacements) {
+        this.correlationValuesIndexed = valuesIndexed;
+        this.correlationsFound = found;
+        this.correlationsApplied = applied;
+        this.correlationReplacements = replacements;
+    }
+
+    /**
+     * @param managersAdded the shared Header Managers added to the Thread Group and the pages
+     * @param managersRemoved the Header Managers of the samplers removed because all their headers are shared
+     * @param headersRemoved the headers removed from the samplers
+     * @param bytesSaved the estimated bytes of the script saved
+     */
+    public synchronized void setHeaderCompaction(int managersAdded, int managersRemoved, long headersRemoved, long bytesSaved) {
+        this.headerManagersAdded = managersAdded;
+        this.headerManagersRemoved = managersRemoved;
+        this.headersRemoved = headersRemoved;
+        this.headerBytesSaved = bytesSaved;
+    }
+
+    /**
+     * @param thinkTimeMean the mean recorded think time between 2 pages in ms
+     * @param thinkTimeStdDev the standard deviation of the think time in ms
+     * @param thinkTimeP90 the 90th percentile of the think time in ms
+     * @param pageDurationMean the mean recorded duration of a page in ms
+     * @param serverTimeMean the mean recorded server time (wait timings) of a page in ms
+     * @param samplersPerMinute the recorded throughput
+     */
+    public synchronized void setPageTimings(long thinkTimeMean, long thinkTimeStdDev, long thinkTimeP90, long pageDurationMean,
+                                            long serverTimeMean, double samplersPerMinute) {
+        this.thinkTimeMean = thinkTimeMean;
+        this.thinkTimeStdDev = thinkTimeStdDev;
+        this.thinkTimeP90 = thinkTimeP90;
+        this.pageDurationMean = pageDurationMean;
+        this.serverTimeMean = serverTimeMean;
+        this.samplersPerMinute = samplersPerMinute;
+    }
+
+    /**
+     * @param timersAdded the timers computed from the recorded timings added to the script
+     */
+    public synchronized void setTimersAdded(int timersAdded) {
+        this.timersAdded = timersAdded;
+    }
+
+    /**
+     * @param fragments the Test Fragment files included by the main script
+     */
+    public synchronized void setFragments(int fragments) {
+        this.fragments = fragments;
+    }
+
+    public synchronized void setSpilled(long spilledBodies, long spilledBytes) {
+        this.spilledBodies = spilledBodies;
+        this.spilledBytes = spilledBytes;
+    }
+
+    /**
+     * @param dedupTexts the texts of the script shared with a previous identical text
+     * @param dedupTextBytes the estimated heap bytes saved by the shared texts
+     */
+    public synchronized void setDedupTexts(long dedupTexts, long dedupTextBytes) {
+        this.dedupTexts = dedupTexts;
+        this.dedupTextBytes = dedupTextBytes;
+    }
+
+    /**
+     * @param dedupBodies the spilled bodies identical to a body already spilled
+     * @param dedupBodyBytes the bytes of these bodies not written again
+     */
+    public synchronized void setDedupBodies(long dedupBodies, long dedupBodyBytes) {
+        this.dedupBodies = dedupBodies;
+        this.dedupBodyBytes = dedupBodyBytes;
+    }
+
+    public synchronized void setChunks(int chunks) {
+        this.chunks = chunks;
+    }
+
+    public synchronized void setOutputs(int pages, int samplers, long jmxBytes, long recordBytes) {
+        this.pages = pages;
+        this.samplers = samplers;
+        this.jmxBytes = jmxBytes;
+        this.recordBytes = recordBytes;
+    }
+
+    /**
+     * @param cacheStatus what was reused from the conversion cache, ConversionCache.STATUS_RESULT, STATUS_ENTRIES or STATUS_MISS
+     */
+    public synchronized void setCacheStatus(String cacheStatus) {
+        this.cacheStatus = cacheStatus;
+    }
+
+    public synchronized String getCacheStatus() {
+        return cacheStatus;
+    }
+
+    public synchronized long getEntriesIn() {
+        return entriesIn;
+    }
+
+    public synchronized long getEntriesFiltered() {
+        return entriesFiltered;
+    }
+
+    public synchronized long getEntriesOut() {
+        return entriesOut;
+    }
+
+    public synchronized int getSamplers() {
+        return samplers;
+    }
+
+    public synchronized int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the transactions of the external file infos without HAR entry, -1 if no external file infos
+     */
+    public synchronized int getExternalTransactionsWithoutEntry() {
+        return externalTransactionsWithoutEntry;
+    }
+
+    /**
+     * @return the summary of the metrics, one line by metric or stage
+     */
+    public synchronized String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Total time               %10s ms%n", toText(getTotalMillis())));
+        if (cacheStatus != null) {
+            sb.append(String.format("Cache                    %10s%n", cacheStatus));
+        }
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            sb.append(String.format("  %-23s%10d ms%n", stage.getKey(), TimeUnit.NANOSECONDS.toMillis(stage.getValue())));
+        }
+        sb.append(String.format("HAR bytes                %10s%n", toText(harBytes)));
+        sb.append(String.format("Entries in / filtered / out  %s / %s / %s%n", toText(entriesIn), toText(entriesFiltered), toText(entriesOut)));
+        if (entriesNotSelected >= 0) {
+            sb.append(String.format("Entries not selected     %10d%n", entriesNotSelected));
+        }
+        if (embeddedResourceSamplers >= 0) {
+            sb.append(String.format("Static collapsed / in page samplers %d / %d%n", Math.max(0, entriesCollapsed), embeddedResourceSamplers));
+        }
+        sb.append(String.format("Body chars               %10s%n", toText(bodyChars)));
+        if (spilledBodies >= 0) {
+            sb.append(String.format("Bodies spilled / bytes   %10d / %d%n", spilledBodies, spilledBytes));
+        }
+        if (dedupTexts >= 0) {
+            sb.append(String.format("Dedup texts / bytes saved  %8d / %d%n", dedupTexts, dedupTextBytes));
+        }
+        if (dedupBodies >= 0) {
+            sb.append(String.format("Dedup bodies / bytes saved %8d / %d%n", dedupBodies, dedupBodyBytes));
+        }
+        if (externalTransactions >= 0) {
+            sb.append(String.format("External transactions / without entry %d / %d%n", externalTransactions, externalTransactionsWithoutEntry));
+        }
+        if (correlationsFound >= 0) {
+            sb.append(String.format("Correlations found / applied %d / %d, values indexed %d, replacements %d%n",
+                    correlationsFound, correlationsApplied, correlationValuesIndexed, correlationReplacements));
+        }
+        if (headerManagersAdded >= 0) {
+            sb.append(String.format("Header managers added / removed %d / %d, headers removed %d, bytes saved %d%n",
+                    headerManagersAdded, headerManagersRemoved, headersRemoved, headerBytesSaved));
+        }
+        if (thinkTimeMean >= 0) {
+            sb.append(String.format("Think time mean / std dev / p90 %d / %d / %d ms, page %d ms, server %d ms, %.1f samplers/min%n",
+                    thinkTimeMean, thinkTimeStdDev, thinkTimeP90, pageDurationMean, serverTimeMean, samplersPerMinute));
+        }
+        if (timersAdded >= 0) {
+            sb.append(String.format("Timers added             %10d%n", timersAdded));
+        }
+        if (webSocketBatches >= 0) {
+            sb.append(String.format("WebSocket loops / samplers removed %d / %d%n", webSocketBatches, webSocketSamplersRemoved));
+        }
+        if (chunks >= 0) {
+            sb.append(String.format("Chunks                   %10d%n", chunks));
+        }
+        sb.append(String.format("Pages / samplers         %10s / %s%n", toText(pages), toText(samplers)));
+        sb.append(String.format("JMX bytes                %10s%n", toText(jmxBytes)));
+        if (fragments >= 0) {
+            sb.append(String.format("Fragment files           %10d%n", fragments));
+        }
+        sb.append(String.format("Record xml bytes         %10s", toText(recordBytes)));
+        return sb.toString();
+    }
+
+    private static String toText(long value) {
+        return value < 0 ? "-" : String.valueOf(value);
+    }
+
+    /**
+     * Write the json report
+     * @param parameters the parameters of the conversion
+     * @param reportFile the json file to write
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void writeReport(HarConvertorParameters parameters, File reportFile) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode root = mapper.createObjectNode();
+        root.put("date", OffsetDateTime.now().toString());
+        root.put("har_in", parameters.getFileHarIn());
+        root.put("jmx_out", parameters.getFileJmxOut());
+        root.put("record_out", parameters.getRecordXmlOut());
+        root.put("streaming_mode", parameters.isStreamingMode());
+        putCount(root, "duration_ms", getTotalMillis());
+        root.put("cache", cacheStatus);
+        ObjectNode stages = root.putObject("stages_ms");
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            stages.put(stage.getKey(), TimeUnit.NANOSECONDS.toMillis(stage.getValue()));
+        }
+        putCount(root, "har_bytes", harBytes);
+        ObjectNode entries = root.putObject("entries");
+        putCount(entries, "in", entriesIn);
+        putCount(entries, "filtered", entriesFiltered);
+        putCount(entries, "out", entriesOut);
+        putCount(entries, "not_selected", entriesNotSelected);
+        putCount(entries, "static_collapsed", embeddedResourceSamplers < 0 ? -1 : Math.max(0, entriesCollapsed));
+        ObjectNode bodies = root.putObject("bodies");
+        putCount(bodies, "chars", bodyChars);
+        putCount(bodies, "spilled", spilledBodies);
+        putCount(bodies, "spilled_bytes", spilledBytes);
+        ObjectNode dedup = root.putObject("dedup");
+        putCount(dedup, "texts", dedupTexts);
+        putCount(dedup, "text_bytes_saved", dedupTextBytes);
+        putCount(dedup, "bodies", dedupBodies);
+        putCount(dedup, "body_bytes_saved", dedupBodyBytes);
+        ObjectNode external = root.putObject("external_transactions");
+        putCount(external, "count", externalTransactions);
+        putCount(external, "without_entry", externalTransactionsWithoutEntry);
+        ObjectNode correlation = root.putObject("correlation");
+        putCount(correlation, "values_indexed", correlationValuesIndexed);
+        putCount(correlation, "found", correlationsFound);
+        putCount(correlation, "applied", correlationsApplied);
+        putCount(correlation, "replacements", correlationReplacements);
+        ObjectNode headers = root.putObject("header_compaction");
+        putCount(headers, "managers_added", headerManagersAdded);
+        putCount(headers, "managers_removed", headerManagersRemoved);
+        putCount(headers, "headers_removed", headersRemoved);
+        putCount(headers, "bytes_saved", headerBytesSaved);
+        ObjectNode timings = root.putObject("timings");
+        putCount(timings, "think_time_mean_ms", thinkTimeMean);
+        putCount(timings, "think_time_std_dev_ms", thinkTimeStdDev);
+        putCount(timings, "think_time_p90_ms", thinkTimeP90);
+        putCount(timings, "page_duration_mean_ms", pageDurationMean);
+        putCount(timings, "server_time_mean_ms", serverTimeMean);
+        if (samplersPerMinute < 0) {
+            timings.putNull("samplers_per_minute");
+        } else {
+            timings.put("samplers_per_minute", Math.round(samplersPerMinute * 10) / 10.0);
+        }
+        putCount(timings, "timers_added", timersAdded);
+        ObjectNode webSocket = root.putObject("websocket_batches");
+        putCount(webSocket, "loops", webSocketBatches);
+        putCount(webSocket, "samplers_removed", webSocketSamplersRemoved);
+        putCount(root, "chunks", chunks);
+        ObjectNode outputs = root.putObject("outputs");
+        putCount(outputs, "pages", pages);
+        putCount(outputs, "samplers", samplers);
+        putCount(outputs, "embedded_resource_samplers", embeddedResourceSamplers);
+        putCount(outputs, "jmx_bytes", jmxBytes);
+        putCount(outputs, "fragments", fragments);
+        putCount(outputs, "record_bytes", recordBytes);
+        mapper.writeValue(reportFile, root);
+    }
+
+    private static void putCount(ObjectNode node, String name, long value) {
+        if (value < 0) {
+            node.putNull(name);
+        } else {
+            node.put(name, value);
+        }
+    }
+
+    /**
+     * @param fileJmxOut the script file name
+     * @return the json report file next to the script, e.g. script.metrics.json for script.jmx
+     */
+    public static File getReportFile(String fileJmxOut) {
+        String jmx = HarConvertorParameters.getDefaultJmxOut(fileJmxOut);
+        return new File(jmx.substring(0, jmx.length() - ".jmx".length()) + METRICS_REPORT_EXTENSION);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import org.apache.jmeter.util.JMeterUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Named conversion profiles (pause, filters, headers to remove, checkboxes ...) saved in the properties file
+ * &lt;JMETER_HOME&gt;/bin/har-convertor-profiles.properties, used by the GUI and by the CLI (-profile name).
+ * The keys are profile.&lt;name&gt;.&lt;option&gt; with the option names of the command line, e.g.
+ * profile.mysite.filter_exclude=(?i).*\.(css|js|png)
+ * The file is read only when a profile is needed, then cached until the file is modified.
+ */
+public class ConversionProfiles {
+    private static final Logger log = LoggerFactory.getLogger(ConversionProfiles.class);
+
+    public static final String PROFILES_FILE_NAME = "har-convertor-profiles.properties";
+    /** System property to use another profiles file */
+    public static final String PROFILES_FILE_PROPERTY = "har.convertor.profiles";
+    private static final String KEY_PREFIX = "profile.";
+
+    private static ConversionProfiles instance;
+
+    private final File file;
+    private long lastModified = -1;
+    private Map<String, Map<String, String>> profiles = new TreeMap<>();
+
+    ConversionProfiles(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the profiles of the JMeter home, the file is not read here
+     */
+    public static synchronized ConversionProfiles getInstance() {
+        if (instance == null) {
+            instance = new ConversionProfiles(getDefaultFile());
+        }
+        return instance;
+    }
+
+    static File getDefaultFile() {
+        String fileName = System.getProperty(PROFILES_FILE_PROPERTY);
+        if (fileName != null && !fileName.isEmpty()) {
+            return new File(fileName);
+        }
+        return new File(getJMeterBinDir(), PROFILES_FILE_NAME);
+    }
+
+    /**
+     * @return the directory &lt;JMETER_HOME&gt;/bin, in the GUI or in the CLI
+     */
+    static File getJMeterBinDir() {
+        String jmeterHome = JMeterUtils.getJMeterHome();
+        if (jmeterHome == null) {
+            // CLI : this jar is in <JMETER_HOME>/lib/ext
+            File self = new File(ConversionProfiles.class.getProtectionDomain().getCodeSource().getLocation().getFile());
+            jmeterHome = self.getParentFile().getParentFile().getParent();
+        }
+        return new File(jmeterHome, "bin");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the profile names sorted
+     */
+    public synchronized List<String> getProfileNames() {
+        reloadIfModified();
+        return new ArrayList<>(profiles.keySet());
+    }
+
+    /**
+     * @param name the profile name
+     * @return the options of the profile by option name, null if the profile doesn't exist
+     */
+    public synchronized Map<String, String> getProfile(String name) {
+        reloadIfModified();
+        Map<String, String> options = profiles.get(name);
+        return options == null ? null : Collections.unmodifiableMap(options);
+    }
+
+    /**
+     * Save or replace the profile, the other profiles of the file are kept
+     * @param name the profile name (no space, no '.')
+     * @param options the options of the profile by option name
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void saveProfile(String name, Map<String, String> options) throws IOException {
+        checkName(name);
+        reloadIfModified();
+        profiles.put(name, new LinkedHashMap<>(options));
+        store();
+        log.info("Profile " + name + " saved in " + file);
+    }
+
+    /**
+     * @param name the profile name to delete
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void deleteProfile(String name) throws IOException {
+        reloadIfModified();
+        if (profiles.remove(name) != null) {
+            store();
+            log.info("Profile " + name + " deleted from " + file);
+        }
+    }
+
+    /**
+     * Apply the options of the profile to the parameters
+     * @param name the profile name
+     * @param parameters the parameters to change
+     * @throws IllegalArgumentException if the profile doesn't exist or an option is not valid
+     */
+    public void applyProfile(String name, HarConvertorParameters parameters) {
+        Map<String, String> options = getProfile(name);
+        if (options == null) {
+            throw new IllegalArgumentException("Unknown profile " + name + " in " + file);
+        }
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            parameters.setOption(option.getKey(), option.getValue());
+        }
+    }
+
+    static void checkName(String name) {
+        if (name == null || name.trim().isEmpty() || !name.matches("[\\w-]+")) {
+            throw new IllegalArgumentException("Profile name must contain only letters, digits, '_' or '-' : " + name);
+        }
+    }
+
+    private void reloadIfModified() {
+        long fileLastModified = file.lastModified();
+        if (fileLastModified == lastModified) {
+            return;
+        }
+        Map<String, Map<String, String>> loaded = new TreeMap<>();
+        if (file.exists()) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                properties.load(in);
+            } catch (IOException ex) {
+                log.warn("Can't read the profiles file " + file + ", exception = " + ex, ex);
+                return;
+            }
+            for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+                int dot = key.indexOf('.', KEY_PREFIX.length());
+                if (!key.startsWith(KEY_PREFIX) || dot < 0) {
+                    log.warn("Ignored key " + key + " in the profiles file " + file);
+                    continue;
+                }
+                String name = key.substring(KEY_PREFIX.length(), dot);
+                loaded.computeIfAbsent(name, k -> new LinkedHashMap<>()).put(key.substring(dot + 1), properties.getProperty(key));
+            }
+            log.info("Profiles loaded from " + file + ", profiles=" + loaded.keySet());
+        }
+        profiles = loaded;
+        lastModified = fileLastModified;
+    }
+
+    private void store() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Map<String, String>> profile : profiles.entrySet()) {
+            for (Map.Entry<String, String> option : profile.getValue().entrySet()) {
+                properties.setProperty(KEY_PREFIX + profile.getKey() + "." + option.getKey(), option.getValue());
+            }
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile("har-convertor-profiles", ".tmp", parent);
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                properties.store(out, "HAR Convertor profiles, key = profile.<name>.<option>");
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        lastModified = file.lastModified();
+    }
+}
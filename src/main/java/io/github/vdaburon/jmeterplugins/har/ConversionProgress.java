@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilterStatistics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a running conversion, updated by the conversion thread and read by the GUI (or the CLI).
+ * The cancel flag is checked by the conversion steps between two units of work.
+ */
+public class ConversionProgress {
+    private volatile String stage = "";
+    private volatile boolean cancelled = false;
+    private final AtomicLong harBytesTotal = new AtomicLong();
+    private final AtomicLong harBytesRead = new AtomicLong();
+    private final AtomicLong entriesRead = new AtomicLong();
+    private final AtomicLong samplersWritten = new AtomicLong();
+    private volatile List<File> outputFiles = new ArrayList<>();
+    private volatile UrlFilterStatistics urlFilterStatistics;
+    private final ConversionMetrics metrics = new ConversionMetrics();
+    private volatile String resultCacheKey;
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public long getHarBytesTotal() {
+        return harBytesTotal.get();
+    }
+
+    public void setHarBytesTotal(long value) {
+        harBytesTotal.set(value);
+    }
+
+    public long getHarBytesRead() {
+        return harBytesRead.get();
+    }
+
+    public void setHarBytesRead(long value) {
+        harBytesRead.set(value);
+    }
+
+    public void addHarBytesRead(long delta) {
+        harBytesRead.addAndGet(delta);
+    }
+
+    public long getEntriesRead() {
+        return entriesRead.get();
+    }
+
+    public void addEntriesRead(long delta) {
+        entriesRead.addAndGet(delta);
+    }
+
+    /**
+     * Restart the count of bytes and entries read, e.g. to read the entries again after a first pass
+     */
+    public void resetRead() {
+        harBytesRead.set(0);
+        entriesRead.set(0);
+    }
+
+    public long getSamplersWritten() {
+        return samplersWritten.get();
+    }
+
+    public void addSamplersWritten(long delta) {
+        samplersWritten.addAndGet(delta);
+    }
+
+    /**
+     * Files written by the current step, their size is the count of bytes written
+     * @param outputFiles the files in progress
+     */
+    public void setOutputFiles(List<File> outputFiles) {
+        this.outputFiles = new ArrayList<>(outputFiles);
+    }
+
+    public long getBytesWritten() {
+        long total = 0;
+        for (File file : outputFiles) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    /**
+     * @return the percent of the HAR file read or -1 if unknown
+     */
+    public int getPercentRead() {
+        long total = harBytesTotal.get();
+        long read = harBytesRead.get();
+        if (total <= 0 || read <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100, read * 100 / total);
+    }
+
+    /**
+     * @return the matches of the URL filter rules, null if no filter rules file
+     */
+    public UrlFilterStatistics getUrlFilterStatistics() {
+        return urlFilterStatistics;
+    }
+
+    public void setUrlFilterStatistics(UrlFilterStatistics urlFilterStatistics) {
+        this.urlFilterStatistics = urlFilterStatistics;
+    }
+
+    /**
+     * @return the stage times and the counts of the conversion
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the key of the conversion result in the conversion cache, null if the cache is disabled
+     */
+    public String getResultCacheKey() {
+        return resultCacheKey;
+    }
+
+    public void setResultCacheKey(String resultCacheKey) {
+        this.resultCacheKey = resultCacheKey;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop the current step if the user asked to cancel the conversion
+     * @throws InterruptedException if the conversion is cancelled
+     */
+    public void checkCancelled() throws InterruptedException {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("HAR conversion cancelled");
+        }
+    }
+}
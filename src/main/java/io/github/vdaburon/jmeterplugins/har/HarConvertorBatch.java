@@ -0,0 +1,396 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import io.github.vdaburon.jmeterplugins.har.record.RecordXmlMerger;
+import io.github.vdaburon.jmeterplugins.har.stream.HarInputStreams;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Convert HAR files without GUI (e.g. in a CI on a headless box) with the same options as the dialog.
+ * Convert one HAR (-har_in) or all the HAR files of a directory (-har_dir) in parallel,
+ * with -watch true, wait for new HAR files in the directory and convert them when they are completely written.
+ * The options are the options of the har-to-jmeter-convertor command line plus the options of this batch.
+ */
+public class HarConvertorBatch {
+    private static final Logger log = LoggerFactory.getLogger(HarConvertorBatch.class);
+
+    public static final String K_HAR_DIR = "har_dir";
+    public static final String K_OUT_DIR = "out_dir";
+    public static final String K_WITH_RECORD = "with_record";
+    public static final String K_THREADS = "threads";
+    public static final String K_WATCH = "watch";
+    public static final String K_PROFILE = "profile";
+    public static final String K_HELP = "help";
+
+    /** A new HAR file is converted when its size has not changed during this time */
+    static final long K_WATCH_STABLE_MS = 2000;
+
+    private final HarConvertorParameters model;
+    private final File outDir;
+    /** The end of the record xml file name after the HAR name, empty for no record xml */
+    private final String recordSuffix;
+    private final ExecutorService executor;
+    private final long stableMs;
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Map<File, Long> pendingSizes = new ConcurrentHashMap<>();
+    /** The HAR files submitted and not yet converted, a HAR file is not converted twice at the same time */
+    private final Set<File> converting = ConcurrentHashMap.newKeySet();
+
+    HarConvertorBatch(HarConvertorParameters model, File outDir, String recordSuffix, int threads) {
+        this(model, outDir, recordSuffix, threads, K_WATCH_STABLE_MS);
+    }
+
+    HarConvertorBatch(HarConvertorParameters model, File outDir, String recordSuffix, int threads, long stableMs) {
+        this.model = model;
+        this.outDir = outDir;
+        this.recordSuffix = recordSuffix;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.stableMs = stableMs;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+        try {
+            options = parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            usage();
+            System.exit(1);
+            return;
+        }
+        if (options.containsKey(K_HELP) || (!options.containsKey(K_HAR_DIR) && !options.containsKey(HarConvertorParameters.K_HAR_IN))) {
+            usage();
+            System.exit(options.containsKey(K_HELP) ? 0 : 1);
+            return;
+        }
+        try {
+            System.exit(run(options) == 0 ? 0 : 1);
+        } catch (Exception ex) {
+            log.error("HAR batch conversion failed, exception = " + ex, ex);
+            System.err.println("HAR batch conversion failed, exception = " + ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args the command line arguments : -option value ...
+     * @return the options by name without the '-'
+     */
+    static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String name = args[i].substring(1);
+            if (K_HELP.equals(name)) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for the option " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Run the batch with the options
+     * @param options the options by name
+     * @return the count of failed conversions
+     * @throws Exception if the options are not valid or the watch failed
+     */
+    static int run(Map<String, String> options) throws Exception {
+        Map<String, String> conversionOptions = new LinkedHashMap<>(options);
+        String harDir = conversionOptions.remove(K_HAR_DIR);
+        String outDir = conversionOptions.remove(K_OUT_DIR);
+        String withRecord = conversionOptions.remove(K_WITH_RECORD);
+        String recordSuffix = "";
+        if ("gzip".equalsIgnoreCase(withRecord)) {
+            recordSuffix = "_record.xml" + RecordXmlMerger.GZIP_EXTENSION;
+        } else if (Boolean.parseBoolean(withRecord)) {
+            recordSuffix = "_record.xml";
+        }
+        boolean isWatch = Boolean.parseBoolean(conversionOptions.remove(K_WATCH));
+        String sThreads = conversionOptions.remove(K_THREADS);
+        String profile = conversionOptions.remove(K_PROFILE);
+        int threads = sThreads == null ? Runtime.getRuntime().availableProcessors() : Math.max(1, Integer.parseInt(sThreads));
+
+        HarConvertorParameters model = new HarConvertorParameters();
+        if (profile != null) {
+            // the options of the command line override the options of the profile
+            ConversionProfiles.getInstance().applyProfile(profile, model);
+        }
+        for (Map.Entry<String, String> option : conversionOptions.entrySet()) {
+            model.setOption(option.getKey(), option.getValue());
+        }
+
+        if (harDir == null) {
+            // one HAR file, the same as the dialog
+            if (model.getFilesHarIn().isEmpty()) {
+                throw new IllegalArgumentException("har_in is empty");
+            }
+            if (model.getFileJmxOut().isEmpty()) {
+                // with several HAR files merged, the script is named from the first HAR file
+                model.setFileJmxOut(HarConvertorParameters.getDefaultJmxOut(model.getFilesHarIn().get(0)));
+            }
+            HarConvertorBatch batch = new HarConvertorBatch(model, null, "", 1);
+            batch.convert(new File(model.getFileHarIn()), model).run();
+            batch.executor.shutdown();
+            return batch.getFailed();
+        }
+
+        File dir = new File(harDir);
+        if (!dir.isDirectory()) {
+            throw new IllegalArgumentException("har_dir is not a directory : " + harDir);
+        }
+        File fOutDir = outDir == null ? dir : new File(outDir);
+        if (!fOutDir.isDirectory() && !fOutDir.mkdirs()) {
+            throw new IOException("Can't create the out_dir " + fOutDir);
+        }
+        HarConvertorBatch batch = new HarConvertorBatch(model, fOutDir, recordSuffix, threads);
+        if (isWatch) {
+            // registered before the scan of the directory, a HAR file written during the scan or the first conversions is not missed
+            try (WatchService watchService = batch.register(dir)) {
+                batch.convertDirectory(dir);
+                batch.watch(dir, watchService);
+            }
+        } else {
+            batch.convertDirectory(dir);
+        }
+        batch.awaitConversions();
+        log.info("HAR batch conversion finished, converted=" + batch.getConverted() + ", failed=" + batch.getFailed());
+        System.out.println("HAR batch conversion finished, converted=" + batch.getConverted() + ", failed=" + batch.getFailed());
+        return batch.getFailed();
+    }
+
+    /**
+     * Submit the conversions of the HAR files of the directory not yet converted (no script or script older than the HAR),
+     * the conversions are done in parallel, call awaitConversions() to wait for the end
+     * @param dir the directory with the HAR files
+     */
+    void convertDirectory(File dir) {
+        File[] harFiles = dir.listFiles((d, name) -> HarInputStreams.isHarFile(name));
+        if (harFiles == null) {
+            return;
+        }
+        Arrays.sort(harFiles);
+        for (File harFile : harFiles) {
+            submitIfNotConverted(harFile);
+        }
+    }
+
+    /**
+     * Stop accepting new conversions and wait for the end of the submitted conversions
+     * @throws InterruptedException if interrupted while waiting for the conversions
+     */
+    void awaitConversions() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    int getConverted() {
+        return converted.get();
+    }
+
+    int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @param harFile the HAR file
+     * @return true if the script of the HAR file exists and is not older than the HAR file
+     */
+    boolean isConverted(File harFile) {
+        File jmx = new File(createParameters(harFile).getFileJmxOut());
+        return jmx.exists() && jmx.lastModified() >= harFile.lastModified();
+    }
+
+    private void submitIfNotConverted(File harFile) {
+        if (isConverted(harFile)) {
+            log.info("Skip " + harFile + ", already converted to " + createParameters(harFile).getFileJmxOut());
+            return;
+        }
+        if (converting.add(harFile)) {
+            executor.submit(convert(harFile, createParameters(harFile)));
+        }
+    }
+
+    private HarConvertorParameters createParameters(File harFile) {
+        HarConvertorParameters parameters = model.copy();
+        String baseName = new File(HarConvertorParameters.getDefaultJmxOut(harFile.getName())).getName();
+        baseName = baseName.substring(0, baseName.length() - ".jmx".length());
+        parameters.setFileHarIn(harFile.getPath());
+        parameters.setFileJmxOut(new File(outDir, baseName + ".jmx").getPath());
+        parameters.setRecordXmlOut(recordSuffix.isEmpty() ? "" : new File(outDir, baseName + recordSuffix).getPath());
+        return parameters;
+    }
+
+    private Runnable convert(File harFile, HarConvertorParameters parameters) {
+        return () -> {
+            long start = System.currentTimeMillis();
+            try {
+                HarConvertorProcess.convert(parameters, new ConversionProgress());
+                converted.incrementAndGet();
+                log.info("Converted " + harFile + " to " + parameters.getFileJmxOut() + " in " + (System.currentTimeMillis() - start) + " ms");
+                System.out.println("OK " + harFile + " -> " + parameters.getFileJmxOut());
+            } catch (Exception ex) {
+                failed.incrementAndGet();
+                log.warn("Tool HAR Convertor Finished KO for " + harFile + ", exception = " + ex, ex);
+                System.out.println("KO " + harFile + ", exception = " + ex);
+            } finally {
+                converting.remove(harFile);
+            }
+        };
+    }
+
+    /**
+     * Register the directory to watch, the files created or modified from now are reported to watch()
+     * @param dir the directory to watch
+     * @return the watch service to give to watch() then to close
+     * @throws IOException if the directory can't be watched
+     */
+    WatchService register(File dir) throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        try {
+            dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ex) {
+            watchService.close();
+            throw ex;
+        }
+        return watchService;
+    }
+
+    /**
+     * Convert the new HAR files of the directory when their size is stable, until the process is stopped
+     * or the watch service is closed
+     * @param dir the watched directory
+     * @param watchService the watch service returned by register(dir)
+     */
+    void watch(File dir, WatchService watchService) {
+        log.info("Watch new HAR files in " + dir);
+        System.out.println("Watch new HAR files in " + dir + " (Ctrl+C to stop)");
+        ScheduledExecutorService stableChecker = Executors.newSingleThreadScheduledExecutor();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    Path name = (Path) event.context();
+                    if (HarInputStreams.isHarFile(name.toString())) {
+                        File harFile = new File(dir, name.toString());
+                        if (pendingSizes.put(harFile, -1L) == null) {
+                            scheduleWhenStable(stableChecker, harFile);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    log.warn("The directory " + dir + " can't be watched anymore");
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            log.info("Stop to watch " + dir);
+        } finally {
+            stableChecker.shutdownNow();
+        }
+    }
+
+    private void scheduleWhenStable(ScheduledExecutorService stableChecker, File harFile) {
+        stableChecker.schedule(() -> {
+            if (isStable(harFile)) {
+                // the browser or the capture tool has finished to write the file
+                pendingSizes.remove(harFile);
+                submitIfNotConverted(harFile);
+            } else if (pendingSizes.containsKey(harFile)) {
+                scheduleWhenStable(stableChecker, harFile);
+            }
+        }, stableMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compare the size of the HAR file with the size at the previous check and keep the new size.
+     * @param harFile a HAR file reported by the watch service
+     * @return true if the file is not empty, has the same size as at the previous check and is not being converted,
+     * false if the file is still written (the file is checked again later) or deleted (the file is forgotten)
+     */
+    boolean isStable(File harFile) {
+        if (!harFile.exists()) {
+            pendingSizes.remove(harFile);
+            return false;
+        }
+        long size = harFile.length();
+        Long previous = pendingSizes.put(harFile, size);
+        // a HAR file modified during its conversion is converted again after this conversion
+        return previous != null && previous == size && size > 0 && !converting.contains(harFile);
+    }
+
+    private static void usage() {
+        System.out.println("usage: " + HarConvertorBatch.class.getName() + " (-har_in <har_file> | -har_dir <directory>) [options]");
+        System.out.println(" -har_in <har_file>              Convert one HAR file, same options as har-convertor-to-jmeter (-jmx_out, -record_out ...)");
+        System.out.println(" -har_dir <directory>            Convert all the HAR files of the directory in parallel (not yet converted or modified)");
+        System.out.println(" -out_dir <directory>            Optional, directory for the scripts <har_name>.jmx (default har_dir)");
+        System.out.println(" -with_record <boolean|gzip>     Optional, create also the record xml <har_name>_record.xml or <har_name>_record.xml.gz (default false)");
+        System.out.println(" -threads <count>                Optional, count of HAR files converted in parallel (default count of cores)");
+        System.out.println(" -profile <name>                 Optional, conversion options of the profile saved with the GUI in " + ConversionProfiles.PROFILES_FILE_NAME);
+        System.out.println(" -watch <boolean>                Optional, then wait for new HAR files in har_dir and convert them (default false)");
+        System.out.println(" Conversion options: -" + HarConvertorParameters.K_NEW_TC_PAUSE + " -" + HarConvertorParameters.K_ADD_PAUSE
+                + " -" + HarConvertorParameters.K_FILTER_INCLUDE + " -" + HarConvertorParameters.K_FILTER_EXCLUDE
+                + " -" + HarConvertorParameters.K_REMOVE_HEADERS + " -" + HarConvertorParameters.K_REMOVE_COOKIE
+                + " -" + HarConvertorParameters.K_REMOVE_CACHE_REQUEST + " -" + HarConvertorParameters.K_ADD_RESULT_TREE_RECORD
+                + " -" + HarConvertorParameters.K_WS_WITH_PDOORNBOSCH + " -" + HarConvertorParameters.K_PAGE_START_NUMBER
+                + " -" + HarConvertorParameters.K_SAMPLER_START_NUMBER + " -" + HarConvertorParameters.K_JACKSON_PARSER_STRING_MAX
+                + " -" + HarConvertorParameters.K_EXTERNAL_FILE_INFOS + " -" + HarConvertorParameters.K_STREAMING_MODE
+                + " -" + HarConvertorParameters.K_SPILL_BODY_THRESHOLD + " -" + HarConvertorParameters.K_FILTER_RULES
+                + " -" + HarConvertorParameters.K_METRICS_REPORT + " -" + HarConvertorParameters.K_CACHE_MAX_MB
+                + " -" + HarConvertorParameters.K_MAPPED_READER + " -" + HarConvertorParameters.K_SELECT_START
+                + " -" + HarConvertorParameters.K_SELECT_END + " -" + HarConvertorParameters.K_SELECT_EVERY_PAGE
+                + " -" + HarConvertorParameters.K_WS_BATCH_MIN_FRAMES + " -" + HarConvertorParameters.K_COMPACT_HEADERS
+                + " -" + HarConvertorParameters.K_AUTO_CORRELATION + " -" + HarConvertorParameters.K_COLLAPSE_STATIC
+                + " -" + HarConvertorParameters.K_TIMER_MODE + " -" + HarConvertorParameters.K_FRAGMENT_PAGES);
+        System.out.println("E.g : har-convertor-batch.sh -har_dir /data/har -out_dir /data/jmx -with_record true -new_tc_pause 5000 -threads 4 -watch true");
+    }
+}
@@ -27,6 +27,8 @@ public class HarConvertorInstaller {
     public static void main(String[] argv) throws IOException {
         writeOut("har-convertor-to-jmeter.cmd", false);
         writeOut("har-convertor-to-jmeter.sh", true);
+        writeOut("har-convertor-batch.cmd", false);
+        writeOut("har-convertor-batch.sh", true);
     }
 
     private static void writeOut(String resName, boolean executable) throws IOException {
@@ -0,0 +1,730 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import io.github.vdaburon.jmeter.har.HarForJMeter;
+import io.github.vdaburon.jmeterplugins.har.jmx.TimerGenerator;
+import io.github.vdaburon.jmeterplugins.har.stream.HarInputStreams;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All the parameters of one HAR conversion, as collected by the dialog.
+ * The values are read from the Swing components then the conversion runs in a background thread with this copy.
+ */
+public class HarConvertorParameters {
+    // option names, the same names as the har-to-jmeter-convertor command line
+    public static final String K_HAR_IN = "har_in";
+    public static final String K_JMX_OUT = "jmx_out";
+    public static final String K_RECORD_OUT = "record_out";
+    public static final String K_EXTERNAL_FILE_INFOS = "external_file_infos";
+    public static final String K_FILTER_INCLUDE = "filter_include";
+    public static final String K_FILTER_EXCLUDE = "filter_exclude";
+    public static final String K_REMOVE_HEADERS = "remove_headers";
+    public static final String K_NEW_TC_PAUSE = "new_tc_pause";
+    public static final String K_PAGE_START_NUMBER = "page_start_number";
+    public static final String K_SAMPLER_START_NUMBER = "sampler_start_number";
+    public static final String K_JACKSON_PARSER_STRING_MAX = "jackson_parser_string_max";
+    public static final String K_ADD_PAUSE = "add_pause";
+    public static final String K_REMOVE_COOKIE = "remove_cookie";
+    public static final String K_REMOVE_CACHE_REQUEST = "remove_cache_request";
+    public static final String K_ADD_RESULT_TREE_RECORD = "add_result_tree_record";
+    public static final String K_WS_WITH_PDOORNBOSCH = "ws_with_pdoornbosch";
+    public static final String K_STREAMING_MODE = "streaming_mode";
+    public static final String K_SPILL_BODY_THRESHOLD = "spill_body_threshold";
+    public static final String K_FILTER_RULES = "filter_rules";
+    public static final String K_METRICS_REPORT = "metrics_report";
+    public static final String K_CACHE_MAX_MB = "cache_max_mb";
+    public static final String K_MAPPED_READER = "mapped_reader";
+    public static final String K_SELECT_START = "select_start";
+    public static final String K_SELECT_END = "select_end";
+    public static final String K_SELECT_EVERY_PAGE = "select_every_page";
+    public static final String K_WS_BATCH_MIN_FRAMES = "ws_batch_min_frames";
+    public static final String K_COMPACT_HEADERS = "compact_headers";
+    public static final String K_AUTO_CORRELATION = "auto_correlation";
+    public static final String K_COLLAPSE_STATIC = "collapse_static";
+    public static final String K_TIMER_MODE = "timer_mode";
+    public static final String K_FRAGMENT_PAGES = "fragment_pages";
+
+    /** Separator of the HAR files in the HAR file name, the entries of the HAR files are merged in one script */
+    public static final String K_HAR_FILES_SEPARATOR = ";";
+    /**
+     * Size of the HAR files from which the HAR is converted by chunks even without streaming mode, the converter library
+     * can't be interrupted, a cancel stops the conversion at the end of the current chunk
+     */
+    public static final long K_CHUNKED_HAR_BYTES = 64L * 1024 * 1024;
+
+    private String fileHarIn = "";
+    private String fileJmxOut = "";
+    private String recordXmlOut = "";
+    private String externalFileInfoIn = "";
+    private String regexFilterInclude = "";
+    private String regexFilterExclude = "";
+    private String removeHeaders = "";
+    private long createNewTransactionAfterRequestMs = 5000;
+    private int pageStartNumber = 1;
+    private int samplerStartNumber = 1;
+    private int jacksonParserStringMax = HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT;
+    private boolean isAddPause = true;
+    private boolean isRemoveCookieHeader = true;
+    private boolean isRemoveCacheRequestHeader = true;
+    private boolean isAddResultTreeRecord = true;
+    private boolean isWebSocketPDoornbosch = false;
+    private boolean isStreamingMode = false;
+    private long spillBodyThreshold = 0;
+    private String filterRulesFile = "";
+    private boolean isMetricsReport = true;
+    private long cacheMaxMb = ConversionCache.K_CACHE_MAX_MB_DEFAULT;
+    private boolean isMappedReader = false;
+    private String selectStart = "";
+    private String selectEnd = "";
+    private int selectEveryPage = 1;
+    private int wsBatchMinFrames = 0;
+    private boolean isCompactHeaders = false;
+    private boolean isAutoCorrelation = false;
+    private boolean isCollapseStatic = false;
+    private String timerMode = TimerGenerator.K_TIMER_MODE_PAUSE;
+    private int fragmentPages = 0;
+
+    public String getFileHarIn() {
+        return fileHarIn;
+    }
+
+    public void setFileHarIn(String fileHarIn) {
+        this.fileHarIn = fileHarIn;
+    }
+
+    /**
+     * @return the HAR files to convert, more than one HAR file if the HAR file name contains the separator ';'
+     */
+    public List<String> getFilesHarIn() {
+        List<String> files = new ArrayList<>();
+        for (String file : fileHarIn.split(K_HAR_FILES_SEPARATOR)) {
+            if (!file.trim().isEmpty()) {
+                files.add(file.trim());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return true if several HAR files are merged in one script
+     */
+    public boolean isMultiHar() {
+        return getFilesHarIn().size() > 1;
+    }
+
+    public String getFileJmxOut() {
+        return fileJmxOut;
+    }
+
+    public void setFileJmxOut(String fileJmxOut) {
+        this.fileJmxOut = fileJmxOut;
+    }
+
+    public String getRecordXmlOut() {
+        return recordXmlOut;
+    }
+
+    public void setRecordXmlOut(String recordXmlOut) {
+        this.recordXmlOut = recordXmlOut;
+    }
+
+    public String getExternalFileInfoIn() {
+        return externalFileInfoIn;
+    }
+
+    public void setExternalFileInfoIn(String externalFileInfoIn) {
+        this.externalFileInfoIn = externalFileInfoIn;
+    }
+
+    public String getRegexFilterInclude() {
+        return regexFilterInclude;
+    }
+
+    public void setRegexFilterInclude(String regexFilterInclude) {
+        this.regexFilterInclude = regexFilterInclude;
+    }
+
+    public String getRegexFilterExclude() {
+        return regexFilterExclude;
+    }
+
+    public void setRegexFilterExclude(String regexFilterExclude) {
+        this.regexFilterExclude = regexFilterExclude;
+    }
+
+    public String getRemoveHeaders() {
+        return removeHeaders;
+    }
+
+    public void setRemoveHeaders(String removeHeaders) {
+        this.removeHeaders = removeHeaders;
+    }
+
+    public long getCreateNewTransactionAfterRequestMs() {
+        return createNewTransactionAfterRequestMs;
+    }
+
+    public void setCreateNewTransactionAfterRequestMs(long createNewTransactionAfterRequestMs) {
+        this.createNewTransactionAfterRequestMs = createNewTransactionAfterRequestMs;
+    }
+
+    public int getPageStartNumber() {
+        return pageStartNumber;
+    }
+
+    public void setPageStartNumber(int pageStartNumber) {
+        this.pageStartNumber = pageStartNumber;
+    }
+
+    public int getSamplerStartNumber() {
+        return samplerStartNumber;
+    }
+
+    public void setSamplerStartNumber(int samplerStartNumber) {
+        this.samplerStartNumber = samplerStartNumber;
+    }
+
+    public int getJacksonParserStringMax() {
+        return jacksonParserStringMax;
+    }
+
+    public void setJacksonParserStringMax(int jacksonParserStringMax) {
+        this.jacksonParserStringMax = jacksonParserStringMax;
+    }
+
+    public boolean isAddPause() {
+        return isAddPause;
+    }
+
+    public void setAddPause(boolean addPause) {
+        isAddPause = addPause;
+    }
+
+    public boolean isRemoveCookieHeader() {
+        return isRemoveCookieHeader;
+    }
+
+    public void setRemoveCookieHeader(boolean removeCookieHeader) {
+        isRemoveCookieHeader = removeCookieHeader;
+    }
+
+    public boolean isRemoveCacheRequestHeader() {
+        return isRemoveCacheRequestHeader;
+    }
+
+    public void setRemoveCacheRequestHeader(boolean removeCacheRequestHeader) {
+        isRemoveCacheRequestHeader = removeCacheRequestHeader;
+    }
+
+    public boolean isAddResultTreeRecord() {
+        return isAddResultTreeRecord;
+    }
+
+    public void setAddResultTreeRecord(boolean addResultTreeRecord) {
+        isAddResultTreeRecord = addResultTreeRecord;
+    }
+
+    public boolean isWebSocketPDoornbosch() {
+        return isWebSocketPDoornbosch;
+    }
+
+    public void setWebSocketPDoornbosch(boolean webSocketPDoornbosch) {
+        isWebSocketPDoornbosch = webSocketPDoornbosch;
+    }
+
+    public boolean isStreamingMode() {
+        return isStreamingMode;
+    }
+
+    public void setStreamingMode(boolean streamingMode) {
+        isStreamingMode = streamingMode;
+    }
+
+    public long getSpillBodyThreshold() {
+        return spillBodyThreshold;
+    }
+
+    public void setSpillBodyThreshold(long spillBodyThreshold) {
+        this.spillBodyThreshold = spillBodyThreshold;
+    }
+
+    public String getFilterRulesFile() {
+        return filterRulesFile;
+    }
+
+    public void setFilterRulesFile(String filterRulesFile) {
+        this.filterRulesFile = filterRulesFile;
+    }
+
+    public boolean isMetricsReport() {
+        return isMetricsReport;
+    }
+
+    public void setMetricsReport(boolean metricsReport) {
+        isMetricsReport = metricsReport;
+    }
+
+    /**
+     * @return the max size (MB) of the conversion cache, 0 if the cache is disabled
+     */
+    public long getCacheMaxMb() {
+        return cacheMaxMb;
+    }
+
+    public void setCacheMaxMb(long cacheMaxMb) {
+        this.cacheMaxMb = cacheMaxMb;
+    }
+
+    /**
+     * @return true to read a large HAR mapped in memory with the entries decoded in parallel, when the HAR is read by
+     * this plugin (streaming mode, spill threshold or filter rules)
+     */
+    public boolean isMappedReader() {
+        return isMappedReader;
+    }
+
+    public void setMappedReader(boolean mappedReader) {
+        isMappedReader = mappedReader;
+    }
+
+    /**
+     * @return the start of the time window of the entries to convert, a date time ISO 8601 or seconds from the first
+     * entry, empty for the first entry
+     */
+    public String getSelectStart() {
+        return selectStart;
+    }
+
+    public void setSelectStart(String selectStart) {
+        this.selectStart = selectStart;
+    }
+
+    /**
+     * @return the end of the time window of the entries to convert, a date time ISO 8601 or seconds from the first
+     * entry, empty for the last entry
+     */
+    public String getSelectEnd() {
+        return selectEnd;
+    }
+
+    public void setSelectEnd(String selectEnd) {
+        this.selectEnd = selectEnd;
+    }
+
+    /**
+     * @return convert one page out of this count (the first page, then the page 1 + N ...), 1 to convert all the pages
+     */
+    public int getSelectEveryPage() {
+        return selectEveryPage;
+    }
+
+    public void setSelectEveryPage(int selectEveryPage) {
+        this.selectEveryPage = Math.max(1, selectEveryPage);
+    }
+
+    /**
+     * @return the min count of consecutive identical WebSocket samplers batched in a Loop Controller, 0 for no batch
+     */
+    public int getWsBatchMinFrames() {
+        return wsBatchMinFrames;
+    }
+
+    public void setWsBatchMinFrames(int wsBatchMinFrames) {
+        this.wsBatchMinFrames = Math.max(0, wsBatchMinFrames);
+    }
+
+    /**
+     * @return true if the WebSocket samplers of the plugin from Peter Doornbosch are batched in Loop Controllers
+     */
+    public boolean isWebSocketBatch() {
+        return isWebSocketPDoornbosch && wsBatchMinFrames > 1;
+    }
+
+    /**
+     * @return true if the headers common to the samplers are moved in shared Header Managers of the Thread Group and the pages
+     */
+    public boolean isCompactHeaders() {
+        return isCompactHeaders;
+    }
+
+    public void setCompactHeaders(boolean compactHeaders) {
+        isCompactHeaders = compactHeaders;
+    }
+
+    /**
+     * @return true if the dynamic values of the responses sent again by the next requests are extracted in variables
+     */
+    public boolean isAutoCorrelation() {
+        return isAutoCorrelation;
+    }
+
+    public void setAutoCorrelation(boolean autoCorrelation) {
+        isAutoCorrelation = autoCorrelation;
+    }
+
+    /**
+     * @return true if the static sub-resources are not converted and the page samplers retrieve the embedded resources
+     */
+    public boolean isCollapseStatic() {
+        return isCollapseStatic;
+    }
+
+    public void setCollapseStatic(boolean collapseStatic) {
+        isCollapseStatic = collapseStatic;
+    }
+
+    /**
+     * @return the timers between the pages : pause (the fixed pauses of the converter), gaussian, uniform or throughput
+     */
+    public String getTimerMode() {
+        return timerMode;
+    }
+
+    public void setTimerMode(String timerMode) {
+        this.timerMode = timerMode;
+    }
+
+    /**
+     * @return true if the timers are computed from the recorded think times and throughput
+     */
+    public boolean isRecordedTimers() {
+        return !TimerGenerator.K_TIMER_MODE_PAUSE.equals(timerMode);
+    }
+
+    /**
+     * @return the count of pages in each Test Fragment file included by the main script, 0 for one script
+     */
+    public int getFragmentPages() {
+        return fragmentPages;
+    }
+
+    public void setFragmentPages(int fragmentPages) {
+        this.fragmentPages = fragmentPages;
+    }
+
+    /**
+     * @return true if only a part of the entries is converted : a time window or one page out of N
+     */
+    public boolean isEntrySelection() {
+        return !selectStart.trim().isEmpty() || !selectEnd.trim().isEmpty() || selectEveryPage > 1;
+    }
+
+    /**
+     * Set a parameter from its option name, e.g. new_tc_pause and 5000
+     * @param name the option name (K_...)
+     * @param value the value as text
+     * @throws IllegalArgumentException if the option is unknown or the value is not a number for a number option
+     */
+    public void setOption(String name, String value) {
+        switch (name) {
+            case K_HAR_IN:
+                fileHarIn = value;
+                break;
+            case K_JMX_OUT:
+                fileJmxOut = value;
+                break;
+            case K_RECORD_OUT:
+                recordXmlOut = value;
+                break;
+            case K_EXTERNAL_FILE_INFOS:
+                externalFileInfoIn = value;
+                break;
+            case K_FILTER_INCLUDE:
+                regexFilterInclude = value;
+                break;
+            case K_FILTER_EXCLUDE:
+                regexFilterExclude = value;
+                break;
+            case K_REMOVE_HEADERS:
+                removeHeaders = value;
+                break;
+            case K_NEW_TC_PAUSE:
+                createNewTransactionAfterRequestMs = value.isEmpty() ? 0 : parseLong(name, value);
+                break;
+            case K_PAGE_START_NUMBER:
+                pageStartNumber = value.isEmpty() ? 1 : Math.max(1, (int) parseLong(name, value));
+                break;
+            case K_SAMPLER_START_NUMBER:
+                samplerStartNumber = value.isEmpty() ? 1 : Math.max(1, (int) parseLong(name, value));
+                break;
+            case K_JACKSON_PARSER_STRING_MAX:
+                jacksonParserStringMax = value.isEmpty() ? HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT : (int) parseLong(name, value);
+                if (jacksonParserStringMax <= 0) {
+                    jacksonParserStringMax = HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT;
+                }
+                break;
+            case K_ADD_PAUSE:
+                isAddPause = Boolean.parseBoolean(value);
+                break;
+            case K_REMOVE_COOKIE:
+                isRemoveCookieHeader = Boolean.parseBoolean(value);
+                break;
+            case K_REMOVE_CACHE_REQUEST:
+                isRemoveCacheRequestHeader = Boolean.parseBoolean(value);
+                break;
+            case K_ADD_RESULT_TREE_RECORD:
+                isAddResultTreeRecord = Boolean.parseBoolean(value);
+                break;
+            case K_WS_WITH_PDOORNBOSCH:
+                isWebSocketPDoornbosch = Boolean.parseBoolean(value);
+                break;
+            case K_STREAMING_MODE:
+                isStreamingMode = Boolean.parseBoolean(value);
+                break;
+            case K_SPILL_BODY_THRESHOLD:
+                spillBodyThreshold = value.isEmpty() ? 0 : parseLong(name, value);
+                break;
+            case K_FILTER_RULES:
+                filterRulesFile = value;
+                break;
+            case K_METRICS_REPORT:
+                isMetricsReport = Boolean.parseBoolean(value);
+                break;
+            case K_CACHE_MAX_MB:
+                cacheMaxMb = value.isEmpty() ? ConversionCache.K_CACHE_MAX_MB_DEFAULT : Math.max(0, parseLong(name, value));
+                break;
+            case K_MAPPED_READER:
+                isMappedReader = Boolean.parseBoolean(value);
+                break;
+            case K_SELECT_START:
+                selectStart = value;
+                break;
+            case K_SELECT_END:
+                selectEnd = value;
+                break;
+            case K_SELECT_EVERY_PAGE:
+                selectEveryPage = value.isEmpty() ? 1 : Math.max(1, (int) parseLong(name, value));
+                break;
+            case K_COMPACT_HEADERS:
+                isCompactHeaders = Boolean.parseBoolean(value);
+                break;
+            case K_AUTO_CORRELATION:
+                isAutoCorrelation = Boolean.parseBoolean(value);
+                break;
+            case K_COLLAPSE_STATIC:
+                isCollapseStatic = Boolean.parseBoolean(value);
+                break;
+            case K_TIMER_MODE:
+                String mode = value.trim().toLowerCase();
+                if (!mode.isEmpty() && !TimerGenerator.isTimerMode(mode)) {
+                    throw new IllegalArgumentException("Option " + name + " must be pause, gaussian, uniform or throughput, value = " + value);
+                }
+                timerMode = mode.isEmpty() ? TimerGenerator.K_TIMER_MODE_PAUSE : mode;
+                break;
+            case K_FRAGMENT_PAGES:
+                fragmentPages = value.isEmpty() ? 0 : Math.max(0, (int) parseLong(name, value));
+                break;
+            case K_WS_BATCH_MIN_FRAMES:
+                wsBatchMinFrames = value.isEmpty() ? 0 : Math.max(0, (int) parseLong(name, value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + name);
+        }
+    }
+
+    /**
+     * @return all the parameters by option name with their value as text, the reverse of setOption()
+     */
+    public Map<String, String> getOptions() {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put(K_HAR_IN, fileHarIn);
+        options.put(K_JMX_OUT, fileJmxOut);
+        options.put(K_RECORD_OUT, recordXmlOut);
+        options.put(K_EXTERNAL_FILE_INFOS, externalFileInfoIn);
+        options.put(K_FILTER_INCLUDE, regexFilterInclude);
+        options.put(K_FILTER_EXCLUDE, regexFilterExclude);
+        options.put(K_REMOVE_HEADERS, removeHeaders);
+        options.put(K_NEW_TC_PAUSE, String.valueOf(createNewTransactionAfterRequestMs));
+        options.put(K_PAGE_START_NUMBER, String.valueOf(pageStartNumber));
+        options.put(K_SAMPLER_START_NUMBER, String.valueOf(samplerStartNumber));
+        options.put(K_JACKSON_PARSER_STRING_MAX, String.valueOf(jacksonParserStringMax));
+        options.put(K_ADD_PAUSE, String.valueOf(isAddPause));
+        options.put(K_REMOVE_COOKIE, String.valueOf(isRemoveCookieHeader));
+        options.put(K_REMOVE_CACHE_REQUEST, String.valueOf(isRemoveCacheRequestHeader));
+        options.put(K_ADD_RESULT_TREE_RECORD, String.valueOf(isAddResultTreeRecord));
+        options.put(K_WS_WITH_PDOORNBOSCH, String.valueOf(isWebSocketPDoornbosch));
+        options.put(K_STREAMING_MODE, String.valueOf(isStreamingMode));
+        options.put(K_SPILL_BODY_THRESHOLD, String.valueOf(spillBodyThreshold));
+        options.put(K_FILTER_RULES, filterRulesFile);
+        options.put(K_METRICS_REPORT, String.valueOf(isMetricsReport));
+        options.put(K_CACHE_MAX_MB, String.valueOf(cacheMaxMb));
+        options.put(K_MAPPED_READER, String.valueOf(isMappedReader));
+        options.put(K_SELECT_START, selectStart);
+        options.put(K_SELECT_END, selectEnd);
+        options.put(K_SELECT_EVERY_PAGE, String.valueOf(selectEveryPage));
+        options.put(K_WS_BATCH_MIN_FRAMES, String.valueOf(wsBatchMinFrames));
+        options.put(K_COMPACT_HEADERS, String.valueOf(isCompactHeaders));
+        options.put(K_AUTO_CORRELATION, String.valueOf(isAutoCorrelation));
+        options.put(K_COLLAPSE_STATIC, String.valueOf(isCollapseStatic));
+        options.put(K_TIMER_MODE, timerMode);
+        options.put(K_FRAGMENT_PAGES, String.valueOf(fragmentPages));
+        return options;
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Option " + name + " must be a number, value = " + value);
+        }
+    }
+
+    /**
+     * @param fileHarIn the HAR file name
+     * @return the default script name : the HAR file name without extension and with the .jmx extension,
+     * e.g. mysite.jmx for mysite.har or mysite.har.gz
+     */
+    public static String getDefaultJmxOut(String fileHarIn) {
+        fileHarIn = HarInputStreams.removeCompressionExtension(fileHarIn);
+        int dot = fileHarIn.lastIndexOf('.');
+        int separator = Math.max(fileHarIn.lastIndexOf('/'), fileHarIn.lastIndexOf('\\'));
+        return (dot > separator ? fileHarIn.substring(0, dot) : fileHarIn) + ".jmx";
+    }
+
+    /**
+     * @return a copy of these parameters
+     */
+    public HarConvertorParameters copy() {
+        HarConvertorParameters copy = new HarConvertorParameters();
+        copy.fileHarIn = fileHarIn;
+        copy.fileJmxOut = fileJmxOut;
+        copy.recordXmlOut = recordXmlOut;
+        copy.externalFileInfoIn = externalFileInfoIn;
+        copy.regexFilterInclude = regexFilterInclude;
+        copy.regexFilterExclude = regexFilterExclude;
+        copy.removeHeaders = removeHeaders;
+        copy.createNewTransactionAfterRequestMs = createNewTransactionAfterRequestMs;
+        copy.pageStartNumber = pageStartNumber;
+        copy.samplerStartNumber = samplerStartNumber;
+        copy.jacksonParserStringMax = jacksonParserStringMax;
+        copy.isAddPause = isAddPause;
+        copy.isRemoveCookieHeader = isRemoveCookieHeader;
+        copy.isRemoveCacheRequestHeader = isRemoveCacheRequestHeader;
+        copy.isAddResultTreeRecord = isAddResultTreeRecord;
+        copy.isWebSocketPDoornbosch = isWebSocketPDoornbosch;
+        copy.isStreamingMode = isStreamingMode;
+        copy.spillBodyThreshold = spillBodyThreshold;
+        copy.filterRulesFile = filterRulesFile;
+        copy.isMetricsReport = isMetricsReport;
+        copy.cacheMaxMb = cacheMaxMb;
+        copy.isMappedReader = isMappedReader;
+        copy.selectStart = selectStart;
+        copy.selectEnd = selectEnd;
+        copy.selectEveryPage = selectEveryPage;
+        copy.wsBatchMinFrames = wsBatchMinFrames;
+        copy.isCompactHeaders = isCompactHeaders;
+        copy.isAutoCorrelation = isAutoCorrelation;
+        copy.isCollapseStatic = isCollapseStatic;
+        copy.timerMode = timerMode;
+        copy.fragmentPages = fragmentPages;
+        return copy;
+    }
+
+    /**
+     * @return true if the HAR must be read and rewritten by this plugin before the converter library
+     */
+    public boolean isHarRewriteNeeded() {
+        return isConvertedByChunks() || spillBodyThreshold > 0 || isMultiHar() || !filterRulesFile.isEmpty()
+                || isEntrySelection() || isWebSocketBatch()
+                || isCompactHeaders || isAutoCorrelation || isCollapseStatic || isRecordedTimers()
+                || fragmentPages > 0;
+    }
+
+    /**
+     * @return true if an option changes the whole merged script after the conversion of all the chunks, the merged
+     * script is then kept in memory until written
+     */
+    public boolean isWholeScriptNeeded() {
+        return isCompactHeaders || isAutoCorrelation || isCollapseStatic || isRecordedTimers() || fragmentPages > 0;
+    }
+
+    /**
+     * @return true if the HAR is cut in chunks of pages : streaming mode, a compressed HAR (only one chunk decompressed on
+     * the disk at a time) or HAR files larger than K_CHUNKED_HAR_BYTES (a cancel stops at the next chunk)
+     */
+    public boolean isConvertedByChunks() {
+        if (isStreamingMode || isHarCompressed()) {
+            return true;
+        }
+        long harBytes = 0;
+        for (String file : getFilesHarIn()) {
+            harBytes += new File(file).length();
+        }
+        return harBytes >= K_CHUNKED_HAR_BYTES;
+    }
+
+    /**
+     * @return true if a HAR file is compressed, the converter library reads the plain HAR files only
+     */
+    public boolean isHarCompressed() {
+        for (String file : getFilesHarIn()) {
+            if (HarInputStreams.isCompressed(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Log all the parameters, one line by parameter
+     * @param log the logger to write to
+     */
+    public void logParameters(Logger log) {
+        log.info("************* PARAMETERS ***************");
+        log.info("fileHarIn=<" + fileHarIn + ">");
+        log.info("fileJmxOut=<" + fileJmxOut + ">");
+        log.info("recordXmlOut=<" + recordXmlOut + ">");
+        log.info("isAddResultTreeRecord=<" + isAddResultTreeRecord + ">");
+        log.info("isWebSocketPDoornbosch=<" + isWebSocketPDoornbosch + ">");
+        log.info("wsBatchMinFrames=<" + wsBatchMinFrames + ">");
+        log.info("createNewTransactionAfterRequestMs=<" + createNewTransactionAfterRequestMs + ">");
+        log.info("isAddPause=<" + isAddPause + ">");
+        log.info("regexFilterInclude=<" + regexFilterInclude + ">");
+        log.info("regexFilterExclude=<" + regexFilterExclude + ">");
+        log.info("removeHeaders=<" + removeHeaders + ">");
+        log.info("jacksonParserStringMax=<" + jacksonParserStringMax + ">");
+        log.info("isRemoveCookieHeader=<" + isRemoveCookieHeader + ">");
+        log.info("isRemoveCacheRequestHeader=<" + isRemoveCacheRequestHeader + ">");
+        log.info("pageStartNumber=<" + pageStartNumber + ">");
+        log.info("samplerStartNumber=<" + samplerStartNumber + ">");
+        log.info("externalFileInfoIn=<" + externalFileInfoIn + ">");
+        log.info("isStreamingMode=<" + isStreamingMode + ">");
+        log.info("spillBodyThreshold=<" + spillBodyThreshold + ">");
+        log.info("filterRulesFile=<" + filterRulesFile + ">");
+        log.info("isMetricsReport=<" + isMetricsReport + ">");
+        log.info("cacheMaxMb=<" + cacheMaxMb + ">");
+        log.info("isMappedReader=<" + isMappedReader + ">");
+        log.info("isCompactHeaders=<" + isCompactHeaders + ">");
+        log.info("isAutoCorrelation=<" + isAutoCorrelation + ">");
+        log.info("isCollapseStatic=<" + isCollapseStatic + ">");
+        log.info("timerMode=<" + timerMode + ">");
+        log.info("fragmentPages=<" + fragmentPages + ">");
+        log.info("selectStart=<" + selectStart + ">");
+        log.info("selectEnd=<" + selectEnd + ">");
+        log.info("selectEveryPage=<" + selectEveryPage + ">");
+        log.info("****************************************");
+    }
+}
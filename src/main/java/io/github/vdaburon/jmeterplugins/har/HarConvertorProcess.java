@@ -0,0 +1,366 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import io.github.vdaburon.jmeter.har.HarForJMeter;
+import io.github.vdaburon.jmeterplugins.har.external.TransactionMarks;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxChunkMerger;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxFragmentSplitter;
+import io.github.vdaburon.jmeterplugins.har.record.RecordXmlMerger;
+import io.github.vdaburon.jmeterplugins.har.stream.HarInputStreams;
+import io.github.vdaburon.jmeterplugins.har.stream.HarStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run one HAR conversion with the parameters from the dialog, outside the Swing thread.
+ */
+public class HarConvertorProcess {
+    private static final Logger log = LoggerFactory.getLogger(HarConvertorProcess.class);
+
+    private HarConvertorProcess() {
+    }
+
+    /**
+     * Convert the HAR file to a JMeter script and the optional record xml file.
+     * If the conversion fails or is cancelled, the partial output files are deleted.
+     * @param parameters the conversion parameters
+     * @param progress the progress to update, the cancel flag is checked between steps
+     * @throws Exception if the conversion failed or InterruptedException if cancelled
+     */
+    public static void convert(HarConvertorParameters parameters, ConversionProgress progress) throws Exception {
+        convert(parameters, progress, false);
+    }
+
+    /**
+     * Convert the HAR file to a JMeter script and the optional record xml file.
+     * If the conversion fails or is cancelled, the partial output files are deleted.
+     * @param parameters the conversion parameters
+     * @param progress the progress to update, the cancel flag is checked between steps
+     * @param isDeferJmxWrite true to get the script in memory when the HAR is rewritten by this plugin, the script file
+     *                        is not written, the caller writes it with writeScript()
+     * @return the script not written yet or null if the script file is written
+     * @throws Exception if the conversion failed or InterruptedException if cancelled
+     */
+    public static JmxDocument convert(HarConvertorParameters parameters, ConversionProgress progress, boolean isDeferJmxWrite) throws Exception {
+        log.info("Before HarForJMeter.generateJmxAndRecord");
+        parameters.logParameters(log);
+
+        long harBytesTotal = 0;
+        for (String fileHarIn : parameters.getFilesHarIn()) {
+            harBytesTotal += new File(fileHarIn).length();
+        }
+        progress.setHarBytesTotal(harBytesTotal);
+        ConversionMetrics metrics = progress.getMetrics();
+        metrics.start();
+        metrics.setHarBytes(harBytesTotal);
+        List<File> outputFiles = getOutputFiles(parameters);
+        progress.setOutputFiles(outputFiles);
+        Map<File, Long> lastModifiedBefore = getLastModified(outputFiles);
+        progress.checkCancelled();
+        if (parameters.isAddResultTreeRecord() && RecordXmlMerger.isGzip(parameters.getRecordXmlOut())) {
+            log.info("The View Results Tree is not added to the script, JMeter can't read the compressed record xml " + parameters.getRecordXmlOut());
+        }
+
+        ConversionCache cache = ConversionCache.create(parameters);
+        JmxDocument scriptNotWritten = null;
+        try {
+            loadExternalFileInfos(parameters, progress);
+            String entriesKey = null;
+            if (cache != null) {
+                entriesKey = computeCacheKeys(parameters, progress, cache);
+                if (entriesKey == null) {
+                    cache = null;
+                }
+            }
+            if (cache != null && progress.getResultCacheKey() != null && cache.restoreResult(progress.getResultCacheKey(), parameters)) {
+                metrics.setCacheStatus(ConversionCache.STATUS_RESULT);
+                log.info("HAR and options unchanged, the script and the record xml are copied from the cache " + cache.getDir());
+            } else if (parameters.isHarRewriteNeeded()) {
+                progress.setStage("Read HAR entries");
+                scriptNotWritten = HarStreamingConvertor.convert(parameters, progress, isDeferJmxWrite, cache, entriesKey);
+            } else {
+                checkTransactionEntries(parameters, progress);
+                progress.setStage("Generate JMeter script and record");
+                generateJmxAndGzipRecord(parameters, metrics);
+            }
+            // the library does not check the interrupt flag, the HAR is small (less than K_CHUNKED_HAR_BYTES), the result
+            // is dropped if the user cancelled during the generation
+            progress.checkCancelled();
+        } catch (Exception ex) {
+            deletePartialOutputFiles(outputFiles, lastModifiedBefore);
+            throw ex;
+        }
+        progress.setHarBytesRead(progress.getHarBytesTotal());
+        if (scriptNotWritten == null) {
+            cacheResult(parameters, progress);
+            writeMetrics(parameters, metrics);
+        }
+        progress.setStage("Finished");
+        log.info("After HarForJMeter.generateJmxAndRecord");
+        return scriptNotWritten;
+    }
+
+    /**
+     * Write the script returned by convert() with isDeferJmxWrite, then the metrics
+     * @param parameters the conversion parameters
+     * @param progress the progress of the conversion
+     * @param script the script to write in the jmx out file
+     * @throws IOException if the script can't be written
+     */
+    public static void writeScript(HarConvertorParameters parameters, ConversionProgress progress, JmxDocument script) throws IOException {
+        saveScript(parameters, progress, script);
+        cacheResult(parameters, progress);
+        writeMetrics(parameters, progress.getMetrics());
+        log.info("Script written " + parameters.getFileJmxOut());
+    }
+
+    static void saveScript(HarConvertorParameters parameters, ConversionProgress progress, JmxDocument script) throws IOException {
+        long writeStart = System.nanoTime();
+        script.save(new File(parameters.getFileJmxOut()));
+        progress.getMetrics().addStageTime(ConversionMetrics.STAGE_WRITE_JMX, writeStart);
+    }
+
+    /**
+     * Validate the external file infos before the conversion, a bad file fails without reading the HAR.
+     * The marks loaded are cached and used again by the streaming conversion.
+     */
+    private static void loadExternalFileInfos(HarConvertorParameters parameters, ConversionProgress progress) throws IOException {
+        if (parameters.getExternalFileInfoIn().isEmpty()) {
+            return;
+        }
+        progress.setStage("Load external file infos");
+        long loadStart = System.nanoTime();
+        TransactionMarks.load(new File(parameters.getExternalFileInfoIn()));
+        progress.getMetrics().addStageTime(ConversionMetrics.STAGE_LOAD_EXTERNAL_FILE, loadStart);
+    }
+
+    /**
+     * Count the HAR entries in each transaction of the external file infos when the HAR is converted by the library only,
+     * a pass reading only the startedDateTime of the entries, e.g. to warn about timestamps not in GMT.
+     * The HAR rewritten by this plugin is checked while its entries are read.
+     */
+    private static void checkTransactionEntries(HarConvertorParameters parameters, ConversionProgress progress) throws IOException, InterruptedException {
+        if (parameters.getExternalFileInfoIn().isEmpty()) {
+            return;
+        }
+        progress.setStage("Check external file infos");
+        long checkStart = System.nanoTime();
+        TransactionMarks marks = TransactionMarks.load(new File(parameters.getExternalFileInfoIn()));
+        TransactionMarks.EntryCounter counter = new TransactionMarks.EntryCounter(marks);
+        try (HarStreamReader reader = new HarStreamReader(HarInputStreams.open(new File(parameters.getFileHarIn()), null),
+                parameters.getJacksonParserStringMax())) {
+            while (reader.skipEntry()) {
+                progress.checkCancelled();
+                counter.addEntry(reader.getEntryStartedMillis());
+            }
+        }
+        progress.getMetrics().addStageTime(ConversionMetrics.STAGE_LOAD_EXTERNAL_FILE, checkStart);
+        reportTransactionEntries(parameters, progress.getMetrics(), marks, counter);
+    }
+
+    /**
+     * Set the transactions without HAR entry in the metrics and log the mismatches
+     */
+    static void reportTransactionEntries(HarConvertorParameters parameters, ConversionMetrics metrics, TransactionMarks marks,
+                                         TransactionMarks.EntryCounter counter) {
+        metrics.setExternalTransactions(marks.size(), counter.getWithoutEntry());
+        for (String mismatch : counter.getMismatches()) {
+            log.warn("External file infos " + parameters.getExternalFileInfoIn() + " : " + mismatch);
+        }
+    }
+
+    /**
+     * Compute the keys of the HAR entries and of the result in the conversion cache, the result key is set in the progress.
+     * The result of a script split in fragments is not cached, the cache only keeps one script file.
+     * The cache is not used if it fails (e.g. JMeter installed in a read only directory), the conversion goes on without it.
+     * @return the key of the HAR entries or null if the cache can't be used
+     */
+    private static String computeCacheKeys(HarConvertorParameters parameters, ConversionProgress progress, ConversionCache cache) throws Exception {
+        progress.setStage("Digest HAR files");
+        ConversionMetrics metrics = progress.getMetrics();
+        long digestStart = System.nanoTime();
+        String entriesKey;
+        try {
+            entriesKey = cache.getEntriesKey(parameters);
+            if (parameters.getFragmentPages() == 0) {
+                progress.setResultCacheKey(cache.getResultKey(parameters, entriesKey));
+            }
+        } catch (IOException ex) {
+            log.warn("Can't use the conversion cache " + cache.getDir() + ", convert without the cache, exception = " + ex);
+            progress.setResultCacheKey(null);
+            return null;
+        }
+        metrics.addStageTime(ConversionMetrics.STAGE_DIGEST_HAR, digestStart);
+        metrics.setCacheStatus(ConversionCache.STATUS_MISS);
+        progress.checkCancelled();
+        return entriesKey;
+    }
+
+    /**
+     * Copy the script and the record xml written in the conversion cache, if not copied from the cache
+     */
+    private static void cacheResult(HarConvertorParameters parameters, ConversionProgress progress) {
+        ConversionCache cache = ConversionCache.create(parameters);
+        if (cache != null && progress.getResultCacheKey() != null
+                && !ConversionCache.STATUS_RESULT.equals(progress.getMetrics().getCacheStatus())) {
+            cache.putResult(progress.getResultCacheKey(), parameters);
+        }
+    }
+
+    /**
+     * Count the pages and samplers of the script, log the metrics and write the json report next to the script.
+     * The conversion is not failed if the report can't be written.
+     * @param parameters the conversion parameters
+     * @param metrics the metrics of the conversion
+     */
+    static void writeMetrics(HarConvertorParameters parameters, ConversionMetrics metrics) {
+        File jmxOut = new File(parameters.getFileJmxOut());
+        File recordOut = new File(parameters.getRecordXmlOut());
+        try {
+            int[] counts = JmxDocument.countElements(jmxOut, JmxChunkMerger.TRANSACTION_CONTROLLER, JmxChunkMerger.SAMPLER_SUFFIX);
+            if (parameters.getFragmentPages() > 0) {
+                // the pages and samplers are in the fragments included by the script
+                for (File fragment : JmxFragmentSplitter.listFragmentFiles(jmxOut)) {
+                    int[] fragmentCounts = JmxDocument.countElements(fragment, JmxChunkMerger.TRANSACTION_CONTROLLER, JmxChunkMerger.SAMPLER_SUFFIX);
+                    counts[0] += fragmentCounts[0];
+                    counts[1] += fragmentCounts[1];
+                }
+            }
+            metrics.setOutputs(counts[0], counts[1], jmxOut.length(), parameters.getRecordXmlOut().isEmpty() ? -1 : recordOut.length());
+        } catch (IOException ex) {
+            log.warn("Can't count the pages and samplers of the script " + jmxOut + ", exception = " + ex);
+        }
+        metrics.stop();
+        log.info("Conversion metrics :" + System.lineSeparator() + metrics.toText());
+        if (!parameters.isMetricsReport()) {
+            return;
+        }
+        File reportFile = ConversionMetrics.getReportFile(parameters.getFileJmxOut());
+        try {
+            metrics.writeReport(parameters, reportFile);
+            log.info("Conversion metrics report written " + reportFile);
+        } catch (IOException ex) {
+            log.warn("Can't write the conversion metrics report " + reportFile + ", exception = " + ex);
+        }
+    }
+
+    /**
+     * Call the converter library with the HAR file, if the record xml must be compressed, the library writes it in a
+     * temporary file then the file is compressed by blocks in parallel
+     */
+    private static void generateJmxAndGzipRecord(HarConvertorParameters parameters, ConversionMetrics metrics) throws Exception {
+        String recordXmlOut = parameters.getRecordXmlOut();
+        File recordTemp = null;
+        if (RecordXmlMerger.isGzip(recordXmlOut)) {
+            recordTemp = File.createTempFile("har-convertor-record-", ".xml");
+            recordXmlOut = recordTemp.getAbsolutePath();
+        }
+        try {
+            long libraryStart = System.nanoTime();
+            generateJmxAndRecord(parameters, parameters.getFileHarIn(), parameters.getFileJmxOut(), recordXmlOut,
+                    parameters.getPageStartNumber(), parameters.getSamplerStartNumber());
+            metrics.addStageTime(ConversionMetrics.STAGE_LIBRARY_CONVERSION, libraryStart);
+            if (recordTemp != null) {
+                long recordStart = System.nanoTime();
+                try (RecordXmlMerger recordMerger = new RecordXmlMerger(new File(parameters.getRecordXmlOut()), true)) {
+                    recordMerger.append(recordTemp);
+                }
+                metrics.addStageTime(ConversionMetrics.STAGE_WRITE_RECORD, recordStart);
+            }
+        } finally {
+            if (recordTemp != null && !recordTemp.delete()) {
+                log.warn("Can't delete the temporary file " + recordTemp);
+            }
+        }
+    }
+
+    /**
+     * Call the converter library with the parameters but the files and the numbering given
+     * @param parameters the conversion parameters
+     * @param harIn the HAR file to convert (the original HAR or a chunk)
+     * @param jmxOut the script to write
+     * @param recordXmlOut the record xml to write or empty
+     * @param pageStartNumber the first page number
+     * @param samplerStartNumber the first sampler number
+     * @throws Exception if the conversion failed
+     */
+    static void generateJmxAndRecord(HarConvertorParameters parameters, String harIn, String jmxOut, String recordXmlOut,
+                                     int pageStartNumber, int samplerStartNumber) throws Exception {
+        generateJmxAndRecord(parameters, harIn, jmxOut, recordXmlOut, pageStartNumber, samplerStartNumber, parameters.getJacksonParserStringMax());
+    }
+
+    /**
+     * Call the converter library with a Jackson String length size, e.g. raised for the bodies kept inline by the spill
+     * @param jacksonParserStringMax the Jackson String length size of the library
+     */
+    static void generateJmxAndRecord(HarConvertorParameters parameters, String harIn, String jmxOut, String recordXmlOut,
+                                     int pageStartNumber, int samplerStartNumber, int jacksonParserStringMax) throws Exception {
+        HarForJMeter.generateJmxAndRecord(harIn, jacksonParserStringMax, jmxOut,
+                parameters.getCreateNewTransactionAfterRequestMs(), parameters.isAddPause(), parameters.isRemoveCookieHeader(),
+                parameters.isRemoveCacheRequestHeader(), parameters.getRegexFilterInclude(), parameters.getRegexFilterExclude(),
+                recordXmlOut, pageStartNumber, samplerStartNumber, parameters.getExternalFileInfoIn(),
+                parameters.isAddResultTreeRecord() && !RecordXmlMerger.isGzip(parameters.getRecordXmlOut()),
+                parameters.isWebSocketPDoornbosch(), parameters.getRemoveHeaders());
+    }
+
+    static List<File> getOutputFiles(HarConvertorParameters parameters) {
+        List<File> outputFiles = new ArrayList<>();
+        outputFiles.add(new File(parameters.getFileJmxOut()));
+        if (!parameters.getRecordXmlOut().isEmpty()) {
+            outputFiles.add(new File(parameters.getRecordXmlOut()));
+        }
+        return outputFiles;
+    }
+
+    static Map<File, Long> getLastModified(List<File> files) {
+        Map<File, Long> lastModified = new HashMap<>();
+        for (File file : files) {
+            lastModified.put(file, file.exists() ? file.lastModified() : -1L);
+        }
+        return lastModified;
+    }
+
+    /**
+     * Delete the partial .jmx and .xml files after a failed or cancelled conversion.
+     * A file not written by this conversion (same last modified date as before) is kept.
+     * @param outputFiles the output files of the conversion
+     * @param lastModifiedBefore the last modified date of the output files before the conversion, -1 if not exist
+     */
+    static void deletePartialOutputFiles(List<File> outputFiles, Map<File, Long> lastModifiedBefore) {
+        for (File file : outputFiles) {
+            if (!file.exists() || lastModifiedBefore.get(file) == file.lastModified()) {
+                continue;
+            }
+            if (file.delete()) {
+                log.info("Partial output file deleted " + file);
+            } else {
+                log.warn("Can't delete the partial output file " + file);
+            }
+        }
+    }
+}
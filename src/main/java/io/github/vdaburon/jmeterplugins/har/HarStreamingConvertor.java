@@ -0,0 +1,671 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import io.github.vdaburon.jmeterplugins.har.correlation.CorrelationApplier;
+import io.github.vdaburon.jmeterplugins.har.correlation.CorrelationIndex;
+import io.github.vdaburon.jmeterplugins.har.external.TransactionMarks;
+import io.github.vdaburon.jmeterplugins.har.filter.StaticResourceCollapser;
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilter;
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilterStatistics;
+import io.github.vdaburon.jmeterplugins.har.jmx.HeaderCompactor;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxChunkMerger;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxFragmentSplitter;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxStreamWriter;
+import io.github.vdaburon.jmeterplugins.har.jmx.TextDeduplicator;
+import io.github.vdaburon.jmeterplugins.har.jmx.TimerGenerator;
+import io.github.vdaburon.jmeterplugins.har.jmx.WebSocketBatcher;
+import io.github.vdaburon.jmeterplugins.har.record.RecordXmlMerger;
+import io.github.vdaburon.jmeterplugins.har.stream.BodySpillStore;
+import io.github.vdaburon.jmeterplugins.har.stream.EntrySelection;
+import io.github.vdaburon.jmeterplugins.har.stream.HarChunkWriter;
+import io.github.vdaburon.jmeterplugins.har.stream.HarEntries;
+import io.github.vdaburon.jmeterplugins.har.stream.HarEntrySource;
+import io.github.vdaburon.jmeterplugins.har.stream.HarInputStreams;
+import io.github.vdaburon.jmeterplugins.har.stream.HarStreamReader;
+import io.github.vdaburon.jmeterplugins.har.stream.MappedHarReader;
+import io.github.vdaburon.jmeterplugins.har.stream.MultiHarReader;
+import io.github.vdaburon.jmeterplugins.har.stream.PageTimingStatistics;
+import io.github.vdaburon.jmeterplugins.har.stream.ProgressInputStream;
+import io.github.vdaburon.jmeterplugins.har.stream.SelectedHarReader;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.w3c.dom.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read the HAR entries one at a time and rewrite them in HAR chunks for the converter library.
+ * In streaming mode the chunks contain whole pages (cut when the time between 2 urls is greater than the time to create
+ * a new page), each chunk is converted by the library with the page and sampler numbers following the previous chunk,
+ * then the scripts and the record xml files of the chunks are merged.
+ * Only one chunk of the HAR is in memory at a time. Without the options changing the whole script (correlation, compact
+ * headers, recorded timers, fragments, collapse static) and when the script is not loaded in JMeter, the samplers of each
+ * chunk are written to the jmx file as soon as the chunk is converted, so the heap doesn't grow with the HAR.
+ * Else the merged script of all the chunks stays in memory until written, the heap grows with the count of samplers,
+ * not with the size of the bodies.
+ * A compressed HAR is also cut in chunks, so only one bounded chunk is decompressed on the disk at a time, and a HAR
+ * larger than K_CHUNKED_HAR_BYTES, so a cancel doesn't wait for the converter library to convert the whole HAR.
+ * Without streaming mode and with a small plain HAR, all the entries are in one chunk (e.g. to spill the large bodies only).
+ * With several HAR files, the entries of all the HAR files are merged in the startedDateTime order before the chunks,
+ * so the page and sampler numbers are contiguous in the merged script.
+ * With the conversion cache, the entries kept by the filter rules (merged when several HAR files) are also written in
+ * the cache, the next conversion of the same HAR files with the same filter rules reads the cached entries.
+ */
+public class HarStreamingConvertor {
+    private static final Logger log = LoggerFactory.getLogger(HarStreamingConvertor.class);
+
+    /** Entries in a chunk before looking for a page boundary to cut */
+    public static final int K_CHUNK_MAX_ENTRIES = 1000;
+    /** Bytes of a chunk before looking for a page boundary to cut */
+    public static final long K_CHUNK_MAX_BYTES = 32L * 1024 * 1024;
+    /** The chunk is cut even in the middle of a page when this factor of max entries or max bytes is reached */
+    public static final int K_CHUNK_HARD_LIMIT_FACTOR = 4;
+
+    private final HarConvertorParameters parameters;
+    private final ConversionProgress progress;
+    private final ConversionMetrics metrics;
+    private final File tempDir;
+    private final ConversionCache cache;
+    private final String entriesKey;
+    private final JmxChunkMerger jmxMerger = new JmxChunkMerger();
+    private final boolean isScriptStreamed;
+    private JmxStreamWriter scriptWriter;
+    private WebSocketBatcher webSocketBatcher;
+    private CorrelationIndex correlationIndex;
+    private StaticResourceCollapser staticCollapser;
+    private final PageTimingStatistics pageTimings;
+    private RecordXmlMerger recordMerger;
+    private File recordMerged;
+    private BodySpillStore spillStore;
+    private UrlFilterStatistics urlFilter;
+    private TransactionMarks transactionMarks;
+    private TransactionMarks.EntryCounter transactionEntries;
+    private int pageNumber;
+    private int samplerNumber;
+    private int chunkIndex = 0;
+    private String firstChunkHar;
+    private String firstChunkRecord;
+    private long chunkConversionNanos = 0;
+
+    private HarStreamingConvertor(HarConvertorParameters parameters, ConversionProgress progress, File tempDir,
+                                  ConversionCache cache, String entriesKey, boolean isDeferJmxWrite) {
+        this.parameters = parameters;
+        this.progress = progress;
+        this.metrics = progress.getMetrics();
+        this.tempDir = tempDir;
+        this.cache = cache;
+        this.entriesKey = entriesKey;
+        this.pageNumber = parameters.getPageStartNumber();
+        this.samplerNumber = parameters.getSamplerStartNumber();
+        this.pageTimings = new PageTimingStatistics(parameters.getCreateNewTransactionAfterRequestMs());
+        if (parameters.isCollapseStatic()) {
+            staticCollapser = new StaticResourceCollapser();
+        }
+        if (parameters.isAutoCorrelation()) {
+            correlationIndex = new CorrelationIndex();
+        }
+        if (parameters.isWebSocketBatch()) {
+            webSocketBatcher = new WebSocketBatcher(parameters.getWsBatchMinFrames());
+            jmxMerger.setWebSocketBatcher(webSocketBatcher);
+        }
+        // the script loaded in JMeter and the passes on the whole script need the merged script in memory
+        isScriptStreamed = !isDeferJmxWrite && !parameters.isWholeScriptNeeded();
+        jmxMerger.setDeduplicate(!isScriptStreamed);
+    }
+
+    /**
+     * Convert the HAR file by chunks, write the merged script and record xml
+     * @param parameters the conversion parameters
+     * @param progress the progress, the cancel flag is checked for each entry
+     * @param isDeferJmxWrite true to return the merged script without writing it, the record xml is written
+     * @return the merged script not written if isDeferJmxWrite, else null
+     * @throws Exception if the conversion failed or InterruptedException if cancelled
+     */
+    public static JmxDocument convert(HarConvertorParameters parameters, ConversionProgress progress, boolean isDeferJmxWrite) throws Exception {
+        return convert(parameters, progress, isDeferJmxWrite, null, null);
+    }
+
+    /**
+     * Convert the HAR file by chunks, write the merged script and record xml
+     * @param parameters the conversion parameters
+     * @param progress the progress, the cancel flag is checked for each entry
+     * @param isDeferJmxWrite true to return the merged script without writing it, the record xml is written
+     * @param cache the conversion cache to read or write the HAR entries, null if no cache
+     * @param entriesKey the key of the HAR entries in the cache, null if no cache
+     * @return the merged script not written if isDeferJmxWrite, else null
+     * @throws Exception if the conversion failed or InterruptedException if cancelled
+     */
+    public static JmxDocument convert(HarConvertorParameters parameters, ConversionProgress progress, boolean isDeferJmxWrite,
+                                      ConversionCache cache, String entriesKey) throws Exception {
+        File tempDir = Files.createTempDirectory("har-convertor-").toFile();
+        try {
+            JmxDocument merged = new HarStreamingConvertor(parameters, progress, tempDir, cache, entriesKey, isDeferJmxWrite).run();
+            if (isDeferJmxWrite || merged == null) {
+                // the script is returned to the caller or already written by chunks
+                return merged;
+            }
+            progress.setStage("Write merged script");
+            HarConvertorProcess.saveScript(parameters, progress, merged);
+            return null;
+        } finally {
+            deleteDirectory(tempDir);
+        }
+    }
+
+    private JmxDocument run() throws Exception {
+        int jacksonParserStringMax = parameters.getJacksonParserStringMax();
+        if (parameters.getSpillBodyThreshold() > 0) {
+            spillStore = new BodySpillStore(new File(tempDir, "bodies.spill"), parameters.getSpillBodyThreshold());
+            // only one body at a time is read here, the library only reads the placeholders
+            jacksonParserStringMax = Integer.MAX_VALUE;
+        }
+        File cachedEntries = isEntriesCached() ? cache.getEntries(entriesKey) : null;
+        if (cachedEntries != null) {
+            metrics.setCacheStatus(ConversionCache.STATUS_ENTRIES);
+            log.info("HAR entries read from the cache " + cachedEntries + ", the entries are already filtered");
+        } else if (!parameters.getFilterRulesFile().isEmpty()) {
+            urlFilter = new UrlFilterStatistics(UrlFilter.load(new File(parameters.getFilterRulesFile())));
+            progress.setUrlFilterStatistics(urlFilter);
+        }
+        if (!parameters.getExternalFileInfoIn().isEmpty()) {
+            // already loaded and validated before the conversion
+            transactionMarks = TransactionMarks.load(new File(parameters.getExternalFileInfoIn()));
+            transactionEntries = new TransactionMarks.EntryCounter(transactionMarks);
+        }
+        if (!parameters.getRecordXmlOut().isEmpty()) {
+            // with spilled bodies the merged record xml has placeholders, the bodies are restored in the final record xml
+            recordMerged = spillStore == null ? new File(parameters.getRecordXmlOut()) : new File(tempDir, "record_merged.xml");
+            recordMerger = new RecordXmlMerger(recordMerged, spillStore == null && RecordXmlMerger.isGzip(recordMerged.getName()));
+        }
+        try {
+            readAndConvertChunks(jacksonParserStringMax, cachedEntries);
+            return writeOutputs();
+        } finally {
+            if (scriptWriter != null) {
+                scriptWriter.close();
+            }
+            if (spillStore != null) {
+                spillStore.close();
+            }
+        }
+    }
+
+    /**
+     * @return true if the HAR entries kept are read from or written in the cache : the HAR files are indexed and merged,
+     * filtered or selected, else reading the cached entries is not faster than reading the HAR file
+     */
+    private boolean isEntriesCached() {
+        return cache != null && (parameters.isMultiHar() || !parameters.getFilterRulesFile().isEmpty() || parameters.isEntrySelection());
+    }
+
+    private void readAndConvertChunks(int jacksonParserStringMax, File cachedEntries) throws Exception {
+        HarChunkWriter entriesWriter = null;
+        try (HarEntrySource reader = createEntrySource(jacksonParserStringMax, cachedEntries)) {
+            long readStart = System.nanoTime();
+            if (cachedEntries == null && isEntriesCached()) {
+                entriesWriter = createEntriesWriter(reader);
+            }
+            HarChunkWriter writer = null;
+            long previousStarted = -1;
+            long pauseBeforeChunk = 0;
+            ObjectNode entry;
+            while ((entry = reader.nextEntry()) != null) {
+                progress.checkCancelled();
+                progress.addEntriesRead(1);
+                boolean isKept = urlFilter == null || urlFilter.isKept(HarEntries.getUrl(entry));
+                metrics.addEntry(isKept, isKept ? HarEntries.getBodyChars(entry) : 0);
+                if (!isKept) {
+                    continue;
+                }
+                if (entriesWriter != null) {
+                    // the entries kept by the filters, before the static collapse and the spill that replaces the large bodies with placeholders
+                    entriesWriter = writeCachedEntry(entriesWriter, entry);
+                }
+                if (staticCollapser != null && staticCollapser.isCollapsed(entry)) {
+                    metrics.collapseEntry(HarEntries.getBodyChars(entry));
+                    continue;
+                }
+                long started = HarEntries.getStartedMillis(entry);
+                pageTimings.addEntry(started, HarEntries.getTimeMillis(entry), HarEntries.getWaitMillis(entry));
+                long timeFromPrevious = (started >= 0 && previousStarted >= 0) ? started - previousStarted : 0;
+
+                if (transactionMarks != null) {
+                    transactionEntries.addEntry(started);
+                }
+                if (writer != null && isChunkToCut(writer, started, previousStarted, timeFromPrevious)) {
+                    writer.close();
+                    convertChunk(writer.getFile(), pauseBeforeChunk);
+                    writer = null;
+                    pauseBeforeChunk = parameters.isAddPause() ? timeFromPrevious : 0;
+                }
+                if (writer == null) {
+                    chunkIndex++;
+                    writer = new HarChunkWriter(new File(tempDir, "chunk_" + chunkIndex + ".har"), reader.getLogHeader(), reader.getMapper());
+                }
+                if (correlationIndex != null) {
+                    // the full bodies, before the spill
+                    correlationIndex.addEntry(entry);
+                }
+                if (spillStore != null) {
+                    spillStore.spillEntry(entry);
+                }
+                writer.writeEntry(entry);
+                previousStarted = started;
+            }
+            if (writer != null) {
+                writer.close();
+                convertChunk(writer.getFile(), pauseBeforeChunk);
+            }
+            if (entriesWriter != null) {
+                entriesWriter.close();
+                cache.putEntries(entriesKey, entriesWriter.getFile());
+                entriesWriter = null;
+            }
+            if (transactionMarks != null) {
+                HarConvertorProcess.reportTransactionEntries(parameters, metrics, transactionMarks, transactionEntries);
+            }
+            // the time to read, filter and write the entries in the chunks, without the conversion of the chunks
+            metrics.addStageNanos(ConversionMetrics.STAGE_PARSE_HAR, System.nanoTime() - readStart - chunkConversionNanos);
+        } finally {
+            if (entriesWriter != null) {
+                // failed or cancelled, the partial entries are not cached
+                try {
+                    entriesWriter.close();
+                } catch (IOException ex) {
+                    log.debug("Can't close the cached entries " + entriesWriter.getFile() + ", exception = " + ex);
+                }
+                deleteFile(entriesWriter.getFile());
+            }
+            if (recordMerger != null) {
+                recordMerger.close();
+                // the record xml chunks are written in parallel with the conversion of the next chunks
+                metrics.addStageNanos(ConversionMetrics.STAGE_WRITE_RECORD, recordMerger.getWriteNanos());
+            }
+        }
+    }
+
+    /**
+     * @return the writer of the entries to cache or null if the cache directory can't be written, the conversion goes on
+     */
+    private HarChunkWriter createEntriesWriter(HarEntrySource reader) {
+        try {
+            return new HarChunkWriter(cache.createEntriesTemp(), true, reader.getLogHeader(), reader.getMapper());
+        } catch (IOException ex) {
+            log.warn("Can't write the HAR entries in the cache " + cache.getDir() + ", the entries are not cached, exception = " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return the writer or null if the entry can't be written (e.g. disk full), the partial entries are deleted
+     */
+    private static HarChunkWriter writeCachedEntry(HarChunkWriter entriesWriter, ObjectNode entry) {
+        try {
+            entriesWriter.writeEntry(entry);
+            return entriesWriter;
+        } catch (IOException ex) {
+            log.warn("Can't write the HAR entries in the cache, the entries are not cached, exception = " + ex);
+            try {
+                entriesWriter.close();
+            } catch (IOException exClose) {
+                log.debug("Can't close the cached entries " + entriesWriter.getFile() + ", exception = " + exClose);
+            }
+            deleteFile(entriesWriter.getFile());
+            return null;
+        }
+    }
+
+    private HarEntrySource createEntrySource(int jacksonParserStringMax, File cachedEntries) throws Exception {
+        if (cachedEntries != null) {
+            // the progress is the part of the compressed entries read
+            progress.setHarBytesTotal(cachedEntries.length());
+            return new HarStreamReader(new GZIPInputStream(new ProgressInputStream(
+                    new BufferedInputStream(new FileInputStream(cachedEntries), 256 * 1024), progress), 64 * 1024),
+                    jacksonParserStringMax);
+        }
+        EntrySelection selection = EntrySelection.create(parameters);
+        if (selection != null && !parameters.isMultiHar()) {
+            progress.setStage("Select HAR entries");
+            long selectStart = System.nanoTime();
+            SelectedHarReader reader = new SelectedHarReader(new File(parameters.getFileHarIn()), jacksonParserStringMax, selection, progress);
+            metrics.addStageTime(ConversionMetrics.STAGE_SELECT_HAR, selectStart);
+            logSelection(selection);
+            progress.setStage("Read HAR entries");
+            return reader;
+        }
+        if (!parameters.isMultiHar() && parameters.isMappedReader() && !HarInputStreams.isCompressed(parameters.getFileHarIn())) {
+            progress.setStage("Scan HAR entries");
+            long scanStart = System.nanoTime();
+            MappedHarReader reader = MappedHarReader.open(new File(parameters.getFileHarIn()), jacksonParserStringMax,
+                    Runtime.getRuntime().availableProcessors(), progress);
+            if (reader != null) {
+                metrics.addStageTime(ConversionMetrics.STAGE_SCAN_HAR, scanStart);
+                progress.setStage("Read HAR entries");
+                return reader;
+            }
+            // small file or pre-scan failed, read with the streaming parser
+            progress.setStage("Read HAR entries");
+        }
+        if (!parameters.isMultiHar()) {
+            // the progress is the part of the HAR file read, compressed or not
+            return new HarStreamReader(HarInputStreams.open(new File(parameters.getFileHarIn()), progress), jacksonParserStringMax);
+        }
+        progress.setStage("Index HAR files");
+        long indexStart = System.nanoTime();
+        List<File> harFiles = new ArrayList<>();
+        for (String fileHarIn : parameters.getFilesHarIn()) {
+            harFiles.add(new File(fileHarIn));
+        }
+        MultiHarReader reader = new MultiHarReader(harFiles, jacksonParserStringMax, progress);
+        metrics.addStageTime(ConversionMetrics.STAGE_INDEX_HAR, indexStart);
+        log.info("HAR files indexed, files=" + harFiles.size() + ", entries=" + reader.getEntriesCount());
+        if (selection != null) {
+            long selectStart = System.nanoTime();
+            reader.select(selection);
+            metrics.addStageTime(ConversionMetrics.STAGE_SELECT_HAR, selectStart);
+            logSelection(selection);
+        }
+        // the entries are read a second time in the startedDateTime order of all the HAR files
+        progress.setStage("Read HAR entries");
+        progress.resetRead();
+        return reader;
+    }
+
+    private void logSelection(EntrySelection selection) {
+        metrics.setEntriesNotSelected(selection.getSkipped());
+        log.info("HAR entries selected " + selection + ", selected=" + selection.getSelected() + ", skipped=" + selection.getSkipped());
+    }
+
+    /**
+     * Write the record xml and return the merged script to write
+     * @return the merged script or null if the script is written by chunks
+     */
+    private JmxDocument writeOutputs() throws Exception {
+        JmxDocument merged = jmxMerger.getMerged();
+        if (merged == null) {
+            throw new IOException("No entry in the HAR file " + parameters.getFileHarIn()
+                    + (urlFilter != null ? " kept by the URL filter rules " + parameters.getFilterRulesFile() : ""));
+        }
+        if (!isScriptStreamed) {
+            replaceChunkFileNames(merged);
+        }
+        if (spillStore != null && spillStore.getCount() > 0) {
+            progress.setStage("Restore spilled bodies");
+            long restoreStart = System.nanoTime();
+            if (!isScriptStreamed) {
+                restoreSpilledTexts(merged.getDocument().getDocumentElement());
+            }
+            if (recordMerger != null) {
+                try (Reader in = new InputStreamReader(new FileInputStream(recordMerged), StandardCharsets.UTF_8);
+                     Writer out = new BufferedWriter(new OutputStreamWriter(RecordXmlMerger.newOutputStream(new File(parameters.getRecordXmlOut())), StandardCharsets.UTF_8))) {
+                    int restored = spillStore.restoreXml(in, out);
+                    log.info("Bodies restored in the record xml=" + restored);
+                }
+            }
+            metrics.addStageTime(ConversionMetrics.STAGE_RESTORE_BODIES, restoreStart);
+            log.info("Bodies spilled=" + spillStore.getCount() + ", bytes=" + spillStore.getSpilledBytes()
+                    + ", duplicates not written=" + spillStore.getDuplicates() + ", bytes=" + spillStore.getDuplicateBytes());
+        } else if (recordMerger != null && !recordMerged.getAbsolutePath().equals(new File(parameters.getRecordXmlOut()).getAbsolutePath())) {
+            File recordXmlOut = new File(parameters.getRecordXmlOut());
+            if (RecordXmlMerger.isGzip(recordXmlOut.getName())) {
+                try (OutputStream out = RecordXmlMerger.newOutputStream(recordXmlOut)) {
+                    Files.copy(recordMerged.toPath(), out);
+                }
+            } else {
+                Files.move(recordMerged.toPath(), recordXmlOut.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (spillStore != null) {
+            metrics.setSpilled(spillStore.getCount(), spillStore.getSpilledBytes());
+            metrics.setDedupBodies(spillStore.getDuplicates(), spillStore.getDuplicateBytes());
+        }
+        TextDeduplicator deduplicator = jmxMerger.getDeduplicator();
+        metrics.setDedupTexts(deduplicator.getDuplicates(), deduplicator.getSavedBytes());
+        log.info("Script texts distinct=" + deduplicator.getDistinctTexts() + ", shared=" + deduplicator.getDuplicates()
+                + ", bytes saved=" + deduplicator.getSavedBytes());
+        if (staticCollapser != null) {
+            staticCollapser.setEmbeddedResources(merged);
+            metrics.setEmbeddedResourceSamplers(staticCollapser.getSamplersChanged());
+            log.info("Static resources collapsed=" + staticCollapser.getCollapsed() + ", page samplers retrieving the embedded resources="
+                    + staticCollapser.getSamplersChanged());
+        }
+        if (correlationIndex != null) {
+            progress.setStage("Correlate values");
+            long correlateStart = System.nanoTime();
+            CorrelationApplier applier = new CorrelationApplier(correlationIndex.getCorrelations());
+            applier.apply(merged);
+            metrics.addStageTime(ConversionMetrics.STAGE_CORRELATE, correlateStart);
+            metrics.setCorrelations(correlationIndex.getIndexedValues(), correlationIndex.getCorrelations().size(),
+                    applier.getApplied(), applier.getReplacements());
+            log.info("Correlations found=" + correlationIndex.getCorrelations().size() + ", applied=" + applier.getApplied()
+                    + ", values indexed=" + correlationIndex.getIndexedValues() + ", replacements=" + applier.getReplacements());
+        }
+        if (parameters.isCompactHeaders()) {
+            progress.setStage("Compact headers");
+            long compactStart = System.nanoTime();
+            HeaderCompactor compactor = new HeaderCompactor();
+            compactor.compact(merged);
+            metrics.addStageTime(ConversionMetrics.STAGE_COMPACT_HEADERS, compactStart);
+            metrics.setHeaderCompaction(compactor.getManagersAdded(), compactor.getManagersRemoved(),
+                    compactor.getHeadersRemoved(), compactor.getBytesSaved());
+            log.info("Headers shared in Header Managers added=" + compactor.getManagersAdded() + ", removed=" + compactor.getManagersRemoved()
+                    + ", headers removed from the samplers=" + compactor.getHeadersRemoved() + ", bytes saved=" + compactor.getBytesSaved());
+        }
+        metrics.setPageTimings(pageTimings.getThinkTimeMean(), pageTimings.getThinkTimeStdDev(), pageTimings.getThinkTimePercentile(90),
+                pageTimings.getPageDurationMean(), pageTimings.getServerTimeMean(), pageTimings.getSamplersPerMinute());
+        log.info("Recorded timings : " + pageTimings.toText());
+        if (parameters.isRecordedTimers()) {
+            TimerGenerator timerGenerator = new TimerGenerator(parameters.getTimerMode(), pageTimings);
+            timerGenerator.generate(merged);
+            metrics.setTimersAdded(timerGenerator.getTimersAdded());
+            log.info("Timers " + parameters.getTimerMode() + " added=" + timerGenerator.getTimersAdded()
+                    + ", pauses changed=" + timerGenerator.getPausesChanged());
+        }
+        if (webSocketBatcher != null) {
+            metrics.setWebSocketBatches(webSocketBatcher.getBatches(), webSocketBatcher.getSamplersRemoved());
+            log.info("WebSocket samplers batched in loops=" + webSocketBatcher.getBatches()
+                    + ", samplers removed=" + webSocketBatcher.getSamplersRemoved());
+        }
+        if (parameters.getFragmentPages() > 0) {
+            progress.setStage("Write fragments");
+            long fragmentsStart = System.nanoTime();
+            JmxFragmentSplitter splitter = new JmxFragmentSplitter(parameters.getFragmentPages());
+            splitter.split(merged, new File(parameters.getFileJmxOut()));
+            splitter.writeFragments();
+            metrics.addStageTime(ConversionMetrics.STAGE_WRITE_FRAGMENTS, fragmentsStart);
+            metrics.setFragments(splitter.getFragments());
+            log.info("Test Fragment files written=" + splitter.getFragments() + " in "
+                    + JmxFragmentSplitter.getFragmentsDir(new File(parameters.getFileJmxOut())));
+        }
+        metrics.setChunks(chunkIndex);
+        if (urlFilter != null) {
+            log.info("URL filter rules matches :" + System.lineSeparator() + urlFilter.toText());
+        }
+        log.info("Chunk conversion finished, chunks=" + chunkIndex + ", pages=" + (pageNumber - parameters.getPageStartNumber())
+                + ", samplers=" + (samplerNumber - parameters.getSamplerStartNumber()));
+        if (isScriptStreamed) {
+            long writeStart = System.nanoTime();
+            scriptWriter.close();
+            metrics.addStageTime(ConversionMetrics.STAGE_WRITE_JMX, writeStart);
+            log.info("Script written by chunks " + parameters.getFileJmxOut());
+            return null;
+        }
+        return merged;
+    }
+
+    /**
+     * Replace the names of the first chunk files in the script (HAR file in the Test Plan comment, record xml in the
+     * View Results Tree) with the names of the files converted
+     */
+    private void replaceChunkFileNames(JmxDocument merged) {
+        merged.replaceText(firstChunkHar, parameters.getFileHarIn());
+        if (firstChunkRecord != null) {
+            merged.replaceText(firstChunkRecord, parameters.getRecordXmlOut());
+        }
+    }
+
+    /**
+     * Replace the placeholders of the spilled bodies with the bodies
+     * @param root the part of the script to restore
+     */
+    private void restoreSpilledTexts(Node root) throws IOException {
+        if (spillStore == null || spillStore.getCount() == 0) {
+            return;
+        }
+        // the same placeholder (same body) gets the same restored String
+        Map<String, String> restoredTexts = new HashMap<>();
+        for (Node node : JmxDocument.findTextNodes(root, spillStore.getPrefix())) {
+            String restored = restoredTexts.get(node.getNodeValue());
+            if (restored == null) {
+                restored = spillStore.restoreText(node.getNodeValue());
+                restoredTexts.put(node.getNodeValue(), restored);
+            }
+            node.setNodeValue(restored);
+        }
+    }
+
+    /**
+     * Write the Thread Group children of the chunk just merged to the jmx file, then remove them from the merged script.
+     * The first chunk also writes the script before the Thread Group children.
+     */
+    private void writeChunkScript() throws IOException {
+        long writeStart = System.nanoTime();
+        JmxDocument merged = jmxMerger.getMerged();
+        if (scriptWriter == null) {
+            replaceChunkFileNames(merged);
+            restoreSpilledTexts(merged.getDocument().getDocumentElement());
+            scriptWriter = new JmxStreamWriter(new File(parameters.getFileJmxOut()));
+            scriptWriter.start(merged);
+        } else {
+            restoreSpilledTexts(merged.getThreadGroupHashTree());
+        }
+        scriptWriter.writeThreadGroupChildren();
+        metrics.addStageTime(ConversionMetrics.STAGE_WRITE_JMX, writeStart);
+    }
+
+    private boolean isChunkToCut(HarChunkWriter writer, long started, long previousStarted, long timeFromPrevious) {
+        if (!parameters.isConvertedByChunks()) {
+            return false;
+        }
+        int entries = writer.getEntriesWritten();
+        long bytes = writer.getBytesWritten();
+        if (entries >= K_CHUNK_MAX_ENTRIES * K_CHUNK_HARD_LIMIT_FACTOR || bytes >= K_CHUNK_MAX_BYTES * K_CHUNK_HARD_LIMIT_FACTOR) {
+            log.info("Chunk " + chunkIndex + " cut in the middle of a page, entries=" + entries + ", bytes=" + bytes);
+            return true;
+        }
+        if (entries < K_CHUNK_MAX_ENTRIES && bytes < K_CHUNK_MAX_BYTES) {
+            return false;
+        }
+        if (transactionMarks != null) {
+            int transaction = transactionMarks.find(started);
+            if (transaction >= 0 && transaction == transactionMarks.find(previousStarted)) {
+                // the transaction of the external file infos is not split between 2 chunks
+                return false;
+            }
+        }
+        long newPageAfterMs = parameters.getCreateNewTransactionAfterRequestMs();
+        // cut at a page boundary so a Transaction Controller is never split between 2 chunks
+        return newPageAfterMs <= 0 || timeFromPrevious > newPageAfterMs;
+    }
+
+    private void convertChunk(File chunkHar, long pauseBeforeMs) throws Exception {
+        progress.checkCancelled();
+        progress.setStage("Convert HAR chunk " + chunkIndex);
+        File chunkJmx = new File(tempDir, "chunk_" + chunkIndex + ".jmx");
+        File chunkRecord = new File(tempDir, "chunk_" + chunkIndex + ".xml");
+        String recordOut = recordMerger == null ? "" : chunkRecord.getAbsolutePath();
+        if (firstChunkHar == null) {
+            firstChunkHar = chunkHar.getAbsolutePath();
+            firstChunkRecord = recordMerger == null ? null : recordOut;
+        }
+
+        long chunkStart = System.nanoTime();
+        int jacksonParserStringMax = parameters.getJacksonParserStringMax();
+        if (spillStore != null && spillStore.getLongestInline() > jacksonParserStringMax) {
+            // the plugin reader has no limit when spilling, the bodies kept inline must be read by the library
+            jacksonParserStringMax = spillStore.getLongestInline();
+            log.info("Jackson String length size of the converter library raised to " + jacksonParserStringMax + " for the bodies not spilled");
+        }
+        HarConvertorProcess.generateJmxAndRecord(parameters, chunkHar.getAbsolutePath(), chunkJmx.getAbsolutePath(), recordOut,
+                pageNumber, samplerNumber, jacksonParserStringMax);
+        long libraryEnd = System.nanoTime();
+        metrics.addStageNanos(ConversionMetrics.STAGE_LIBRARY_CONVERSION, libraryEnd - chunkStart);
+        deleteFile(chunkHar);
+        progress.checkCancelled();
+
+        long mergeStart = System.nanoTime();
+        JmxChunkMerger.ChunkCount count = jmxMerger.append(chunkJmx, pauseBeforeMs);
+        metrics.addStageTime(ConversionMetrics.STAGE_MERGE_JMX, mergeStart);
+        if (isScriptStreamed) {
+            writeChunkScript();
+        }
+        pageNumber += count.getPages();
+        samplerNumber += count.getSamplers();
+        progress.addSamplersWritten(count.getSamplers());
+        deleteFile(chunkJmx);
+
+        if (recordMerger != null) {
+            recordMerger.append(chunkRecord, true);
+        }
+        chunkConversionNanos += System.nanoTime() - chunkStart;
+        log.info("Chunk " + chunkIndex + " converted, pages=" + count.getPages() + ", samplers=" + count.getSamplers());
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Can't delete the temporary file " + file);
+        }
+    }
+
+    static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    deleteFile(file);
+                }
+            }
+        }
+        deleteFile(dir);
+    }
+}
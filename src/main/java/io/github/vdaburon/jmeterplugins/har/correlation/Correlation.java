@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.correlation;
+
+import io.github.vdaburon.jmeterplugins.har.stream.HarEntries;
+
+/**
+ * A dynamic value returned by a response (the producer) and sent again by a later request (a consumer),
+ * e.g. a CSRF token in a hidden input or a session id in a json response.
+ */
+public class Correlation {
+    /** Where the value is found in the response of the producer, gives the regular expression of the extractor */
+    public enum Source {
+        JSON("\"%s\"\\s*:\\s*\"([^\"]+)\"", false),
+        HTML_INPUT("name=[\"']%s[\"'][^>]*?value=[\"']([^\"']+)[\"']", false),
+        HTML_META("name=[\"']%s[\"'][^>]*?content=[\"']([^\"']+)[\"']", false),
+        HEADER("(?i)%s: ([^\\r\\n]+)", true),
+        HEADER_PARAMETER("[?&#]%s=([^&#\\s]+)", true);
+
+        private final String regex;
+        private final boolean isHeaders;
+
+        Source(String regex, boolean isHeaders) {
+            this.regex = regex;
+            this.isHeaders = isHeaders;
+        }
+    }
+
+    private final String value;
+    private final String name;
+    private final Source source;
+    private final long producerIndex;
+    private final String producerUrl;
+    private final int producerOccurrence;
+    private long consumers = 0;
+
+    Correlation(String value, String name, Source source, long producerIndex, String producerUrl, int producerOccurrence) {
+        this.value = value;
+        this.name = name;
+        this.source = source;
+        this.producerIndex = producerIndex;
+        this.producerUrl = producerUrl;
+        this.producerOccurrence = producerOccurrence;
+    }
+
+    /**
+     * @return the value recorded
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the name of the json field, input, meta, header or url parameter with the value in the response
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return the index of the producer in the HAR entries converted, from 0
+     */
+    public long getProducerIndex() {
+        return producerIndex;
+    }
+
+    public String getProducerUrl() {
+        return producerUrl;
+    }
+
+    /**
+     * @return the host and the path without the query of the producer url, to find the producer sampler
+     */
+    public String getProducerHostPath() {
+        return HarEntries.getHostPath(producerUrl);
+    }
+
+    /**
+     * @return the occurrence of the producer among the entries with its host and path, from 1, the producer sampler is
+     * the sampler with this occurrence among the samplers with the same host and path (e.g. the 3rd POST /graphql)
+     */
+    public int getProducerOccurrence() {
+        return producerOccurrence;
+    }
+
+    /**
+     * @return the count of the later requests sending the value
+     */
+    public long getConsumers() {
+        return consumers;
+    }
+
+    void addConsumer() {
+        consumers++;
+    }
+
+    /**
+     * @return the regular expression of the Regular Expression Extractor, the group 1 is the value
+     */
+    public String getExtractorRegex() {
+        return String.format(source.regex, escapeRegex(name));
+    }
+
+    /**
+     * @return true if the value is extracted from the response headers, else from the response body
+     */
+    public boolean isExtractedFromHeaders() {
+        return source.isHeaders;
+    }
+
+    /**
+     * Escape the regular expression characters for the Perl 5 regular expressions of JMeter
+     */
+    static String escapeRegex(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ("\\^$.|?*+()[]{}/".indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return source + " " + name + " of " + producerUrl + ", consumers=" + consumers;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.correlation;
+
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Apply the correlations found in the HAR to the script : a Regular Expression Extractor is added to the producer
+ * sampler and the value is replaced by the variable in the texts of the next samplers and of their children
+ * (e.g. the Header Manager). A value url encoded in a sampler is replaced by ${__urlencode(${variable})}.
+ * The samplers are in the order of the HAR entries, the producer sampler is the sampler with the same occurrence among
+ * the samplers of its host and path as the producer entry among the entries, so the right one of many calls to the
+ * same url (e.g. a single page application calling /graphql) gets the extractor.
+ */
+public class CorrelationApplier {
+    private static final Logger log = LoggerFactory.getLogger(CorrelationApplier.class);
+    private static final String REGEX_EXTRACTOR = "RegexExtractor";
+
+    private final Map<String, Correlation> correlations;
+    private final Map<Correlation, String> variables = new HashMap<>();
+    /** The correlations by producer "host/path occurrence" */
+    private final Map<String, List<Correlation>> correlationsByProducer = new HashMap<>();
+    private final Map<Correlation, Element> producerSamplers = new HashMap<>();
+    private final Map<String, Integer> hostPathSamplers = new HashMap<>();
+    private final Set<String> variableNames = new HashSet<>();
+    private long replacements = 0;
+
+    /**
+     * @param correlations the correlations found by value
+     */
+    public CorrelationApplier(Map<String, Correlation> correlations) {
+        this.correlations = correlations;
+        for (Correlation correlation : correlations.values()) {
+            correlationsByProducer.computeIfAbsent(getProducerKey(correlation.getProducerHostPath(), correlation.getProducerOccurrence()),
+                    key -> new ArrayList<>()).add(correlation);
+        }
+    }
+
+    private static String getProducerKey(String hostPath, int occurrence) {
+        return hostPath + " " + occurrence;
+    }
+
+    /**
+     * Add the extractors and replace the values in the samplers of the first Thread Group
+     * @param document the script
+     */
+    public void apply(JmxDocument document) {
+        Element threadGroup = document.getThreadGroupHashTree();
+        if (threadGroup == null || correlations.isEmpty()) {
+            return;
+        }
+        List<Element> samplers = new ArrayList<>();
+        JmxDocument.findSamplers(threadGroup, samplers);
+        for (Element sampler : samplers) {
+            List<Node> texts = new ArrayList<>();
+            findTextNodes(sampler, texts);
+            Element hashTree = JmxDocument.getHashTreeOf(sampler);
+            if (hashTree != null) {
+                findTextNodes(hashTree, texts);
+            }
+            for (Node text : texts) {
+                replaceValues(document, text);
+            }
+            // the producer of the values of the next samplers, not of its own request
+            String hostPath = JmxDocument.getSamplerHostPath(sampler);
+            int occurrence = hostPathSamplers.merge(hostPath, 1, Integer::sum);
+            List<Correlation> produced = correlationsByProducer.get(getProducerKey(hostPath, occurrence));
+            if (produced != null) {
+                for (Correlation correlation : produced) {
+                    producerSamplers.put(correlation, sampler);
+                }
+            }
+        }
+        for (Correlation correlation : correlations.values()) {
+            if (!producerSamplers.containsKey(correlation)) {
+                log.info("Correlation not applied, no sampler for the producer " + correlation);
+            }
+        }
+    }
+
+    private void replaceValues(JmxDocument document, Node text) {
+        String value = text.getNodeValue();
+        String replaced = value;
+        for (String token : CorrelationIndex.splitTokens(value)) {
+            Correlation correlation = CorrelationIndex.find(correlations, token);
+            if (correlation == null) {
+                continue;
+            }
+            String variable = getVariable(document, correlation);
+            if (variable == null) {
+                continue;
+            }
+            boolean isEncoded = !token.equals(correlation.getValue());
+            replaced = replaced.replace(token, isEncoded ? "${__urlencode(${" + variable + "})}" : "${" + variable + "}");
+            replacements++;
+        }
+        if (!replaced.equals(value)) {
+            text.setNodeValue(replaced);
+        }
+    }
+
+    /**
+     * @return the variable of the correlation, the extractor is added at the first use, null if no producer sampler before
+     */
+    private String getVariable(JmxDocument document, Correlation correlation) {
+        String variable = variables.get(correlation);
+        if (variable != null) {
+            return variable;
+        }
+        Element producer = producerSamplers.get(correlation);
+        Element producerHashTree = producer == null ? null : JmxDocument.getHashTreeOf(producer);
+        if (producerHashTree == null) {
+            // the value is in a sampler before its producer or the producer entry is not converted
+            return null;
+        }
+        variable = createVariableName(correlation.getName());
+        Element extractor = document.getDocument().createElement(REGEX_EXTRACTOR);
+        extractor.setAttribute("guiclass", "RegexExtractorGui");
+        extractor.setAttribute("testclass", REGEX_EXTRACTOR);
+        extractor.setAttribute("testname", "Extract " + variable);
+        extractor.setAttribute("enabled", "true");
+        JmxDocument.setProperty(extractor, "stringProp", "RegexExtractor.useHeaders", String.valueOf(correlation.isExtractedFromHeaders()));
+        JmxDocument.setProperty(extractor, "stringProp", "RegexExtractor.refname", variable);
+        JmxDocument.setProperty(extractor, "stringProp", "RegexExtractor.regex", correlation.getExtractorRegex());
+        JmxDocument.setProperty(extractor, "stringProp", "RegexExtractor.template", "$1$");
+        JmxDocument.setProperty(extractor, "stringProp", "RegexExtractor.default", variable + "_NOT_FOUND");
+        JmxDocument.setProperty(extractor, "stringProp", "RegexExtractor.match_number", "1");
+        JmxDocument.setProperty(extractor, "stringProp", "TestPlan.comments", "Recorded value " + correlation.getValue());
+        document.appendTestElement(producerHashTree, extractor, null);
+        variables.put(correlation, variable);
+        return variable;
+    }
+
+    private String createVariableName(String name) {
+        String base = name.replaceAll("[^A-Za-z0-9_]", "_");
+        String variable = base;
+        for (int i = 2; !variableNames.add(variable); i++) {
+            variable = base + "_" + i;
+        }
+        return variable;
+    }
+
+    private static void findTextNodes(Node node, List<Node> texts) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                if (child.getNodeValue().length() >= CorrelationIndex.K_MIN_TOKEN_LENGTH) {
+                    texts.add(child);
+                }
+            } else if (child.getNodeType() == Node.ELEMENT_NODE) {
+                findTextNodes(child, texts);
+            }
+        }
+    }
+
+    /**
+     * @return the count of correlations with an extractor added
+     */
+    public int getApplied() {
+        return variables.size();
+    }
+
+    /**
+     * @return the count of values replaced by a variable in the samplers
+     */
+    public long getReplacements() {
+        return replacements;
+    }
+}
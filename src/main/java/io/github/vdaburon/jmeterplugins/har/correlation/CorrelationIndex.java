@@ -0,0 +1,249 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.correlation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.vdaburon.jmeterplugins.har.stream.HarEntries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Find the dynamic values to correlate while the HAR entries are read, in one pass.
+ * The token like values of the responses (json fields, hidden inputs, meta, headers and url parameters of the headers)
+ * are indexed with the first entry returning them, then the requests of the next entries are split in tokens
+ * looked up in the index. A value found in a later request is a correlation.
+ * The Cookie and Set-Cookie headers are ignored, the cookies are managed by the Cookie Manager of the script.
+ */
+public class CorrelationIndex {
+    private static final Logger log = LoggerFactory.getLogger(CorrelationIndex.class);
+
+    public static final int K_MIN_TOKEN_LENGTH = 8;
+    public static final int K_MAX_TOKEN_LENGTH = 2048;
+    /** The larger response bodies are not scanned */
+    public static final int K_MAX_SCANNED_BODY_CHARS = 1024 * 1024;
+    /** Max values in the index, the next values are not indexed */
+    public static final int K_MAX_INDEXED_VALUES = 200000;
+
+    private static final Pattern JSON_PAIR = Pattern.compile("\"([A-Za-z_$][\\w.$-]{0,63})\"\\s*:\\s*\"([^\"\\\\\\s]{" + K_MIN_TOKEN_LENGTH + "," + K_MAX_TOKEN_LENGTH + "})\"");
+    private static final Pattern HTML_INPUT = Pattern.compile("<input[^>]*?name=[\"']([^\"']{1,64})[\"'][^>]*?value=[\"']([^\"'\\s]{" + K_MIN_TOKEN_LENGTH + "," + K_MAX_TOKEN_LENGTH + "})[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_META = Pattern.compile("<meta[^>]*?name=[\"']([^\"']{1,64})[\"'][^>]*?content=[\"']([^\"'\\s]{" + K_MIN_TOKEN_LENGTH + "," + K_MAX_TOKEN_LENGTH + "})[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern URL_PARAMETER = Pattern.compile("[?&#]([\\w.-]{1,64})=([^&#\\s]{" + K_MIN_TOKEN_LENGTH + "," + K_MAX_TOKEN_LENGTH + "})");
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}.*");
+    private static final String TOKEN_SEPARATORS = " \t\r\n\"'&?;,:{}[]<>()#|\\";
+
+    private final Map<String, Correlation> index = new HashMap<>();
+    private final Map<String, Correlation> correlations = new LinkedHashMap<>();
+    /** The count of entries by host and path, gives the occurrence of the producer among the samplers of its host and path */
+    private final Map<String, Integer> hostPathEntries = new HashMap<>();
+    private long entryIndex = 0;
+    private int hostPathOccurrence = 0;
+    private boolean isIndexFull = false;
+
+    /**
+     * Look up the request of the entry in the values of the previous responses, then index the response
+     * @param entry the next HAR entry converted
+     */
+    public void addEntry(JsonNode entry) {
+        scanRequest(entry.path("request"));
+        String url = HarEntries.getUrl(entry);
+        hostPathOccurrence = hostPathEntries.merge(HarEntries.getHostPath(url), 1, Integer::sum);
+        indexResponse(entry, url);
+        entryIndex++;
+    }
+
+    private void scanRequest(JsonNode request) {
+        if (index.isEmpty()) {
+            return;
+        }
+        scanText(request.path("url").asText(""));
+        for (JsonNode header : request.path("headers")) {
+            String name = header.path("name").asText("");
+            if (!"cookie".equalsIgnoreCase(name)) {
+                scanText(header.path("value").asText(""));
+            }
+        }
+        JsonNode postData = request.path("postData");
+        if (postData.path("text").isTextual()) {
+            scanText(postData.path("text").textValue());
+        }
+        for (JsonNode param : postData.path("params")) {
+            scanText(param.path("value").asText(""));
+        }
+    }
+
+    private void scanText(String text) {
+        for (String token : splitTokens(text)) {
+            Correlation correlation = find(index, token);
+            if (correlation != null && correlation.getProducerIndex() < entryIndex) {
+                correlation.addConsumer();
+                correlations.putIfAbsent(correlation.getValue(), correlation);
+            }
+        }
+    }
+
+    private void indexResponse(JsonNode entry, String url) {
+        if (isIndexFull) {
+            return;
+        }
+        JsonNode response = entry.path("response");
+        for (JsonNode header : response.path("headers")) {
+            String name = header.path("name").asText("");
+            String value = header.path("value").asText("");
+            if ("set-cookie".equalsIgnoreCase(name)) {
+                continue;
+            }
+            if ("location".equalsIgnoreCase(name) || "content-location".equalsIgnoreCase(name) || "refresh".equalsIgnoreCase(name)) {
+                addMatches(URL_PARAMETER, value, Correlation.Source.HEADER_PARAMETER, url);
+            } else if (isTokenLike(value)) {
+                addValue(value, name, Correlation.Source.HEADER, url);
+            }
+        }
+        JsonNode content = response.path("content");
+        JsonNode text = content.path("text");
+        if (!text.isTextual() || text.textValue().length() > K_MAX_SCANNED_BODY_CHARS || "base64".equals(content.path("encoding").asText(""))) {
+            return;
+        }
+        String mimeType = content.path("mimeType").asText("").toLowerCase();
+        String body = text.textValue();
+        if (mimeType.contains("json") || mimeType.contains("javascript")) {
+            addMatches(JSON_PAIR, body, Correlation.Source.JSON, url);
+        } else if (mimeType.contains("html") || mimeType.contains("xml")) {
+            addMatches(HTML_INPUT, body, Correlation.Source.HTML_INPUT, url);
+            addMatches(HTML_META, body, Correlation.Source.HTML_META, url);
+            addMatches(JSON_PAIR, body, Correlation.Source.JSON, url);
+        }
+    }
+
+    private void addMatches(Pattern pattern, String text, Correlation.Source source, String url) {
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            if (isTokenLike(matcher.group(2))) {
+                addValue(matcher.group(2), matcher.group(1), source, url);
+            }
+        }
+    }
+
+    private void addValue(String value, String name, Correlation.Source source, String url) {
+        if (index.containsKey(value)) {
+            // the first producer is kept
+            return;
+        }
+        if (index.size() >= K_MAX_INDEXED_VALUES) {
+            isIndexFull = true;
+            log.info("Correlation index full, values=" + index.size() + ", the values of the next responses are not indexed");
+            return;
+        }
+        index.put(value, new Correlation(value, name, source, entryIndex, url, hostPathOccurrence));
+    }
+
+    /**
+     * @param value a value of a response
+     * @return true if the value looks like a generated token : letters and digits, no space, not a date
+     */
+    static boolean isTokenLike(String value) {
+        int length = value.length();
+        if (length < K_MIN_TOKEN_LENGTH || length > K_MAX_TOKEN_LENGTH) {
+            return false;
+        }
+        boolean isLetter = false;
+        boolean isDigit = false;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                return false;
+            }
+            isLetter |= Character.isLetter(c);
+            isDigit |= Character.isDigit(c);
+        }
+        return isLetter && isDigit && !value.contains("://") && !DATE.matcher(value).matches();
+    }
+
+    /**
+     * Split a request text (url, header value, body) in the tokens to look up, a token "name=value" gives also "value"
+     * @param text the text to split
+     * @return the tokens long enough to be a value indexed
+     */
+    static List<String> splitTokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || TOKEN_SEPARATORS.indexOf(text.charAt(i)) >= 0) {
+                addToken(text, start, i, tokens);
+                start = i + 1;
+            }
+        }
+        return tokens;
+    }
+
+    private static void addToken(String text, int start, int end, List<String> tokens) {
+        if (end - start < K_MIN_TOKEN_LENGTH) {
+            return;
+        }
+        String token = text.substring(start, end);
+        tokens.add(token);
+        int equal = token.indexOf('=');
+        if (equal > 0 && equal < token.length() - 1 && token.length() - equal - 1 >= K_MIN_TOKEN_LENGTH) {
+            tokens.add(token.substring(equal + 1));
+        }
+    }
+
+    /**
+     * @param values the correlations by value
+     * @param token a token of a request, encoded or not
+     * @return the correlation of the token or of the url decoded token, null if none
+     */
+    static Correlation find(Map<String, Correlation> values, String token) {
+        Correlation correlation = values.get(token);
+        if (correlation == null && (token.indexOf('%') >= 0 || token.indexOf('+') >= 0)) {
+            correlation = values.get(urlDecode(token));
+        }
+        return correlation;
+    }
+
+    static String urlDecode(String token) {
+        try {
+            return URLDecoder.decode(token, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+            return token;
+        }
+    }
+
+    /**
+     * @return the count of values indexed
+     */
+    public int getIndexedValues() {
+        return index.size();
+    }
+
+    /**
+     * @return the correlations found by value, in the order of their first consumer
+     */
+    public Map<String, Correlation> getCorrelations() {
+        return correlations;
+    }
+}
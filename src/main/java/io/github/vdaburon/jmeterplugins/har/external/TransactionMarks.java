@@ -0,0 +1,477 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.external;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The transactions of the external file infos (csv or json) validated and indexed by time.
+ * <ul>
+ * <li>csv : one mark by line <code>timestamp ISO 8601 GMT;TRANSACTION;name;start|stop</code>, a stop ends the transaction started before</li>
+ * <li>json : an array of marks with "name", "type" (start or end) and "timestamp" (epoch GMT ms)</li>
+ * </ul>
+ * An invalid mark (missing field, bad timestamp or type) is an error, the marks not paired (stop without start,
+ * start without stop, names not matching, marks not in the time order) are warnings.
+ * The transactions are sorted by start time without overlap, the transaction of a HAR entry is found by binary search.
+ * The loaded marks are immutable and cached by file, the file is loaded again only if it changed.
+ */
+public class TransactionMarks {
+    private static final Logger log = LoggerFactory.getLogger(TransactionMarks.class);
+
+    public static final String JSON_EXTENSION = ".json";
+    /** The warnings logged and shown, the others are counted only */
+    private static final int MAX_WARNINGS = 20;
+    private static final Map<String, CachedMarks> CACHE = new ConcurrentHashMap<>();
+
+    private final int markCount;
+    private final long[] startMillis;
+    private final long[] endMillis;
+    private final String[] names;
+    private final List<String> warnings;
+    private final int warningCount;
+
+    private TransactionMarks(int markCount, long[] startMillis, long[] endMillis, String[] names, List<String> warnings, int warningCount) {
+        this.markCount = markCount;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.names = names;
+        this.warnings = Collections.unmodifiableList(warnings);
+        this.warningCount = warningCount;
+    }
+
+    /**
+     * Load and validate the external file infos, the file is loaded again only if it changed
+     * @param file the csv or json file (.json extension)
+     * @return the transactions indexed by time
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if a mark is not valid
+     */
+    public static TransactionMarks load(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CachedMarks cached = CACHE.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.marks;
+        }
+        long start = System.currentTimeMillis();
+        TransactionMarks marks;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            marks = file.getName().toLowerCase(Locale.ROOT).endsWith(JSON_EXTENSION) ? parseJson(reader) : parseCsv(reader);
+        }
+        CACHE.put(key, new CachedMarks(lastModified, length, marks));
+        log.info("External file infos loaded from " + file + " in " + (System.currentTimeMillis() - start) + " ms, marks=" + marks.markCount
+                + ", transactions=" + marks.size() + ", warnings=" + marks.warningCount);
+        for (String warning : marks.warnings) {
+            log.warn("External file infos " + file.getName() + " : " + warning);
+        }
+        return marks;
+    }
+
+    /**
+     * @param reader the csv marks, one mark by line
+     * @return the transactions indexed by time
+     * @throws IOException if the marks can't be read
+     * @throws IllegalArgumentException if a line is not a valid mark
+     */
+    public static TransactionMarks parseCsv(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                // UTF-8 byte order mark
+                line = line.substring(1);
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(";", -1);
+            String where = "line " + lineNumber;
+            if (fields.length < 4) {
+                throw new IllegalArgumentException("External file infos " + where + " must be 'timestamp;TRANSACTION;name;start|stop' : " + line);
+            }
+            long millis = parseIsoMillis(fields[0].trim());
+            if (millis < 0) {
+                throw new IllegalArgumentException("External file infos " + where + " timestamp must be ISO 8601 GMT (e.g. 2024-05-06T12:39:58.711Z) : " + line);
+            }
+            if (!"TRANSACTION".equalsIgnoreCase(fields[1].trim())) {
+                throw new IllegalArgumentException("External file infos " + where + " second field must be TRANSACTION : " + line);
+            }
+            builder.add(millis, fields[2].trim(), parseType(fields[3].trim(), where, line), where);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param reader the json marks, an array of objects with name, type and timestamp, at the root or in a field
+     * @return the transactions indexed by time
+     * @throws IOException if the json can't be read
+     * @throws IllegalArgumentException if a mark is not valid or there is no array of marks
+     */
+    public static TransactionMarks parseJson(Reader reader) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(reader);
+        JsonNode array = findMarksArray(root);
+        if (array == null) {
+            throw new IllegalArgumentException("External file infos json must contain an array of marks with \"name\", \"type\" and \"timestamp\"");
+        }
+        Builder builder = new Builder();
+        int index = 0;
+        for (JsonNode mark : array) {
+            String where = "mark " + index++;
+            JsonNode timestamp = mark.path("timestamp");
+            long millis = timestamp.isNumber() ? timestamp.asLong() : parseLong(timestamp.asText(""));
+            if (millis < 0) {
+                throw new IllegalArgumentException("External file infos " + where + " timestamp must be epoch GMT ms (e.g. 1771835429492) : " + mark);
+            }
+            String name = mark.path("name").asText("");
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("External file infos " + where + " without name : " + mark);
+            }
+            builder.add(millis, name, parseType(mark.path("type").asText(""), where, mark.toString()), where);
+        }
+        return builder.build();
+    }
+
+    private static JsonNode findMarksArray(JsonNode node) {
+        if (node.isArray()) {
+            if (node.size() > 0 && node.get(0).isObject() && node.get(0).has("timestamp") && node.get(0).has("type")) {
+                return node;
+            }
+        }
+        Iterator<JsonNode> children = node.elements();
+        while (children.hasNext()) {
+            JsonNode found = findMarksArray(children.next());
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static boolean parseType(String type, String where, String mark) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "start":
+                return true;
+            case "stop":
+            case "end":
+                return false;
+            default:
+                throw new IllegalArgumentException("External file infos " + where + " type must be start, stop or end : " + mark);
+        }
+    }
+
+    /**
+     * @return the epoch ms of a date time ISO 8601 with offset, or without offset for GMT, -1 if not valid
+     */
+    private static long parseIsoMillis(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            try {
+                return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException ex2) {
+                return -1;
+            }
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param millis the startedDateTime of a HAR entry in epoch ms
+     * @return the index of the transaction containing this time (start and end included) or -1
+     */
+    public int find(long millis) {
+        if (millis < 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(startMillis, millis);
+        if (i < 0) {
+            // the last transaction started before
+            i = -i - 2;
+        } else {
+            // the last transaction started at this time
+            while (i + 1 < startMillis.length && startMillis[i + 1] == millis) {
+                i++;
+            }
+        }
+        return i >= 0 && millis <= endMillis[i] ? i : -1;
+    }
+
+    /**
+     * Check the transactions with the HAR entries in each transaction, e.g. to find timestamps not in GMT
+     * @param entriesByTransaction the count of HAR entries found in each transaction (see find)
+     * @param firstStarted the first startedDateTime of the HAR entries or -1
+     * @param lastStarted the last startedDateTime of the HAR entries or -1
+     * @return the mismatches found, empty if every transaction has at least one entry
+     */
+    public List<String> checkEntries(int[] entriesByTransaction, long firstStarted, long lastStarted) {
+        List<String> mismatches = new ArrayList<>();
+        int withoutEntry = countWithoutEntry(entriesByTransaction);
+        if (withoutEntry == 0) {
+            return mismatches;
+        }
+        mismatches.add(withoutEntry + " transactions of " + size() + " without HAR entry");
+        for (int i = 0, shown = 0; i < size() && shown < MAX_WARNINGS; i++) {
+            if (entriesByTransaction[i] == 0) {
+                mismatches.add("transaction '" + names[i] + "' from " + toText(startMillis[i]) + " to " + toText(endMillis[i]) + " without HAR entry");
+                shown++;
+            }
+        }
+        if (size() > 0 && firstStarted >= 0 && (startMillis[0] > lastStarted || lastEndMillis() < firstStarted)) {
+            double hours = (startMillis[0] - firstStarted) / 3_600_000.0;
+            mismatches.add(String.format(Locale.ROOT, "the marks (from %s) are outside the HAR entries (from %s to %s), offset %.2f hours,"
+                    + " the timestamps must be GMT", toText(startMillis[0]), toText(firstStarted), toText(lastStarted), hours));
+        }
+        return mismatches;
+    }
+
+    /**
+     * @param entriesByTransaction the count of HAR entries found in each transaction
+     * @return the count of transactions without HAR entry
+     */
+    public static int countWithoutEntry(int[] entriesByTransaction) {
+        int withoutEntry = 0;
+        for (int entries : entriesByTransaction) {
+            withoutEntry += entries == 0 ? 1 : 0;
+        }
+        return withoutEntry;
+    }
+
+    private long lastEndMillis() {
+        long last = -1;
+        for (long end : endMillis) {
+            last = Math.max(last, end);
+        }
+        return last;
+    }
+
+    private static String toText(long millis) {
+        return millis == Long.MAX_VALUE ? "the end" : OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).toString();
+    }
+
+    /**
+     * @return the count of transactions
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the count of marks (start and stop) in the file
+     */
+    public int getMarkCount() {
+        return markCount;
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    public long getStartMillis(int i) {
+        return startMillis[i];
+    }
+
+    /**
+     * @param i the transaction index
+     * @return the end of the transaction in epoch ms, Long.MAX_VALUE for a transaction without stop
+     */
+    public long getEndMillis(int i) {
+        return endMillis[i];
+    }
+
+    /**
+     * @return the first warnings, the marks not paired or not in the time order
+     */
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * @return the count of all the warnings
+     */
+    public int getWarningCount() {
+        return warningCount;
+    }
+
+    /**
+     * Count the HAR entries in each transaction while the entries are read, then check the transactions with checkEntries
+     */
+    public static class EntryCounter {
+        private final TransactionMarks marks;
+        private final int[] entriesByTransaction;
+        private long firstStarted = -1;
+        private long lastStarted = -1;
+
+        public EntryCounter(TransactionMarks marks) {
+            this.marks = marks;
+            this.entriesByTransaction = new int[marks.size()];
+        }
+
+        /**
+         * @param started the startedDateTime of the HAR entry in epoch ms or -1
+         */
+        public void addEntry(long started) {
+            int transaction = marks.find(started);
+            if (transaction >= 0) {
+                entriesByTransaction[transaction]++;
+            }
+            if (started >= 0) {
+                firstStarted = firstStarted < 0 ? started : Math.min(firstStarted, started);
+                lastStarted = Math.max(lastStarted, started);
+            }
+        }
+
+        /**
+         * @return the count of transactions without HAR entry
+         */
+        public int getWithoutEntry() {
+            return countWithoutEntry(entriesByTransaction);
+        }
+
+        /**
+         * @return the mismatches of the transactions with the HAR entries counted, empty if every transaction has an entry
+         */
+        public List<String> getMismatches() {
+            return marks.checkEntries(entriesByTransaction, firstStarted, lastStarted);
+        }
+    }
+
+    /**
+     * Pair the marks sorted by time : a start ends the transaction not stopped, a stop ends the transaction started
+     */
+    private static class Builder {
+        private final List<Mark> marks = new ArrayList<>();
+        private final List<String> warnings = new ArrayList<>();
+        private int warningCount = 0;
+
+        void add(long millis, String name, boolean isStart, String where) {
+            marks.add(new Mark(millis, name, isStart, where));
+        }
+
+        private void warn(String warning) {
+            if (warningCount++ < MAX_WARNINGS) {
+                warnings.add(warning);
+            }
+        }
+
+        TransactionMarks build() {
+            for (int i = 1; i < marks.size(); i++) {
+                if (marks.get(i).millis < marks.get(i - 1).millis) {
+                    warn("marks not in the time order at " + marks.get(i).where + ", the marks are sorted by timestamp");
+                    // stable sort, the marks at the same time stay in the file order
+                    marks.sort((a, b) -> Long.compare(a.millis, b.millis));
+                    break;
+                }
+            }
+            long[] starts = new long[marks.size()];
+            long[] ends = new long[marks.size()];
+            String[] names = new String[marks.size()];
+            int count = 0;
+            Mark open = null;
+            for (Mark mark : marks) {
+                if (mark.isStart) {
+                    if (open != null) {
+                        warn("transaction '" + open.name + "' (" + open.where + ") not stopped before the start of '" + mark.name + "' (" + mark.where + ")");
+                        starts[count] = open.millis;
+                        ends[count] = mark.millis;
+                        names[count++] = open.name;
+                    }
+                    open = mark;
+                } else if (open == null) {
+                    warn("stop of '" + mark.name + "' (" + mark.where + ") without start");
+                } else {
+                    if (!mark.name.isEmpty() && !mark.name.equals(open.name)) {
+                        warn("stop of '" + mark.name + "' (" + mark.where + ") ends the transaction '" + open.name + "' (" + open.where + ")");
+                    }
+                    starts[count] = open.millis;
+                    ends[count] = mark.millis;
+                    names[count++] = open.name;
+                    open = null;
+                }
+            }
+            if (open != null) {
+                warn("transaction '" + open.name + "' (" + open.where + ") without stop, ends with the HAR");
+                starts[count] = open.millis;
+                ends[count] = Long.MAX_VALUE;
+                names[count++] = open.name;
+            }
+            return new TransactionMarks(marks.size(), Arrays.copyOf(starts, count), Arrays.copyOf(ends, count),
+                    Arrays.copyOf(names, count), warnings, warningCount);
+        }
+    }
+
+    private static class Mark {
+        final long millis;
+        final String name;
+        final boolean isStart;
+        final String where;
+
+        Mark(long millis, String name, boolean isStart, String where) {
+            this.millis = millis;
+            this.name = name;
+            this.isStart = isStart;
+            this.where = where;
+        }
+    }
+
+    private static class CachedMarks {
+        final long lastModified;
+        final long length;
+        final TransactionMarks marks;
+
+        CachedMarks(long lastModified, long length, TransactionMarks marks) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.marks = marks;
+        }
+    }
+}
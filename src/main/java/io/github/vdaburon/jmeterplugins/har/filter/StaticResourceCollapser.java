@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+import io.github.vdaburon.jmeterplugins.har.stream.HarEntries;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collapse the static sub-resources of the pages (images, css, scripts, fonts, media) in the page sampler.
+ * The static entries are not converted, the sampler of their parent html page retrieves the embedded resources
+ * with a pool of parallel downloads like a browser. An entry is static by its Chrome resource type (_resourceType)
+ * or else by the mime type of its response, the parent page is the initiator (_initiator.url), else the Referer,
+ * else the last html page. A static entry without a previous html page is converted.
+ */
+public class StaticResourceCollapser {
+    /** Parallel downloads of the embedded resources, the connections by host of the browsers */
+    public static final int K_EMBEDDED_POOL_SIZE = 6;
+    private static final Set<String> STATIC_RESOURCE_TYPES = new HashSet<>(Arrays.asList("image", "stylesheet", "script", "font", "media"));
+    /** Last html pages kept to find the parent page by url */
+    private static final int MAX_PAGES = 1000;
+
+    private final Map<String, String> pagesByUrl = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<String> parentHostPaths = new HashSet<>();
+    private String lastPageUrl;
+    private long collapsed = 0;
+    private int samplersChanged = 0;
+
+    /**
+     * Classify the next entry converted, the entries must be given in the HAR order
+     * @param entry the HAR entry
+     * @return true if the entry is a static sub-resource collapsed in its parent page, false if the entry is converted
+     */
+    public boolean isCollapsed(JsonNode entry) {
+        String url = HarEntries.getUrl(entry);
+        if (isPage(entry)) {
+            pagesByUrl.put(url, HarEntries.getHostPath(url));
+            lastPageUrl = url;
+            return false;
+        }
+        if (!isStaticResource(entry)) {
+            return false;
+        }
+        String parentUrl = entry.path("_initiator").path("url").asText("");
+        if (!pagesByUrl.containsKey(parentUrl)) {
+            parentUrl = getHeader(entry.path("request"), "referer");
+        }
+        if (!pagesByUrl.containsKey(parentUrl)) {
+            parentUrl = lastPageUrl;
+        }
+        if (parentUrl == null) {
+            return false;
+        }
+        parentHostPaths.add(pagesByUrl.get(parentUrl));
+        collapsed++;
+        return true;
+    }
+
+    /**
+     * @return true if the entry is an html page, a parent of the static resources
+     */
+    static boolean isPage(JsonNode entry) {
+        String resourceType = entry.path("_resourceType").asText("");
+        if (!resourceType.isEmpty()) {
+            return "document".equals(resourceType);
+        }
+        String mimeType = getMimeType(entry);
+        return mimeType.equals("text/html") || mimeType.equals("application/xhtml+xml");
+    }
+
+    /**
+     * @return true if the entry is a GET of an image, css, script, font or media
+     */
+    static boolean isStaticResource(JsonNode entry) {
+        if (!"GET".equalsIgnoreCase(entry.path("request").path("method").asText(""))) {
+            return false;
+        }
+        String resourceType = entry.path("_resourceType").asText("");
+        if (!resourceType.isEmpty()) {
+            return STATIC_RESOURCE_TYPES.contains(resourceType);
+        }
+        return HarEntries.isStaticMimeType(getMimeType(entry));
+    }
+
+    private static String getMimeType(JsonNode entry) {
+        String mimeType = entry.path("response").path("content").path("mimeType").asText("").toLowerCase();
+        int semicolon = mimeType.indexOf(';');
+        return (semicolon < 0 ? mimeType : mimeType.substring(0, semicolon)).trim();
+    }
+
+    private static String getHeader(JsonNode request, String name) {
+        for (JsonNode header : request.path("headers")) {
+            if (name.equalsIgnoreCase(header.path("name").asText(""))) {
+                return header.path("value").asText("");
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Retrieve the embedded resources in parallel in the samplers of the parent pages
+     * @param document the script
+     */
+    public void setEmbeddedResources(JmxDocument document) {
+        Element threadGroup = document.getThreadGroupHashTree();
+        if (threadGroup == null || parentHostPaths.isEmpty()) {
+            return;
+        }
+        List<Element> samplers = new ArrayList<>();
+        JmxDocument.findSamplers(threadGroup, samplers);
+        for (Element sampler : samplers) {
+            if (parentHostPaths.contains(JmxDocument.getSamplerHostPath(sampler))) {
+                JmxDocument.setProperty(sampler, "boolProp", "HTTPSampler.image_parser", "true");
+                JmxDocument.setProperty(sampler, "boolProp", "HTTPSampler.concurrentDwn", "true");
+                JmxDocument.setProperty(sampler, "stringProp", "HTTPSampler.concurrentPool", String.valueOf(K_EMBEDDED_POOL_SIZE));
+                samplersChanged++;
+            }
+        }
+    }
+
+    /**
+     * @return the count of static entries collapsed
+     */
+    public long getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * @return the count of page samplers retrieving the embedded resources
+     */
+    public int getSamplersChanged() {
+        return samplersChanged;
+    }
+}
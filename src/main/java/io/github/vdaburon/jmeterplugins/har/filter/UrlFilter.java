@@ -0,0 +1,311 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * URL filter compiled from a rules file, one rule by line : <code>include|exclude host|prefix|regex value</code>,
+ * empty lines and lines starting with # are ignored, e.g.
+ * <pre>
+ * include host mysite.com
+ * exclude host google-analytics.com
+ * exclude prefix https://mysite.com/static/
+ * exclude regex (?i).*\.(css|js|png|woff2?)(\?.*)?
+ * </pre>
+ * The host rules are in a hash map (the host and its parent domains are looked up), the prefix rules are in a trie,
+ * the regular expressions are only tried if no host or prefix rule matches.
+ * An url is kept if it matches an include rule (or if there is no include rule) and matches no exclude rule.
+ * A compiled filter is immutable and cached by file, the matches are counted by UrlFilterStatistics for one conversion.
+ */
+public class UrlFilter {
+    private static final Logger log = LoggerFactory.getLogger(UrlFilter.class);
+
+    private static final Map<String, CachedUrlFilter> CACHE = new ConcurrentHashMap<>();
+
+    private final List<UrlFilterRule> rules;
+    private final RuleSet includeRules = new RuleSet();
+    private final RuleSet excludeRules = new RuleSet();
+
+    private UrlFilter(List<UrlFilterRule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+        for (UrlFilterRule rule : rules) {
+            (rule.getAction() == UrlFilterRule.Action.INCLUDE ? includeRules : excludeRules).add(rule);
+        }
+    }
+
+    /**
+     * Load and compile the rules file, the filter is compiled again only if the file changed
+     * @param rulesFile the rules file
+     * @return the compiled filter
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if a line is not a valid rule
+     */
+    public static UrlFilter load(File rulesFile) throws IOException {
+        String key = rulesFile.getCanonicalPath();
+        long lastModified = rulesFile.lastModified();
+        CachedUrlFilter cached = CACHE.get(key);
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached.filter;
+        }
+        UrlFilter filter;
+        try (Reader reader = Files.newBufferedReader(rulesFile.toPath(), StandardCharsets.UTF_8)) {
+            filter = parse(reader);
+        }
+        CACHE.put(key, new CachedUrlFilter(lastModified, filter));
+        log.info("URL filter rules loaded from " + rulesFile + ", rules=" + filter.rules.size());
+        return filter;
+    }
+
+    /**
+     * @param reader the rules, one rule by line
+     * @return the compiled filter
+     * @throws IOException if the rules can't be read
+     * @throws IllegalArgumentException if a line is not a valid rule
+     */
+    public static UrlFilter parse(Reader reader) throws IOException {
+        List<UrlFilterRule> rules = new ArrayList<>();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+", 3);
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("URL filter rule line " + lineNumber + " must be 'include|exclude host|prefix|regex value' : " + line);
+            }
+            try {
+                UrlFilterRule.Action action = UrlFilterRule.Action.valueOf(fields[0].toUpperCase());
+                UrlFilterRule.Type type = UrlFilterRule.Type.valueOf(fields[1].toUpperCase());
+                rules.add(new UrlFilterRule(rules.size(), lineNumber, action, type, fields[2]));
+            } catch (PatternSyntaxException ex) {
+                throw new IllegalArgumentException("URL filter rule line " + lineNumber + " invalid regular expression : " + ex.getMessage(), ex);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("URL filter rule line " + lineNumber + " must be 'include|exclude host|prefix|regex value' : " + line, ex);
+            }
+        }
+        return new UrlFilter(rules);
+    }
+
+    public List<UrlFilterRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @param url the url to filter
+     * @return the include rule matching the url, null if no include rule matches
+     */
+    public UrlFilterRule findIncludeRule(String url) {
+        return includeRules.find(url);
+    }
+
+    /**
+     * @param url the url to filter
+     * @return the exclude rule matching the url, null if no exclude rule matches
+     */
+    public UrlFilterRule findExcludeRule(String url) {
+        return excludeRules.find(url);
+    }
+
+    public boolean hasIncludeRules() {
+        return !includeRules.isEmpty();
+    }
+
+    /**
+     * @param url an absolute url, e.g. https://user@www.mysite.com:8443/path?query
+     * @return the host in lower case, e.g. www.mysite.com, an IPv6 literal with its brackets, or an empty string
+     */
+    static String getHost(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = url.length();
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        if (start < end && url.charAt(start) == '[') {
+            // IPv6 literal, e.g. [::1]:8080, the port is after the closing bracket
+            int bracket = url.indexOf(']', start);
+            if (bracket >= 0 && bracket < end) {
+                end = bracket + 1;
+            }
+        } else {
+            int colon = url.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                end = colon;
+            }
+        }
+        return url.substring(start, end).toLowerCase();
+    }
+
+    /**
+     * The include or the exclude rules : host map, prefix trie and regular expressions.
+     */
+    private static class RuleSet {
+        private final Map<String, UrlFilterRule> hosts = new HashMap<>();
+        private final PrefixTrie prefixes = new PrefixTrie();
+        private final List<UrlFilterRule> regexes = new ArrayList<>();
+
+        void add(UrlFilterRule rule) {
+            switch (rule.getType()) {
+                case HOST:
+                    hosts.putIfAbsent(rule.getValue(), rule);
+                    break;
+                case PREFIX:
+                    prefixes.add(rule);
+                    break;
+                default:
+                    regexes.add(rule);
+                    break;
+            }
+        }
+
+        boolean isEmpty() {
+            return hosts.isEmpty() && prefixes.isEmpty() && regexes.isEmpty();
+        }
+
+        UrlFilterRule find(String url) {
+            if (!hosts.isEmpty()) {
+                // the host then the parent domains : a.b.mysite.com, b.mysite.com, mysite.com, com
+                String host = getHost(url);
+                while (!host.isEmpty()) {
+                    UrlFilterRule rule = hosts.get(host);
+                    if (rule != null) {
+                        return rule;
+                    }
+                    int dot = host.indexOf('.');
+                    host = dot < 0 ? "" : host.substring(dot + 1);
+                }
+            }
+            UrlFilterRule rule = prefixes.find(url);
+            if (rule != null) {
+                return rule;
+            }
+            for (UrlFilterRule regex : regexes) {
+                if (regex.getPattern().matcher(url).matches()) {
+                    return regex;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Trie of the prefix rules, a node by char, the children are in sorted arrays to keep the nodes small.
+     */
+    private static class PrefixTrie {
+        private final Node root = new Node();
+        private boolean isEmpty = true;
+
+        void add(UrlFilterRule rule) {
+            Node node = root;
+            for (int i = 0; i < rule.getValue().length(); i++) {
+                node = node.getOrCreateChild(rule.getValue().charAt(i));
+            }
+            if (node.rule == null) {
+                node.rule = rule;
+            }
+            isEmpty = false;
+        }
+
+        boolean isEmpty() {
+            return isEmpty;
+        }
+
+        /**
+         * @return the rule of the shortest prefix of the url, null if no prefix matches
+         */
+        UrlFilterRule find(String url) {
+            Node node = root;
+            for (int i = 0; i < url.length() && node != null; i++) {
+                node = node.getChild(url.charAt(i));
+                if (node != null && node.rule != null) {
+                    return node.rule;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private UrlFilterRule rule;
+
+        Node getChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node getOrCreateChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insert = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            newChildren[insert] = new Node();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, keys.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insert];
+        }
+    }
+
+    private static class CachedUrlFilter {
+        private final long lastModified;
+        private final UrlFilter filter;
+
+        CachedUrlFilter(long lastModified, UrlFilter filter) {
+            this.lastModified = lastModified;
+            this.filter = filter;
+        }
+    }
+}
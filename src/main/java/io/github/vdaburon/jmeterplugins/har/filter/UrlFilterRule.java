@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.filter;
+
+import java.util.regex.Pattern;
+
+/**
+ * One rule of the URL filter rules file, e.g. "exclude host googletagmanager.com".
+ */
+public class UrlFilterRule {
+    public enum Action { INCLUDE, EXCLUDE }
+
+    public enum Type {
+        /** the host of the url or a parent domain of the host (case insensitive) */
+        HOST,
+        /** the beginning of the url */
+        PREFIX,
+        /** a regular expression matching the whole url */
+        REGEX
+    }
+
+    private final int index;
+    private final int lineNumber;
+    private final Action action;
+    private final Type type;
+    private final String value;
+    private final Pattern pattern;
+
+    UrlFilterRule(int index, int lineNumber, Action action, Type type, String value) {
+        this.index = index;
+        this.lineNumber = lineNumber;
+        this.action = action;
+        this.type = type;
+        this.value = type == Type.HOST ? value.toLowerCase() : value;
+        this.pattern = type == Type.REGEX ? Pattern.compile(value) : null;
+    }
+
+    /**
+     * @return the index of the rule in the rules file, from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    Pattern getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return action.name().toLowerCase() + " " + type.name().toLowerCase() + " " + value;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filter the urls of one conversion and count the matches of each rule, the rule counted is the rule which decides :
+ * the include rule which keeps the url or the exclude rule which drops the url.
+ */
+public class UrlFilterStatistics {
+    private final UrlFilter filter;
+    private final AtomicLongArray hits;
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public UrlFilterStatistics(UrlFilter filter) {
+        this.filter = filter;
+        this.hits = new AtomicLongArray(filter.getRules().size());
+    }
+
+    /**
+     * @param url the url of the HAR entry
+     * @return true if the entry is kept, false if dropped
+     */
+    public boolean isKept(String url) {
+        if (filter.hasIncludeRules()) {
+            UrlFilterRule include = filter.findIncludeRule(url);
+            if (include == null) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            hits.incrementAndGet(include.getIndex());
+        }
+        UrlFilterRule exclude = filter.findExcludeRule(url);
+        if (exclude != null) {
+            hits.incrementAndGet(exclude.getIndex());
+            dropped.incrementAndGet();
+            return false;
+        }
+        kept.incrementAndGet();
+        return true;
+    }
+
+    public UrlFilter getFilter() {
+        return filter;
+    }
+
+    public long getHits(UrlFilterRule rule) {
+        return hits.get(rule.getIndex());
+    }
+
+    public long getKept() {
+        return kept.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return one line by rule with the count of matches then the count of urls kept and dropped
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (UrlFilterRule rule : filter.getRules()) {
+            sb.append(String.format("%8d  line %-4d %s%n", getHits(rule), rule.getLineNumber(), rule));
+        }
+        sb.append("URLs kept=").append(getKept()).append(", dropped=").append(getDropped());
+        return sb.toString();
+    }
+}
@@ -18,6 +18,17 @@
 package io.github.vdaburon.jmeterplugins.har.gui;
 
 import io.github.vdaburon.jmeter.har.HarForJMeter;
+import io.github.vdaburon.jmeterplugins.har.ConversionCache;
+import io.github.vdaburon.jmeterplugins.har.ConversionMetrics;
+import io.github.vdaburon.jmeterplugins.har.ConversionProfiles;
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+import io.github.vdaburon.jmeterplugins.har.external.TransactionMarks;
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilterStatistics;
+import io.github.vdaburon.jmeterplugins.har.jmx.TimerGenerator;
+import io.github.vdaburon.jmeterplugins.har.stream.HarInputStreams;
+import io.github.vdaburon.jmeterplugins.har.stream.HarInspector;
+import io.github.vdaburon.jmeterplugins.har.stream.MappedHarReader;
 
 import org.apache.jmeter.exceptions.IllegalUserActionException;
 import org.apache.jmeter.gui.GuiPackage;
@@ -27,7 +38,7 @@ import org.apache.jmeter.gui.action.AbstractAction;
 import org.apache.jmeter.gui.plugin.MenuCreator;
 import org.apache.jmeter.gui.util.EscapeDialog;
 import org.apache.jmeter.gui.util.VerticalPanel;
-import org.apache.jmeter.save.SaveService;
+import org.apache.jmeter.services.FileServer;
 import org.apache.jorphan.collections.HashTree;
 import org.apache.jorphan.gui.ComponentUtil;
 
@@ -35,14 +46,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 public class HarConvertorGui extends AbstractAction implements
         ActionListener, UnsharedComponent, MenuCreator, Serializable {
@@ -57,10 +76,17 @@ public class HarConvertorGui extends AbstractAction implements
     private static final String BROWSE_JMX_OUT = "BROWSE_JMX_OUT";
     private static final String BROWSE_RECORD_OUT = "BROWSE_RECORD_OUT";
     private static final String BROWSE_EXTERNAL_FILE_IN = "BROWSE_EXTERNAL_FILE_IN";
+    private static final String BROWSE_FILTER_RULES = "BROWSE_FILTER_RULES";
     private static final String ACTION_CONVERT = "ACTION_CONVERT";
     private static final String ACTION_CONVERT_AND_LOAD_SCRIPT = "ACTION_CONVERT_LOAD";
     private static final String ACTION_MENU_TOOL = "ACTION_MENU_TOOL";
     private static final String ACTION_CHECKBOX_WEBSOCKET = "ACTION_CHECKBOX_WEBSOCKET";
+    private static final String ACTION_CANCEL = "ACTION_CANCEL";
+    private static final String ACTION_INSPECT = "ACTION_INSPECT";
+    private static final String ACTION_PROFILE_LOAD = "ACTION_PROFILE_LOAD";
+    private static final String ACTION_PROFILE_SAVE = "ACTION_PROFILE_SAVE";
+    private static final String ACTION_PROFILE_DELETE = "ACTION_PROFILE_DELETE";
+    private static final int PROGRESS_REFRESH_MS = 250;
 
     private EscapeDialog messageDialog;
     
@@ -68,27 +94,51 @@ public class HarConvertorGui extends AbstractAction implements
     private JTextField fileJmxOutTextField;
     private JTextField fileRecordOutTextField;
     private JTextField externalFileInfoInField;
+    private JTextField filterRulesFileField;
     private JTextField pauseBetweenUrlTextField;
     private JTextField pageStartNumberTextField;
     private JTextField samplerStartNumberTextField;
+    private JTextField selectStartField;
+    private JTextField selectEndField;
+    private JTextField selectEveryPageField;
+    private JTextField wsBatchMinFramesField;
+    private JComboBox<String> timerModeComboBox;
+    private JTextField fragmentPagesField;
     private JButton fileHarInFileButton;
     private JTextField regexFilterIncludeField;
     private JTextField regexFilterExcludeField;
     private JTextField removeHeadersField;
     private JTextField jacksonParserStringMaxField;
+    private JTextField spillBodyThresholdField;
+    private JTextField cacheMaxMbField;
     private JButton fileJmxOutFileButton;
     private JButton fileRecordOutFileButton;
     private JButton externalFileInfoInButton;
+    private JButton filterRulesFileButton;
     private JCheckBox isAddPauseCheckbox;
     private JCheckBox isRemoveCookieCheckbox;
     private JCheckBox isRemoveCacheRequestHeaderCheckbox;
     private JCheckBox isAddResultTreeRecordCheckbox;
     private JCheckBox isWebSocketPDoornboschCheckbox;
+    private JCheckBox isStreamingModeCheckbox;
+    private JCheckBox isMetricsReportCheckbox;
+    private JCheckBox isMappedReaderCheckbox;
+    private JCheckBox isCompactHeadersCheckbox;
+    private JCheckBox isAutoCorrelationCheckbox;
+    private JCheckBox isCollapseStaticCheckbox;
 
     private JButton btConvert;
+    private JButton btInspect;
     private JButton btConvertAndLoad;
+    private JButton btCancel;
+    private JProgressBar progressBar;
+    private Timer progressTimer;
+    private HarConvertorWorker worker;
     private String lastJFCDirectory;
     private JTextField labelStatus;
+    private JComboBox<String> profileComboBox;
+    private JTextArea conversionReportArea;
+    private JScrollPane conversionReportPane;
 
     static {
         commands.add(ACTION_MENU_TOOL);
@@ -134,8 +184,11 @@ public class HarConvertorGui extends AbstractAction implements
         vertPanel.setBorder(BorderFactory.createTitledBorder(
         BorderFactory.createEtchedBorder(), "HAR Convertor Configuration"));
 
+        vertPanel.add(createProfilePanel());
         vertPanel.add(setupFileChooserPanel());
         vertPanel.add(createFilterAndPausePanel());
+        vertPanel.add(new PageGroupingPreviewPanel(fileHarInTextField, filterRulesFileField, regexFilterIncludeField,
+                regexFilterExcludeField, pauseBetweenUrlTextField, pageStartNumberTextField));
         vertPanel.add(createCheckbox());
         vertPanel.add(createControls());
         
@@ -143,6 +196,19 @@ public class HarConvertorGui extends AbstractAction implements
         labelStatus.setEditable(false);
         vertPanel.add(labelStatus);
 
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        vertPanel.add(progressBar);
+
+        conversionReportArea = new JTextArea(12, 80);
+        conversionReportArea.setEditable(false);
+        conversionReportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, conversionReportArea.getFont().getSize()));
+        conversionReportPane = new JScrollPane(conversionReportArea);
+        conversionReportPane.setBorder(BorderFactory.createTitledBorder("Conversion report"));
+        conversionReportPane.setVisible(false);
+        vertPanel.add(conversionReportPane);
+
         mainPanel.add(vertPanel);
         contentPane.add(mainPanel);
 
@@ -152,7 +218,6 @@ public class HarConvertorGui extends AbstractAction implements
 	@Override
     public void actionPerformed(ActionEvent action) {
         String command = action.getActionCommand();
-        Exception except = null;
  
 //        log.info("command=" + command);
         if (command.equals(ACTION_MENU_TOOL)) {
@@ -165,12 +230,20 @@ public class HarConvertorGui extends AbstractAction implements
         
         if (command.equals(ACTION_CONVERT) || command.equals(ACTION_CONVERT_AND_LOAD_SCRIPT)) {
             String fileHarIn= fileHarInTextField.getText();
-            
-            File fFileIn = new File(fileHarIn);
-            if (!fFileIn.canRead()) {
-            	labelStatus.setText("Tool HAR Convertor Finished KO, CAN'T READ HAR fileHarIn = " + fileHarIn);
-            	labelStatus.setForeground(java.awt.Color.RED);
-            	return;
+            HarConvertorParameters parametersHarIn = new HarConvertorParameters();
+            parametersHarIn.setFileHarIn(fileHarIn);
+            List<String> filesHarIn = parametersHarIn.getFilesHarIn();
+            if (filesHarIn.isEmpty()) {
+                filesHarIn.add(fileHarIn);
+            }
+
+            for (String oneFileHarIn : filesHarIn) {
+                File fFileIn = new File(oneFileHarIn);
+                if (!fFileIn.canRead()) {
+                    labelStatus.setText("Tool HAR Convertor Finished KO, CAN'T READ HAR fileHarIn = " + oneFileHarIn);
+                    labelStatus.setForeground(java.awt.Color.RED);
+                    return;
+                }
             }
 
             String externalFileInfoIn= externalFileInfoInField.getText();
@@ -181,6 +254,22 @@ public class HarConvertorGui extends AbstractAction implements
                     labelStatus.setForeground(java.awt.Color.RED);
                     return;
                 }
+                try {
+                    // validated before the conversion, the marks loaded are used again by the conversion
+                    TransactionMarks.load(fExternalFileInfoIn);
+                } catch (IOException | IllegalArgumentException ex) {
+                    log.warn("Invalid external file infos " + externalFileInfoIn + ", exception = " + ex);
+                    labelStatus.setText("Tool HAR Convertor Finished KO, INVALID externalFileInfoIn = " + ex.getMessage());
+                    labelStatus.setForeground(java.awt.Color.RED);
+                    return;
+                }
+            }
+
+            String filterRulesFile = filterRulesFileField.getText().trim();
+            if (!filterRulesFile.isEmpty() && !new File(filterRulesFile).canRead()) {
+                labelStatus.setText("Tool HAR Convertor Finished KO, CAN'T READ URL filter rules file = " + filterRulesFile);
+                labelStatus.setForeground(java.awt.Color.RED);
+                return;
             }
 
             String fileJmxOut= fileJmxOutTextField.getText();
@@ -191,7 +280,8 @@ public class HarConvertorGui extends AbstractAction implements
             String jacksonParserStringMax = jacksonParserStringMaxField.getText();
 
             if (fileJmxOut.trim().isEmpty()) {
-            	fileJmxOut = fileHarIn.substring(0,fileHarIn.lastIndexOf(".")) + ".jmx";
+            	// with several HAR files merged, the script is named from the first HAR file
+            	fileJmxOut = HarConvertorParameters.getDefaultJmxOut(filesHarIn.get(0));
             }
             if (regexFilterInclude.trim().isEmpty()) {
             	regexFilterInclude = "";
@@ -257,69 +347,117 @@ public class HarConvertorGui extends AbstractAction implements
                 log.info("Set " + HarForJMeter.K_JACKSON_PARSER_STRING_MAX + "=<" + iJacksonParserStringMax + ">");
             }
 
+            String spillBodyThreshold = spillBodyThresholdField.getText();
+            long lSpillBodyThreshold = 0;
+            if (!spillBodyThreshold.isEmpty()) {
+                try {
+                    lSpillBodyThreshold = Long.parseLong(spillBodyThreshold);
+                } catch (Exception ex) {
+                    log.warn("Error parsing long parameter " + ", value = " + spillBodyThreshold + ", set to 0 (no spill)");
+                    lSpillBodyThreshold = 0;
+                }
+            }
+
+            String cacheMaxMb = cacheMaxMbField.getText();
+            long lCacheMaxMb = ConversionCache.K_CACHE_MAX_MB_DEFAULT;
+            if (!cacheMaxMb.isEmpty()) {
+                try {
+                    lCacheMaxMb = Math.max(0, Long.parseLong(cacheMaxMb));
+                } catch (Exception ex) {
+                    log.warn("Error parsing long parameter " + ", value = " + cacheMaxMb + ", set to " + ConversionCache.K_CACHE_MAX_MB_DEFAULT + " Default value");
+                    lCacheMaxMb = ConversionCache.K_CACHE_MAX_MB_DEFAULT;
+                }
+            }
+
+            String selectEveryPage = selectEveryPageField.getText().trim();
+            int iSelectEveryPage = 1;
+            if (!selectEveryPage.isEmpty()) {
+                try {
+                    iSelectEveryPage = Math.max(1, Integer.parseInt(selectEveryPage));
+                } catch (Exception ex) {
+                    log.warn("Error parsing int parameter " + ", value = " + selectEveryPage + ", set to 1 (all the pages)");
+                    iSelectEveryPage = 1;
+                }
+            }
+
+            String wsBatchMinFrames = wsBatchMinFramesField.getText().trim();
+            int iWsBatchMinFrames = 0;
+            if (!wsBatchMinFrames.isEmpty()) {
+                try {
+                    iWsBatchMinFrames = Math.max(0, Integer.parseInt(wsBatchMinFrames));
+                } catch (Exception ex) {
+                    log.warn("Error parsing int parameter " + ", value = " + wsBatchMinFrames + ", set to 0 (no batch)");
+                    iWsBatchMinFrames = 0;
+                }
+            }
+
+            String fragmentPages = fragmentPagesField.getText().trim();
+            int iFragmentPages = 0;
+            if (!fragmentPages.isEmpty()) {
+                try {
+                    iFragmentPages = Math.max(0, Integer.parseInt(fragmentPages));
+                } catch (Exception ex) {
+                    log.warn("Error parsing int parameter " + ", value = " + fragmentPages + ", set to 0 (one script)");
+                    iFragmentPages = 0;
+                }
+            }
+
             boolean isRemoveCookieHeader = isRemoveCookieCheckbox.isSelected();
             boolean isRemoveCacheRequestHeader = isRemoveCacheRequestHeaderCheckbox.isSelected();
             boolean isAddResultTreeRecord = isAddResultTreeRecordCheckbox.isSelected();
             boolean isWebSocketPDoornbosch = isWebSocketPDoornboschCheckbox.isSelected();
 
-            try {
-            	btConvert.setEnabled(false);
-            	labelStatus.setText("Tool HAR Convert Running");
-            	log.info("Before HarForJMeter.generateJmxAndRecord");
-                log.info("************* PARAMETERS ***************");
-            	log.info("fileHarIn=<"+ fileHarIn + ">");
-                log.info("fileJmxOut=<" + fileJmxOut + ">");
-                log.info("recordXmlOut=<" + recordXmlOut + ">");
-                log.info("isAddResultTreeRecord=<" + isAddResultTreeRecord + ">");
-                log.info("isWebSocketPDoornbosch=<" + isWebSocketPDoornbosch + ">");
-                log.info("createNewTransactionAfterRequestMs=<" + createNewTransactionAfterRequestMs + ">");
-                log.info("isAddPause=<" + isAddPause + ">");
-                log.info("regexFilterInclude=<" + regexFilterInclude + ">");
-                log.info("regexFilterExclude=<" + regexFilterExclude + ">");
-                log.info("removeHeaders=<" + removeHeaders + ">");
-                log.info("jacksonParserStringMax=<" + iJacksonParserStringMax + ">");
-                log.info("isRemoveCookieHeader=<" + isRemoveCookieHeader + ">");
-                log.info("samplerStartNumber=<" + samplerStartNumber + ">");
-                log.info("samplerStartNumber=<" + samplerStartNumber + ">");
-                log.info("externalFileInfoIn=<" + externalFileInfoIn + ">");
-                log.info("****************************************");
-
-                HarForJMeter.generateJmxAndRecord(fileHarIn, iJacksonParserStringMax, fileJmxOut,createNewTransactionAfterRequestMs,isAddPause, isRemoveCookieHeader, isRemoveCacheRequestHeader,
-                                                regexFilterInclude, regexFilterExclude, recordXmlOut, pageStartNumber, samplerStartNumber, externalFileInfoIn,
-                                                isAddResultTreeRecord, isWebSocketPDoornbosch,removeHeaders);
-
-                log.info("After HarForJMeter.generateJmxAndRecord");
-                btConvert.setEnabled(true);
-                if (!recordXmlOut.isEmpty()) {
-                    labelStatus.setText("Tool HAR Convertor Finished OK, fileJmxOut=" + fileJmxOut + " AND recordXmlOut=" + recordXmlOut);
-                } else {
-                    labelStatus.setText("Tool HAR Convertor Finished OK, fileJmxOut=" + fileJmxOut);
-                }
-     	 		labelStatus.setForeground(java.awt.Color.BLACK);
+            HarConvertorParameters parameters = new HarConvertorParameters();
+            parameters.setFileHarIn(fileHarIn);
+            parameters.setFileJmxOut(fileJmxOut);
+            parameters.setRecordXmlOut(recordXmlOut);
+            parameters.setExternalFileInfoIn(externalFileInfoIn);
+            parameters.setFilterRulesFile(filterRulesFile);
+            parameters.setRegexFilterInclude(regexFilterInclude);
+            parameters.setRegexFilterExclude(regexFilterExclude);
+            parameters.setRemoveHeaders(removeHeaders);
+            parameters.setCreateNewTransactionAfterRequestMs(createNewTransactionAfterRequestMs);
+            parameters.setPageStartNumber(pageStartNumber);
+            parameters.setSamplerStartNumber(samplerStartNumber);
+            parameters.setSelectStart(selectStartField.getText().trim());
+            parameters.setSelectEnd(selectEndField.getText().trim());
+            parameters.setSelectEveryPage(iSelectEveryPage);
+            parameters.setJacksonParserStringMax(iJacksonParserStringMax);
+            parameters.setAddPause(isAddPause);
+            parameters.setRemoveCookieHeader(isRemoveCookieHeader);
+            parameters.setRemoveCacheRequestHeader(isRemoveCacheRequestHeader);
+            parameters.setAddResultTreeRecord(isAddResultTreeRecord);
+            parameters.setWebSocketPDoornbosch(isWebSocketPDoornbosch);
+            parameters.setWsBatchMinFrames(iWsBatchMinFrames);
+            parameters.setStreamingMode(isStreamingModeCheckbox.isSelected());
+            parameters.setMetricsReport(isMetricsReportCheckbox.isSelected());
+            parameters.setMappedReader(isMappedReaderCheckbox.isSelected());
+            parameters.setCompactHeaders(isCompactHeadersCheckbox.isSelected());
+            parameters.setAutoCorrelation(isAutoCorrelationCheckbox.isSelected());
+            parameters.setCollapseStatic(isCollapseStaticCheckbox.isSelected());
+            parameters.setTimerMode((String) timerModeComboBox.getSelectedItem());
+            parameters.setFragmentPages(iFragmentPages);
+            parameters.setSpillBodyThreshold(lSpillBodyThreshold);
+            parameters.setCacheMaxMb(lCacheMaxMb);
+
+            startConversion(parameters, command.equals(ACTION_CONVERT_AND_LOAD_SCRIPT));
+        }
 
-                if (command.equals(ACTION_CONVERT_AND_LOAD_SCRIPT)) {
-                    // open the script generated in current JMeter
-                    final HashTree tree = SaveService.loadTree(new File(fileJmxOut));
-                    org.apache.jmeter.gui.action.Load.insertLoadedTree(1,tree);
-                }
-             } catch (Exception e) {
-                e.printStackTrace();
-                log.warn("Tool HAR Convertor Finished KO, exception = " + e);
-                except = e;
-                btConvert.setEnabled(true);
-                btConvertAndLoad.setEnabled(true);
-                labelStatus.setText("Tool HAR Convertor Finished KO, exception = " + e);
-                labelStatus.setForeground(java.awt.Color.RED);
-            }
-            
-            if (null == except) {
-                 btConvert.setEnabled(true);
+        if (command.equals(ACTION_INSPECT)) {
+            startInspection();
+        }
+
+        if (command.equals(ACTION_CANCEL)) {
+            if (worker != null) {
+                labelStatus.setText("Tool HAR Convertor Cancelling, waiting the end of the current step ...");
+                btCancel.setEnabled(false);
+                worker.requestCancel();
             }
         }
 
         if (command.equals(BROWSE_HAR_IN)) {
         	fileHarInTextField.setText(showFileChooser(fileHarInTextField.getParent(),
-                    fileHarInTextField, false, new String[] { ".har" }));
+                    fileHarInTextField, false, HarInputStreams.HAR_FILE_EXTENSIONS, true));
         	labelStatus.setText("Waiting configuration ... ");
         	labelStatus.setForeground(java.awt.Color.BLACK);
         }
@@ -333,7 +471,7 @@ public class HarConvertorGui extends AbstractAction implements
 
         if (command.equals(BROWSE_RECORD_OUT)) {
             fileRecordOutTextField.setText(showFileChooser(fileRecordOutTextField.getParent(),
-                    fileRecordOutTextField, false, new String[] { ".xml" }));
+                    fileRecordOutTextField, false, new String[] { ".xml", ".xml.gz" }));
             labelStatus.setText("Waiting configuration ... ");
             labelStatus.setForeground(java.awt.Color.BLACK);
         }
@@ -345,6 +483,17 @@ public class HarConvertorGui extends AbstractAction implements
             labelStatus.setForeground(java.awt.Color.BLACK);
         }
 
+        if (command.equals(BROWSE_FILTER_RULES)) {
+            filterRulesFileField.setText(showFileChooser(filterRulesFileField.getParent(),
+                    filterRulesFileField, false, new String[] { ".txt" }));
+            labelStatus.setText("Waiting configuration ... ");
+            labelStatus.setForeground(java.awt.Color.BLACK);
+        }
+
+        if (command.equals(ACTION_PROFILE_LOAD) || command.equals(ACTION_PROFILE_SAVE) || command.equals(ACTION_PROFILE_DELETE)) {
+            doProfileAction(command);
+        }
+
         if (command.equals(ACTION_CHECKBOX_WEBSOCKET)) {
             boolean isWSChecked = isWebSocketPDoornboschCheckbox.isSelected();
             if (isWSChecked) {
@@ -376,12 +525,402 @@ public class HarConvertorGui extends AbstractAction implements
         btConvertAndLoad.setActionCommand(ACTION_CONVERT_AND_LOAD_SCRIPT);
         btConvertAndLoad.setEnabled(true);
 
+        btCancel = new JButton("CANCEL");
+        btCancel.addActionListener(this);
+        btCancel.setActionCommand(ACTION_CANCEL);
+        btCancel.setEnabled(false);
+
+        btInspect = new JButton("INSPECT");
+        btInspect.setToolTipText("Fast scan of the HAR : hosts, largest bodies, time span, WebSocket, suggested filter rules and Jackson string max");
+        btInspect.addActionListener(this);
+        btInspect.setActionCommand(ACTION_INSPECT);
+        btInspect.setEnabled(true);
+
         JPanel panel = new JPanel();
         panel.add(btConvertAndLoad);
         panel.add(btConvert);
+        panel.add(btInspect);
+        panel.add(btCancel);
+        return panel;
+    }
+
+    /**
+     * Start the conversion in a background thread, the Swing thread only refreshes the progress
+     * @param parameters the conversion parameters read from the dialog
+     * @param isLoadScript load the generated script in JMeter if the conversion is OK
+     */
+    private void startConversion(HarConvertorParameters parameters, boolean isLoadScript) {
+        final boolean isConvertAndLoadEnabled = btConvertAndLoad.isEnabled();
+        btConvert.setEnabled(false);
+        btConvertAndLoad.setEnabled(false);
+        btCancel.setEnabled(true);
+        labelStatus.setText("Tool HAR Convert Running");
+        labelStatus.setForeground(java.awt.Color.BLACK);
+        progressBar.setValue(0);
+        progressBar.setIndeterminate(true);
+        if (conversionReportPane.isVisible()) {
+            conversionReportPane.setVisible(false);
+            messageDialog.pack();
+        }
+
+        worker = new HarConvertorWorker(parameters, new ConversionProgress(), isLoadScript) {
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                conversionDone(this, isConvertAndLoadEnabled);
+            }
+        };
+        progressTimer = new Timer(PROGRESS_REFRESH_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refreshProgress(worker.getConversionProgress());
+            }
+        });
+        progressTimer.start();
+        worker.execute();
+    }
+
+    private void refreshProgress(ConversionProgress progress) {
+        int percent = progress.getPercentRead();
+        if (percent >= 0) {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue(percent);
+        } else {
+            progressBar.setIndeterminate(true);
+        }
+        StringBuilder sb = new StringBuilder(progress.getStage());
+        if (progress.getEntriesRead() > 0) {
+            sb.append(", entries parsed ").append(progress.getEntriesRead());
+        }
+        if (progress.getSamplersWritten() > 0) {
+            sb.append(", samplers written ").append(progress.getSamplersWritten());
+        }
+        if (progress.getHarBytesRead() > 0) {
+            sb.append(", read ").append(toMegaBytes(progress.getHarBytesRead())).append("/").append(toMegaBytes(progress.getHarBytesTotal())).append(" MB");
+        }
+        sb.append(", written ").append(toMegaBytes(progress.getBytesWritten())).append(" MB");
+        progressBar.setString(sb.toString());
+    }
+
+    private static String toMegaBytes(long bytes) {
+        return String.format("%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    private void conversionDone(HarConvertorWorker finishedWorker, boolean isConvertAndLoadEnabled) {
+        worker = null;
+        btConvert.setEnabled(true);
+        btConvertAndLoad.setEnabled(isConvertAndLoadEnabled);
+        btCancel.setEnabled(false);
+        progressBar.setIndeterminate(false);
+        refreshProgress(finishedWorker.getConversionProgress());
+        showConversionReport(finishedWorker.getConversionProgress());
+
+        HarConvertorParameters parameters = finishedWorker.getParameters();
+        try {
+            HashTree tree = finishedWorker.get();
+            progressBar.setValue(100);
+            if (!parameters.getRecordXmlOut().isEmpty()) {
+                labelStatus.setText("Tool HAR Convertor Finished OK, fileJmxOut=" + parameters.getFileJmxOut() + " AND recordXmlOut=" + parameters.getRecordXmlOut());
+            } else {
+                labelStatus.setText("Tool HAR Convertor Finished OK, fileJmxOut=" + parameters.getFileJmxOut());
+            }
+            labelStatus.setForeground(java.awt.Color.BLACK);
+
+            if (finishedWorker.isLoadScript() && tree != null) {
+                // open the script generated in current JMeter, the relative paths of the script (e.g. the Include Controllers
+                // of the fragments) are relative to the script file like a script opened with File > Open
+                FileServer.getFileServer().setBaseForScript(new File(parameters.getFileJmxOut()));
+                org.apache.jmeter.gui.action.Load.insertLoadedTree(1, tree);
+                if (!finishedWorker.getScriptWritten().isDone()) {
+                    labelStatus.setText("Tool HAR Convertor Script loaded, writing fileJmxOut=" + parameters.getFileJmxOut() + " ...");
+                    waitScriptWritten(finishedWorker);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                log.info("Tool HAR Convertor Cancelled, partial output files deleted");
+                labelStatus.setText("Tool HAR Convertor Cancelled, partial output files deleted");
+                labelStatus.setForeground(java.awt.Color.BLACK);
+                progressBar.setValue(0);
+            } else {
+                log.warn("Tool HAR Convertor Finished KO, exception = " + cause, cause);
+                labelStatus.setText("Tool HAR Convertor Finished KO, exception = " + cause);
+                labelStatus.setForeground(java.awt.Color.RED);
+            }
+        } catch (Exception e) {
+            log.warn("Tool HAR Convertor Finished KO, exception = " + e, e);
+            labelStatus.setText("Tool HAR Convertor Finished KO, exception = " + e);
+            labelStatus.setForeground(java.awt.Color.RED);
+        }
+    }
+
+
+    /**
+     * Update the status when the script loaded in JMeter is written in the jmx out file
+     */
+    private void waitScriptWritten(HarConvertorWorker finishedWorker) {
+        finishedWorker.getScriptWritten().whenComplete((result, ex) -> SwingUtilities.invokeLater(() -> {
+            if (worker != null) {
+                // a new conversion is running, its status is shown
+                return;
+            }
+            String fileJmxOut = finishedWorker.getParameters().getFileJmxOut();
+            if (ex == null) {
+                labelStatus.setText("Tool HAR Convertor Finished OK, script loaded and written fileJmxOut=" + fileJmxOut);
+                labelStatus.setForeground(java.awt.Color.BLACK);
+                showConversionReport(finishedWorker.getConversionProgress());
+            } else {
+                labelStatus.setText("Tool HAR Convertor Script loaded but can't write fileJmxOut=" + fileJmxOut + ", exception = " + ex);
+                labelStatus.setForeground(java.awt.Color.RED);
+            }
+        }));
+    }
+
+    /**
+     * Scan the HAR files in a background thread without converting them and show the inspection in the report area
+     */
+    private void startInspection() {
+        HarConvertorParameters parametersHarIn = new HarConvertorParameters();
+        parametersHarIn.setFileHarIn(fileHarInTextField.getText());
+        List<File> harFiles = new ArrayList<>();
+        for (String oneFileHarIn : parametersHarIn.getFilesHarIn()) {
+            File harFile = new File(oneFileHarIn);
+            if (!harFile.canRead()) {
+                labelStatus.setText("Tool HAR Convertor Inspect KO, CAN'T READ HAR fileHarIn = " + oneFileHarIn);
+                labelStatus.setForeground(java.awt.Color.RED);
+                return;
+            }
+            harFiles.add(harFile);
+        }
+        if (harFiles.isEmpty()) {
+            labelStatus.setText("Tool HAR Convertor Inspect KO, no HAR file in");
+            labelStatus.setForeground(java.awt.Color.RED);
+            return;
+        }
+        btInspect.setEnabled(false);
+        labelStatus.setText("Tool HAR Convertor Inspecting " + harFiles + " ...");
+        labelStatus.setForeground(java.awt.Color.BLACK);
+        new SwingWorker<HarInspector, Void>() {
+            @Override
+            protected HarInspector doInBackground() throws Exception {
+                return HarInspector.inspect(harFiles);
+            }
+
+            @Override
+            protected void done() {
+                btInspect.setEnabled(true);
+                try {
+                    HarInspector inspector = get();
+                    log.info("HAR inspection" + System.lineSeparator() + inspector.toText());
+                    labelStatus.setText("Tool HAR Convertor Inspect OK, entries=" + inspector.getEntries() + ", hosts=" + inspector.getHosts());
+                    showReport("HAR inspection", inspector.toText());
+                } catch (ExecutionException | InterruptedException ex) {
+                    Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                    log.warn("Can't inspect the HAR files, exception = " + cause, cause);
+                    labelStatus.setText("Tool HAR Convertor Inspect KO, exception = " + cause);
+                    labelStatus.setForeground(java.awt.Color.RED);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Show the stage times and counts of a finished conversion and the count of matches of each URL filter rule
+     * (the rules never matched could be removed)
+     */
+    private void showConversionReport(ConversionProgress progress) {
+        ConversionMetrics metrics = progress.getMetrics();
+        UrlFilterStatistics statistics = progress.getUrlFilterStatistics();
+        if (metrics.getTotalMillis() < 0 && statistics == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (metrics.getTotalMillis() >= 0) {
+            sb.append(metrics.toText());
+        }
+        if (statistics != null) {
+            if (sb.length() > 0) {
+                sb.append(System.lineSeparator()).append(System.lineSeparator());
+            }
+            sb.append("URL filter rules matches :").append(System.lineSeparator()).append(statistics.toText());
+        }
+        showReport("Conversion report", sb.toString());
+    }
+
+    private void showReport(String title, String text) {
+        conversionReportPane.setBorder(BorderFactory.createTitledBorder(title));
+        conversionReportArea.setText(text);
+        conversionReportArea.setCaretPosition(0);
+        conversionReportPane.setVisible(true);
+        messageDialog.pack();
+    }
+
+    private JPanel createProfilePanel() {
+        JPanel panel = new JPanel(new GridLayout(0, 3));
+        panel.add(new JLabel("(Optional) Conversion profile (options saved in <JMETER_HOME>/bin/" + ConversionProfiles.PROFILES_FILE_NAME + ") : "));
+
+        profileComboBox = new JComboBox<>();
+        profileComboBox.setEditable(true);
+        // the profiles file is read when the list is opened, not when the dialog is created
+        profileComboBox.addPopupMenuListener(new PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+                refreshProfileNames();
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) {
+            }
+        });
+        panel.add(profileComboBox);
+
+        JPanel buttons = new JPanel(new GridLayout(1, 3));
+        JButton btLoad = new JButton("Load");
+        btLoad.setActionCommand(ACTION_PROFILE_LOAD);
+        btLoad.addActionListener(this);
+        buttons.add(btLoad);
+        JButton btSave = new JButton("Save");
+        btSave.setActionCommand(ACTION_PROFILE_SAVE);
+        btSave.addActionListener(this);
+        buttons.add(btSave);
+        JButton btDelete = new JButton("Delete");
+        btDelete.setActionCommand(ACTION_PROFILE_DELETE);
+        btDelete.addActionListener(this);
+        buttons.add(btDelete);
+        panel.add(buttons);
         return panel;
     }
 
+    private void refreshProfileNames() {
+        Object selected = profileComboBox.getEditor().getItem();
+        profileComboBox.removeAllItems();
+        for (String name : ConversionProfiles.getInstance().getProfileNames()) {
+            profileComboBox.addItem(name);
+        }
+        profileComboBox.getEditor().setItem(selected);
+    }
+
+    private void doProfileAction(String command) {
+        Object item = profileComboBox.getEditor().getItem();
+        String name = item == null ? "" : item.toString().trim();
+        ConversionProfiles profiles = ConversionProfiles.getInstance();
+        try {
+            if (command.equals(ACTION_PROFILE_LOAD)) {
+                Map<String, String> options = profiles.getProfile(name);
+                if (options == null) {
+                    throw new IllegalArgumentException("Unknown profile " + name + " in " + profiles.getFile());
+                }
+                setFieldOptions(options);
+                labelStatus.setText("Profile " + name + " loaded");
+            } else if (command.equals(ACTION_PROFILE_SAVE)) {
+                profiles.saveProfile(name, getFieldOptions());
+                refreshProfileNames();
+                labelStatus.setText("Profile " + name + " saved in " + profiles.getFile());
+            } else {
+                profiles.deleteProfile(name);
+                refreshProfileNames();
+                profileComboBox.getEditor().setItem("");
+                labelStatus.setText("Profile " + name + " deleted");
+            }
+            labelStatus.setForeground(java.awt.Color.BLACK);
+        } catch (Exception ex) {
+            log.warn("Profile " + name + " KO, exception = " + ex);
+            labelStatus.setText("Profile " + name + " KO, exception = " + ex.getMessage());
+            labelStatus.setForeground(java.awt.Color.RED);
+        }
+    }
+
+    /**
+     * @return the conversion options of the dialog fields, without the files of this conversion (har, jmx, record ...)
+     */
+    private Map<String, String> getFieldOptions() {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put(HarConvertorParameters.K_NEW_TC_PAUSE, pauseBetweenUrlTextField.getText().trim());
+        options.put(HarConvertorParameters.K_PAGE_START_NUMBER, pageStartNumberTextField.getText().trim());
+        options.put(HarConvertorParameters.K_SAMPLER_START_NUMBER, samplerStartNumberTextField.getText().trim());
+        options.put(HarConvertorParameters.K_SELECT_START, selectStartField.getText().trim());
+        options.put(HarConvertorParameters.K_SELECT_END, selectEndField.getText().trim());
+        options.put(HarConvertorParameters.K_SELECT_EVERY_PAGE, selectEveryPageField.getText().trim());
+        options.put(HarConvertorParameters.K_FILTER_INCLUDE, regexFilterIncludeField.getText());
+        options.put(HarConvertorParameters.K_FILTER_EXCLUDE, regexFilterExcludeField.getText());
+        options.put(HarConvertorParameters.K_FILTER_RULES, filterRulesFileField.getText().trim());
+        options.put(HarConvertorParameters.K_REMOVE_HEADERS, removeHeadersField.getText());
+        options.put(HarConvertorParameters.K_JACKSON_PARSER_STRING_MAX, jacksonParserStringMaxField.getText().trim());
+        options.put(HarConvertorParameters.K_SPILL_BODY_THRESHOLD, spillBodyThresholdField.getText().trim());
+        options.put(HarConvertorParameters.K_CACHE_MAX_MB, cacheMaxMbField.getText().trim());
+        options.put(HarConvertorParameters.K_WS_BATCH_MIN_FRAMES, wsBatchMinFramesField.getText().trim());
+        options.put(HarConvertorParameters.K_ADD_PAUSE, String.valueOf(isAddPauseCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_REMOVE_COOKIE, String.valueOf(isRemoveCookieCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_REMOVE_CACHE_REQUEST, String.valueOf(isRemoveCacheRequestHeaderCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_ADD_RESULT_TREE_RECORD, String.valueOf(isAddResultTreeRecordCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_WS_WITH_PDOORNBOSCH, String.valueOf(isWebSocketPDoornboschCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_STREAMING_MODE, String.valueOf(isStreamingModeCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_METRICS_REPORT, String.valueOf(isMetricsReportCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_MAPPED_READER, String.valueOf(isMappedReaderCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_COMPACT_HEADERS, String.valueOf(isCompactHeadersCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_AUTO_CORRELATION, String.valueOf(isAutoCorrelationCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_COLLAPSE_STATIC, String.valueOf(isCollapseStaticCheckbox.isSelected()));
+        options.put(HarConvertorParameters.K_TIMER_MODE, (String) timerModeComboBox.getSelectedItem());
+        options.put(HarConvertorParameters.K_FRAGMENT_PAGES, fragmentPagesField.getText().trim());
+        return options;
+    }
+
+    /**
+     * Set the dialog fields with the options of a profile, the fields without option in the profile are not changed
+     */
+    private void setFieldOptions(Map<String, String> options) {
+        setText(pauseBetweenUrlTextField, options.get(HarConvertorParameters.K_NEW_TC_PAUSE));
+        setText(pageStartNumberTextField, options.get(HarConvertorParameters.K_PAGE_START_NUMBER));
+        setText(samplerStartNumberTextField, options.get(HarConvertorParameters.K_SAMPLER_START_NUMBER));
+        setText(selectStartField, options.get(HarConvertorParameters.K_SELECT_START));
+        setText(selectEndField, options.get(HarConvertorParameters.K_SELECT_END));
+        setText(selectEveryPageField, options.get(HarConvertorParameters.K_SELECT_EVERY_PAGE));
+        setText(regexFilterIncludeField, options.get(HarConvertorParameters.K_FILTER_INCLUDE));
+        setText(regexFilterExcludeField, options.get(HarConvertorParameters.K_FILTER_EXCLUDE));
+        setText(filterRulesFileField, options.get(HarConvertorParameters.K_FILTER_RULES));
+        setText(removeHeadersField, options.get(HarConvertorParameters.K_REMOVE_HEADERS));
+        setText(jacksonParserStringMaxField, options.get(HarConvertorParameters.K_JACKSON_PARSER_STRING_MAX));
+        setText(spillBodyThresholdField, options.get(HarConvertorParameters.K_SPILL_BODY_THRESHOLD));
+        setText(cacheMaxMbField, options.get(HarConvertorParameters.K_CACHE_MAX_MB));
+        setText(wsBatchMinFramesField, options.get(HarConvertorParameters.K_WS_BATCH_MIN_FRAMES));
+        setText(fragmentPagesField, options.get(HarConvertorParameters.K_FRAGMENT_PAGES));
+        setSelected(isAddPauseCheckbox, options.get(HarConvertorParameters.K_ADD_PAUSE));
+        setSelected(isRemoveCookieCheckbox, options.get(HarConvertorParameters.K_REMOVE_COOKIE));
+        setSelected(isRemoveCacheRequestHeaderCheckbox, options.get(HarConvertorParameters.K_REMOVE_CACHE_REQUEST));
+        setSelected(isAddResultTreeRecordCheckbox, options.get(HarConvertorParameters.K_ADD_RESULT_TREE_RECORD));
+        setSelected(isStreamingModeCheckbox, options.get(HarConvertorParameters.K_STREAMING_MODE));
+        setSelected(isMetricsReportCheckbox, options.get(HarConvertorParameters.K_METRICS_REPORT));
+        setSelected(isMappedReaderCheckbox, options.get(HarConvertorParameters.K_MAPPED_READER));
+        setSelected(isCompactHeadersCheckbox, options.get(HarConvertorParameters.K_COMPACT_HEADERS));
+        setSelected(isAutoCorrelationCheckbox, options.get(HarConvertorParameters.K_AUTO_CORRELATION));
+        setSelected(isCollapseStaticCheckbox, options.get(HarConvertorParameters.K_COLLAPSE_STATIC));
+        if (options.get(HarConvertorParameters.K_TIMER_MODE) != null) {
+            timerModeComboBox.setSelectedItem(options.get(HarConvertorParameters.K_TIMER_MODE));
+        }
+        if (setSelected(isWebSocketPDoornboschCheckbox, options.get(HarConvertorParameters.K_WS_WITH_PDOORNBOSCH))) {
+            // same check of the WebSocket plugin as a click on the checkbox
+            actionPerformed(new ActionEvent(isWebSocketPDoornboschCheckbox, ActionEvent.ACTION_PERFORMED, ACTION_CHECKBOX_WEBSOCKET));
+        }
+    }
+
+    private static void setText(JTextField field, String value) {
+        if (value != null) {
+            field.setText(value);
+        }
+    }
+
+    private static boolean setSelected(JCheckBox checkBox, String value) {
+        if (value == null || checkBox.isSelected() == Boolean.parseBoolean(value)) {
+            return false;
+        }
+        checkBox.setSelected(Boolean.parseBoolean(value));
+        return true;
+    }
 
     private JPanel createFilterAndPausePanel() {
         JPanel panel = new JPanel(new GridLayout(0, 2));
@@ -403,9 +942,34 @@ public class HarConvertorGui extends AbstractAction implements
         JLabel samplerStartNumberLabel = new JLabel("(Optional) Sampler start number usually for partial recording (default 1)");
         samplerStartNumberTextField = new JTextField("", 80);
 
+        JLabel selectStartLabel = new JLabel("(Optional) Convert the entries from this time, date time ISO 8601 (e.g. 2024-05-06T12:39:58.711Z) or seconds from the first entry");
+        selectStartField = new JTextField("", 80);
+
+        JLabel selectEndLabel = new JLabel("(Optional) Convert the entries until this time, date time ISO 8601 or seconds from the first entry");
+        selectEndField = new JTextField("", 80);
+
+        JLabel selectEveryPageLabel = new JLabel("(Optional) Convert one page out of N for long captures, the pages 1, 1+N, 1+2N ... (default 1 = all the pages)");
+        selectEveryPageField = new JTextField("", 80);
+
         JLabel jacksonParserStringMaxLabel = new JLabel("(Optional) Change Jackson String length size (default integer size = 20000000) for very large JSON");
         jacksonParserStringMaxField = new JTextField("", 80);
 
+        JLabel spillBodyThresholdLabel = new JLabel("(Optional) Spill to a temporary file the bodies larger than (chars) to save memory (default empty = no spill)");
+        spillBodyThresholdField = new JTextField("", 80);
+
+        JLabel cacheMaxMbLabel = new JLabel("(Optional) Cache size (MB) to reuse the conversion of an unchanged HAR in bin/" + ConversionCache.CACHE_DIR_NAME + " (default " + ConversionCache.K_CACHE_MAX_MB_DEFAULT + " = no cache, e.g. 512)");
+        cacheMaxMbField = new JTextField("", 80);
+
+        JLabel wsBatchMinFramesLabel = new JLabel("(Optional) WebSocket, batch in a Loop Controller at least N consecutive identical WebSocket samplers (default empty = no batch)");
+        wsBatchMinFramesField = new JTextField("", 80);
+
+        JLabel timerModeLabel = new JLabel("(Optional) Timers between the pages : pause (add pause), gaussian or uniform from the recorded think times, throughput from the recorded load (default pause)");
+        timerModeComboBox = new JComboBox<>(new String[] {TimerGenerator.K_TIMER_MODE_PAUSE, TimerGenerator.K_TIMER_MODE_GAUSSIAN,
+                TimerGenerator.K_TIMER_MODE_UNIFORM, TimerGenerator.K_TIMER_MODE_THROUGHPUT});
+
+        JLabel fragmentPagesLabel = new JLabel("(Optional) Split the script in Test Fragment files of N pages included by Include Controllers (default empty = one script)");
+        fragmentPagesField = new JTextField("", 80);
+
         panel.add(pauseBetweenUrlLabel);
         panel.add(pauseBetweenUrlTextField);
 
@@ -415,6 +979,15 @@ public class HarConvertorGui extends AbstractAction implements
         panel.add(samplerStartNumberLabel);
         panel.add(samplerStartNumberTextField);
 
+        panel.add(selectStartLabel);
+        panel.add(selectStartField);
+
+        panel.add(selectEndLabel);
+        panel.add(selectEndField);
+
+        panel.add(selectEveryPageLabel);
+        panel.add(selectEveryPageField);
+
         panel.add(regexFilterIncludeLabel);
         panel.add(regexFilterIncludeField);
 
@@ -427,6 +1000,21 @@ public class HarConvertorGui extends AbstractAction implements
         panel.add(jacksonParserStringMaxLabel);
         panel.add(jacksonParserStringMaxField);
 
+        panel.add(spillBodyThresholdLabel);
+        panel.add(spillBodyThresholdField);
+
+        panel.add(cacheMaxMbLabel);
+        panel.add(cacheMaxMbField);
+
+        panel.add(wsBatchMinFramesLabel);
+        panel.add(wsBatchMinFramesField);
+
+        panel.add(timerModeLabel);
+        panel.add(timerModeComboBox);
+
+        panel.add(fragmentPagesLabel);
+        panel.add(fragmentPagesField);
+
         return panel;
     }
 
@@ -451,6 +1039,24 @@ public class HarConvertorGui extends AbstractAction implements
         JLabel isAddResultTreeRecordLabel = new JLabel("(Optional) Add 'View Result Tree' to view the recording xml file created (default true)");
         isAddResultTreeRecordCheckbox= new JCheckBox("",true);
 
+        JLabel isStreamingModeLabel = new JLabel("(Optional) Streaming mode for very large HAR, convert the entries by chunks with bounded memory (default false)");
+        isStreamingModeCheckbox= new JCheckBox("",false);
+
+        JLabel isMetricsReportLabel = new JLabel("(Optional) Write the conversion metrics report <jmx_out_no_extension>" + ConversionMetrics.METRICS_REPORT_EXTENSION + " (default true)");
+        isMetricsReportCheckbox= new JCheckBox("",true);
+
+        JLabel isMappedReaderLabel = new JLabel("(Optional) Read the HAR mapped in memory and decode the entries in parallel, HAR read by the plugin larger than " + (MappedHarReader.K_MIN_FILE_BYTES / (1024 * 1024)) + " MB (default false)");
+        isMappedReaderCheckbox= new JCheckBox("",false);
+
+        JLabel isCompactHeadersLabel = new JLabel("(Optional) Move the headers common to the samplers in a Header Manager of the Thread Group and of each page (default false)");
+        isCompactHeadersCheckbox= new JCheckBox("",false);
+
+        JLabel isAutoCorrelationLabel = new JLabel("(Optional) Correlation, extract the dynamic values of the responses (tokens, ids) sent again by the next requests (default false)");
+        isAutoCorrelationCheckbox= new JCheckBox("",false);
+
+        JLabel isCollapseStaticLabel = new JLabel("(Optional) Don't convert the images, css, scripts and fonts, the page sampler retrieves the embedded resources in parallel (default false)");
+        isCollapseStaticCheckbox= new JCheckBox("",false);
+
         panel.add(isWebSocketPDoornboschLabel);
         panel.add(isWebSocketPDoornboschCheckbox);
 
@@ -466,12 +1072,30 @@ public class HarConvertorGui extends AbstractAction implements
         panel.add(isAddResultTreeRecordLabel);
         panel.add(isAddResultTreeRecordCheckbox);
 
+        panel.add(isStreamingModeLabel);
+        panel.add(isStreamingModeCheckbox);
+
+        panel.add(isMetricsReportLabel);
+        panel.add(isMetricsReportCheckbox);
+
+        panel.add(isMappedReaderLabel);
+        panel.add(isMappedReaderCheckbox);
+
+        panel.add(isCompactHeadersLabel);
+        panel.add(isCompactHeadersCheckbox);
+
+        panel.add(isAutoCorrelationLabel);
+        panel.add(isAutoCorrelationCheckbox);
+
+        panel.add(isCollapseStaticLabel);
+        panel.add(isCollapseStaticCheckbox);
+
         return panel;
     }
 
     private JPanel setupFileChooserPanel() {
         JPanel fileChooserPanel = new JPanel(new GridLayout(0, 3));
-        fileChooserPanel.add(new JLabel("HAR file in (to read) : "));
+        fileChooserPanel.add(new JLabel("HAR file in (to read) (several HAR files separated by ; are merged) : "));
 
         fileHarInTextField = new JTextField();
         fileChooserPanel.add(fileHarInTextField);
@@ -492,7 +1116,7 @@ public class HarConvertorGui extends AbstractAction implements
         fileChooserPanel.add(fileJmxOutFileButton);
 
 
-        fileChooserPanel.add(new JLabel("(Optional) Record XML out (to write) : "));
+        fileChooserPanel.add(new JLabel("(Optional) Record XML out (to write) (.xml.gz to compress, without View Results Tree) : "));
         fileRecordOutTextField = new JTextField();
         fileChooserPanel.add(fileRecordOutTextField);
 
@@ -510,6 +1134,15 @@ public class HarConvertorGui extends AbstractAction implements
         externalFileInfoInButton.addActionListener(this);
         fileChooserPanel.add(externalFileInfoInButton);
 
+        fileChooserPanel.add(new JLabel("(Optional) URL filter rules file, by line : include|exclude host|prefix|regex value (to read) : "));
+        filterRulesFileField = new JTextField();
+        fileChooserPanel.add(filterRulesFileField);
+
+        this.filterRulesFileButton = new JButton("Browse ...");
+        filterRulesFileButton.setActionCommand(BROWSE_FILTER_RULES);
+        filterRulesFileButton.addActionListener(this);
+        fileChooserPanel.add(filterRulesFileButton);
+
         return fileChooserPanel;
     }
     
@@ -525,7 +1158,15 @@ public class HarConvertorGui extends AbstractAction implements
      *         chooser, the previous path
      */
     private String showFileChooser(Component component, JTextField locationTextField, boolean onlyDirectory, String[] extensions) {
+        return showFileChooser(component, locationTextField, onlyDirectory, extensions, false);
+    }
+
+    /**
+     * Show a file chooser, with multi selection the paths of the selected files are separated by ';'
+     */
+    private String showFileChooser(Component component, JTextField locationTextField, boolean onlyDirectory, String[] extensions, boolean isMultiSelection) {
         JFileChooser jfc = new JFileChooser();
+        jfc.setMultiSelectionEnabled(isMultiSelection);
         if (onlyDirectory) {
             jfc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         } else {
@@ -548,6 +1189,16 @@ public class HarConvertorGui extends AbstractAction implements
         int retVal = jfc.showOpenDialog(component);
         if (retVal == JFileChooser.APPROVE_OPTION) {
             lastJFCDirectory = jfc.getCurrentDirectory().getAbsolutePath();
+            if (isMultiSelection && jfc.getSelectedFiles().length > 1) {
+                StringBuilder sb = new StringBuilder();
+                for (File file : jfc.getSelectedFiles()) {
+                    if (sb.length() > 0) {
+                        sb.append(HarConvertorParameters.K_HAR_FILES_SEPARATOR);
+                    }
+                    sb.append(file.getPath());
+                }
+                return sb.toString();
+            }
             return jfc.getSelectedFile().getPath();
         } else {
             return locationTextField.getText();
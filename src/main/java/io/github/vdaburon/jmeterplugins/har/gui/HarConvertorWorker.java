@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.gui;
+
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorProcess;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+
+import org.apache.jmeter.save.SaveService;
+import org.apache.jorphan.collections.HashTree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.SwingWorker;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Run the HAR conversion in a background thread so the JMeter GUI stays responsive.
+ * The result is the tree of the generated script when the script must be loaded in JMeter, else null.
+ * To load the script, the tree is built from the script in memory (no XStream parse of the jmx file) and the script
+ * file is written in another thread while the tree is inserted in the test plan.
+ * Don't use SwingWorker.cancel() because done() would be called before the conversion thread really stops,
+ * use requestCancel() then done() is called when the partial files are deleted.
+ */
+class HarConvertorWorker extends SwingWorker<HashTree, Void> {
+    private static final Logger log = LoggerFactory.getLogger(HarConvertorWorker.class);
+
+    private final HarConvertorParameters parameters;
+    private final ConversionProgress progress;
+    private final boolean isLoadScript;
+    private final CompletableFuture<Void> scriptWritten = new CompletableFuture<>();
+    private Thread runner;
+
+    HarConvertorWorker(HarConvertorParameters parameters, ConversionProgress progress, boolean isLoadScript) {
+        this.parameters = parameters;
+        this.progress = progress;
+        this.isLoadScript = isLoadScript;
+    }
+
+    @Override
+    protected HashTree doInBackground() throws Exception {
+        synchronized (this) {
+            runner = Thread.currentThread();
+        }
+        try {
+            if (!isLoadScript) {
+                HarConvertorProcess.convert(parameters, progress);
+                scriptWritten.complete(null);
+                return null;
+            }
+            JmxDocument scriptNotWritten = HarConvertorProcess.convert(parameters, progress, true);
+            // build the tree in this thread, only the insert in the test plan is done in the Swing thread
+            progress.setStage("Load generated script");
+            HashTree tree = buildTree(scriptNotWritten);
+            if (tree == null) {
+                scriptWritten.complete(null);
+                return SaveService.loadTree(new File(parameters.getFileJmxOut()));
+            }
+            if (scriptNotWritten == null) {
+                scriptWritten.complete(null);
+            } else {
+                startScriptWrite(scriptNotWritten);
+            }
+            return tree;
+        } catch (Exception ex) {
+            scriptWritten.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            synchronized (this) {
+                runner = null;
+                // clear the interrupt flag, this pool thread is reused by SwingWorker
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * @param scriptNotWritten the script in memory or null if the script file is already written
+     * @return the tree of the script or null if the script must be loaded with SaveService, the script file is then written
+     */
+    private HashTree buildTree(JmxDocument scriptNotWritten) throws Exception {
+        // the DOM parse of a script written by the library is still faster than the XStream parse of SaveService
+        JmxDocument script = scriptNotWritten != null ? scriptNotWritten : JmxDocument.load(new File(parameters.getFileJmxOut()));
+        try {
+            return JmxTreeBuilder.build(script);
+        } catch (IllegalArgumentException | ReflectiveOperationException ex) {
+            log.info("Can't build the tree of the script in memory, load the script file with SaveService, exception = " + ex);
+            if (scriptNotWritten != null) {
+                HarConvertorProcess.writeScript(parameters, progress, scriptNotWritten);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Write the script file in a new thread, the tree of the script is inserted in JMeter without waiting the write
+     */
+    private void startScriptWrite(JmxDocument script) {
+        Thread writer = new Thread(() -> {
+            try {
+                HarConvertorProcess.writeScript(parameters, progress, script);
+                scriptWritten.complete(null);
+            } catch (Exception ex) {
+                log.warn("Can't write the script " + parameters.getFileJmxOut() + ", exception = " + ex, ex);
+                scriptWritten.completeExceptionally(ex);
+            }
+        }, "HarConvertor-write-jmx");
+        writer.start();
+    }
+
+    /**
+     * @return completed when the script file is written, exceptionally if the conversion or the write failed
+     */
+    CompletableFuture<Void> getScriptWritten() {
+        return scriptWritten;
+    }
+
+    synchronized void requestCancel() {
+        progress.cancel();
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+
+    ConversionProgress getConversionProgress() {
+        return progress;
+    }
+
+    HarConvertorParameters getParameters() {
+        return parameters;
+    }
+
+    boolean isLoadScript() {
+        return isLoadScript;
+    }
+}
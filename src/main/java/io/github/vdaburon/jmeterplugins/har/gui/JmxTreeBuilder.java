@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.gui;
+
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+
+import org.apache.jmeter.save.SaveService;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.BooleanProperty;
+import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.testelement.property.IntegerProperty;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.LongProperty;
+import org.apache.jmeter.testelement.property.StringProperty;
+import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.util.NameUpdater;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.ListedHashTree;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build the JMeter tree of a script from its DOM document, the same tree as SaveService.loadTree() without writing
+ * and parsing the jmx file again with XStream.
+ * Only the properties written by the converter are supported (stringProp, boolProp, intProp, longProp, elementProp,
+ * collectionProp), an IllegalArgumentException is thrown for the other properties, then the script must be loaded
+ * with SaveService.
+ */
+class JmxTreeBuilder {
+    private static final String ATT_TEST_CLASS = "testclass";
+    private static final String ATT_GUI_CLASS = "guiclass";
+    private static final String ATT_TEST_NAME = "testname";
+    private static final String ATT_ENABLED = "enabled";
+    private static final String ATT_NAME = "name";
+    private static final String ATT_ELEMENT_TYPE = "elementType";
+
+    /** The classes of the aliases (e.g. HTTPSamplerProxy), the same aliases are in all the elements of a script */
+    private final Map<String, Class<?>> classes = new HashMap<>();
+
+    private JmxTreeBuilder() {
+    }
+
+    /**
+     * @param script the script as DOM document
+     * @return the tree of the script with the Test Plan as root, as returned by SaveService.loadTree()
+     * @throws IllegalArgumentException if an element or a property is not supported
+     * @throws ReflectiveOperationException if a test element class can't be created
+     */
+    static HashTree build(JmxDocument script) throws ReflectiveOperationException {
+        Element rootHashTree = script.getRootHashTree();
+        if (rootHashTree == null) {
+            throw new IllegalArgumentException("No hashTree in the script");
+        }
+        HashTree tree = new ListedHashTree();
+        new JmxTreeBuilder().addChildren(tree, rootHashTree);
+        return tree;
+    }
+
+    private void addChildren(HashTree tree, Element hashTree) throws ReflectiveOperationException {
+        for (Element element : JmxDocument.getTestElements(hashTree)) {
+            HashTree subTree = tree.add(createTestElement(element));
+            Element childrenHashTree = JmxDocument.getHashTreeOf(element);
+            if (childrenHashTree != null) {
+                addChildren(subTree, childrenHashTree);
+            }
+        }
+    }
+
+    private TestElement createTestElement(Element element) throws ReflectiveOperationException {
+        String testClassAlias = element.getAttribute(ATT_TEST_CLASS);
+        Class<?> type = getClass(testClassAlias.isEmpty() ? element.getTagName() : testClassAlias);
+        String guiClass = element.getAttribute(ATT_GUI_CLASS);
+        if (guiClass.isEmpty()) {
+            throw new IllegalArgumentException("guiclass attribute is not found in " + element.getTagName());
+        }
+        // the same class name update as SaveService for the old class names
+        String testClassName = NameUpdater.getCurrentTestName(type.getName(), SaveService.aliasToClass(guiClass));
+        if (!testClassName.equals(type.getName())) {
+            type = getClass(testClassName);
+        }
+        TestElement testElement = newTestElement(type);
+        restoreSpecialProperties(testElement, element);
+        testElement.setProperty(TestElement.TEST_CLASS, testClassName);
+        for (Element child : getChildElements(element)) {
+            testElement.setProperty(createProperty(child));
+        }
+        return testElement;
+    }
+
+    private JMeterProperty createProperty(Element element) throws ReflectiveOperationException {
+        String name = element.getAttribute(ATT_NAME);
+        switch (element.getTagName()) {
+            case "stringProp":
+                return new StringProperty(name, element.getTextContent());
+            case "boolProp":
+                return new BooleanProperty(name, Boolean.parseBoolean(element.getTextContent()));
+            case "intProp":
+                return new IntegerProperty(name, Integer.parseInt(element.getTextContent().trim()));
+            case "longProp":
+                return new LongProperty(name, Long.parseLong(element.getTextContent().trim()));
+            case "elementProp":
+                return createElementProperty(name, element);
+            case "collectionProp":
+                List<JMeterProperty> properties = new ArrayList<>();
+                for (Element child : getChildElements(element)) {
+                    properties.add(createProperty(child));
+                }
+                return new CollectionProperty(name, properties);
+            default:
+                throw new IllegalArgumentException("Property not supported " + element.getTagName() + " name=" + name);
+        }
+    }
+
+    private JMeterProperty createElementProperty(String name, Element element) throws ReflectiveOperationException {
+        String elementType = element.getAttribute(ATT_ELEMENT_TYPE);
+        TestElement value = newTestElement(getClass(elementType));
+        restoreSpecialProperties(value, element);
+        TestElementProperty property = new TestElementProperty(name, value);
+        for (Element child : getChildElements(element)) {
+            property.addProperty(createProperty(child));
+        }
+        return property;
+    }
+
+    /**
+     * Set the name, gui class, test class and enabled properties from the attributes of the element
+     */
+    private static void restoreSpecialProperties(TestElement testElement, Element element) {
+        if (element.hasAttribute(ATT_GUI_CLASS)) {
+            testElement.setProperty(TestElement.GUI_CLASS, SaveService.aliasToClass(element.getAttribute(ATT_GUI_CLASS)));
+        }
+        if (element.hasAttribute(ATT_TEST_CLASS)) {
+            testElement.setProperty(TestElement.TEST_CLASS, SaveService.aliasToClass(element.getAttribute(ATT_TEST_CLASS)));
+        }
+        if (element.hasAttribute(ATT_TEST_NAME)) {
+            testElement.setProperty(TestElement.NAME, element.getAttribute(ATT_TEST_NAME));
+        }
+        if (element.hasAttribute(ATT_ENABLED)) {
+            testElement.setProperty(TestElement.ENABLED, element.getAttribute(ATT_ENABLED));
+        }
+    }
+
+    private Class<?> getClass(String alias) throws ClassNotFoundException {
+        if (alias.isEmpty()) {
+            throw new IllegalArgumentException("Empty test class");
+        }
+        Class<?> type = classes.get(alias);
+        if (type == null) {
+            type = Class.forName(SaveService.aliasToClass(alias));
+            classes.put(alias, type);
+        }
+        return type;
+    }
+
+    private static TestElement newTestElement(Class<?> type) throws ReflectiveOperationException {
+        if (!TestElement.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("Not a test element " + type.getName());
+        }
+        return (TestElement) type.getDeclaredConstructor().newInstance();
+    }
+
+    private static List<Element> getChildElements(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+}
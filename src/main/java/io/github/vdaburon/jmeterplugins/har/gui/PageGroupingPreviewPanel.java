@@ -0,0 +1,253 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.gui;
+
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilter;
+import io.github.vdaburon.jmeterplugins.har.filter.UrlFilterStatistics;
+import io.github.vdaburon.jmeterplugins.har.stream.HarTimestampIndex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Preview of the pages (Transaction Controllers) of the script for the time between 2 URLs to create a new page.
+ * The HAR files are indexed once in a background thread (startedDateTime and url of the entries kept by the filters),
+ * then the pages and their recorded timings (think time, page duration, server time and throughput used by the timer modes)
+ * are computed again each time the time between 2 URLs or the page start number is typed.
+ */
+class PageGroupingPreviewPanel extends JPanel implements ActionListener, DocumentListener {
+    private static final Logger log = LoggerFactory.getLogger(PageGroupingPreviewPanel.class);
+
+    private static final int MAX_PAGES_SHOWN = 2000;
+    private static final long[] OTHER_PAUSES_MS = {1000, 2000, 3000, 5000, 10000, 30000};
+
+    private final JTextField fileHarInField;
+    private final JTextField filterRulesFileField;
+    private final JTextField regexFilterIncludeField;
+    private final JTextField regexFilterExcludeField;
+    private final JTextField pauseBetweenUrlField;
+    private final JTextField pageStartNumberField;
+    private final JButton btPreview;
+    private final JTextArea previewArea;
+    private final JScrollPane previewPane;
+    private HarTimestampIndex index;
+    private String indexKey;
+
+    PageGroupingPreviewPanel(JTextField fileHarInField, JTextField filterRulesFileField, JTextField regexFilterIncludeField,
+                             JTextField regexFilterExcludeField, JTextField pauseBetweenUrlField, JTextField pageStartNumberField) {
+        super(new BorderLayout());
+        this.fileHarInField = fileHarInField;
+        this.filterRulesFileField = filterRulesFileField;
+        this.regexFilterIncludeField = regexFilterIncludeField;
+        this.regexFilterExcludeField = regexFilterExcludeField;
+        this.pauseBetweenUrlField = pauseBetweenUrlField;
+        this.pageStartNumberField = pageStartNumberField;
+
+        JPanel buttonPanel = new JPanel(new GridLayout(0, 2));
+        buttonPanel.add(new JLabel("(Optional) Preview the pages (Transaction Controllers) updated when the time between 2 URLs is typed"));
+        btPreview = new JButton("Preview pages");
+        btPreview.addActionListener(this);
+        buttonPanel.add(btPreview);
+        add(buttonPanel, BorderLayout.NORTH);
+
+        previewArea = new JTextArea(10, 80);
+        previewArea.setEditable(false);
+        previewArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, previewArea.getFont().getSize()));
+        previewPane = new JScrollPane(previewArea);
+        previewPane.setBorder(BorderFactory.createTitledBorder("Pages preview"));
+        previewPane.setVisible(false);
+        add(previewPane, BorderLayout.CENTER);
+
+        pauseBetweenUrlField.getDocument().addDocumentListener(this);
+        pageStartNumberField.getDocument().addDocumentListener(this);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        String key = getIndexKey();
+        if (index != null && key.equals(indexKey)) {
+            refreshPreview();
+            return;
+        }
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(fileHarInField.getText());
+        List<File> harFiles = new ArrayList<>();
+        for (String fileHarIn : parameters.getFilesHarIn()) {
+            harFiles.add(new File(fileHarIn));
+        }
+        if (harFiles.isEmpty()) {
+            showText("No HAR file to preview");
+            return;
+        }
+        String filterRulesFile = filterRulesFileField.getText().trim();
+        String regexFilterInclude = regexFilterIncludeField.getText();
+        String regexFilterExclude = regexFilterExcludeField.getText();
+        btPreview.setEnabled(false);
+        showText("Indexing the HAR entries " + harFiles + " ...");
+        new SwingWorker<HarTimestampIndex, Void>() {
+            @Override
+            protected HarTimestampIndex doInBackground() throws Exception {
+                long start = System.currentTimeMillis();
+                // the bodies are skipped without being decoded, their length is not checked
+                HarTimestampIndex all = HarTimestampIndex.build(harFiles, Integer.MAX_VALUE);
+                HarTimestampIndex kept = all.filter(createFilter(filterRulesFile, regexFilterInclude, regexFilterExclude));
+                log.info("HAR entries indexed for the pages preview in " + (System.currentTimeMillis() - start) + " ms, entries="
+                        + all.size() + ", kept=" + kept.size());
+                return kept;
+            }
+
+            @Override
+            protected void done() {
+                btPreview.setEnabled(true);
+                try {
+                    index = get();
+                    indexKey = key;
+                    refreshPreview();
+                } catch (ExecutionException | InterruptedException ex) {
+                    Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                    log.warn("Can't index the HAR entries for the pages preview, exception = " + cause, cause);
+                    index = null;
+                    showText("Can't index the HAR entries, exception = " + cause);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * The same filters as the conversion : the filter rules file, then the regular expressions of the converter library
+     */
+    private static Predicate<String> createFilter(String filterRulesFile, String regexFilterInclude, String regexFilterExclude) throws Exception {
+        Predicate<String> isKept = url -> true;
+        if (!filterRulesFile.isEmpty()) {
+            UrlFilterStatistics urlFilter = new UrlFilterStatistics(UrlFilter.load(new File(filterRulesFile)));
+            isKept = urlFilter::isKept;
+        }
+        if (!regexFilterInclude.trim().isEmpty()) {
+            Pattern include = Pattern.compile(regexFilterInclude);
+            isKept = isKept.and(url -> include.matcher(url).find());
+        }
+        if (!regexFilterExclude.trim().isEmpty()) {
+            Pattern exclude = Pattern.compile(regexFilterExclude);
+            isKept = isKept.and(url -> !exclude.matcher(url).find());
+        }
+        return isKept;
+    }
+
+    private String getIndexKey() {
+        return fileHarInField.getText() + "\n" + filterRulesFileField.getText().trim() + "\n" + regexFilterIncludeField.getText()
+                + "\n" + regexFilterExcludeField.getText();
+    }
+
+    private void refreshPreview() {
+        if (index == null) {
+            return;
+        }
+        if (!getIndexKey().equals(indexKey)) {
+            showText("The HAR files or the filters have changed, click \"Preview pages\" to index the HAR entries again");
+            return;
+        }
+        long newPageAfterMs = parseLong(pauseBetweenUrlField.getText(), 0);
+        long pageStartNumber = Math.max(1, parseLong(pageStartNumberField.getText(), 1));
+        int[] pageStarts = index.groupPages(newPageAfterMs);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Entries ").append(index.size()).append(", pages ").append(pageStarts.length).append(" with ")
+                .append(newPageAfterMs).append(" ms between 2 URLs").append(System.lineSeparator());
+        sb.append("Pages with other times :");
+        for (long otherMs : OTHER_PAUSES_MS) {
+            sb.append(' ').append(otherMs).append(" ms = ").append(index.groupPages(otherMs).length).append(',');
+        }
+        sb.setLength(sb.length() - 1);
+        sb.append(System.lineSeparator());
+        sb.append("Recorded timings : ").append(index.getPageTimings(newPageAfterMs).toText()).append(System.lineSeparator());
+        sb.append(String.format("%8s %9s %10s  %s%n", "Page", "Requests", "Start (s)", "First URL"));
+        long firstStarted = index.size() > 0 ? index.getStartedMillis(0) : -1;
+        for (int page = 0; page < Math.min(pageStarts.length, MAX_PAGES_SHOWN); page++) {
+            int first = pageStarts[page];
+            int requests = (page + 1 < pageStarts.length ? pageStarts[page + 1] : index.size()) - first;
+            long started = index.getStartedMillis(first);
+            String start = (started >= 0 && firstStarted >= 0) ? String.format("%.1f", (started - firstStarted) / 1000.0) : "-";
+            sb.append(String.format("%8d %9d %10s  %s%n", pageStartNumber + page, requests, start, index.getUrl(first)));
+        }
+        if (pageStarts.length > MAX_PAGES_SHOWN) {
+            sb.append("... ").append(pageStarts.length - MAX_PAGES_SHOWN).append(" pages not shown");
+        }
+        showText(sb.toString());
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    private void showText(String text) {
+        previewArea.setText(text);
+        previewArea.setCaretPosition(0);
+        if (!previewPane.isVisible()) {
+            previewPane.setVisible(true);
+            Window window = SwingUtilities.getWindowAncestor(this);
+            if (window != null) {
+                window.pack();
+            }
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        refreshPreview();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        refreshPreview();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        refreshPreview();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Move the HTTP headers common to the samplers in one shared Header Manager.
+ * The headers (name and value) of all the samplers of the Thread Group go in a Header Manager of the Thread Group,
+ * then the headers common to all the samplers of a page go in a Header Manager of the Transaction Controller.
+ * The Header Managers of the samplers keep only their other headers and are removed when empty.
+ * A header name is not shared if a sampler keeps the same header name with another value, so the shared headers
+ * and the headers of the sampler never have the same name and the merge of the Header Managers by JMeter gives
+ * the same headers to each sampler.
+ * A sampler without Header Manager would receive the shared headers, so the headers of a scope containing such a sampler
+ * are not shared in this scope, e.g. the headers of the Thread Group are then only shared by page.
+ */
+public class HeaderCompactor {
+    private static final Logger log = LoggerFactory.getLogger(HeaderCompactor.class);
+
+    public static final String HEADER_MANAGER = "HeaderManager";
+    private static final String HEADERS = "HeaderManager.headers";
+    private static final String HEADER_NAME = "Header.name";
+    private static final String HEADER_VALUE = "Header.value";
+    /** Bytes of the xml of a header without its name and value, to estimate the size saved */
+    private static final int HEADER_XML_BYTES = ("<elementProp name=\"\" elementType=\"Header\"><stringProp name=\"" + HEADER_NAME
+            + "\"></stringProp><stringProp name=\"" + HEADER_VALUE + "\"></stringProp></elementProp>").length();
+    /** Bytes of the xml of an empty Header Manager and its hashTree */
+    private static final int HEADER_MANAGER_XML_BYTES = ("<HeaderManager guiclass=\"HeaderPanel\" testclass=\"HeaderManager\""
+            + " testname=\"HTTP Header Manager\" enabled=\"true\"><collectionProp name=\"" + HEADERS + "\"/></HeaderManager><hashTree/>").length();
+
+    private int managersAdded = 0;
+    private int managersRemoved = 0;
+    private long headersRemoved = 0;
+    private long bytesSaved = 0;
+
+    /**
+     * Share the common headers of the samplers of the first Thread Group
+     * @param document the script
+     */
+    public void compact(JmxDocument document) {
+        Element threadGroup = document.getThreadGroupHashTree();
+        if (threadGroup == null) {
+            return;
+        }
+        compact(document, threadGroup, "HTTP Header Manager (all pages)");
+        for (Element element : JmxDocument.getTestElements(threadGroup)) {
+            if (JmxChunkMerger.TRANSACTION_CONTROLLER.equals(element.getTagName())) {
+                compact(document, JmxDocument.getHashTreeOf(element), "HTTP Header Manager (" + element.getAttribute("testname") + ")");
+            }
+        }
+    }
+
+    private void compact(JmxDocument document, Element scope, String managerName) {
+        if (scope == null) {
+            return;
+        }
+        List<Element> samplers = new ArrayList<>();
+        findSamplers(scope, samplers);
+        if (samplers.size() < 2) {
+            return;
+        }
+        List<Map<String, Element>> samplerHeaders = new ArrayList<>();
+        Set<String> common = null;
+        for (Element sampler : samplers) {
+            Map<String, Element> headers = getHeaders(sampler);
+            if (headers.isEmpty()) {
+                log.info("No " + managerName + " added, the sampler '" + sampler.getAttribute("testname")
+                        + "' has no header and would receive the shared headers");
+                return;
+            }
+            samplerHeaders.add(headers);
+            if (common == null) {
+                common = new LinkedHashSet<>(headers.keySet());
+            } else {
+                common.retainAll(headers.keySet());
+            }
+            if (common.isEmpty()) {
+                return;
+            }
+        }
+        // a header name kept by a sampler with another value is not shared
+        Set<String> namesKept = new HashSet<>();
+        for (Map<String, Element> headers : samplerHeaders) {
+            for (Map.Entry<String, Element> header : headers.entrySet()) {
+                if (!common.contains(header.getKey())) {
+                    namesKept.add(getHeaderName(header.getKey()));
+                }
+            }
+        }
+        common.removeIf(key -> namesKept.contains(getHeaderName(key)));
+        if (common.isEmpty()) {
+            return;
+        }
+
+        Element firstManager = (Element) samplerHeaders.get(0).get(common.iterator().next()).getParentNode().getParentNode();
+        Element manager = (Element) firstManager.cloneNode(false);
+        manager.setAttribute("testname", managerName);
+        Element managerHeaders = (Element) JmxDocument.getProperty(firstManager, HEADERS).cloneNode(false);
+        manager.appendChild(managerHeaders);
+        for (String key : common) {
+            managerHeaders.appendChild(samplerHeaders.get(0).get(key).cloneNode(true));
+        }
+        List<Element> elements = JmxDocument.getTestElements(scope);
+        document.insertTestElement(scope, manager, null, elements.isEmpty() ? null : elements.get(0));
+        managersAdded++;
+        bytesSaved -= HEADER_MANAGER_XML_BYTES + getBytes(common);
+
+        for (Map<String, Element> headers : samplerHeaders) {
+            Set<Element> managers = new HashSet<>();
+            for (String key : common) {
+                Element header = headers.get(key);
+                managers.add((Element) header.getParentNode().getParentNode());
+                header.getParentNode().removeChild(header);
+                headersRemoved++;
+            }
+            bytesSaved += getBytes(common);
+            for (Element samplerManager : managers) {
+                if (getHeaderElements(samplerManager).isEmpty()) {
+                    JmxDocument.removeTestElement(samplerManager);
+                    managersRemoved++;
+                    bytesSaved += HEADER_MANAGER_XML_BYTES;
+                }
+            }
+        }
+    }
+
+    private static void findSamplers(Element hashTree, List<Element> samplers) {
+        for (Element element : JmxDocument.getTestElements(hashTree)) {
+            String tagName = element.getTagName();
+            if (tagName.endsWith(JmxChunkMerger.SAMPLER_SUFFIX) || tagName.endsWith(JmxChunkMerger.SAMPLER_SUFFIX + "Proxy")) {
+                samplers.add(element);
+            } else if (!"false".equals(element.getAttribute("enabled"))) {
+                findSamplers(JmxDocument.getHashTreeOf(element), samplers);
+            }
+        }
+    }
+
+    /**
+     * @return the headers of the enabled Header Managers of the sampler by name and value, in the order of the headers
+     */
+    private static Map<String, Element> getHeaders(Element sampler) {
+        Map<String, Element> headers = new LinkedHashMap<>();
+        for (Element element : JmxDocument.getTestElements(JmxDocument.getHashTreeOf(sampler))) {
+            if (HEADER_MANAGER.equals(element.getTagName()) && !"false".equals(element.getAttribute("enabled"))) {
+                for (Element header : getHeaderElements(element)) {
+                    headers.putIfAbsent(JmxDocument.getPropertyValue(header, HEADER_NAME) + "\n"
+                            + JmxDocument.getPropertyValue(header, HEADER_VALUE), header);
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static List<Element> getHeaderElements(Element manager) {
+        List<Element> headers = new ArrayList<>();
+        Element collection = JmxDocument.getProperty(manager, HEADERS);
+        if (collection != null) {
+            for (Node node = collection.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    headers.add((Element) node);
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static String getHeaderName(String key) {
+        return key.substring(0, key.indexOf('\n'));
+    }
+
+    private static long getBytes(Set<String> keys) {
+        long bytes = 0;
+        for (String key : keys) {
+            bytes += HEADER_XML_BYTES + key.length() - 1;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the count of shared Header Managers added to the Thread Group and the Transaction Controllers
+     */
+    public int getManagersAdded() {
+        return managersAdded;
+    }
+
+    /**
+     * @return the count of Header Managers of the samplers removed because all their headers are shared
+     */
+    public int getManagersRemoved() {
+        return managersRemoved;
+    }
+
+    /**
+     * @return the count of headers removed from the samplers
+     */
+    public long getHeadersRemoved() {
+        return headersRemoved;
+    }
+
+    /**
+     * @return the estimated bytes of the script saved, the headers removed less the shared Header Managers added
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Merge the scripts generated for the successive chunks of a HAR into one script.
+ * The first chunk gives the Test Plan, the Thread Group and its config elements (Cookie Manager, Cache Manager ...),
+ * the next chunks only add their Transaction Controllers, samplers and pauses at the end of the Thread Group.
+ * When the script is written by chunks (JmxStreamWriter), the children of the Thread Group are removed from the merged
+ * script once written, the config elements already merged are remembered by tag and name.
+ */
+public class JmxChunkMerger {
+    public static final String TRANSACTION_CONTROLLER = "TransactionController";
+    public static final String SAMPLER_SUFFIX = "Sampler";
+    private static final String PAUSE_ELEMENT = "TestAction";
+    private static final String PAUSE_DURATION = "ActionProcessor.duration";
+
+    private final TextDeduplicator deduplicator = new TextDeduplicator();
+    // the config elements of the Thread Group by tag/testname, not added again by the next chunks
+    private final Set<String> configElements = new HashSet<>();
+    private boolean isDeduplicate = true;
+    private JmxDocument merged;
+    private Element pauseModel;
+    private WebSocketBatcher webSocketBatcher;
+
+    /**
+     * Add the content of the script generated for the next chunk
+     * @param chunkJmx the script generated for the chunk
+     * @param pauseBeforeMs the time between the last request of the previous chunk and the first request of this chunk,
+     *                      a pause is added between the chunks if &gt; 0 and the scripts contain pauses
+     * @return the count of pages and samplers in the chunk script, to number the next chunk
+     * @throws IOException if the script can't be read or has no Thread Group
+     */
+    public ChunkCount append(File chunkJmx, long pauseBeforeMs) throws IOException {
+        JmxDocument chunk = JmxDocument.load(chunkJmx);
+        Element chunkThreadGroup = chunk.getThreadGroupHashTree();
+        if (chunkThreadGroup == null) {
+            throw new IOException("No Thread Group in the generated script " + chunkJmx);
+        }
+        ChunkCount count = new ChunkCount(JmxDocument.countElements(chunkThreadGroup, TRANSACTION_CONTROLLER),
+                JmxDocument.countElements(chunkThreadGroup, SAMPLER_SUFFIX));
+        if (webSocketBatcher != null) {
+            // after the count, the next chunk is numbered from the samplers created by the converter
+            webSocketBatcher.batch(chunk, chunkThreadGroup);
+        }
+
+        if (merged == null) {
+            if (isDeduplicate) {
+                deduplicator.dedup(chunk.getDocument().getDocumentElement());
+            }
+            merged = chunk;
+            pauseModel = findPause(chunkThreadGroup);
+            for (Element element : JmxDocument.getTestElements(chunkThreadGroup)) {
+                if (isConfigElement(element)) {
+                    configElements.add(getConfigKey(element));
+                }
+            }
+            return count;
+        }
+
+        Element threadGroup = merged.getThreadGroupHashTree();
+
+        if (pauseModel == null) {
+            pauseModel = findPause(chunkThreadGroup);
+        }
+        boolean isPauseChecked = false;
+        for (Element element : JmxDocument.getTestElements(chunkThreadGroup)) {
+            if (isConfigElement(element) && !configElements.add(getConfigKey(element))) {
+                continue;
+            }
+            if (!isPauseChecked) {
+                isPauseChecked = true;
+                // the pause between the last page of the previous chunk and the first page of this chunk
+                if (pauseBeforeMs > 0 && pauseModel != null && !PAUSE_ELEMENT.equals(element.getTagName())) {
+                    Element pause = (Element) merged.getDocument().importNode(pauseModel, true);
+                    JmxDocument.setProperty(pause, "stringProp", PAUSE_DURATION, String.valueOf(pauseBeforeMs));
+                    merged.appendTestElement(threadGroup, pause, null);
+                }
+            }
+            // the imported nodes keep the same String instances
+            Element hashTree = JmxDocument.getHashTreeOf(element);
+            if (isDeduplicate) {
+                deduplicator.dedup(element);
+                if (hashTree != null) {
+                    deduplicator.dedup(hashTree);
+                }
+            }
+            merged.appendTestElement(threadGroup, element, hashTree);
+        }
+        return count;
+    }
+
+    private static Element findPause(Element threadGroup) {
+        for (Element element : JmxDocument.getTestElements(threadGroup)) {
+            if (PAUSE_ELEMENT.equals(element.getTagName())) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static String getConfigKey(Element element) {
+        return element.getTagName() + "/" + element.getAttribute("testname");
+    }
+
+    private static boolean isConfigElement(Element element) {
+        String tagName = element.getTagName();
+        return tagName.endsWith("Manager") || "ConfigTestElement".equals(tagName) || "Arguments".equals(tagName)
+                || "CSVDataSet".equals(tagName) || "KeystoreConfig".equals(tagName);
+    }
+
+    /**
+     * @param webSocketBatcher batch the consecutive identical WebSocket samplers of each chunk, null for no batch
+     */
+    public void setWebSocketBatcher(WebSocketBatcher webSocketBatcher) {
+        this.webSocketBatcher = webSocketBatcher;
+    }
+
+    /**
+     * @param isDeduplicate false when the script is written by chunks, the texts written are not kept to be shared
+     */
+    public void setDeduplicate(boolean isDeduplicate) {
+        this.isDeduplicate = isDeduplicate;
+    }
+
+    /**
+     * @return the texts shared by the chunks of the merged script
+     */
+    public TextDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * @return the merged script or null if no chunk
+     */
+    public JmxDocument getMerged() {
+        return merged;
+    }
+
+    /**
+     * Count of Transaction Controllers (pages) and samplers created for a chunk
+     */
+    public static class ChunkCount {
+        private final int pages;
+        private final int samplers;
+
+        ChunkCount(int pages, int samplers) {
+            this.pages = pages;
+            this.samplers = samplers;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        public int getSamplers() {
+            return samplers;
+        }
+    }
+}
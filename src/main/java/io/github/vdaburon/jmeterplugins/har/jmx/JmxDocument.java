@@ -0,0 +1,428 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import io.github.vdaburon.jmeterplugins.har.stream.HarEntries;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JMeter script (.jmx) loaded as a DOM document to modify the script generated by the HAR converter
+ * without JMeter SaveService, so it works in the GUI and in the CLI without the JMeter classpath.
+ * In a jmx, each test element is followed by a &lt;hashTree&gt; sibling that contains its children.
+ */
+public class JmxDocument {
+    public static final String HASH_TREE = "hashTree";
+
+    private final Document document;
+
+    private JmxDocument(Document document) {
+        this.document = document;
+    }
+
+    public static JmxDocument load(File jmxFile) throws IOException {
+        try {
+            return new JmxDocument(createDocumentBuilder().parse(jmxFile));
+        } catch (SAXException | ParserConfigurationException ex) {
+            throw new IOException("Can't parse the jmx file " + jmxFile + ", exception = " + ex, ex);
+        }
+    }
+
+    private static DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        return factory.newDocumentBuilder();
+    }
+
+    /**
+     * @return a new script with the root element of this script (jmeterTestPlan and its attributes) and an empty hashTree
+     * @throws IOException if the document can't be created
+     */
+    public JmxDocument createEmptyCopy() throws IOException {
+        try {
+            Document copy = createDocumentBuilder().newDocument();
+            Element root = (Element) copy.importNode(document.getDocumentElement(), false);
+            copy.appendChild(root);
+            root.appendChild(copy.createElement(HASH_TREE));
+            return new JmxDocument(copy);
+        } catch (ParserConfigurationException ex) {
+            throw new IOException("Can't create the jmx, exception = " + ex, ex);
+        }
+    }
+
+    public void save(File jmxFile) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(jmxFile), 64 * 1024)) {
+            save(out);
+        }
+    }
+
+    public void save(OutputStream out) throws IOException {
+        try {
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.transform(new DOMSource(document), new StreamResult(out));
+        } catch (TransformerException ex) {
+            throw new IOException("Can't write the jmx, exception = " + ex, ex);
+        }
+    }
+
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return the hashTree under jmeterTestPlan with the Test Plan or null if not a jmx
+     */
+    public Element getRootHashTree() {
+        return getFirstChildElement(document.getDocumentElement(), HASH_TREE);
+    }
+
+    /**
+     * @return the hashTree with the children of the first Thread Group or null if no Thread Group
+     */
+    public Element getThreadGroupHashTree() {
+        Element root = getRootHashTree();
+        if (root == null) {
+            return null;
+        }
+        for (Element testPlan : getTestElements(root)) {
+            for (Element element : getTestElements(getHashTreeOf(testPlan))) {
+                if (element.getTagName().endsWith("ThreadGroup")) {
+                    return getHashTreeOf(element);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the hashTree with the children of the Test Plan
+     */
+    public Element getTestPlanHashTree() {
+        Element root = getRootHashTree();
+        if (root == null) {
+            return null;
+        }
+        List<Element> testElements = getTestElements(root);
+        return testElements.isEmpty() ? null : getHashTreeOf(testElements.get(0));
+    }
+
+    /**
+     * @param hashTree a hashTree element
+     * @return the test elements in this hashTree, without the hashTree elements
+     */
+    public static List<Element> getTestElements(Element hashTree) {
+        List<Element> elements = new ArrayList<>();
+        if (hashTree == null) {
+            return elements;
+        }
+        for (Node node = hashTree.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && !HASH_TREE.equals(node.getNodeName())) {
+                elements.add((Element) node);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * @param testElement a test element
+     * @return the hashTree sibling with the children of the test element or null
+     */
+    public static Element getHashTreeOf(Element testElement) {
+        for (Node node = testElement.getNextSibling(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                return HASH_TREE.equals(node.getNodeName()) ? (Element) node : null;
+            }
+        }
+        return null;
+    }
+
+    private static Element getFirstChildElement(Element parent, String tagName) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && tagName.equals(node.getNodeName())) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the samplers of a hashTree and of its controllers, in the order of the script
+     * @param hashTree the hashTree to search in, e.g. the Thread Group hashTree
+     * @param samplers the list to add the samplers to (HTTPSamplerProxy, WebSocket samplers ...)
+     */
+    public static void findSamplers(Element hashTree, List<Element> samplers) {
+        for (Element element : getTestElements(hashTree)) {
+            String tagName = element.getTagName();
+            if (tagName.endsWith(JmxChunkMerger.SAMPLER_SUFFIX) || tagName.endsWith(JmxChunkMerger.SAMPLER_SUFFIX + "Proxy")) {
+                samplers.add(element);
+            } else {
+                findSamplers(getHashTreeOf(element), samplers);
+            }
+        }
+    }
+
+    /**
+     * @param sampler an HTTP sampler
+     * @return the host and the path without the query of the sampler, e.g. mysite.com/app/login
+     */
+    public static String getSamplerHostPath(Element sampler) {
+        return HarEntries.getHostPath(getPropertyValue(sampler, "HTTPSampler.domain") + getPropertyValue(sampler, "HTTPSampler.path"));
+    }
+
+    /**
+     * Remove the test element and its hashTree
+     * @param testElement the test element to remove
+     */
+    public static void removeTestElement(Element testElement) {
+        Element hashTree = getHashTreeOf(testElement);
+        Node parent = testElement.getParentNode();
+        parent.removeChild(testElement);
+        if (hashTree != null) {
+            parent.removeChild(hashTree);
+        }
+    }
+
+    /**
+     * Add a test element and its hashTree (created if null) at the end of a hashTree
+     * @param parentHashTree the hashTree to add to
+     * @param testElement the test element, imported in this document if needed
+     * @param hashTree the children of the test element or null for no child
+     * @return the test element added
+     */
+    public Element appendTestElement(Element parentHashTree, Element testElement, Element hashTree) {
+        return insertTestElement(parentHashTree, testElement, hashTree, null);
+    }
+
+    /**
+     * Insert a test element and its hashTree (created if null) before a test element of the same hashTree
+     * @param parentHashTree the hashTree to add to
+     * @param testElement the test element, imported in this document if needed
+     * @param hashTree the children of the test element or null for no child
+     * @param before the test element to insert before or null to add at the end
+     * @return the test element added
+     */
+    public Element insertTestElement(Element parentHashTree, Element testElement, Element hashTree, Element before) {
+        Element newElement = (Element) importIfNeeded(testElement);
+        Element newHashTree = hashTree == null ? document.createElement(HASH_TREE) : (Element) importIfNeeded(hashTree);
+        parentHashTree.insertBefore(newElement, before);
+        parentHashTree.insertBefore(newHashTree, before);
+        return newElement;
+    }
+
+    private Node importIfNeeded(Node node) {
+        if (node.getOwnerDocument() == document) {
+            return node;
+        }
+        return document.importNode(node, true);
+    }
+
+    /**
+     * @param element a test element
+     * @param name the name attribute of the property
+     * @return the property element (stringProp, boolProp, intProp, longProp ...) direct child of the element or null
+     */
+    public static Element getProperty(Element element, String name) {
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(((Element) node).getAttribute("name"))) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param element a test element
+     * @param name the name attribute of the property
+     * @return the text of the property or an empty string if the property is missing
+     */
+    public static String getPropertyValue(Element element, String name) {
+        Element property = getProperty(element, name);
+        return property == null ? "" : property.getTextContent();
+    }
+
+    /**
+     * Set the value of a property, the property is created with the tag (e.g. stringProp) if missing
+     * @param element a test element
+     * @param tag the property tag if created (stringProp, boolProp, intProp, longProp)
+     * @param name the name attribute of the property
+     * @param value the value
+     */
+    public static void setProperty(Element element, String tag, String name, String value) {
+        Element property = getProperty(element, name);
+        if (property == null) {
+            property = element.getOwnerDocument().createElement(tag);
+            property.setAttribute("name", name);
+            element.appendChild(property);
+        }
+        property.setTextContent(value);
+    }
+
+    /**
+     * @param root the element to search in
+     * @param tagSuffix the end of the tag name, e.g. "Sampler" for HTTPSamplerProxy and the WebSocket samplers
+     * @return the count of elements with the tag name ending with the suffix
+     */
+    public static int countElements(Element root, String tagSuffix) {
+        int count = 0;
+        NodeList nodes = root.getElementsByTagName("*");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            String tagName = nodes.item(i).getNodeName();
+            if (tagName.endsWith(tagSuffix) || tagName.endsWith(tagSuffix + "Proxy")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the elements of a jmx file without loading it in a DOM document
+     * @param jmxFile the jmx file to read
+     * @param tagSuffixes the ends of the tag names, e.g. "Sampler" for HTTPSamplerProxy and the WebSocket samplers
+     * @return the count of elements for each suffix, in the order of the suffixes
+     * @throws IOException if the file can't be read or parsed
+     */
+    public static int[] countElements(File jmxFile, String... tagSuffixes) throws IOException {
+        int[] counts = new int[tagSuffixes.length];
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(jmxFile), 64 * 1024)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String tagName = reader.getLocalName();
+                    for (int i = 0; i < tagSuffixes.length; i++) {
+                        if (tagName.endsWith(tagSuffixes[i]) || tagName.endsWith(tagSuffixes[i] + "Proxy")) {
+                            counts[i]++;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Can't parse the jmx file " + jmxFile + ", exception = " + ex, ex);
+        }
+        return counts;
+    }
+
+    /**
+     * Replace a text in all the text nodes and attributes, e.g. a temporary file name by the final file name
+     * @param from the text to replace
+     * @param to the replacement
+     */
+    public void replaceText(String from, String to) {
+        replaceText(document.getDocumentElement(), from, to);
+    }
+
+    /**
+     * @param marker the text to search
+     * @return the text nodes and the attributes that contain the text
+     */
+    public List<Node> findTextNodes(String marker) {
+        return findTextNodes(document.getDocumentElement(), marker);
+    }
+
+    /**
+     * @param root the node to search in
+     * @param marker the text to search
+     * @return the text nodes and the attributes of the node and its descendants that contain the text
+     */
+    public static List<Node> findTextNodes(Node root, String marker) {
+        List<Node> nodes = new ArrayList<>();
+        findTextNodes(root, marker, nodes);
+        return nodes;
+    }
+
+    private static void findTextNodes(Node node, String marker, List<Node> nodes) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            String value = node.getNodeValue();
+            if (value != null && value.contains(marker)) {
+                nodes.add(node);
+            }
+            return;
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                if (attributes.item(i).getNodeValue().contains(marker)) {
+                    nodes.add(attributes.item(i));
+                }
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            findTextNodes(child, marker, nodes);
+        }
+    }
+
+    private static void replaceText(Node node, String from, String to) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            String value = node.getNodeValue();
+            if (value != null && value.contains(from)) {
+                node.setNodeValue(value.replace(from, to));
+            }
+            return;
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attribute = attributes.item(i);
+                if (attribute.getNodeValue().contains(from)) {
+                    attribute.setNodeValue(attribute.getNodeValue().replace(from, to));
+                }
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            replaceText(child, from, to);
+        }
+    }
+}
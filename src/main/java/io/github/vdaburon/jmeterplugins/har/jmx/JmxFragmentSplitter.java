@@ -0,0 +1,237 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Split the pages of the script in Test Fragment files, one file by group of pages, written in parallel in the directory
+ * &lt;jmx_out_no_extension&gt;_fragments next to the script. The main script keeps the Thread Group and its config
+ * elements (Cookie Manager, Header Managers, timers ...) and includes each fragment with an Include Controller
+ * at the place of its pages, JMeter loads the fragments when the test starts.
+ * Only the Transaction Controllers, the Flow Control Actions, the other controllers and the samplers are moved,
+ * the scoped elements of the Thread Group stay in the main script and still apply to all the pages.
+ */
+public class JmxFragmentSplitter {
+    private static final Logger log = LoggerFactory.getLogger(JmxFragmentSplitter.class);
+    public static final String FRAGMENTS_DIR_SUFFIX = "_fragments";
+    public static final String FRAGMENT_FILE_PREFIX = "fragment_";
+    private static final String INCLUDE_CONTROLLER = "IncludeController";
+    private static final String TEST_FRAGMENT = "TestFragmentController";
+
+    private final int pagesByFragment;
+    private final List<JmxDocument> fragments = new ArrayList<>();
+    private final List<File> fragmentFiles = new ArrayList<>();
+
+    /**
+     * @param pagesByFragment the count of pages (Transaction Controllers) in a fragment file, at least 1
+     */
+    public JmxFragmentSplitter(int pagesByFragment) {
+        this.pagesByFragment = Math.max(1, pagesByFragment);
+    }
+
+    /**
+     * @param jmxOut the main script file
+     * @return the directory of the fragment files, e.g. mysite_fragments for mysite.jmx
+     */
+    public static File getFragmentsDir(File jmxOut) {
+        String name = jmxOut.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(jmxOut.getAbsoluteFile().getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + FRAGMENTS_DIR_SUFFIX);
+    }
+
+    /**
+     * @param jmxOut the main script file
+     * @return the fragment files of the script, empty if not split
+     */
+    public static List<File> listFragmentFiles(File jmxOut) {
+        return listFragmentFilesIn(getFragmentsDir(jmxOut));
+    }
+
+    private static List<File> listFragmentFilesIn(File fragmentsDir) {
+        List<File> files = new ArrayList<>();
+        File[] children = fragmentsDir.listFiles((dir, name) -> name.startsWith(FRAGMENT_FILE_PREFIX) && name.endsWith(".jmx"));
+        if (children != null) {
+            for (File child : children) {
+                files.add(child);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Move the pages of the first Thread Group in fragments and replace them by Include Controllers
+     * @param document the script, the main script after the split
+     * @param jmxOut the main script file, the include paths are relative to its directory
+     * @throws IOException if a fragment document can't be created
+     */
+    public void split(JmxDocument document, File jmxOut) throws IOException {
+        Element threadGroup = document.getThreadGroupHashTree();
+        Element testPlanHashTree = document.getTestPlanHashTree();
+        if (threadGroup == null || testPlanHashTree == null) {
+            return;
+        }
+        Element testPlan = JmxDocument.getTestElements(document.getRootHashTree()).get(0);
+        File fragmentsDir = getFragmentsDir(jmxOut);
+        List<Element> group = new ArrayList<>();
+        int groupPages = 0;
+        int page = 0;
+        int firstPage = 1;
+        for (Element element : JmxDocument.getTestElements(threadGroup)) {
+            if (!isMoved(element)) {
+                continue;
+            }
+            boolean isPage = JmxChunkMerger.TRANSACTION_CONTROLLER.equals(element.getTagName());
+            if (isPage && groupPages == pagesByFragment) {
+                createFragment(document, threadGroup, testPlan, group, fragmentsDir, firstPage, page);
+                group.clear();
+                groupPages = 0;
+                firstPage = page + 1;
+            }
+            if (isPage) {
+                groupPages++;
+                page++;
+            }
+            group.add(element);
+        }
+        if (!group.isEmpty()) {
+            createFragment(document, threadGroup, testPlan, group, fragmentsDir, firstPage, page);
+        }
+    }
+
+    /**
+     * @return true for the elements executed in the order of the script, moved in the fragments
+     */
+    private static boolean isMoved(Element element) {
+        String tagName = element.getTagName();
+        if (TEST_FRAGMENT.equals(tagName) || INCLUDE_CONTROLLER.equals(tagName) || "false".equals(element.getAttribute("enabled"))) {
+            return false;
+        }
+        return tagName.endsWith("Controller") || tagName.equals("TestAction")
+                || tagName.endsWith(JmxChunkMerger.SAMPLER_SUFFIX) || tagName.endsWith(JmxChunkMerger.SAMPLER_SUFFIX + "Proxy");
+    }
+
+    private void createFragment(JmxDocument document, Element threadGroup, Element testPlan, List<Element> group,
+                                File fragmentsDir, int firstPage, int lastPage) throws IOException {
+        int number = fragments.size() + 1;
+        String name = String.format("%s%03d.jmx", FRAGMENT_FILE_PREFIX, number);
+        String title = lastPage >= firstPage ? "Pages " + firstPage + " to " + lastPage : "Fragment " + number;
+
+        JmxDocument fragment = document.createEmptyCopy();
+        Element fragmentTestPlanHashTree = fragment.getDocument().createElement(JmxDocument.HASH_TREE);
+        Element fragmentTestPlan = fragment.appendTestElement(fragment.getRootHashTree(), testPlan, fragmentTestPlanHashTree);
+        fragmentTestPlan.setAttribute("testname", title);
+        Element testFragment = fragment.getDocument().createElement(TEST_FRAGMENT);
+        testFragment.setAttribute("guiclass", "TestFragmentControllerGui");
+        testFragment.setAttribute("testclass", TEST_FRAGMENT);
+        testFragment.setAttribute("testname", title);
+        testFragment.setAttribute("enabled", "true");
+        Element testFragmentHashTree = fragment.getDocument().createElement(JmxDocument.HASH_TREE);
+        fragment.appendTestElement(fragmentTestPlanHashTree, testFragment, testFragmentHashTree);
+        for (Element element : group) {
+            fragment.appendTestElement(testFragmentHashTree, element, JmxDocument.getHashTreeOf(element));
+        }
+
+        Element include = document.getDocument().createElement(INCLUDE_CONTROLLER);
+        include.setAttribute("guiclass", "IncludeControllerGui");
+        include.setAttribute("testclass", INCLUDE_CONTROLLER);
+        include.setAttribute("testname", "Include " + title);
+        include.setAttribute("enabled", "true");
+        // relative to the directory of the main script, JMeter resolves it with the base of the FileServer set to the script
+        // file when the script is opened, run in non GUI or loaded by Convert and Load, the script and its fragments can be moved
+        JmxDocument.setProperty(include, "stringProp", "IncludeController.includepath", fragmentsDir.getName() + "/" + name);
+        document.insertTestElement(threadGroup, include, null, group.get(0));
+        for (Element element : group) {
+            JmxDocument.removeTestElement(element);
+        }
+        fragments.add(fragment);
+        fragmentFiles.add(new File(fragmentsDir, name));
+    }
+
+    /**
+     * Write the fragments in parallel, the fragment files of a previous conversion are deleted
+     * @throws IOException if a fragment can't be written
+     */
+    public void writeFragments() throws IOException {
+        if (fragments.isEmpty()) {
+            return;
+        }
+        File fragmentsDir = fragmentFiles.get(0).getParentFile();
+        if (!fragmentsDir.isDirectory() && !fragmentsDir.mkdirs()) {
+            throw new IOException("Can't create the fragments directory " + fragmentsDir);
+        }
+        for (File previous : listFragmentFilesIn(fragmentsDir)) {
+            if (!fragmentFiles.contains(previous) && !previous.delete()) {
+                log.warn("Can't delete the fragment of a previous conversion " + previous);
+            }
+        }
+        int threads = Math.min(fragments.size(), Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "HarConvertor-write-fragment-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // each fragment is a separate DOM document, only one thread reads it
+            List<Future<?>> written = new ArrayList<>();
+            for (int i = 0; i < fragments.size(); i++) {
+                JmxDocument fragment = fragments.get(i);
+                File file = fragmentFiles.get(i);
+                written.add(writers.submit(() -> {
+                    fragment.save(file);
+                    return null;
+                }));
+            }
+            for (Future<?> future : written) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fragments write interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Can't write the fragments, exception = " + cause, cause);
+        } finally {
+            writers.shutdownNow();
+        }
+        log.info("Fragments written=" + fragments.size() + " in " + fragmentsDir);
+    }
+
+    /**
+     * @return the count of fragment files
+     */
+    public int getFragments() {
+        return fragments.size();
+    }
+}
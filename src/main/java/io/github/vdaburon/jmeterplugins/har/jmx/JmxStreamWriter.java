@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import org.w3c.dom.Comment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write a script to the jmx file while the Thread Group is filled, so the children of the Thread Group are not kept
+ * in memory until the end of the conversion.
+ * start() writes the script before the children of the Thread Group and keeps the end of the script,
+ * writeThreadGroupChildren() writes then removes the children added to the Thread Group since the last call,
+ * close() writes the end of the script. The file is the same as JmxDocument.save() of the whole script.
+ */
+public class JmxStreamWriter implements Closeable {
+    private static final String CHILDREN_MARKER = "HAR_CONVERTOR_THREAD_GROUP_CHILDREN";
+
+    private final File jmxFile;
+    private final Transformer transformer;
+    private Writer out;
+    private Element threadGroup;
+    private String end;
+
+    /**
+     * @param jmxFile the script file to write
+     * @throws IOException if the xml writer can't be created
+     */
+    public JmxStreamWriter(File jmxFile) throws IOException {
+        this.jmxFile = jmxFile;
+        try {
+            transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        } catch (TransformerException ex) {
+            throw new IOException("Can't write the jmx, exception = " + ex, ex);
+        }
+    }
+
+    /**
+     * Write the script before the children of the Thread Group, the children already in the Thread Group are not
+     * written, call writeThreadGroupChildren()
+     * @param script the script with the Test Plan and the Thread Group
+     * @throws IOException if the file can't be written or the script has no Thread Group
+     */
+    public void start(JmxDocument script) throws IOException {
+        threadGroup = script.getThreadGroupHashTree();
+        if (threadGroup == null) {
+            throw new IOException("No Thread Group in the script to write " + jmxFile);
+        }
+        // the script without the children of the Thread Group, cut at the marker
+        List<Node> children = new ArrayList<>();
+        while (threadGroup.getFirstChild() != null) {
+            children.add(threadGroup.removeChild(threadGroup.getFirstChild()));
+        }
+        Comment marker = script.getDocument().createComment(CHILDREN_MARKER);
+        threadGroup.appendChild(marker);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        script.save(bytes);
+        threadGroup.removeChild(marker);
+        for (Node child : children) {
+            threadGroup.appendChild(child);
+        }
+        String xml = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        String markerXml = "<!--" + CHILDREN_MARKER + "-->";
+        int markerIndex = xml.indexOf(markerXml);
+        end = xml.substring(markerIndex + markerXml.length());
+
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jmxFile), StandardCharsets.UTF_8), 64 * 1024);
+        out.write(xml, 0, markerIndex);
+    }
+
+    /**
+     * Write the children of the Thread Group then remove them from the script
+     * @throws IOException if the file can't be written
+     */
+    public void writeThreadGroupChildren() throws IOException {
+        Node child;
+        while ((child = threadGroup.getFirstChild()) != null) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                try {
+                    transformer.transform(new DOMSource(child), new StreamResult(out));
+                } catch (TransformerException ex) {
+                    throw new IOException("Can't write the jmx " + jmxFile + ", exception = " + ex, ex);
+                }
+            } else if (child.getNodeType() == Node.TEXT_NODE) {
+                // the indentation between the elements
+                out.write(escape(child.getNodeValue()));
+            }
+            threadGroup.removeChild(child);
+        }
+    }
+
+    /**
+     * Write the end of the script after the Thread Group children and close the file
+     * @throws IOException if the file can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (end != null) {
+                out.write(end);
+                end = null;
+            }
+        } finally {
+            out.close();
+            out = null;
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
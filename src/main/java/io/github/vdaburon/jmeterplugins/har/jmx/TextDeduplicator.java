@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep one String instance by content for the texts and attribute values of the merged script.
+ * The header names and values, the domains, the paths and the repeated bodies of the samplers are the same in
+ * hundreds of samplers of a SPA capture, each chunk script parsed has its own copies, the copies are replaced by
+ * the first instance so the merged script keeps each content once in the heap.
+ */
+public class TextDeduplicator {
+    /** Estimated heap size of a String without its chars : String object and array header */
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final Map<String, String> texts = new HashMap<>();
+    private long duplicates = 0;
+    private long savedBytes = 0;
+
+    /**
+     * Replace the texts and attribute values of the node and its descendants by their first instance
+     * @param root the node to deduplicate
+     */
+    public void dedup(Node root) {
+        for (Node node = root; node != null; node = next(root, node)) {
+            short type = node.getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                String value = node.getNodeValue();
+                String canonical = canonical(value);
+                if (canonical != value) {
+                    node.setNodeValue(canonical);
+                }
+            } else if (type == Node.ELEMENT_NODE) {
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attribute = attributes.item(i);
+                    String value = attribute.getNodeValue();
+                    String canonical = canonical(value);
+                    if (canonical != value) {
+                        attribute.setNodeValue(canonical);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next node in document order under root, iterative so a deep script can't overflow the stack
+     */
+    private static Node next(Node root, Node node) {
+        if (node.getFirstChild() != null) {
+            return node.getFirstChild();
+        }
+        while (node != root) {
+            if (node.getNextSibling() != null) {
+                return node.getNextSibling();
+            }
+            node = node.getParentNode();
+        }
+        return null;
+    }
+
+    /**
+     * @param value a text
+     * @return the first instance with the same content
+     */
+    public String canonical(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        String canonical = texts.putIfAbsent(value, value);
+        if (canonical == null) {
+            return value;
+        }
+        if (canonical != value) {
+            duplicates++;
+            savedBytes += STRING_OVERHEAD_BYTES + value.length();
+        }
+        return canonical;
+    }
+
+    /**
+     * @return the count of texts replaced by their first instance
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the estimated heap bytes saved (one byte by char, the texts of a script are mostly latin-1)
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * @return the count of distinct texts
+     */
+    public int getDistinctTexts() {
+        return texts.size();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import io.github.vdaburon.jmeterplugins.har.stream.PageTimingStatistics;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replace the fixed pauses between the pages (the Flow Control Actions) by timers computed from the recorded timings.
+ * gaussian : a Gaussian Random Timer in each pause with the mean and the standard deviation of the recorded think time.
+ * uniform : a Uniform Random Timer in each pause from the min think time, with the recorded mean.
+ * throughput : a Constant Throughput Timer at the start of the Thread Group with the recorded samplers by minute,
+ * the pauses are disabled.
+ * The Flow Control Actions are created between the Transaction Controllers if the script has no pause.
+ */
+public class TimerGenerator {
+    public static final String K_TIMER_MODE_PAUSE = "pause";
+    public static final String K_TIMER_MODE_GAUSSIAN = "gaussian";
+    public static final String K_TIMER_MODE_UNIFORM = "uniform";
+    public static final String K_TIMER_MODE_THROUGHPUT = "throughput";
+    private static final String TEST_ACTION = "TestAction";
+    private static final String TRANSACTION_CONTROLLER = "TransactionController";
+
+    private final String mode;
+    private final PageTimingStatistics statistics;
+    private int timersAdded = 0;
+    private int pausesChanged = 0;
+
+    /**
+     * @param mode the timer mode K_TIMER_MODE_...
+     * @param statistics the recorded timings of the pages converted
+     */
+    public TimerGenerator(String mode, PageTimingStatistics statistics) {
+        this.mode = mode;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param mode a timer mode
+     * @return true if the mode is known, e.g. gaussian
+     */
+    public static boolean isTimerMode(String mode) {
+        return K_TIMER_MODE_PAUSE.equals(mode) || K_TIMER_MODE_GAUSSIAN.equals(mode) || K_TIMER_MODE_UNIFORM.equals(mode)
+                || K_TIMER_MODE_THROUGHPUT.equals(mode);
+    }
+
+    /**
+     * Add the timers in the first Thread Group
+     * @param document the script
+     */
+    public void generate(JmxDocument document) {
+        Element threadGroup = document.getThreadGroupHashTree();
+        if (threadGroup == null || K_TIMER_MODE_PAUSE.equals(mode)) {
+            return;
+        }
+        if (K_TIMER_MODE_THROUGHPUT.equals(mode)) {
+            if (statistics.getSamplersPerMinute() <= 0) {
+                return;
+            }
+            for (Element pause : getPauses(threadGroup)) {
+                pause.setAttribute("enabled", "false");
+                pausesChanged++;
+            }
+            List<Element> elements = JmxDocument.getTestElements(threadGroup);
+            document.insertTestElement(threadGroup, createThroughputTimer(document), null, elements.isEmpty() ? null : elements.get(0));
+            timersAdded++;
+            return;
+        }
+        if (statistics.getThinkTimeCount() == 0) {
+            return;
+        }
+        List<Element> pauses = getPauses(threadGroup);
+        if (pauses.isEmpty()) {
+            pauses = createPauses(document, threadGroup);
+        }
+        for (Element pause : pauses) {
+            JmxDocument.setProperty(pause, "stringProp", "ActionProcessor.duration", "0");
+            Element hashTree = JmxDocument.getHashTreeOf(pause);
+            if (hashTree == null) {
+                hashTree = document.getDocument().createElement(JmxDocument.HASH_TREE);
+                pause.getParentNode().insertBefore(hashTree, pause.getNextSibling());
+            }
+            document.appendTestElement(hashTree, createRandomTimer(document), null);
+            pausesChanged++;
+            timersAdded++;
+        }
+    }
+
+    private static List<Element> getPauses(Element threadGroup) {
+        List<Element> pauses = new ArrayList<>();
+        for (Element element : JmxDocument.getTestElements(threadGroup)) {
+            if (TEST_ACTION.equals(element.getTagName()) && !"false".equals(element.getAttribute("enabled"))) {
+                pauses.add(element);
+            }
+        }
+        return pauses;
+    }
+
+    /**
+     * Create a Flow Control Action before each Transaction Controller except the first
+     */
+    private static List<Element> createPauses(JmxDocument document, Element threadGroup) {
+        List<Element> pauses = new ArrayList<>();
+        boolean isFirst = true;
+        for (Element element : JmxDocument.getTestElements(threadGroup)) {
+            if (!TRANSACTION_CONTROLLER.equals(element.getTagName())) {
+                continue;
+            }
+            if (!isFirst) {
+                Element pause = document.getDocument().createElement(TEST_ACTION);
+                pause.setAttribute("guiclass", "TestActionGui");
+                pause.setAttribute("testclass", TEST_ACTION);
+                pause.setAttribute("testname", "Flow Control Action PAUSE");
+                pause.setAttribute("enabled", "true");
+                JmxDocument.setProperty(pause, "intProp", "ActionProcessor.action", "1");
+                JmxDocument.setProperty(pause, "intProp", "ActionProcessor.target", "0");
+                JmxDocument.setProperty(pause, "stringProp", "ActionProcessor.duration", "0");
+                pauses.add(document.insertTestElement(threadGroup, pause, null, element));
+            }
+            isFirst = false;
+        }
+        return pauses;
+    }
+
+    private Element createRandomTimer(JmxDocument document) {
+        boolean isGaussian = K_TIMER_MODE_GAUSSIAN.equals(mode);
+        String tag = isGaussian ? "GaussianRandomTimer" : "UniformRandomTimer";
+        long mean = statistics.getThinkTimeMean();
+        long min = statistics.getThinkTimePercentile(0);
+        Element timer = document.getDocument().createElement(tag);
+        timer.setAttribute("guiclass", tag + "Gui");
+        timer.setAttribute("testclass", tag);
+        timer.setAttribute("testname", isGaussian ? "Gaussian Random Timer" : "Uniform Random Timer");
+        timer.setAttribute("enabled", "true");
+        // gaussian : delay + N(0,1) * range, uniform : delay + U(0,1) * range
+        JmxDocument.setProperty(timer, "stringProp", "ConstantTimer.delay", String.valueOf(isGaussian ? mean : min));
+        JmxDocument.setProperty(timer, "stringProp", "RandomTimer.range", String.valueOf(isGaussian ? statistics.getThinkTimeStdDev() : 2 * (mean - min)));
+        JmxDocument.setProperty(timer, "stringProp", "TestPlan.comments", "Recorded think time, pages " + statistics.getPages()
+                + ", mean " + mean + " ms, std dev " + statistics.getThinkTimeStdDev() + " ms, p90 " + statistics.getThinkTimePercentile(90) + " ms");
+        return timer;
+    }
+
+    private Element createThroughputTimer(JmxDocument document) {
+        String throughput = String.format(Locale.ROOT, "%.1f", statistics.getSamplersPerMinute());
+        Element timer = document.getDocument().createElement("ConstantThroughputTimer");
+        timer.setAttribute("guiclass", "TestBeanGUI");
+        timer.setAttribute("testclass", "ConstantThroughputTimer");
+        timer.setAttribute("testname", "Constant Throughput Timer");
+        timer.setAttribute("enabled", "true");
+        // calcMode 0 : this thread only, the recorded throughput of one user
+        JmxDocument.setProperty(timer, "intProp", "calcMode", "0");
+        Element doubleProp = document.getDocument().createElement("doubleProp");
+        appendTextElement(doubleProp, "name", "throughput");
+        appendTextElement(doubleProp, "value", throughput);
+        appendTextElement(doubleProp, "savedValue", "0.0");
+        timer.appendChild(doubleProp);
+        JmxDocument.setProperty(timer, "stringProp", "TestPlan.comments", "Recorded throughput " + throughput + " samplers/min");
+        return timer;
+    }
+
+    private static void appendTextElement(Element parent, String tag, String text) {
+        Element child = parent.getOwnerDocument().createElement(tag);
+        child.setTextContent(text);
+        parent.appendChild(child);
+    }
+
+    /**
+     * @return the count of timers added
+     */
+    public int getTimersAdded() {
+        return timersAdded;
+    }
+
+    /**
+     * @return the count of pauses changed or created, disabled for the throughput mode
+     */
+    public int getPausesChanged() {
+        return pausesChanged;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Batch the consecutive identical WebSocket samplers (plugin "WebSocket Samplers by Peter Doornbosch") in a Loop Controller.
+ * A stream of frames pushed by the server (e.g. a trading or chat UI) gives thousands of Single Read samplers,
+ * a run of at least min frames samplers with the same properties and without child becomes one Loop Controller
+ * with the loop count and the first sampler, the order of the frames read and written is kept.
+ */
+public class WebSocketBatcher {
+    public static final String WS_SAMPLER_PACKAGE = "eu.luminis.jmeter.wssampler.";
+    private static final Set<String> BATCHED_SAMPLERS = new HashSet<>(Arrays.asList(
+            WS_SAMPLER_PACKAGE + "SingleReadWebSocketSampler",
+            WS_SAMPLER_PACKAGE + "SingleWriteWebSocketSampler",
+            WS_SAMPLER_PACKAGE + "RequestResponseWebSocketSampler"));
+    private static final String LOOP_CONTROLLER = "LoopController";
+
+    private final int minFrames;
+    private int batches = 0;
+    private int samplersRemoved = 0;
+
+    /**
+     * @param minFrames the min count of consecutive identical samplers to batch, at least 2
+     */
+    public WebSocketBatcher(int minFrames) {
+        this.minFrames = Math.max(2, minFrames);
+    }
+
+    /**
+     * Batch the WebSocket samplers of the hashTree and of its children (e.g. the Transaction Controllers)
+     * @param document the script
+     * @param hashTree the hashTree to batch, e.g. the Thread Group hashTree
+     */
+    public void batch(JmxDocument document, Element hashTree) {
+        if (hashTree == null) {
+            return;
+        }
+        List<Element> elements = JmxDocument.getTestElements(hashTree);
+        int i = 0;
+        while (i < elements.size()) {
+            Element element = elements.get(i);
+            String key = getBatchKey(element);
+            if (key == null) {
+                batch(document, JmxDocument.getHashTreeOf(element));
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < elements.size() && key.equals(getBatchKey(elements.get(end)))) {
+                end++;
+            }
+            if (end - i >= minFrames) {
+                createLoop(document, hashTree, elements.subList(i, end));
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * @return the tag and the properties of a WebSocket sampler to batch, null if not a read or write WebSocket sampler,
+     * if disabled or with children (e.g. an extractor)
+     */
+    private static String getBatchKey(Element element) {
+        if (!BATCHED_SAMPLERS.contains(element.getTagName()) || "false".equals(element.getAttribute("enabled"))) {
+            return null;
+        }
+        Element hashTree = JmxDocument.getHashTreeOf(element);
+        if (hashTree != null && !JmxDocument.getTestElements(hashTree).isEmpty()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(element.getTagName());
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                Element property = (Element) node;
+                key.append('\n').append(property.getTagName()).append(' ').append(property.getAttribute("name"))
+                        .append('=').append(property.getTextContent());
+            }
+        }
+        return key.toString();
+    }
+
+    private void createLoop(JmxDocument document, Element parentHashTree, List<Element> run) {
+        Element first = run.get(0);
+        Element loop = document.getDocument().createElement(LOOP_CONTROLLER);
+        loop.setAttribute("guiclass", "LoopControlPanel");
+        loop.setAttribute("testclass", LOOP_CONTROLLER);
+        loop.setAttribute("testname", "WebSocket " + run.size() + " x " + first.getAttribute("testname"));
+        loop.setAttribute("enabled", "true");
+        JmxDocument.setProperty(loop, "boolProp", "LoopController.continue_forever", "true");
+        JmxDocument.setProperty(loop, "stringProp", "LoopController.loops", String.valueOf(run.size()));
+        JmxDocument.setProperty(loop, "stringProp", "TestPlan.comments", "Batch of the samplers " + first.getAttribute("testname")
+                + " to " + run.get(run.size() - 1).getAttribute("testname"));
+
+        Element loopHashTree = document.getDocument().createElement(JmxDocument.HASH_TREE);
+        document.insertTestElement(parentHashTree, loop, loopHashTree, first);
+        Element firstHashTree = JmxDocument.getHashTreeOf(first);
+        loopHashTree.appendChild(first);
+        loopHashTree.appendChild(firstHashTree != null ? firstHashTree : document.getDocument().createElement(JmxDocument.HASH_TREE));
+        for (Element sampler : run.subList(1, run.size())) {
+            JmxDocument.removeTestElement(sampler);
+        }
+        batches++;
+        samplersRemoved += run.size() - 1;
+    }
+
+    /**
+     * @return the count of Loop Controllers created
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the count of samplers replaced by the loops
+     */
+    public int getSamplersRemoved() {
+        return samplersRemoved;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream that compresses blocks of the data in parallel and writes them in order in a channel.
+ * Each block is a complete gzip member, the concatenated members are a valid gzip file (RFC 1952) read by
+ * GZIPInputStream, gunzip, 7-zip ... The output is the same for the same data whatever the count of threads.
+ * Only a bounded count of blocks is in memory, the writer waits for the oldest block when the limit is reached.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    public static final int K_BLOCK_SIZE = 1024 * 1024;
+
+    private final WritableByteChannel out;
+    private final ExecutorService executor;
+    private final boolean isOwnExecutor;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block = new byte[K_BLOCK_SIZE];
+    private int blockLength = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Compress with one thread by core
+     * @param out the channel to write the gzip members, closed with this stream
+     */
+    public ParallelGzipOutputStream(WritableByteChannel out) {
+        this(out, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true,
+                Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param out the channel to write the gzip members, closed with this stream
+     * @param executor the threads to compress the blocks, not shut down by this stream
+     * @param maxPendingBlocks the count of blocks compressed in parallel before waiting for the oldest one
+     */
+    public ParallelGzipOutputStream(WritableByteChannel out, ExecutorService executor, int maxPendingBlocks) {
+        this(out, executor, false, maxPendingBlocks);
+    }
+
+    private ParallelGzipOutputStream(WritableByteChannel out, ExecutorService executor, boolean isOwnExecutor, int maxPendingBlocks) {
+        this.out = out;
+        this.executor = executor;
+        this.isOwnExecutor = isOwnExecutor;
+        this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Write the data from a buffer, e.g. read from a FileChannel
+     * @param buffer the data between position and limit
+     * @throws IOException if the compressed data can't be written
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = Math.min(buffer.remaining(), block.length - blockLength);
+            buffer.get(block, blockLength, n);
+            blockLength += n;
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        pendingBlocks.addLast(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return compress(data, length);
+            }
+        }));
+        block = new byte[K_BLOCK_SIZE];
+        blockLength = 0;
+        while (pendingBlocks.size() > maxPendingBlocks) {
+            writeOldestBlock();
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+            gzip.write(data, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void writeOldestBlock() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pendingBlocks.removeFirst().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Gzip compression interrupted");
+        } catch (ExecutionException ex) {
+            throw new IOException("Gzip compression failed, exception = " + ex.getCause(), ex.getCause());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(compressed);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Compress the last block, write all the blocks and close the channel
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            if (blockLength > 0) {
+                submitBlock();
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeOldestBlock();
+            }
+        } finally {
+            for (Future<byte[]> pending : pendingBlocks) {
+                pending.cancel(true);
+            }
+            if (isOwnExecutor) {
+                executor.shutdownNow();
+            }
+            out.close();
+        }
+    }
+}
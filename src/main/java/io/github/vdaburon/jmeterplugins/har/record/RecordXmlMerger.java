@@ -0,0 +1,257 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.record;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Concatenate the record xml files generated for the successive chunks of a HAR into one record xml file.
+ * The record xml is a JMeter results file : &lt;testResults version="1.2"&gt; then the samples then &lt;/testResults&gt;,
+ * the samples of each chunk are copied with FileChannel.transferTo without parsing the xml.
+ * The chunks are copied in the append order by a writer thread, so the next chunk is converted while the previous one
+ * is written. With gzip, the copy is compressed by blocks in parallel (ParallelGzipOutputStream).
+ */
+public class RecordXmlMerger implements Closeable {
+    /** Extension of a compressed record xml file, e.g. record.xml.gz */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private static final String ROOT_START = "<testResults";
+    private static final String ROOT_END = "</testResults>";
+    private static final int HEADER_SCAN_SIZE = 8 * 1024;
+    private static final int TAIL_SCAN_SIZE = 1024;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final File recordXmlOut;
+    private final FileChannel out;
+    private final ParallelGzipOutputStream gzipOut;
+    private final ExecutorService writer;
+    private final List<Future<?>> appends = new ArrayList<>();
+    private boolean isFirst = true;
+    private long writeNanos = 0;
+
+    /**
+     * Create the record xml file, compressed with gzip if the file name ends with .gz
+     * @param recordXmlOut the record xml file to write
+     * @throws IOException if the file can't be created
+     */
+    public RecordXmlMerger(File recordXmlOut) throws IOException {
+        this(recordXmlOut, isGzip(recordXmlOut.getName()));
+    }
+
+    /**
+     * @param recordXmlOut the record xml file to write
+     * @param isGzip true to compress the file with gzip
+     * @throws IOException if the file can't be created
+     */
+    public RecordXmlMerger(File recordXmlOut, boolean isGzip) throws IOException {
+        this.recordXmlOut = recordXmlOut;
+        out = new FileOutputStream(recordXmlOut).getChannel();
+        writer = Executors.newSingleThreadExecutor();
+        gzipOut = isGzip ? new ParallelGzipOutputStream(out) : null;
+    }
+
+    /**
+     * @param file the file to write, compressed with gzip if the file name ends with .gz
+     * @return a buffered stream to write the file
+     * @throws IOException if the file can't be created
+     */
+    public static OutputStream newOutputStream(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        if (isGzip(file.getName())) {
+            return new ParallelGzipOutputStream(out.getChannel());
+        }
+        return new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * @param fileName a record xml file name
+     * @return true if the file is compressed with gzip (.gz extension)
+     */
+    public static boolean isGzip(String fileName) {
+        return fileName.toLowerCase().endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Add the samples of a chunk record xml file, the chunk file must not be changed until the copy is done
+     * @param chunkRecordXml the record xml file generated for the chunk
+     * @throws IOException if a previous chunk file was not a JMeter results file or can't be written
+     */
+    public void append(File chunkRecordXml) throws IOException {
+        append(chunkRecordXml, false);
+    }
+
+    /**
+     * Add the samples of a chunk record xml file, the copy is done by the writer thread in the append order
+     * @param chunkRecordXml the record xml file generated for the chunk
+     * @param isDeleteAfterCopy true to delete the chunk file when its samples are copied
+     * @throws IOException if a previous chunk file was not a JMeter results file or can't be written
+     */
+    public void append(final File chunkRecordXml, final boolean isDeleteAfterCopy) throws IOException {
+        checkAppends(false);
+        final boolean isFirstChunk = isFirst;
+        isFirst = false;
+        appends.add(writer.submit(() -> {
+            long start = System.nanoTime();
+            long[] range = findContentRange(chunkRecordXml);
+            long position = isFirstChunk ? 0 : range[0];
+            try (FileChannel in = new FileInputStream(chunkRecordXml).getChannel()) {
+                transfer(in, position, range[1] - position);
+            }
+            if (isDeleteAfterCopy && !chunkRecordXml.delete()) {
+                chunkRecordXml.deleteOnExit();
+            }
+            writeNanos += System.nanoTime() - start;
+            return null;
+        }));
+    }
+
+    /**
+     * Throw the exception of the first failed copy
+     * @param isWaitAll true to wait the end of all the copies
+     */
+    private void checkAppends(boolean isWaitAll) throws IOException {
+        List<Future<?>> done = new ArrayList<>();
+        for (Future<?> append : appends) {
+            if (!isWaitAll && !append.isDone()) {
+                break;
+            }
+            try {
+                append.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Record xml merge interrupted");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException("Can't merge the record xml " + recordXmlOut + ", exception = " + cause, cause);
+            }
+            done.add(append);
+        }
+        appends.removeAll(done);
+    }
+
+    private void transfer(FileChannel in, long position, long count) throws IOException {
+        if (gzipOut != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long done = 0;
+            while (done < count) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), count - done));
+                int n = in.read(buffer, position + done);
+                if (n <= 0) {
+                    throw new IOException("Can't copy the record xml content to " + recordXmlOut);
+                }
+                buffer.flip();
+                gzipOut.write(buffer);
+                done += n;
+            }
+            return;
+        }
+        long done = 0;
+        while (done < count) {
+            long n = in.transferTo(position + done, count - done, out);
+            if (n <= 0) {
+                throw new IOException("Can't copy the record xml content to " + recordXmlOut);
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * @param recordXml a JMeter results file
+     * @return the offset after the root start tag and the offset of the root end tag
+     */
+    static long[] findContentRange(File recordXml) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(recordXml, "r")) {
+            long length = raf.length();
+            byte[] header = new byte[(int) Math.min(HEADER_SCAN_SIZE, length)];
+            raf.readFully(header);
+            // ISO-8859-1 to keep one char by byte and get the byte offsets
+            String sHeader = new String(header, StandardCharsets.ISO_8859_1);
+            int rootStart = sHeader.indexOf(ROOT_START);
+            int rootStartEnd = rootStart < 0 ? -1 : sHeader.indexOf('>', rootStart);
+
+            int tailSize = (int) Math.min(TAIL_SCAN_SIZE, length);
+            byte[] tail = new byte[tailSize];
+            raf.seek(length - tailSize);
+            raf.readFully(tail);
+            int rootEnd = new String(tail, StandardCharsets.ISO_8859_1).lastIndexOf(ROOT_END);
+            if (rootStartEnd < 0 || rootEnd < 0) {
+                throw new IOException("Not a JMeter record xml file (no " + ROOT_START + " ... " + ROOT_END + ") : " + recordXml);
+            }
+            return new long[] { rootStartEnd + 1, length - tailSize + rootEnd };
+        }
+    }
+
+    /**
+     * @return the time spent to copy the chunks in ns, valid after close()
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * Wait the copy of all the chunks, write the root end tag and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            checkAppends(true);
+            long start = System.nanoTime();
+            if (isFirst) {
+                write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + ROOT_START + " version=\"1.2\">\n").getBytes(StandardCharsets.UTF_8));
+            }
+            write((ROOT_END + "\n").getBytes(StandardCharsets.UTF_8));
+            if (gzipOut != null) {
+                gzipOut.close();
+            }
+            writeNanos += System.nanoTime() - start;
+        } finally {
+            writer.shutdownNow();
+            if (gzipOut != null) {
+                // stop the compression threads after a failed copy
+                gzipOut.close();
+            }
+            out.close();
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (gzipOut != null) {
+            gzipOut.write(bytes);
+        } else {
+            out.write(ByteBuffer.wrap(bytes));
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Spill the large HAR bodies (response content.text and request postData.text) to a temporary file.
+ * The body in the HAR chunk is replaced by a short placeholder, so the converter library never keeps the large
+ * body in the heap, and the placeholder is replaced by the body when the record xml and the script are written.
+ * A base64 encoded content is spilled as its base64 text without the encoding field, so the record xml has the body
+ * base64 encoded. Form url encoded post data are not spilled because the library decodes them in the sampler arguments,
+ * the length of the longest body kept inline gives the Jackson String length size needed by the library.
+ * The bodies are content addressed (SHA-256) : a body already spilled (e.g. a JS bundle fetched again, a polling
+ * response) gets the placeholder of the first copy and is stored once.
+ */
+public class BodySpillStore implements Closeable {
+    private static final String PLACEHOLDER_START = "__HAR_SPILL_";
+    private static final String PLACEHOLDER_END = "__";
+    private static final int PLACEHOLDER_MAX_DIGITS = 10;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long threshold;
+    private final String prefix;
+    private final RandomAccessFile spillFile;
+    private final FileChannel channel;
+    private long[] offsets = new long[256];
+    private int[] lengths = new int[256];
+    private int count = 0;
+    private long spilledBytes = 0;
+    private final Map<ByteBuffer, Integer> indexByDigest = new HashMap<>();
+    private final MessageDigest digest;
+    private int duplicates = 0;
+    private long duplicateBytes = 0;
+    private int longestInline = 0;
+
+    /**
+     * @param file the temporary file to write the bodies
+     * @param threshold the bodies with more chars than this threshold are spilled
+     * @throws IOException if the file can't be created
+     */
+    public BodySpillStore(File file, long threshold) throws IOException {
+        this.threshold = threshold;
+        // a random token so a placeholder can't be confused with a text of the HAR
+        this.prefix = PLACEHOLDER_START + Long.toHexString(new Random().nextLong() & Long.MAX_VALUE) + "_";
+        this.spillFile = new RandomAccessFile(file, "rw");
+        this.channel = spillFile.getChannel();
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is in all the Java platforms
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Replace the large bodies of the entry by placeholders
+     * @param entry the HAR entry to modify
+     * @throws IOException if the spill file can't be written
+     */
+    public void spillEntry(ObjectNode entry) throws IOException {
+        JsonNode content = entry.path("response").path("content");
+        if (content.isObject() && spillField((ObjectNode) content, "text")) {
+            // the library reads the placeholder as a text, the base64 body is restored encoded
+            ((ObjectNode) content).remove("encoding");
+        }
+        JsonNode postData = entry.path("request").path("postData");
+        if (postData.isObject()) {
+            if (postData.path("mimeType").asText("").toLowerCase().startsWith("application/x-www-form-urlencoded")) {
+                keepInline(postData.get("text"));
+            } else {
+                spillField((ObjectNode) postData, "text");
+            }
+        }
+    }
+
+    /**
+     * @return true if the field is replaced by a placeholder
+     */
+    private boolean spillField(ObjectNode node, String field) throws IOException {
+        JsonNode text = node.get(field);
+        if (text != null && text.isTextual() && text.asText().length() > threshold) {
+            node.put(field, spill(text.asText()));
+            return true;
+        }
+        keepInline(text);
+        return false;
+    }
+
+    private void keepInline(JsonNode text) {
+        if (text != null && text.isTextual()) {
+            longestInline = Math.max(longestInline, text.asText().length());
+        }
+    }
+
+    /**
+     * Write the text in the spill file
+     * @param text the body
+     * @return the placeholder to put in place of the body
+     * @throws IOException if the spill file can't be written
+     */
+    public String spill(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer key = ByteBuffer.wrap(digest.digest(bytes));
+        Integer existing = indexByDigest.get(key);
+        if (existing != null) {
+            duplicates++;
+            duplicateBytes += bytes.length;
+            return prefix + existing + PLACEHOLDER_END;
+        }
+        indexByDigest.put(key, count);
+        long offset = channel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        offsets[count] = offset;
+        lengths[count] = bytes.length;
+        spilledBytes += bytes.length;
+        return prefix + (count++) + PLACEHOLDER_END;
+    }
+
+    /**
+     * @return the count of distinct bodies spilled
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the bytes (UTF-8) of the bodies spilled
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return the count of bodies not written because the same body was already spilled
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the bytes (UTF-8) of the bodies not written because already spilled
+     */
+    public long getDuplicateBytes() {
+        return duplicateBytes;
+    }
+
+    /**
+     * @return the chars of the longest body not spilled, a form url encoded post data or a body under the threshold
+     */
+    public int getLongestInline() {
+        return longestInline;
+    }
+
+    /**
+     * @return the start of all the placeholders of this store
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Copy the reader to the writer, the placeholders are replaced by the bodies escaped for a xml text
+     * @param in the xml with placeholders (e.g. the record xml)
+     * @param out the xml with the bodies
+     * @return the count of placeholders replaced
+     * @throws IOException if an error occurs
+     */
+    public int restoreXml(Reader in, Writer out) throws IOException {
+        int maxPlaceholder = prefix.length() + PLACEHOLDER_MAX_DIGITS + PLACEHOLDER_END.length();
+        char[] buffer = new char[BUFFER_SIZE + maxPlaceholder];
+        int length = 0;
+        int replaced = 0;
+        boolean isEof = false;
+        while (!isEof) {
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                isEof = true;
+            } else {
+                length += n;
+            }
+            String text = new String(buffer, 0, length);
+            int pos = 0;
+            int found;
+            while ((found = text.indexOf(prefix, pos)) >= 0) {
+                int index = parsePlaceholder(text, found);
+                if (index == -2 && !isEof) {
+                    // placeholder cut at the end of the buffer, read more
+                    break;
+                }
+                if (index < 0) {
+                    out.write(text, pos, found + prefix.length() - pos);
+                    pos = found + prefix.length();
+                    continue;
+                }
+                out.write(text, pos, found - pos);
+                writeBodyEscaped(index, out);
+                replaced++;
+                pos = text.indexOf(PLACEHOLDER_END, found + prefix.length()) + PLACEHOLDER_END.length();
+            }
+            // keep the end of the buffer that could be the start of a placeholder
+            int keepFrom = isEof ? length : Math.max(pos, length - maxPlaceholder);
+            if (found >= 0 && found < keepFrom) {
+                keepFrom = found;
+            }
+            out.write(text, pos, keepFrom - pos);
+            length = length - keepFrom;
+            System.arraycopy(buffer, keepFrom, buffer, 0, length);
+        }
+        out.flush();
+        return replaced;
+    }
+
+    /**
+     * @return the body index, -1 if not a placeholder, -2 if the placeholder is not complete in the text
+     */
+    private int parsePlaceholder(String text, int start) {
+        int pos = start + prefix.length();
+        int digitsStart = pos;
+        while (pos < text.length() && Character.isDigit(text.charAt(pos)) && pos - digitsStart < PLACEHOLDER_MAX_DIGITS) {
+            pos++;
+        }
+        if (pos + PLACEHOLDER_END.length() > text.length()) {
+            return -2;
+        }
+        if (pos == digitsStart || !text.startsWith(PLACEHOLDER_END, pos)) {
+            return -1;
+        }
+        int index = Integer.parseInt(text.substring(digitsStart, pos));
+        return index < count ? index : -1;
+    }
+
+    private void writeBodyEscaped(int index, Writer out) throws IOException {
+        try (Reader body = new InputStreamReader(new SpilledBodyInputStream(offsets[index], lengths[index]), StandardCharsets.UTF_8)) {
+            char[] chars = new char[BUFFER_SIZE];
+            int n;
+            while ((n = body.read(chars)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    char c = chars[i];
+                    switch (c) {
+                        case '&':
+                            out.write("&amp;");
+                            break;
+                        case '<':
+                            out.write("&lt;");
+                            break;
+                        case '>':
+                            out.write("&gt;");
+                            break;
+                        default:
+                            out.write(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the placeholders of a text by the bodies, not escaped (e.g. a text of a DOM node)
+     * @param text the text with placeholders
+     * @return the text with the bodies
+     * @throws IOException if the spill file can't be read
+     */
+    public String restoreText(String text) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int pos = 0;
+        int found;
+        while ((found = text.indexOf(prefix, pos)) >= 0) {
+            int index = parsePlaceholder(text, found);
+            if (index < 0) {
+                sb.append(text, pos, found + prefix.length());
+                pos = found + prefix.length();
+                continue;
+            }
+            sb.append(text, pos, found);
+            byte[] bytes = new byte[lengths[index]];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offsets[index] + buffer.position()) < 0) {
+                    throw new IOException("Spill file truncated");
+                }
+            }
+            sb.append(new String(bytes, StandardCharsets.UTF_8));
+            pos = text.indexOf(PLACEHOLDER_END, found + prefix.length()) + PLACEHOLDER_END.length();
+        }
+        sb.append(text, pos, text.length());
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        spillFile.close();
+    }
+
+    /**
+     * Read a body from the spill file with positional reads, the channel stays open for the next bodies
+     */
+    private class SpilledBodyInputStream extends InputStream {
+        private long position;
+        private final long end;
+
+        SpilledBodyInputStream(long offset, int length) {
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                throw new IOException("Spill file truncated");
+            }
+            position += n;
+            return n;
+        }
+    }
+}
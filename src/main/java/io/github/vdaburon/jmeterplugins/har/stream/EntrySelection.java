@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+
+/**
+ * The entries to convert of a long capture : the entries in a time window and one page out of N.
+ * The entries are given in the conversion order with their startedDateTime only, before their json tree is built,
+ * so the entries not selected are skipped without being decoded.
+ * A page is a group of entries separated by more than new_tc_pause, counted on all the entries of the time window
+ * (before the URL filters).
+ */
+public class EntrySelection {
+    private final String start;
+    private final String end;
+    private final long startMillis;
+    private final boolean isStartRelative;
+    private final long endMillis;
+    private final boolean isEndRelative;
+    private final int everyPage;
+    private final long newPageAfterMs;
+    private long firstStarted = -1;
+    private long previousStarted = -1;
+    private boolean isPreviousInWindow = true;
+    private long pageIndex = -1;
+    private long selected = 0;
+    private long skipped = 0;
+
+    private EntrySelection(String start, String end, int everyPage, long newPageAfterMs) {
+        this.start = start;
+        this.end = end;
+        this.isStartRelative = isSeconds(start);
+        this.startMillis = parseBound(HarConvertorParameters.K_SELECT_START, start, Long.MIN_VALUE);
+        this.isEndRelative = isSeconds(end);
+        this.endMillis = parseBound(HarConvertorParameters.K_SELECT_END, end, Long.MAX_VALUE);
+        this.everyPage = Math.max(1, everyPage);
+        this.newPageAfterMs = newPageAfterMs;
+    }
+
+    /**
+     * @param parameters the conversion parameters
+     * @return the selection of the entries or null if all the entries are converted
+     * @throws IllegalArgumentException if select_start or select_end is not a date time or a number of seconds
+     */
+    public static EntrySelection create(HarConvertorParameters parameters) {
+        if (!parameters.isEntrySelection()) {
+            return null;
+        }
+        return new EntrySelection(parameters.getSelectStart().trim(), parameters.getSelectEnd().trim(),
+                parameters.getSelectEveryPage(), parameters.getCreateNewTransactionAfterRequestMs());
+    }
+
+    private static boolean isSeconds(String value) {
+        return !value.isEmpty() && value.matches("\\d+(\\.\\d+)?");
+    }
+
+    private static long parseBound(String name, String value, long defaultValue) {
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        if (isSeconds(value)) {
+            return Math.round(Double.parseDouble(value) * 1000);
+        }
+        long millis = HarEntries.parseMillis(value);
+        if (millis < 0) {
+            throw new IllegalArgumentException("Option " + name + " must be a date time ISO 8601 (e.g. 2024-05-06T12:39:58.711Z)"
+                    + " or the seconds from the first entry (e.g. 3600), value = " + value);
+        }
+        return millis;
+    }
+
+    /**
+     * Select the next entry, the entries must be given in the conversion order
+     * @param startedMillis the startedDateTime of the entry in epoch ms or -1 if not a valid date
+     * @return true if the entry is converted
+     */
+    public boolean isSelected(long startedMillis) {
+        boolean isSelected = isInWindow(startedMillis) && isInSelectedPage(startedMillis);
+        if (isSelected) {
+            selected++;
+        } else {
+            skipped++;
+        }
+        return isSelected;
+    }
+
+    private boolean isInWindow(long startedMillis) {
+        if (startedMillis < 0) {
+            // an entry without a valid date stays with the previous entry
+            return isPreviousInWindow;
+        }
+        if (firstStarted < 0) {
+            firstStarted = startedMillis;
+        }
+        long windowStart = isStartRelative ? firstStarted + startMillis : startMillis;
+        long windowEnd = isEndRelative ? firstStarted + endMillis : endMillis;
+        isPreviousInWindow = startedMillis >= windowStart && startedMillis <= windowEnd;
+        return isPreviousInWindow;
+    }
+
+    private boolean isInSelectedPage(long startedMillis) {
+        if (pageIndex < 0) {
+            pageIndex = 0;
+        } else if (newPageAfterMs > 0 && startedMillis >= 0 && previousStarted >= 0 && startedMillis - previousStarted > newPageAfterMs) {
+            pageIndex++;
+        }
+        if (startedMillis >= 0) {
+            previousStarted = startedMillis;
+        }
+        return pageIndex % everyPage == 0;
+    }
+
+    /**
+     * @return the count of entries selected
+     */
+    public long getSelected() {
+        return selected;
+    }
+
+    /**
+     * @return the count of entries skipped
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public String toString() {
+        return HarConvertorParameters.K_SELECT_START + "=" + start + ", " + HarConvertorParameters.K_SELECT_END + "=" + end
+                + ", " + HarConvertorParameters.K_SELECT_EVERY_PAGE + "=" + everyPage;
+    }
+}
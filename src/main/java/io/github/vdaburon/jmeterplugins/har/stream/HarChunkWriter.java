@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Write a valid HAR file entry by entry : the log header then the entries array.
+ */
+public class HarChunkWriter implements Closeable {
+    private final File file;
+    private final ObjectMapper mapper;
+    private final CountingOutputStream out;
+    private final JsonGenerator generator;
+    private int entriesWritten = 0;
+
+    /**
+     * Create the HAR file and write the log header
+     * @param file the HAR file to write
+     * @param logHeader the fields of log (version, creator, pages ...) without the entries
+     * @param mapper the mapper to write the json nodes
+     * @throws IOException if the file can't be written
+     */
+    public HarChunkWriter(File file, ObjectNode logHeader, ObjectMapper mapper) throws IOException {
+        this(file, false, logHeader, mapper);
+    }
+
+    /**
+     * Create the HAR file and write the log header
+     * @param file the HAR file to write
+     * @param isGzip true to compress the HAR file with gzip
+     * @param logHeader the fields of log (version, creator, pages ...) without the entries
+     * @param mapper the mapper to write the json nodes
+     * @throws IOException if the file can't be written
+     */
+    public HarChunkWriter(File file, boolean isGzip, ObjectNode logHeader, ObjectMapper mapper) throws IOException {
+        this.file = file;
+        this.mapper = mapper;
+        OutputStream fileOut = new FileOutputStream(file);
+        out = new CountingOutputStream(isGzip ? new GZIPOutputStream(fileOut, 64 * 1024) : new BufferedOutputStream(fileOut, 64 * 1024));
+        generator = mapper.getFactory().createGenerator(out);
+        generator.writeStartObject();
+        generator.writeFieldName("log");
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = logHeader.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            mapper.writeTree(generator, field.getValue());
+        }
+        generator.writeFieldName("entries");
+        generator.writeStartArray();
+    }
+
+    public void writeEntry(ObjectNode entry) throws IOException {
+        mapper.writeTree(generator, entry);
+        entriesWritten++;
+    }
+
+    public int getEntriesWritten() {
+        return entriesWritten;
+    }
+
+    /**
+     * @return the bytes written in the file (before the gzip compression), without the bytes still in the generator buffer
+     */
+    public long getBytesWritten() {
+        return out.count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Helpers to read the common fields of a HAR entry.
+ */
+public class HarEntries {
+
+    private HarEntries() {
+    }
+
+    /**
+     * @param entry the HAR entry
+     * @return the startedDateTime of the entry in epoch ms or -1 if missing or not an ISO 8601 date
+     */
+    public static long getStartedMillis(JsonNode entry) {
+        return parseMillis(entry.path("startedDateTime").asText(""));
+    }
+
+    /**
+     * @param isoDateTime a date time in ISO 8601 format with offset, e.g. 2024-05-06T12:39:58.711Z
+     * @return the date time in epoch ms or -1 if not a valid date time
+     */
+    public static long parseMillis(String isoDateTime) {
+        if (isoDateTime == null || isoDateTime.isEmpty()) {
+            return -1;
+        }
+        try {
+            return OffsetDateTime.parse(isoDateTime).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param entry the HAR entry
+     * @return the request url or an empty string
+     */
+    public static String getUrl(JsonNode entry) {
+        return entry.path("request").path("url").asText("");
+    }
+
+    /**
+     * @param entry the HAR entry
+     * @return the total time in ms of the entry or -1 if missing
+     */
+    public static long getTimeMillis(JsonNode entry) {
+        JsonNode time = entry.path("time");
+        return time.isNumber() ? Math.round(time.doubleValue()) : -1;
+    }
+
+    /**
+     * @param entry the HAR entry
+     * @return the wait timing in ms (time to the first byte of the response) of the entry or -1 if missing
+     */
+    public static long getWaitMillis(JsonNode entry) {
+        JsonNode wait = entry.path("timings").path("wait");
+        return wait.isNumber() ? Math.round(wait.doubleValue()) : -1;
+    }
+
+    /**
+     * @param url an url, e.g. https://mysite.com:8443/app/login?next=/home
+     * @return the host and the path without the port and the query, e.g. mysite.com/app/login
+     */
+    public static String getHostPath(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = url.length();
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        String hostPath = url.substring(start, end);
+        int slash = hostPath.indexOf('/');
+        String host = slash < 0 ? hostPath : hostPath.substring(0, slash);
+        String path = slash < 0 ? "/" : hostPath.substring(slash);
+        int colon = host.lastIndexOf(':');
+        if (colon > 0 && host.indexOf(']', colon) < 0) {
+            host = host.substring(0, colon);
+        }
+        return host.toLowerCase() + path;
+    }
+
+    /**
+     * @param url an absolute url, e.g. https://www.mysite.com:8443/path?query
+     * @return the host in lower case without the port, e.g. www.mysite.com
+     */
+    public static String getHost(String url) {
+        String hostPath = getHostPath(url);
+        return hostPath.substring(0, hostPath.indexOf('/'));
+    }
+
+    /**
+     * @param mimeType the mime type of a response, e.g. text/css; charset=utf-8
+     * @return true for an image, css, javascript, font, audio or video
+     */
+    public static boolean isStaticMimeType(String mimeType) {
+        int semicolon = mimeType.indexOf(';');
+        mimeType = (semicolon < 0 ? mimeType : mimeType.substring(0, semicolon)).trim().toLowerCase();
+        return mimeType.startsWith("image/") || mimeType.startsWith("font/") || mimeType.startsWith("audio/")
+                || mimeType.startsWith("video/") || mimeType.equals("text/css") || mimeType.contains("javascript")
+                || mimeType.contains("font");
+    }
+
+    /**
+     * @param entry the HAR entry
+     * @return the chars of the request body (postData.text) and the response body (content.text)
+     */
+    public static long getBodyChars(JsonNode entry) {
+        JsonNode requestBody = entry.path("request").path("postData").path("text");
+        JsonNode responseBody = entry.path("response").path("content").path("text");
+        return (requestBody.isTextual() ? requestBody.textValue().length() : 0)
+                + (responseBody.isTextual() ? responseBody.textValue().length() : 0);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The HAR entries to convert, one at a time, read from one HAR file or merged from several HAR files.
+ */
+public interface HarEntrySource extends Closeable {
+
+    /**
+     * @return the next entry or null at the end of the entries
+     * @throws IOException if an entry can't be read
+     */
+    ObjectNode nextEntry() throws IOException;
+
+    /**
+     * @return the fields of "log" without the entries (version, creator, pages ...)
+     */
+    ObjectNode getLogHeader();
+
+    /**
+     * @return the mapper to write the entries
+     */
+    ObjectMapper getMapper();
+}
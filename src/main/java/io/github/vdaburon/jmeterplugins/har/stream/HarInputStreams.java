@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Open a HAR file plain or compressed, the compressed HAR is decompressed while it is read, without temporary file :
+ * <ul>
+ * <li>.gz : gzip with the JDK</li>
+ * <li>.zst : zstandard with the zstd-jni library (com.github.luben:zstd-jni) if its jar is in &lt;JMETER_HOME&gt;/lib</li>
+ * <li>.zip : the first .har file of the zip (or the first file if no .har file) with the JDK</li>
+ * </ul>
+ */
+public class HarInputStreams {
+    public static final String HAR_EXTENSION = ".har";
+    public static final String GZIP_EXTENSION = ".gz";
+    public static final String ZSTD_EXTENSION = ".zst";
+    public static final String ZIP_EXTENSION = ".zip";
+    /** The extensions of the HAR files, plain or compressed */
+    public static final String[] HAR_FILE_EXTENSIONS = {HAR_EXTENSION, HAR_EXTENSION + GZIP_EXTENSION, HAR_EXTENSION + ZSTD_EXTENSION, ZIP_EXTENSION};
+
+    private static final String ZSTD_INPUT_STREAM_CLASS = "com.github.luben.zstd.ZstdInputStream";
+    private static final int FILE_BUFFER_SIZE = 256 * 1024;
+    private static final int DECOMPRESSED_BUFFER_SIZE = 64 * 1024;
+
+    private HarInputStreams() {
+    }
+
+    /**
+     * @param fileName the HAR file name
+     * @return true if the file is compressed (.gz, .zst or .zip)
+     */
+    public static boolean isCompressed(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(GZIP_EXTENSION) || name.endsWith(ZSTD_EXTENSION) || name.endsWith(ZIP_EXTENSION);
+    }
+
+    /**
+     * @param fileName a file name
+     * @return true if the file is a HAR file plain or compressed, e.g. mysite.har or mysite.har.gz
+     */
+    public static boolean isHarFile(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        for (String extension : HAR_FILE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param fileName the HAR file name
+     * @return the file name without the compression extension, e.g. mysite.har for mysite.har.gz
+     */
+    public static String removeCompressionExtension(String fileName) {
+        if (!isCompressed(fileName)) {
+            return fileName;
+        }
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+
+    /**
+     * Open the HAR file, decompressed if its extension is .gz, .zst or .zip
+     * @param file the HAR file
+     * @param progress the progress to add the bytes read from the file (compressed bytes) or null
+     * @return the HAR content buffered
+     * @throws IOException if the file can't be read, the zip has no file or zstd-jni is not in the classpath
+     */
+    public static InputStream open(File file, ConversionProgress progress) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), FILE_BUFFER_SIZE);
+        if (progress != null) {
+            in = new ProgressInputStream(in, progress);
+        }
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        try {
+            if (name.endsWith(GZIP_EXTENSION)) {
+                return new BufferedInputStream(new GZIPInputStream(in, DECOMPRESSED_BUFFER_SIZE), DECOMPRESSED_BUFFER_SIZE);
+            }
+            if (name.endsWith(ZSTD_EXTENSION)) {
+                return new BufferedInputStream(openZstd(in), DECOMPRESSED_BUFFER_SIZE);
+            }
+            if (name.endsWith(ZIP_EXTENSION)) {
+                return new BufferedInputStream(openZipHar(in, file), DECOMPRESSED_BUFFER_SIZE);
+            }
+            return in;
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    private static InputStream openZstd(InputStream in) throws IOException {
+        try {
+            // zstd-jni is optional, not a dependency of this plugin
+            Class<?> zstdClass = Class.forName(ZSTD_INPUT_STREAM_CLASS);
+            return (InputStream) zstdClass.getConstructor(InputStream.class).newInstance(in);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Can't read a .zst HAR file, the zstd-jni jar (com.github.luben:zstd-jni) must be in <JMETER_HOME>/lib");
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Can't read the .zst HAR file, exception = " + cause, cause);
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("Can't read the .zst HAR file, exception = " + ex, ex);
+        }
+    }
+
+    /**
+     * @return the zip positioned on the first .har file, or on the first file if no .har file
+     */
+    private static InputStream openZipHar(InputStream in, File file) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry firstFile = null;
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (entry.getName().toLowerCase(Locale.ROOT).endsWith(HAR_EXTENSION)) {
+                return zip;
+            }
+            if (firstFile == null) {
+                firstFile = entry;
+            }
+        }
+        zip.close();
+        if (firstFile == null) {
+            throw new IOException("No file in the zip " + file);
+        }
+        // the zip is read sequentially, open it again to read the first file
+        ZipInputStream again = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), FILE_BUFFER_SIZE));
+        while ((entry = again.getNextEntry()) != null) {
+            if (entry.getName().equals(firstFile.getName())) {
+                return again;
+            }
+        }
+        again.close();
+        throw new IOException("Can't read " + firstFile.getName() + " in the zip " + file);
+    }
+}
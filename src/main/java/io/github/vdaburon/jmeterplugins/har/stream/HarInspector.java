@@ -0,0 +1,449 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.github.vdaburon.jmeter.har.HarForJMeter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Fast inspection of the HAR files before a conversion, to choose the filters and the Jackson string max.
+ * The HAR is read with the streaming parser without building the json tree of the entries : the strings are measured
+ * in the parser buffer (no String created except the url and the mime type of each entry).
+ * The report gives the entries, the time span, the requests and the bytes by host, the largest bodies, the WebSocket
+ * connections, the longest json string and the suggested URL filter rules.
+ */
+public class HarInspector {
+    public static final int K_HOSTS_SHOWN = 30;
+    public static final int K_LARGEST_BODIES_SHOWN = 10;
+
+    private long harBytes = 0;
+    private long entries = 0;
+    private long firstStarted = -1;
+    private long lastStarted = -1;
+    private long staticEntries = 0;
+    private long bodyChars = 0;
+    private long maxStringLength = 0;
+    private long webSocketEntries = 0;
+    private long webSocketMessages = 0;
+    private long scanMillis = 0;
+    private final Map<String, HostStatistics> hosts = new HashMap<>();
+    private final PriorityQueue<Body> largestBodies = new PriorityQueue<>(Comparator.comparingLong(body -> body.chars));
+
+    // the entry read
+    private String url;
+    private String method;
+    private String mimeType;
+    private String resourceType;
+    private long requestChars;
+    private long responseChars;
+    private long messages;
+
+    /**
+     * Scan the HAR files
+     * @param harFiles the HAR files, plain or compressed
+     * @return the inspection of the HAR files
+     * @throws IOException if a HAR file can't be read or is not a HAR
+     */
+    public static HarInspector inspect(List<File> harFiles) throws IOException {
+        HarInspector inspector = new HarInspector();
+        long start = System.currentTimeMillis();
+        for (File harFile : harFiles) {
+            inspector.harBytes += harFile.length();
+            // no max string length, the longest string is measured
+            try (InputStream in = HarInputStreams.open(harFile, null);
+                 JsonParser parser = HarStreamReader.createJsonFactory(Integer.MAX_VALUE).createParser(in)) {
+                inspector.scanHar(parser);
+            }
+        }
+        inspector.scanMillis = System.currentTimeMillis() - start;
+        return inspector;
+    }
+
+    private void scanHar(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("HAR file must start with a json object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String rootField = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (!"log".equals(rootField) || token != JsonToken.START_OBJECT) {
+                scanValue(parser, token);
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String logField = parser.getCurrentName();
+                token = parser.nextToken();
+                if ("entries".equals(logField) && token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                        scanEntry(parser);
+                    }
+                    if (token != JsonToken.END_ARRAY) {
+                        throw new IOException("HAR entry is not a json object, token = " + token + " at " + parser.getCurrentLocation());
+                    }
+                } else {
+                    scanValue(parser, token);
+                }
+            }
+        }
+    }
+
+    private void scanEntry(JsonParser parser) throws IOException {
+        long startOffset = parser.getTokenLocation().getByteOffset();
+        long started = -1;
+        url = "";
+        method = "";
+        mimeType = "";
+        resourceType = "";
+        requestChars = 0;
+        responseChars = 0;
+        messages = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("startedDateTime".equals(field) && token == JsonToken.VALUE_STRING) {
+                started = HarEntries.parseMillis(parser.getText());
+            } else if ("request".equals(field) && token == JsonToken.START_OBJECT) {
+                scanRequest(parser);
+            } else if ("response".equals(field) && token == JsonToken.START_OBJECT) {
+                scanResponse(parser);
+            } else if ("_resourceType".equals(field) && token == JsonToken.VALUE_STRING) {
+                resourceType = parser.getText();
+            } else if ("_webSocketMessages".equals(field) && token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    messages++;
+                    scanValue(parser, token);
+                }
+            } else {
+                scanValue(parser, token);
+            }
+        }
+        long entryBytes = Math.max(0, parser.getCurrentLocation().getByteOffset() - startOffset);
+        addEntry(started, entryBytes);
+    }
+
+    private void addEntry(long started, long entryBytes) {
+        entries++;
+        if (started >= 0) {
+            firstStarted = firstStarted < 0 ? started : Math.min(firstStarted, started);
+            lastStarted = Math.max(lastStarted, started);
+        }
+        boolean isStatic = "GET".equalsIgnoreCase(method) && (resourceType.isEmpty() ? HarEntries.isStaticMimeType(mimeType)
+                : "image".equals(resourceType) || "stylesheet".equals(resourceType) || "script".equals(resourceType)
+                || "font".equals(resourceType) || "media".equals(resourceType));
+        HostStatistics host = hosts.computeIfAbsent(HarEntries.getHost(url), HostStatistics::new);
+        host.requests++;
+        host.bytes += entryBytes;
+        if (isStatic) {
+            host.staticRequests++;
+            staticEntries++;
+        }
+        if (mimeType.contains("html") || "document".equals(resourceType)) {
+            host.pages++;
+        }
+        if (messages > 0 || url.startsWith("ws://") || url.startsWith("wss://")) {
+            webSocketEntries++;
+            webSocketMessages += messages;
+        }
+        bodyChars += requestChars + responseChars;
+        addBody(requestChars, "request " + method);
+        addBody(responseChars, mimeType);
+    }
+
+    private void addBody(long chars, String type) {
+        if (chars == 0 || (largestBodies.size() == K_LARGEST_BODIES_SHOWN && chars <= largestBodies.peek().chars)) {
+            return;
+        }
+        largestBodies.add(new Body(chars, type, url));
+        if (largestBodies.size() > K_LARGEST_BODIES_SHOWN) {
+            largestBodies.poll();
+        }
+    }
+
+    private void scanRequest(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("url".equals(field) && token == JsonToken.VALUE_STRING) {
+                url = parser.getText();
+                measure(parser);
+            } else if ("method".equals(field) && token == JsonToken.VALUE_STRING) {
+                method = parser.getText();
+            } else if ("postData".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String postDataField = parser.getCurrentName();
+                    token = parser.nextToken();
+                    if ("text".equals(postDataField) && token == JsonToken.VALUE_STRING) {
+                        requestChars = measure(parser);
+                    } else {
+                        scanValue(parser, token);
+                    }
+                }
+            } else {
+                scanValue(parser, token);
+            }
+        }
+    }
+
+    private void scanResponse(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String contentField = parser.getCurrentName();
+                    token = parser.nextToken();
+                    if ("text".equals(contentField) && token == JsonToken.VALUE_STRING) {
+                        responseChars = measure(parser);
+                    } else if ("mimeType".equals(contentField) && token == JsonToken.VALUE_STRING) {
+                        mimeType = parser.getText().toLowerCase();
+                    } else {
+                        scanValue(parser, token);
+                    }
+                }
+            } else {
+                scanValue(parser, token);
+            }
+        }
+    }
+
+    /**
+     * Skip a value and its children, the strings are measured without being created
+     */
+    private void scanValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            measure(parser);
+            return;
+        }
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            token = parser.nextToken();
+            if (token == null) {
+                throw new IOException("HAR file truncated at " + parser.getCurrentLocation());
+            }
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                depth--;
+            } else if (token == JsonToken.VALUE_STRING) {
+                measure(parser);
+            }
+        }
+    }
+
+    private long measure(JsonParser parser) throws IOException {
+        int length = parser.getTextLength();
+        maxStringLength = Math.max(maxStringLength, length);
+        return length;
+    }
+
+    /**
+     * @return the domain of the site recorded : the parent domain of the host with the most html pages
+     * (or else the most requests), e.g. mysite.com for www.mysite.com, empty if no entry
+     */
+    public String getMainDomain() {
+        HostStatistics main = null;
+        for (HostStatistics host : hosts.values()) {
+            if (main == null || host.pages > main.pages || (host.pages == main.pages && host.requests > main.requests)) {
+                main = host;
+            }
+        }
+        return main == null ? "" : getParentDomain(main.host);
+    }
+
+    /**
+     * @param host a host name, e.g. www.mysite.co.uk
+     * @return the registered domain guessed from the labels, e.g. mysite.co.uk, or the host if an ip address
+     */
+    static String getParentDomain(String host) {
+        String[] labels = host.split("\\.");
+        if (labels.length <= 2 || host.matches("[\\d.]+") || host.startsWith("[")) {
+            return host;
+        }
+        int count = 2;
+        // second level domain of a country, e.g. co.uk, com.br
+        if (labels[labels.length - 1].length() == 2 && labels[labels.length - 2].length() <= 3) {
+            count = 3;
+        }
+        StringBuilder domain = new StringBuilder();
+        for (int i = Math.max(0, labels.length - count); i < labels.length; i++) {
+            domain.append(domain.length() == 0 ? "" : ".").append(labels[i]);
+        }
+        return domain.toString();
+    }
+
+    /**
+     * @return the suggested rules for the filter_rules file : include the main domain, exclude its hosts with static
+     * resources only, the other hosts in comments
+     */
+    public List<String> getSuggestedFilterRules() {
+        List<String> rules = new ArrayList<>();
+        String domain = getMainDomain();
+        if (domain.isEmpty()) {
+            return rules;
+        }
+        rules.add("# main site " + domain + ", the other hosts are not converted");
+        rules.add("include host " + domain);
+        List<HostStatistics> others = new ArrayList<>();
+        for (HostStatistics host : getHostsByBytes()) {
+            boolean isInDomain = host.host.equals(domain) || host.host.endsWith("." + domain);
+            if (isInDomain && host.staticRequests == host.requests && host.pages == 0) {
+                rules.add("exclude host " + host.host);
+            } else if (!isInDomain) {
+                others.add(host);
+            }
+        }
+        for (HostStatistics host : others.subList(0, Math.min(others.size(), K_HOSTS_SHOWN))) {
+            rules.add("#   not included " + host.host + " (" + host.requests + " requests, " + host.bytes + " bytes)");
+        }
+        if (others.size() > K_HOSTS_SHOWN) {
+            rules.add("#   ... " + (others.size() - K_HOSTS_SHOWN) + " other hosts not included");
+        }
+        if (staticEntries > 0) {
+            rules.add("# " + staticEntries + " static resources (images, css, scripts, fonts), exclude them or use collapse_static");
+            rules.add("# exclude regex (?i).*\\.(css|js|png|gif|jpe?g|svg|ico|webp|woff2?|ttf|eot)(\\?.*)?");
+        }
+        return rules;
+    }
+
+    private List<HostStatistics> getHostsByBytes() {
+        List<HostStatistics> sorted = new ArrayList<>(hosts.values());
+        sorted.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        return sorted;
+    }
+
+    /**
+     * @return the jackson_parser_string_max needed for the longest json string, 0 if the default is enough
+     */
+    public long getSuggestedJacksonParserStringMax() {
+        if (maxStringLength <= HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT) {
+            return 0;
+        }
+        // rounded up to the next million with a margin of 10%
+        return (maxStringLength * 11 / 10 / 1000000 + 1) * 1000000;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public int getHosts() {
+        return hosts.size();
+    }
+
+    public long getWebSocketEntries() {
+        return webSocketEntries;
+    }
+
+    public long getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * @return the inspection report, one line by metric or host
+     */
+    public String toText() {
+        String eol = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("HAR bytes ").append(harBytes).append(", scanned in ").append(scanMillis).append(" ms").append(eol);
+        sb.append("Entries ").append(entries).append(", static resources ").append(staticEntries)
+                .append(", body chars ").append(bodyChars).append(eol);
+        if (firstStarted >= 0) {
+            sb.append("Time span ").append(Instant.ofEpochMilli(firstStarted)).append(" to ").append(Instant.ofEpochMilli(lastStarted))
+                    .append(", ").append((lastStarted - firstStarted) / 1000).append(" s").append(eol);
+        }
+        sb.append(eol).append("Hosts ").append(hosts.size()).append(" :").append(eol);
+        sb.append(String.format("%9s %14s %7s %6s  %s%n", "Requests", "Bytes", "Static", "Pages", "Host"));
+        List<HostStatistics> sortedHosts = getHostsByBytes();
+        for (HostStatistics host : sortedHosts.subList(0, Math.min(sortedHosts.size(), K_HOSTS_SHOWN))) {
+            sb.append(String.format("%9d %14d %7d %6d  %s%n", host.requests, host.bytes, host.staticRequests, host.pages, host.host));
+        }
+        if (sortedHosts.size() > K_HOSTS_SHOWN) {
+            sb.append("... ").append(sortedHosts.size() - K_HOSTS_SHOWN).append(" hosts not shown").append(eol);
+        }
+        sb.append(eol).append("Largest bodies :").append(eol);
+        List<Body> bodies = new ArrayList<>(largestBodies);
+        bodies.sort((a, b) -> Long.compare(b.chars, a.chars));
+        for (Body body : bodies) {
+            sb.append(String.format("%12d  %-24s %s%n", body.chars, body.type, body.url));
+        }
+        sb.append(eol);
+        if (webSocketEntries > 0) {
+            sb.append("WebSocket connections ").append(webSocketEntries).append(", messages ").append(webSocketMessages)
+                    .append(", check ws_with_pdoornbosch to convert them").append(eol);
+        } else {
+            sb.append("WebSocket connections 0").append(eol);
+        }
+        long jacksonMax = getSuggestedJacksonParserStringMax();
+        sb.append("Longest json string ").append(maxStringLength).append(" chars, ").append(jacksonMax > 0
+                ? "set jackson_parser_string_max to " + jacksonMax
+                : "the default jackson_parser_string_max " + HarForJMeter.K_JACKSON_PARSER_STRING_MAX_DEFAULT + " is enough").append(eol);
+        List<String> rules = getSuggestedFilterRules();
+        if (!rules.isEmpty()) {
+            sb.append(eol).append("Suggested URL filter rules (filter_rules file) :").append(eol);
+            for (String rule : rules) {
+                sb.append(rule).append(eol);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The requests and the bytes of the entries of one host
+     */
+    private static class HostStatistics {
+        private final String host;
+        private long requests = 0;
+        private long bytes = 0;
+        private long staticRequests = 0;
+        private long pages = 0;
+
+        HostStatistics(String host) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * A request or response body of the largest bodies
+     */
+    private static class Body {
+        private final long chars;
+        private final String type;
+        private final String url;
+
+        Body(long chars, String type, String url) {
+            this.chars = chars;
+            this.type = type;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read a HAR file with the Jackson streaming parser, one element of log.entries at a time.
+ * Only the current entry is in memory, the fields of "log" before "entries" (version, creator, browser, pages) are kept
+ * in the log header to write the HAR chunks.
+ */
+public class HarStreamReader implements HarEntrySource {
+    private final JsonParser parser;
+    private final ObjectMapper mapper;
+    private final ObjectNode logHeader;
+    private boolean isInEntries = false;
+    private long entryStartedMillis = -1;
+    private String entryUrl = "";
+    private long entryTimeMillis = -1;
+    private long entryWaitMillis = -1;
+    private long entryStartOffset = -1;
+    private long entryEndOffset = -1;
+
+    /**
+     * Open the HAR and move the parser to the first entry
+     * @param in the HAR content, closed with this reader
+     * @param jacksonParserStringMax the max length of a json string value (e.g. a response body)
+     * @throws IOException if the HAR can't be read or has no log.entries array
+     */
+    public HarStreamReader(InputStream in, int jacksonParserStringMax) throws IOException {
+        JsonFactory factory = createJsonFactory(jacksonParserStringMax);
+        mapper = new ObjectMapper(factory);
+        parser = factory.createParser(in);
+        logHeader = mapper.createObjectNode();
+        moveToEntries();
+    }
+
+    /**
+     * @param jacksonParserStringMax the max length of a json string value
+     * @return a json factory with the string max length for the big response bodies
+     */
+    public static JsonFactory createJsonFactory(int jacksonParserStringMax) {
+        return JsonFactory.builder()
+                .streamReadConstraints(StreamReadConstraints.builder().maxStringLength(jacksonParserStringMax).build())
+                .build();
+    }
+
+    private void moveToEntries() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("HAR file must start with a json object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String rootField = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("log".equals(rootField) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String logField = parser.getCurrentName();
+                    token = parser.nextToken();
+                    if ("entries".equals(logField) && token == JsonToken.START_ARRAY) {
+                        isInEntries = true;
+                        return;
+                    }
+                    JsonNode value = mapper.readTree(parser);
+                    logHeader.set(logField, value);
+                }
+                break;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("HAR file without log.entries array");
+    }
+
+    /**
+     * @return the next entry or null at the end of log.entries
+     * @throws IOException if an entry is not a json object or the json is malformed
+     */
+    @Override
+    public ObjectNode nextEntry() throws IOException {
+        if (!isInEntries) {
+            return null;
+        }
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            isInEntries = false;
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("HAR entry is not a json object, token = " + token + " at " + parser.getCurrentLocation());
+        }
+        return (ObjectNode) mapper.readTree(parser);
+    }
+
+    /**
+     * Skip the next entry without building the json tree, only the startedDateTime, the request url, the time, the wait
+     * timing and the byte offsets of the entry in the HAR are kept (see getEntryStartedMillis, getEntryUrl,
+     * getEntryTimeMillis, getEntryWaitMillis, getEntryStartOffset and getEntryEndOffset).
+     * The offsets are exact only if the input stream is the HAR file from its first byte.
+     * @return true if an entry has been skipped, false at the end of log.entries
+     * @throws IOException if an entry is not a json object or the json is malformed
+     */
+    public boolean skipEntry() throws IOException {
+        if (!isInEntries) {
+            return false;
+        }
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            isInEntries = false;
+            return false;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("HAR entry is not a json object, token = " + token + " at " + parser.getCurrentLocation());
+        }
+        entryStartOffset = parser.getTokenLocation().getByteOffset();
+        entryStartedMillis = -1;
+        entryUrl = "";
+        entryTimeMillis = -1;
+        entryWaitMillis = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            token = parser.nextToken();
+            if ("startedDateTime".equals(field) && token == JsonToken.VALUE_STRING) {
+                entryStartedMillis = HarEntries.parseMillis(parser.getText());
+            } else if ("request".equals(field) && token == JsonToken.START_OBJECT) {
+                skipRequest();
+            } else if ("time".equals(field) && token.isNumeric()) {
+                entryTimeMillis = Math.round(parser.getDoubleValue());
+            } else if ("timings".equals(field) && token == JsonToken.START_OBJECT) {
+                skipTimings();
+            } else {
+                // the large strings (bodies) are skipped without being decoded
+                parser.skipChildren();
+            }
+        }
+        entryEndOffset = parser.getCurrentLocation().getByteOffset();
+        return true;
+    }
+
+    private void skipRequest() throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("url".equals(field) && token == JsonToken.VALUE_STRING) {
+                entryUrl = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void skipTimings() throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("wait".equals(field) && token.isNumeric()) {
+                entryWaitMillis = Math.round(parser.getDoubleValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * @return the startedDateTime in epoch ms of the entry skipped or -1 if not a valid date
+     */
+    public long getEntryStartedMillis() {
+        return entryStartedMillis;
+    }
+
+    /**
+     * @return the request url of the entry skipped or an empty string
+     */
+    public String getEntryUrl() {
+        return entryUrl;
+    }
+
+    /**
+     * @return the total time in ms of the entry skipped or -1 if missing
+     */
+    public long getEntryTimeMillis() {
+        return entryTimeMillis;
+    }
+
+    /**
+     * @return the wait timing in ms (time to the first byte of the response) of the entry skipped or -1 if missing
+     */
+    public long getEntryWaitMillis() {
+        return entryWaitMillis;
+    }
+
+    /**
+     * @return the offset of the first byte ('{') of the entry skipped
+     */
+    public long getEntryStartOffset() {
+        return entryStartOffset;
+    }
+
+    /**
+     * @return the offset after the last byte ('}') of the entry skipped
+     */
+    public long getEntryEndOffset() {
+        return entryEndOffset;
+    }
+
+    /**
+     * @return the fields of "log" read before the "entries" array
+     */
+    @Override
+    public ObjectNode getLogHeader() {
+        return logHeader;
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
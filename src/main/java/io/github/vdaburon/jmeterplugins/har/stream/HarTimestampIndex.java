@@ -0,0 +1,182 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The startedDateTime, the url and the timings of the HAR entries in compact arrays, to compute the pages
+ * (Transaction Controllers) and their recorded timings for any time between 2 urls without reading the HAR again.
+ * The entries are skipped without building their json tree, the bodies are not decoded.
+ * With several HAR files, the entries are sorted in the startedDateTime order like the merged conversion.
+ */
+public class HarTimestampIndex {
+    private final long[] startedMillis;
+    private final String[] urls;
+    private final long[] timeMillis;
+    private final long[] waitMillis;
+
+    private HarTimestampIndex(long[] startedMillis, String[] urls, long[] timeMillis, long[] waitMillis) {
+        this.startedMillis = startedMillis;
+        this.urls = urls;
+        this.timeMillis = timeMillis;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Read the startedDateTime, the url and the timings of all the entries
+     * @param harFiles the HAR files, plain or compressed
+     * @param jacksonParserStringMax the max length of a json string value
+     * @return the index of the entries
+     * @throws IOException if a HAR file can't be read
+     */
+    public static HarTimestampIndex build(List<File> harFiles, int jacksonParserStringMax) throws IOException {
+        long[] started = new long[1024];
+        String[] urls = new String[1024];
+        long[] times = new long[1024];
+        long[] waits = new long[1024];
+        int count = 0;
+        for (File harFile : harFiles) {
+            try (HarStreamReader reader = new HarStreamReader(HarInputStreams.open(harFile, null), jacksonParserStringMax)) {
+                while (reader.skipEntry()) {
+                    if (count == started.length) {
+                        started = Arrays.copyOf(started, count * 2);
+                        urls = Arrays.copyOf(urls, count * 2);
+                        times = Arrays.copyOf(times, count * 2);
+                        waits = Arrays.copyOf(waits, count * 2);
+                    }
+                    started[count] = reader.getEntryStartedMillis();
+                    urls[count] = reader.getEntryUrl();
+                    times[count] = reader.getEntryTimeMillis();
+                    waits[count] = reader.getEntryWaitMillis();
+                    count++;
+                }
+            }
+        }
+        HarTimestampIndex index = new HarTimestampIndex(Arrays.copyOf(started, count), Arrays.copyOf(urls, count),
+                Arrays.copyOf(times, count), Arrays.copyOf(waits, count));
+        return harFiles.size() > 1 ? index.sortByStarted() : index;
+    }
+
+    private HarTimestampIndex sortByStarted() {
+        Integer[] order = new Integer[startedMillis.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // stable sort, the entries at the same time stay in the HAR files order
+        Arrays.sort(order, (a, b) -> Long.compare(startedMillis[a], startedMillis[b]));
+        long[] sortedStarted = new long[order.length];
+        String[] sortedUrls = new String[order.length];
+        long[] sortedTimes = new long[order.length];
+        long[] sortedWaits = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedStarted[i] = startedMillis[order[i]];
+            sortedUrls[i] = urls[order[i]];
+            sortedTimes[i] = timeMillis[order[i]];
+            sortedWaits[i] = waitMillis[order[i]];
+        }
+        return new HarTimestampIndex(sortedStarted, sortedUrls, sortedTimes, sortedWaits);
+    }
+
+    /**
+     * @param isKept true for the url of the entries to keep
+     * @return a new index with the entries kept only
+     */
+    public HarTimestampIndex filter(Predicate<String> isKept) {
+        long[] keptStarted = new long[startedMillis.length];
+        String[] keptUrls = new String[urls.length];
+        long[] keptTimes = new long[timeMillis.length];
+        long[] keptWaits = new long[waitMillis.length];
+        int count = 0;
+        for (int i = 0; i < startedMillis.length; i++) {
+            if (isKept.test(urls[i])) {
+                keptStarted[count] = startedMillis[i];
+                keptUrls[count] = urls[i];
+                keptTimes[count] = timeMillis[i];
+                keptWaits[count] = waitMillis[i];
+                count++;
+            }
+        }
+        return new HarTimestampIndex(Arrays.copyOf(keptStarted, count), Arrays.copyOf(keptUrls, count),
+                Arrays.copyOf(keptTimes, count), Arrays.copyOf(keptWaits, count));
+    }
+
+    /**
+     * A new page starts when the time between the startedDateTime of 2 urls is greater than the time to create a new page,
+     * the same rule as the converter library and the cut of the chunks in streaming mode
+     * @param newPageAfterMs the time between 2 urls to create a new page, no new page if &lt;= 0
+     * @return the index of the first entry of each page, empty if no entry
+     */
+    public int[] groupPages(long newPageAfterMs) {
+        if (startedMillis.length == 0) {
+            return new int[0];
+        }
+        int[] pageStarts = new int[16];
+        int pages = 1;
+        for (int i = 1; i < startedMillis.length; i++) {
+            long previous = startedMillis[i - 1];
+            long current = startedMillis[i];
+            if (newPageAfterMs > 0 && previous >= 0 && current >= 0 && current - previous > newPageAfterMs) {
+                if (pages == pageStarts.length) {
+                    pageStarts = Arrays.copyOf(pageStarts, pages * 2);
+                }
+                pageStarts[pages++] = i;
+            }
+        }
+        return Arrays.copyOf(pageStarts, pages);
+    }
+
+    /**
+     * @param newPageAfterMs the time between 2 urls to create a new page, no new page if &lt;= 0
+     * @return the recorded think times, page durations and throughput of the pages
+     */
+    public PageTimingStatistics getPageTimings(long newPageAfterMs) {
+        PageTimingStatistics statistics = new PageTimingStatistics(newPageAfterMs);
+        for (int i = 0; i < startedMillis.length; i++) {
+            statistics.addEntry(startedMillis[i], timeMillis[i], waitMillis[i]);
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the count of entries
+     */
+    public int size() {
+        return startedMillis.length;
+    }
+
+    /**
+     * @param i the entry index
+     * @return the startedDateTime in epoch ms or -1 if not a valid date
+     */
+    public long getStartedMillis(int i) {
+        return startedMillis[i];
+    }
+
+    /**
+     * @param i the entry index
+     * @return the request url
+     */
+    public String getUrl(int i) {
+        return urls[i];
+    }
+}
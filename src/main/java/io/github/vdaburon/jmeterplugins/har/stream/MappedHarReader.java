@@ -0,0 +1,352 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read a HAR file mapped in memory : a pre-scan of the bytes finds the offsets of each element of log.entries
+ * (only the json structure is followed, the strings are not decoded), then the entries are decoded by worker threads
+ * ahead of the conversion and returned in the HAR order.
+ * The decoded entries waiting to be read are bounded, so the heap doesn't grow with the HAR size.
+ * The file is mapped by segments of 1 GB, an entry could be on 2 segments.
+ */
+public class MappedHarReader implements HarEntrySource {
+    private static final Logger log = LoggerFactory.getLogger(MappedHarReader.class);
+
+    /** Smaller HAR files are read with HarStreamReader, the pre-scan and the threads are not worth it */
+    public static final long K_MIN_FILE_BYTES = 64L * 1024 * 1024;
+    /** Entries decoded in advance by decoding thread */
+    private static final int K_PENDING_BY_THREAD = 4;
+    private static final long K_SEGMENT_BYTES = 1L << 30;
+    private static final int CANCEL_CHECK_BYTES = 16 * 1024 * 1024;
+    private static final byte[] KEY_LOG = "log".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_ENTRIES = "entries".getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+    private final long segmentBytes;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final ObjectMapper mapper;
+    private final ObjectNode logHeader;
+    private final ConversionProgress progress;
+    private long[] entryStarts = new long[1024];
+    private long[] entryEnds = new long[1024];
+    private int count = 0;
+    private int nextIndex = 0;
+    private int submitIndex = 0;
+    private ExecutorService decoders;
+    private int maxPending;
+    private final ArrayDeque<Future<ObjectNode>> pending = new ArrayDeque<>();
+
+    private MappedHarReader(File file, int jacksonParserStringMax, ConversionProgress progress, long segmentBytes) throws IOException {
+        this.file = file;
+        this.segmentBytes = segmentBytes;
+        this.progress = progress;
+        // the fields of log before the entries, read with the streaming parser that stops at the first entry
+        try (HarStreamReader headerReader = new HarStreamReader(new BufferedInputStream(new FileInputStream(file), 64 * 1024), jacksonParserStringMax)) {
+            this.logHeader = headerReader.getLogHeader();
+        }
+        this.mapper = new ObjectMapper(HarStreamReader.createJsonFactory(jacksonParserStringMax));
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + segmentBytes - 1) / segmentBytes)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * segmentBytes;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentBytes, size - position));
+            }
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Map the HAR file and find the offsets of the entries
+     * @param file the HAR file
+     * @param jacksonParserStringMax the max length of a json string value
+     * @param threads the count of threads to decode the entries
+     * @param progress the progress, the cancel flag is checked during the pre-scan
+     * @return the reader or null if the file is smaller than K_MIN_FILE_BYTES, only one thread or the pre-scan failed,
+     * then read the HAR with HarStreamReader
+     * @throws InterruptedException if cancelled
+     */
+    public static MappedHarReader open(File file, int jacksonParserStringMax, int threads, ConversionProgress progress) throws InterruptedException {
+        return open(file, jacksonParserStringMax, threads, progress, K_MIN_FILE_BYTES, K_SEGMENT_BYTES);
+    }
+
+    /**
+     * @param minFileBytes the smaller files are not mapped
+     * @param segmentBytes the size of the mapped segments, small in the tests to have entries on 2 segments
+     */
+    static MappedHarReader open(File file, int jacksonParserStringMax, int threads, ConversionProgress progress,
+                                long minFileBytes, long segmentBytes) throws InterruptedException {
+        if (file.length() < minFileBytes) {
+            log.info("HAR file " + file + " smaller than " + minFileBytes + " bytes, read without memory mapping");
+            return null;
+        }
+        if (threads < 2) {
+            // the decode would not be in parallel with the conversion, the streaming parser is faster
+            log.info("Only one thread to decode the HAR entries, read without memory mapping");
+            return null;
+        }
+        MappedHarReader reader = null;
+        try {
+            long start = System.currentTimeMillis();
+            reader = new MappedHarReader(file, jacksonParserStringMax, progress, segmentBytes);
+            reader.scanEntries();
+            reader.startDecoders(threads);
+            log.info("HAR file " + file + " mapped, entries=" + reader.count + ", pre-scan in "
+                    + (System.currentTimeMillis() - start) + " ms, decoding threads=" + threads);
+            return reader;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Can't pre-scan the entries of the HAR file " + file + ", read without memory mapping, exception = " + ex);
+            closeQuietly(reader);
+            return null;
+        } catch (InterruptedException ex) {
+            closeQuietly(reader);
+            throw ex;
+        }
+    }
+
+    /**
+     * Follow the json structure byte by byte : the objects and arrays depth, the strings and their escapes.
+     * The root key "log" then its key "entries" give the entries array, each object in this array is an entry.
+     */
+    private void scanEntries() throws IOException, InterruptedException {
+        int depth = 0;
+        boolean isInString = false;
+        boolean isEscape = false;
+        // the last string at depth 1 or 2 when it is short enough to be "log" or "entries", else length -1
+        byte[] lastKey = new byte[KEY_ENTRIES.length];
+        int lastKeyLength = -1;
+        int logDepth = -1;
+        int entriesDepth = -1;
+        long entryStart = -1;
+        long stringStart = -1;
+
+        for (int s = 0; s < segments.length; s++) {
+            MappedByteBuffer segment = segments[s];
+            long segmentPosition = s * segmentBytes;
+            int limit = segment.limit();
+            for (int i = 0; i < limit; i++) {
+                if ((i & (CANCEL_CHECK_BYTES - 1)) == 0) {
+                    progress.checkCancelled();
+                }
+                byte b = segment.get(i);
+                if (isInString) {
+                    if (isEscape) {
+                        isEscape = false;
+                    } else if (b == '\\') {
+                        isEscape = true;
+                    } else if (b == '"') {
+                        isInString = false;
+                        long length = segmentPosition + i - stringStart;
+                        lastKeyLength = -1;
+                        if ((depth == 1 || depth == 2) && length <= lastKey.length) {
+                            for (int k = 0; k < length; k++) {
+                                lastKey[k] = byteAt(stringStart + k);
+                            }
+                            lastKeyLength = (int) length;
+                        }
+                    }
+                    continue;
+                }
+                switch (b) {
+                    case '"':
+                        isInString = true;
+                        stringStart = segmentPosition + i + 1;
+                        break;
+                    case '{':
+                    case '[':
+                        if (depth == 1 && b == '{' && isKey(lastKey, lastKeyLength, KEY_LOG)) {
+                            logDepth = depth + 1;
+                        } else if (depth == 2 && depth == logDepth && b == '[' && isKey(lastKey, lastKeyLength, KEY_ENTRIES)) {
+                            entriesDepth = depth + 1;
+                        } else if (depth == entriesDepth && b == '{') {
+                            entryStart = segmentPosition + i;
+                        } else if (depth == entriesDepth) {
+                            throw new IOException("HAR entry is not a json object at offset " + (segmentPosition + i));
+                        }
+                        lastKeyLength = -1;
+                        depth++;
+                        break;
+                    case '}':
+                    case ']':
+                        depth--;
+                        if (entriesDepth > 0 && depth == entriesDepth && b == '}') {
+                            addEntry(entryStart, segmentPosition + i + 1);
+                        } else if (entriesDepth > 0 && depth == entriesDepth - 1 && b == ']') {
+                            return;
+                        } else if (depth == logDepth - 1 && b == '}') {
+                            // end of log without entries array, the streaming parser doesn't look for another log
+                            throw new IOException("HAR file without log.entries array");
+                        } else if (depth < 0) {
+                            throw new IOException("Unbalanced json at offset " + (segmentPosition + i));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        throw new IOException("HAR file without log.entries array or truncated");
+    }
+
+    private static boolean isKey(byte[] lastKey, int lastKeyLength, byte[] key) {
+        if (lastKeyLength != key.length) {
+            return false;
+        }
+        for (int k = 0; k < key.length; k++) {
+            if (lastKey[k] != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte byteAt(long position) {
+        return segments[(int) (position / segmentBytes)].get((int) (position % segmentBytes));
+    }
+
+    private void addEntry(long start, long end) {
+        if (count == entryStarts.length) {
+            entryStarts = Arrays.copyOf(entryStarts, count * 2);
+            entryEnds = Arrays.copyOf(entryEnds, count * 2);
+        }
+        entryStarts[count] = start;
+        entryEnds[count] = end;
+        count++;
+    }
+
+    private void startDecoders(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        decoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "HarConvertor-decode-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        maxPending = threads * K_PENDING_BY_THREAD;
+    }
+
+    /**
+     * @return the count of entries found by the pre-scan
+     */
+    public int getEntriesCount() {
+        return count;
+    }
+
+    @Override
+    public ObjectNode nextEntry() throws IOException {
+        while (submitIndex < count && pending.size() < maxPending) {
+            long start = entryStarts[submitIndex];
+            long end = entryEnds[submitIndex];
+            pending.add(decoders.submit(() -> (ObjectNode) mapper.readTree(readBytes(start, end))));
+            submitIndex++;
+        }
+        Future<ObjectNode> next = pending.poll();
+        if (next == null) {
+            return null;
+        }
+        try {
+            ObjectNode entry = next.get();
+            progress.setHarBytesRead(entryEnds[nextIndex++]);
+            return entry;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Can't decode the HAR entry " + nextIndex + " of " + file + ", exception = " + cause, cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("HAR entries decoding interrupted", ex);
+        }
+    }
+
+    /**
+     * @return the bytes of the file between the offsets, copied from one or 2 segments
+     */
+    private byte[] readBytes(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        int copied = 0;
+        while (copied < bytes.length) {
+            long position = start + copied;
+            // a duplicate by read, the position of the mapped segment is shared by the threads
+            ByteBuffer segment = segments[(int) (position / segmentBytes)].duplicate();
+            segment.position((int) (position % segmentBytes));
+            int length = Math.min(bytes.length - copied, segment.remaining());
+            segment.get(bytes, copied, length);
+            copied += length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public ObjectNode getLogHeader() {
+        return logHeader;
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (decoders != null) {
+            decoders.shutdownNow();
+        }
+        pending.clear();
+        // the mapping is released by the garbage collector
+        channel.close();
+    }
+
+    private static void closeQuietly(MappedHarReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException ex) {
+            log.debug("Can't close the mapped HAR file, exception = " + ex);
+        }
+    }
+}
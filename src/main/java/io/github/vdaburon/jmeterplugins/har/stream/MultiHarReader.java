@@ -0,0 +1,404 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Merge the entries of several HAR files (e.g. one HAR by browser tab) in the startedDateTime order.
+ * The HAR files are first indexed in parallel on a fork-join pool : for each entry only the startedDateTime and the
+ * byte offsets in the file are kept, the bodies are skipped without being decoded.
+ * Then the entries are read one at a time in the startedDateTime order with positional reads, so only the current
+ * entry is in memory. The page ids already used by a previous HAR file are renamed (in the pages and in the pageref
+ * of the entries) so each HAR keeps its own pages.
+ */
+public class MultiHarReader implements HarEntrySource {
+    private static final Logger log = LoggerFactory.getLogger(MultiHarReader.class);
+
+    private final ObjectMapper mapper;
+    private final ConversionProgress progress;
+    private final List<HarFileIndex> indexes;
+    private final ObjectNode logHeader;
+    private final PriorityQueue<HarFileIndex> queue;
+
+    /**
+     * Index the HAR files in parallel and prepare the merge
+     * @param harFiles the HAR files to merge, in the order to use for the entries with the same startedDateTime
+     * @param jacksonParserStringMax the max length of a json string value
+     * @param progress the progress, the bytes indexed are added to the bytes read and the cancel flag is checked
+     * @throws Exception if a HAR file can't be read or InterruptedException if cancelled
+     */
+    public MultiHarReader(List<File> harFiles, int jacksonParserStringMax, ConversionProgress progress) throws Exception {
+        this.mapper = new ObjectMapper(HarStreamReader.createJsonFactory(jacksonParserStringMax));
+        this.progress = progress;
+        this.indexes = indexInParallel(harFiles, jacksonParserStringMax);
+        renameUsedPageIds();
+        this.logHeader = mergeLogHeaders();
+        // ordered by the startedDateTime of the next entry, then by the file order for the same time
+        this.queue = new PriorityQueue<>(Comparator.comparingLong(HarFileIndex::getNextStartedMillis)
+                .thenComparingInt(HarFileIndex::getFileNumber));
+        try {
+            for (HarFileIndex index : indexes) {
+                if (index.hasNext()) {
+                    index.open();
+                    queue.add(index);
+                }
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Keep only the entries selected, the startedDateTime of the entries are given to the selection in the merged order
+     * without reading the entries
+     * @param selection the selection of the entries
+     * @throws IOException if a HAR file can't be closed
+     */
+    public void select(EntrySelection selection) throws IOException {
+        PriorityQueue<HarFileIndex> merged = new PriorityQueue<>(queue);
+        queue.clear();
+        while (!merged.isEmpty()) {
+            HarFileIndex index = merged.poll();
+            index.selectNext(selection.isSelected(index.getNextStartedMillis()));
+            if (index.hasNext()) {
+                merged.add(index);
+            }
+        }
+        for (HarFileIndex index : indexes) {
+            index.startSelected();
+            if (index.hasNext()) {
+                queue.add(index);
+            } else {
+                index.close();
+            }
+        }
+    }
+
+    private List<HarFileIndex> indexInParallel(List<File> harFiles, int jacksonParserStringMax) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(harFiles.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<HarFileIndex>> futures = new ArrayList<>();
+            for (int i = 0; i < harFiles.size(); i++) {
+                File harFile = harFiles.get(i);
+                int fileNumber = i;
+                futures.add(pool.submit(() -> HarFileIndex.create(harFile, fileNumber, jacksonParserStringMax, progress)));
+            }
+            List<HarFileIndex> result = new ArrayList<>();
+            for (Future<HarFileIndex> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : ex;
+                }
+            }
+            return result;
+        } finally {
+            // on failure or cancel, the other files stop at their next entry
+            pool.shutdownNow();
+        }
+    }
+
+    private void renameUsedPageIds() {
+        Set<String> usedIds = new HashSet<>();
+        for (HarFileIndex index : indexes) {
+            Set<String> fileIds = new HashSet<>();
+            for (JsonNode page : index.getPages()) {
+                String id = page.path("id").asText("");
+                String newId = id;
+                for (int n = 2; usedIds.contains(newId); n++) {
+                    newId = id + "_har" + (index.getFileNumber() + 1) + (n == 2 ? "" : "_" + n);
+                }
+                if (!newId.equals(id)) {
+                    index.getPageIdRenames().put(id, newId);
+                    ((ObjectNode) page).put("id", newId);
+                    log.info("Page id " + id + " of " + index.getFile().getName() + " renamed " + newId);
+                }
+                fileIds.add(newId);
+            }
+            usedIds.addAll(fileIds);
+        }
+    }
+
+    private ObjectNode mergeLogHeaders() {
+        // version, creator, browser ... from the first HAR file, the pages of all the HAR files
+        ObjectNode header = indexes.get(0).getLogHeader().deepCopy();
+        List<JsonNode> pages = new ArrayList<>();
+        for (HarFileIndex index : indexes) {
+            index.getPages().forEach(pages::add);
+        }
+        if (!pages.isEmpty()) {
+            // stable sort, the pages with the same start keep the file order
+            pages.sort(Comparator.comparingLong(page -> HarEntries.parseMillis(page.path("startedDateTime").asText(""))));
+            ArrayNode mergedPages = header.putArray("pages");
+            mergedPages.addAll(pages);
+        }
+        return header;
+    }
+
+    @Override
+    public ObjectNode nextEntry() throws IOException {
+        HarFileIndex index = queue.poll();
+        if (index == null) {
+            return null;
+        }
+        byte[] bytes = index.readNext();
+        progress.addHarBytesRead(bytes.length);
+        ObjectNode entry = (ObjectNode) mapper.readTree(bytes);
+        String newPageRef = index.getPageIdRenames().get(entry.path("pageref").asText(""));
+        if (newPageRef != null) {
+            entry.put("pageref", newPageRef);
+        }
+        if (index.hasNext()) {
+            queue.add(index);
+        } else {
+            index.close();
+        }
+        return entry;
+    }
+
+    @Override
+    public ObjectNode getLogHeader() {
+        return logHeader;
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * @return the count of entries of all the HAR files
+     */
+    public int getEntriesCount() {
+        int count = 0;
+        for (HarFileIndex index : indexes) {
+            count += index.count;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException first = null;
+        for (HarFileIndex index : indexes) {
+            try {
+                index.close();
+            } catch (IOException ex) {
+                first = first == null ? ex : first;
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    /**
+     * The entries of one HAR file : startedDateTime and byte range, sorted by startedDateTime.
+     */
+    static class HarFileIndex {
+        private final File file;
+        private final int fileNumber;
+        private final ObjectNode logHeader;
+        private final Map<String, String> pageIdRenames = new HashMap<>();
+        private long[] startedMillis = new long[1024];
+        private long[] startOffsets = new long[1024];
+        private int[] lengths = new int[1024];
+        private int[] order;
+        private int count = 0;
+        private int next = 0;
+        private BitSet selected;
+        private FileChannel channel;
+
+        private HarFileIndex(File file, int fileNumber, ObjectNode logHeader) {
+            this.file = file;
+            this.fileNumber = fileNumber;
+            this.logHeader = logHeader;
+        }
+
+        static HarFileIndex create(File file, int fileNumber, int jacksonParserStringMax, ConversionProgress progress) throws Exception {
+            if (HarInputStreams.isCompressed(file.getName())) {
+                // the entries are read again by their byte range in the file
+                throw new IOException("Can't merge the compressed HAR file " + file + ", decompress it before merging several HAR files");
+            }
+            try (HarStreamReader reader = new HarStreamReader(new ProgressInputStream(
+                    new BufferedInputStream(new FileInputStream(file), 256 * 1024), progress), jacksonParserStringMax)) {
+                HarFileIndex index = new HarFileIndex(file, fileNumber, reader.getLogHeader());
+                long previousStarted = -1;
+                while (reader.skipEntry()) {
+                    progress.checkCancelled();
+                    progress.addEntriesRead(1);
+                    long started = reader.getEntryStartedMillis();
+                    // an entry without a valid date stays after the previous entry of its file
+                    previousStarted = started >= 0 ? started : previousStarted;
+                    index.add(previousStarted, reader.getEntryStartOffset(), reader.getEntryEndOffset());
+                }
+                index.sort();
+                log.info("HAR file indexed " + file + ", entries=" + index.count);
+                return index;
+            } catch (IOException ex) {
+                throw new IOException("Can't read the HAR file " + file + ", " + ex.getMessage(), ex);
+            }
+        }
+
+        private void add(long started, long startOffset, long endOffset) {
+            if (count == startedMillis.length) {
+                int newLength = count * 2;
+                startedMillis = Arrays.copyOf(startedMillis, newLength);
+                startOffsets = Arrays.copyOf(startOffsets, newLength);
+                lengths = Arrays.copyOf(lengths, newLength);
+            }
+            startedMillis[count] = started;
+            startOffsets[count] = startOffset;
+            lengths[count] = (int) (endOffset - startOffset);
+            count++;
+        }
+
+        private void sort() {
+            order = new int[count];
+            boolean isSorted = true;
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+                isSorted &= i == 0 || startedMillis[i - 1] <= startedMillis[i];
+            }
+            if (!isSorted) {
+                // the browsers write the entries in the startedDateTime order, sort only if not
+                Integer[] boxed = new Integer[count];
+                for (int i = 0; i < count; i++) {
+                    boxed[i] = i;
+                }
+                Arrays.sort(boxed, Comparator.comparingLong(i -> startedMillis[i]));
+                for (int i = 0; i < count; i++) {
+                    order[i] = boxed[i];
+                }
+            }
+        }
+
+        void open() throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+
+        boolean hasNext() {
+            return next < count;
+        }
+
+        long getNextStartedMillis() {
+            return startedMillis[order[next]];
+        }
+
+        void selectNext(boolean isSelected) {
+            if (selected == null) {
+                selected = new BitSet(count);
+            }
+            if (isSelected) {
+                selected.set(next);
+            }
+            next++;
+        }
+
+        /**
+         * Move to the first entry selected, then only the entries selected are read
+         */
+        void startSelected() {
+            next = 0;
+            moveToSelected();
+        }
+
+        private void moveToSelected() {
+            if (selected != null) {
+                int nextSelected = selected.nextSetBit(next);
+                next = nextSelected < 0 ? count : nextSelected;
+            }
+        }
+
+        byte[] readNext() throws IOException {
+            int i = order[next++];
+            moveToSelected();
+            ByteBuffer buffer = ByteBuffer.allocate(lengths[i]);
+            long position = startOffsets[i];
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new EOFException("HAR file " + file + " changed during the conversion");
+                }
+                position += n;
+            }
+            return buffer.array();
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        int getFileNumber() {
+            return fileNumber;
+        }
+
+        ObjectNode getLogHeader() {
+            return logHeader;
+        }
+
+        ArrayNode getPages() {
+            JsonNode pages = logHeader.path("pages");
+            return pages.isArray() ? (ArrayNode) pages : logHeader.arrayNode();
+        }
+
+        Map<String, String> getPageIdRenames() {
+            return pageIdRenames;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import java.util.Arrays;
+
+/**
+ * The recorded timings of the pages, computed from the entries in the conversion order : the think time between
+ * 2 pages (from the end of the last entry of a page to the start of the next page), the duration and the server time
+ * (the wait timings, time to the first byte) of each page and the recorded throughput.
+ * The pages are cut with the same rule as the converter library, more than new_tc_pause between the start of 2 entries.
+ * Only one long by page is kept for the percentiles of the think time.
+ */
+public class PageTimingStatistics {
+    private final long newPageAfterMs;
+    private long[] thinkTimes = new long[64];
+    private int thinkTimeCount = 0;
+    private long entries = 0;
+    private long pages = 0;
+    private long firstStarted = -1;
+    private long lastEnd = -1;
+    private long previousStarted = -1;
+    private long pageStarted = -1;
+    private long pageEnd = -1;
+    private long pageWait = 0;
+    private long pageDurationTotal = 0;
+    private long serverTimeTotal = 0;
+    private boolean isSorted = true;
+
+    /**
+     * @param newPageAfterMs the time between 2 urls to create a new page, one page if &lt;= 0
+     */
+    public PageTimingStatistics(long newPageAfterMs) {
+        this.newPageAfterMs = newPageAfterMs;
+    }
+
+    /**
+     * Add the next entry, the entries must be given in the conversion order
+     * @param startedMillis the startedDateTime in epoch ms or -1 if not a valid date
+     * @param timeMillis the total time of the entry or -1 if unknown
+     * @param waitMillis the wait timing of the entry or -1 if unknown
+     */
+    public void addEntry(long startedMillis, long timeMillis, long waitMillis) {
+        entries++;
+        if (startedMillis < 0) {
+            return;
+        }
+        long end = startedMillis + Math.max(0, timeMillis);
+        if (pageStarted < 0 || (newPageAfterMs > 0 && previousStarted >= 0 && startedMillis - previousStarted > newPageAfterMs)) {
+            if (pageStarted >= 0) {
+                endPage();
+                addThinkTime(Math.max(0, startedMillis - pageEnd));
+            }
+            pages++;
+            pageStarted = startedMillis;
+            pageEnd = end;
+            pageWait = 0;
+        }
+        pageEnd = Math.max(pageEnd, end);
+        pageWait += Math.max(0, waitMillis);
+        previousStarted = startedMillis;
+        firstStarted = firstStarted < 0 ? startedMillis : Math.min(firstStarted, startedMillis);
+        lastEnd = Math.max(lastEnd, end);
+    }
+
+    private void endPage() {
+        pageDurationTotal += pageEnd - pageStarted;
+        serverTimeTotal += pageWait;
+    }
+
+    private void addThinkTime(long thinkTime) {
+        if (thinkTimeCount == thinkTimes.length) {
+            thinkTimes = Arrays.copyOf(thinkTimes, thinkTimeCount * 2);
+        }
+        thinkTimes[thinkTimeCount++] = thinkTime;
+        isSorted = false;
+    }
+
+    /**
+     * @return the count of pages
+     */
+    public long getPages() {
+        return pages;
+    }
+
+    /**
+     * @return the count of think times, the pages less one
+     */
+    public int getThinkTimeCount() {
+        return thinkTimeCount;
+    }
+
+    /**
+     * @return the mean think time between 2 pages in ms, 0 if less than 2 pages
+     */
+    public long getThinkTimeMean() {
+        if (thinkTimeCount == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < thinkTimeCount; i++) {
+            total += thinkTimes[i];
+        }
+        return total / thinkTimeCount;
+    }
+
+    /**
+     * @return the standard deviation of the think time in ms
+     */
+    public long getThinkTimeStdDev() {
+        if (thinkTimeCount < 2) {
+            return 0;
+        }
+        double mean = getThinkTimeMean();
+        double squares = 0;
+        for (int i = 0; i < thinkTimeCount; i++) {
+            squares += (thinkTimes[i] - mean) * (thinkTimes[i] - mean);
+        }
+        return Math.round(Math.sqrt(squares / (thinkTimeCount - 1)));
+    }
+
+    /**
+     * @param percent the percentile, 0 for the min, 100 for the max
+     * @return the think time percentile in ms, 0 if less than 2 pages
+     */
+    public long getThinkTimePercentile(int percent) {
+        if (thinkTimeCount == 0) {
+            return 0;
+        }
+        if (!isSorted) {
+            Arrays.sort(thinkTimes, 0, thinkTimeCount);
+            isSorted = true;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * thinkTimeCount) - 1;
+        return thinkTimes[Math.max(0, Math.min(thinkTimeCount - 1, rank))];
+    }
+
+    /**
+     * @return the mean duration of a page in ms, from the start of its first entry to the end of its last entry
+     */
+    public long getPageDurationMean() {
+        return pages == 0 ? 0 : (pageDurationTotal + pageEnd - pageStarted) / pages;
+    }
+
+    /**
+     * @return the mean server time of a page in ms, the sum of the wait timings of its entries
+     */
+    public long getServerTimeMean() {
+        return pages == 0 ? 0 : (serverTimeTotal + pageWait) / pages;
+    }
+
+    /**
+     * @return the recorded throughput in samplers (entries) by minute, 0 if the duration is unknown
+     */
+    public double getSamplersPerMinute() {
+        long duration = lastEnd - firstStarted;
+        return (firstStarted < 0 || duration <= 0) ? 0 : entries * 60000.0 / duration;
+    }
+
+    /**
+     * @return the statistics on one line
+     */
+    public String toText() {
+        return String.format("Pages %d, think time mean %d ms, std dev %d ms, min %d, median %d, p90 %d, max %d ms,"
+                        + " page duration mean %d ms, server time mean %d ms, throughput %.1f samplers/min",
+                pages, getThinkTimeMean(), getThinkTimeStdDev(), getThinkTimePercentile(0), getThinkTimePercentile(50),
+                getThinkTimePercentile(90), getThinkTimePercentile(100), getPageDurationMean(), getServerTimeMean(),
+                getSamplersPerMinute());
+    }
+}
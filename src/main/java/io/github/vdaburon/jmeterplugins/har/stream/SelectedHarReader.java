@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Read the entries selected of one HAR file, plain or compressed, in 2 passes.
+ * The first pass skips all the entries without building their json tree and gives their startedDateTime to the selection,
+ * the second pass builds the json tree of the entries selected only and skips the others.
+ */
+public class SelectedHarReader implements HarEntrySource {
+    private final BitSet selected = new BitSet();
+    private final HarStreamReader reader;
+    private int next = 0;
+
+    /**
+     * Select the entries then open the HAR again to read them
+     * @param harFile the HAR file
+     * @param jacksonParserStringMax the max length of a json string value
+     * @param selection the selection of the entries
+     * @param progress the progress, the bytes of the first pass are added to the bytes read then reset
+     * @throws Exception if the HAR file can't be read or InterruptedException if cancelled
+     */
+    public SelectedHarReader(File harFile, int jacksonParserStringMax, EntrySelection selection, ConversionProgress progress) throws Exception {
+        try (HarStreamReader selectReader = new HarStreamReader(HarInputStreams.open(harFile, progress), jacksonParserStringMax)) {
+            for (int i = 0; selectReader.skipEntry(); i++) {
+                progress.checkCancelled();
+                progress.addEntriesRead(1);
+                if (selection.isSelected(selectReader.getEntryStartedMillis())) {
+                    selected.set(i);
+                }
+            }
+        }
+        progress.resetRead();
+        reader = new HarStreamReader(HarInputStreams.open(harFile, progress), jacksonParserStringMax);
+    }
+
+    @Override
+    public ObjectNode nextEntry() throws IOException {
+        int nextSelected = selected.nextSetBit(next);
+        if (nextSelected < 0) {
+            return null;
+        }
+        for (; next < nextSelected; next++) {
+            // the bodies of the entries not selected are not decoded
+            reader.skipEntry();
+        }
+        next++;
+        return reader.nextEntry();
+    }
+
+    @Override
+    public ObjectNode getLogHeader() {
+        return reader.getLogHeader();
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return reader.getMapper();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
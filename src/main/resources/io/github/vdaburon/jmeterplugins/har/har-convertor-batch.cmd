@@ -0,0 +1,30 @@
+@echo off
+
+rem   Licensed to the Apache Software Foundation (ASF) under one or more
+rem   contributor license agreements.  See the NOTICE file distributed with
+rem   this work for additional information regarding copyright ownership.
+rem   The ASF licenses this file to You under the Apache License, Version 2.0
+rem   (the "License"); you may not use this file except in compliance with
+rem   the License.  You may obtain a copy of the License at
+rem
+rem       http://www.apache.org/licenses/LICENSE-2.0
+rem
+rem   Unless required by applicable law or agreed to in writing, software
+rem   distributed under the License is distributed on an "AS IS" BASIS,
+rem   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+rem   See the License for the specific language governing permissions and
+rem   limitations under the License.
+
+rem   Run HAR Convert tool in CLI for a directory of HAR files (batch and watch mode)
+
+rem   run script shell with parameters : <JMETER_HOME>\bin\har-convertor-batch.cmd -har_dir "C:\data\har" -out_dir "C:\data\jmx" -with_record true -new_tc_pause 5000 -threads 4
+rem   run script shell with parameters : <JMETER_HOME>\bin\har-convertor-batch.cmd -har_dir "C:\data\har" -watch true
+
+setlocal
+
+cd /D %~dp0
+
+set CP=..\lib\ext\har-convertor-jmeter-plugin-${version}-jar-with-dependencies.jar
+set CP=%CP%;..\lib\*
+
+java -cp %CP% io.github.vdaburon.jmeterplugins.har.HarConvertorBatch %*
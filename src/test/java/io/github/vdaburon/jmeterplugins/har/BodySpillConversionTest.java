@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Convert with the converter library a HAR with bodies larger than the Jackson String length size
+ */
+class BodySpillConversionTest {
+    private static final int JACKSON_MAX = 5000;
+
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("body-spill-conversion-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void imageLargerThanJacksonMaxIsConverted() throws Exception {
+        String image = HarTestFiles.base64Text(20 * JACKSON_MAX);
+        String form = "q=" + HarTestFiles.base64Text(2 * JACKSON_MAX);
+        List<ObjectNode> entries = new ArrayList<>();
+        entries.add(HarTestFiles.entry(0, "https://example.com/", "text/html", "<html>home</html>"));
+        ObjectNode imageEntry = HarTestFiles.entry(1, "https://example.com/photo.jpg", "image/jpeg", image);
+        ((ObjectNode) imageEntry.path("response").path("content")).put("encoding", "base64");
+        entries.add(imageEntry);
+        ObjectNode formEntry = HarTestFiles.entry(2, "https://example.com/search", "text/html", "<html>result</html>");
+        ((ObjectNode) formEntry.path("request")).put("method", "POST");
+        ((ObjectNode) formEntry.path("request")).putObject("postData")
+                .put("mimeType", "application/x-www-form-urlencoded").put("text", form);
+        entries.add(formEntry);
+        File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "image.har"), entries);
+
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(new File(tempDir.toFile(), "image.jmx").getAbsolutePath());
+        parameters.setRecordXmlOut(new File(tempDir.toFile(), "image.xml").getAbsolutePath());
+        parameters.setJacksonParserStringMax(JACKSON_MAX);
+        parameters.setSpillBodyThreshold(1000);
+        parameters.setCacheMaxMb(0);
+        ConversionProgress progress = new ConversionProgress();
+
+        HarConvertorProcess.convert(parameters, progress);
+
+        assertEquals(3, progress.getMetrics().getSamplers(), "samplers");
+        String record = new String(Files.readAllBytes(new File(parameters.getRecordXmlOut()).toPath()), StandardCharsets.UTF_8);
+        assertTrue(record.contains(image), "the image must be restored base64 encoded in the record xml");
+        assertFalse(record.contains("__HAR_SPILL_"), "no placeholder left in the record xml");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A HAR larger than K_CHUNKED_HAR_BYTES is converted by chunks without streaming mode, so a cancel stops the conversion
+ * at the next chunk instead of waiting for the converter library to convert the whole HAR.
+ */
+class CancelConversionTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("cancel-conversion-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void smallHarIsConvertedInOneCall() throws IOException {
+        File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "small.har"),
+                Collections.singletonList(HarTestFiles.entry(0, "https://example.com/", "text/html", "<html/>")));
+        HarConvertorParameters parameters = createParameters(har);
+
+        assertFalse(parameters.isConvertedByChunks());
+        assertFalse(parameters.isHarRewriteNeeded());
+    }
+
+    @Test
+    void cancelStopsTheConversionOfALargeHar() throws Exception {
+        String body = HarTestFiles.base64Text(4000);
+        int count = (int) (HarConvertorParameters.K_CHUNKED_HAR_BYTES / body.length()) + 1000;
+        List<ObjectNode> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(HarTestFiles.entry(i, "https://example.com/page" + i, "text/html", body));
+        }
+        File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "large.har"), entries);
+        entries.clear();
+        HarConvertorParameters parameters = createParameters(har);
+        assertTrue(parameters.isConvertedByChunks(), "HAR of " + har.length() + " bytes");
+
+        ConversionProgress progress = new ConversionProgress();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> conversion = executor.submit(() -> {
+                HarConvertorProcess.convert(parameters, progress);
+                return null;
+            });
+            while (progress.getSamplersWritten() == 0 && !conversion.isDone()) {
+                Thread.sleep(10);
+            }
+            progress.cancel();
+
+            ExecutionException ex = assertThrows(ExecutionException.class, conversion::get);
+            assertTrue(ex.getCause() instanceof InterruptedException, "cancelled, cause = " + ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(progress.getSamplersWritten() < count, "stopped before the end, samplers = " + progress.getSamplersWritten());
+        assertFalse(new File(parameters.getFileJmxOut()).exists(), "the partial script must be deleted");
+    }
+
+    private HarConvertorParameters createParameters(File har) {
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(new File(tempDir.toFile(), "site.jmx").getAbsolutePath());
+        parameters.setStreamingMode(false);
+        // a new page every entry, the chunks are cut at the max entries
+        parameters.setCreateNewTransactionAfterRequestMs(50);
+        return parameters;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedHarConversionTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("compressed-har-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void gzipHarIsConvertedByChunksWithoutStreamingMode() throws Exception {
+        int count = 3 * HarStreamingConvertor.K_CHUNK_MAX_ENTRIES;
+        List<ObjectNode> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(HarTestFiles.entry(i, "https://example.com/page" + i, "text/html", "<html>" + i + "</html>"));
+        }
+        File har = new File(tempDir.toFile(), "site.har.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(har))) {
+            HarTestFiles.MAPPER.writeValue(out, HarTestFiles.har(entries));
+        }
+
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(new File(tempDir.toFile(), "site.jmx").getAbsolutePath());
+        parameters.setStreamingMode(false);
+        // a new page every entry, the chunks are cut at the max entries
+        parameters.setCreateNewTransactionAfterRequestMs(50);
+        parameters.setCacheMaxMb(0);
+        ConversionProgress progress = new ConversionProgress();
+
+        HarConvertorProcess.convert(parameters, progress);
+
+        assertEquals(count, progress.getMetrics().getSamplers(), "samplers");
+        assertTrue(progress.getMetrics().getChunks() >= 3, "the compressed HAR must be converted by chunks, chunks = "
+                + progress.getMetrics().getChunks());
+    }
+}
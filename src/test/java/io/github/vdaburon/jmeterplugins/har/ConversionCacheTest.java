@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionCacheTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("conversion-cache-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        System.clearProperty(ConversionCache.CACHE_DIR_PROPERTY);
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void cacheIsDisabledByDefault() {
+        assertNull(ConversionCache.create(new HarConvertorParameters()));
+    }
+
+    @Test
+    void sameInstanceForTheSameDirectory() {
+        File dir = new File(tempDir.toFile(), "cache");
+        ConversionCache cache = ConversionCache.getShared(dir, 1000);
+        assertSame(cache, ConversionCache.getShared(new File(tempDir.toFile(), "cache"), 2000));
+    }
+
+    @Test
+    void digestsComputedInParallelAreAllKept() throws Exception {
+        File dir = new File(tempDir.toFile(), "cache");
+        List<File> hars = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            File har = new File(tempDir.toFile(), "site" + i + ".har");
+            Files.write(har.toPath(), ("{\"log\": {\"entries\": []}, \"n\": " + i + "}").getBytes(StandardCharsets.UTF_8));
+            hars.add(har);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(hars.size());
+        try {
+            List<Future<String>> digests = new ArrayList<>();
+            for (File har : hars) {
+                // a cache by conversion like the batch tasks, the instance is shared
+                digests.add(executor.submit(() -> ConversionCache.getShared(dir, 1024 * 1024).getFileDigest(har)));
+            }
+            for (Future<String> digest : digests) {
+                digest.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(new File(dir, ConversionCache.DIGESTS_FILE_NAME).toPath())) {
+            saved.load(in);
+        }
+        for (File har : hars) {
+            assertTrue(saved.containsKey(har.getAbsolutePath()), "digest of " + har + " lost");
+        }
+    }
+
+    @Test
+    void conversionWithoutCacheWhenTheCacheCantBeWritten() throws Exception {
+        // a file in place of the cache directory, like a read only JMeter installation
+        File notDir = new File(tempDir.toFile(), "not_a_directory");
+        Files.write(notDir.toPath(), new byte[] { 1 });
+        System.setProperty(ConversionCache.CACHE_DIR_PROPERTY, new File(notDir, "cache").getAbsolutePath());
+        List<ObjectNode> entries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(HarTestFiles.entry(i, "https://example.com/page" + i, "text/html", "<html>" + i + "</html>"));
+        }
+        File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "site.har"), entries);
+        File jmx = new File(tempDir.toFile(), "site.jmx");
+
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(jmx.getAbsolutePath());
+        parameters.setCacheMaxMb(512);
+        ConversionProgress progress = new ConversionProgress();
+
+        HarConvertorProcess.convert(parameters, progress);
+
+        assertTrue(jmx.isFile(), "the script must be written without the cache");
+        assertEquals(3, progress.getMetrics().getSamplers(), "samplers");
+    }
+}
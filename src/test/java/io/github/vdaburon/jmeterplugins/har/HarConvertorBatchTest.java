@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HarConvertorBatchTest {
+    private static final long STABLE_MS = 100;
+
+    private Path tempDir;
+    private File harDir;
+    private File outDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("har-batch-test-");
+        harDir = new File(tempDir.toFile(), "har");
+        outDir = new File(tempDir.toFile(), "jmx");
+        assertTrue(harDir.mkdir() && outDir.mkdir());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void argumentsByName() {
+        Map<String, String> options = HarConvertorBatch.parseArguments(new String[] {
+                "-har_dir", "/data/har", "-threads", "4", "-help", "-watch", "true" });
+
+        assertEquals("/data/har", options.get(HarConvertorBatch.K_HAR_DIR));
+        assertEquals("4", options.get(HarConvertorBatch.K_THREADS));
+        assertEquals("true", options.get(HarConvertorBatch.K_HELP), "help has no value");
+        assertEquals("true", options.get(HarConvertorBatch.K_WATCH));
+        assertEquals(4, options.size());
+    }
+
+    @Test
+    void invalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> HarConvertorBatch.parseArguments(new String[] { "-har_dir" }),
+                "missing value");
+        assertThrows(IllegalArgumentException.class, () -> HarConvertorBatch.parseArguments(new String[] { "har_dir", "/data" }),
+                "option without '-'");
+        assertThrows(IllegalArgumentException.class, () -> HarConvertorBatch.run(HarConvertorBatch.parseArguments(new String[] {
+                "-har_dir", new File(tempDir.toFile(), "missing").getPath() })), "har_dir is not a directory");
+    }
+
+    @Test
+    void upToDateScriptIsSkipped() throws Exception {
+        File upToDate = writeHar("up_to_date.har");
+        File upToDateJmx = new File(outDir, "up_to_date.jmx");
+        Files.write(upToDateJmx.toPath(), "old script".getBytes(StandardCharsets.UTF_8));
+        assertTrue(upToDateJmx.setLastModified(upToDate.lastModified() + 1000));
+        File modified = writeHar("modified.har");
+        File modifiedJmx = new File(outDir, "modified.jmx");
+        Files.write(modifiedJmx.toPath(), "old script".getBytes(StandardCharsets.UTF_8));
+        assertTrue(modifiedJmx.setLastModified(modified.lastModified() - 1000));
+        writeHar("new.har");
+
+        HarConvertorBatch batch = createBatch();
+        batch.convertDirectory(harDir);
+        batch.awaitConversions();
+
+        assertEquals(2, batch.getConverted(), "converted");
+        assertEquals(0, batch.getFailed(), "failed");
+        assertEquals("old script", new String(Files.readAllBytes(upToDateJmx.toPath()), StandardCharsets.UTF_8));
+        assertFalse("old script".equals(new String(Files.readAllBytes(modifiedJmx.toPath()), StandardCharsets.UTF_8)));
+        assertTrue(new File(outDir, "new.jmx").isFile());
+        assertTrue(batch.isConverted(upToDate) && batch.isConverted(modified));
+    }
+
+    @Test
+    void harIsStableWhenItsSizeDoesNotChange() throws Exception {
+        HarConvertorBatch batch = createBatch();
+        File har = new File(harDir, "written.har");
+        Files.write(har.toPath(), new byte[0]);
+
+        assertFalse(batch.isStable(har), "first check, no previous size");
+        assertFalse(batch.isStable(har), "empty file");
+        Files.write(har.toPath(), "{\"log\": {".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertFalse(batch.isStable(har), "size changed");
+        assertTrue(batch.isStable(har), "same size");
+        Files.write(har.toPath(), "\"entries\": []}}".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertFalse(batch.isStable(har), "size changed again");
+        assertTrue(batch.isStable(har), "same size");
+        assertTrue(har.delete());
+        assertFalse(batch.isStable(har), "deleted");
+        batch.awaitConversions();
+    }
+
+    @Test
+    void harWrittenDuringTheDirectoryScanIsConverted() throws Exception {
+        writeHar("first.har");
+        HarConvertorBatch batch = createBatch();
+        try (WatchService watchService = batch.register(harDir)) {
+            batch.convertDirectory(harDir);
+            // written after the scan and before the watch loop, reported by the watch service registered before the scan
+            File late = writeHar("late.har");
+            Thread watcher = new Thread(() -> batch.watch(harDir, watchService));
+            watcher.start();
+            long end = System.currentTimeMillis() + 30000;
+            while (!batch.isConverted(late) && System.currentTimeMillis() < end) {
+                Thread.sleep(50);
+            }
+            watchService.close();
+            watcher.join(10000);
+            assertFalse(watcher.isAlive(), "the watch stops when the watch service is closed");
+        }
+        batch.awaitConversions();
+
+        assertTrue(new File(outDir, "first.jmx").isFile(), "converted by the scan");
+        assertTrue(new File(outDir, "late.jmx").isFile(), "converted by the watch");
+        assertEquals(0, batch.getFailed(), "failed");
+    }
+
+    private HarConvertorBatch createBatch() {
+        return new HarConvertorBatch(new HarConvertorParameters(), outDir, "", 2, STABLE_MS);
+    }
+
+    private File writeHar(String name) throws IOException {
+        return HarTestFiles.writeHar(new File(harDir, name),
+                Collections.singletonList(HarTestFiles.entry(0, "https://example.com/" + name, "text/html", "<html/>")));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Build small HAR files for the tests
+ */
+public final class HarTestFiles {
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long START_MILLIS = 1704067200000L;
+
+    private HarTestFiles() {
+    }
+
+    /**
+     * @param index the entry number, the entries are started 100 ms apart
+     * @param url the request url
+     * @param mimeType the response mime type
+     * @param text the response content text, null for no text
+     * @return a GET entry
+     */
+    public static ObjectNode entry(int index, String url, String mimeType, String text) {
+        ObjectNode entry = MAPPER.createObjectNode();
+        entry.put("startedDateTime", Instant.ofEpochMilli(START_MILLIS + index * 100L).toString());
+        entry.put("time", 20);
+        ObjectNode request = entry.putObject("request");
+        request.put("method", "GET");
+        request.put("url", url);
+        request.put("httpVersion", "HTTP/1.1");
+        request.putArray("headers");
+        request.putArray("queryString");
+        request.putArray("cookies");
+        ObjectNode response = entry.putObject("response");
+        response.put("status", 200);
+        response.put("statusText", "OK");
+        response.putArray("headers");
+        ObjectNode content = response.putObject("content");
+        content.put("mimeType", mimeType);
+        if (text != null) {
+            content.put("size", text.length());
+            content.put("text", text);
+        }
+        entry.putObject("timings").put("wait", 10);
+        return entry;
+    }
+
+    /**
+     * @return the HAR document with the entries
+     */
+    public static ObjectNode har(List<ObjectNode> entries) {
+        ObjectNode har = MAPPER.createObjectNode();
+        ObjectNode log = har.putObject("log");
+        log.put("version", "1.2");
+        log.putObject("creator").put("name", "test").put("version", "1.0");
+        ArrayNode array = log.putArray("entries");
+        array.addAll(entries);
+        return har;
+    }
+
+    public static File writeHar(File file, List<ObjectNode> entries) throws IOException {
+        MAPPER.writeValue(file, har(entries));
+        return file;
+    }
+
+    /**
+     * @param length the count of chars
+     * @return a text of base64 chars
+     */
+    public static String base64Text(int length) {
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(chars.charAt((i * 7 + i / 64) % chars.length()));
+        }
+        return sb.toString();
+    }
+
+    public static void deleteDirectory(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
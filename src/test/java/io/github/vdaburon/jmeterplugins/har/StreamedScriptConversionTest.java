@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The script written by chunks must be the same file as the merged script kept in memory then saved.
+ */
+class StreamedScriptConversionTest {
+    private static final int ENTRIES = 3 * HarStreamingConvertor.K_CHUNK_MAX_ENTRIES;
+
+    private Path tempDir;
+    private File har;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("script-write-test-");
+        List<ObjectNode> entries = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            // a large body every 100 entries, spilled then restored in the script
+            String text = i % 100 == 0 ? HarTestFiles.base64Text(20000) : "<html>" + i + " &amp; \u00e9</html>";
+            entries.add(HarTestFiles.entry(i, "https://example.com/page" + i + "?a=1&b=2", "text/html", text));
+        }
+        har = HarTestFiles.writeHar(new File(tempDir.toFile(), "site.har"), entries);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void scriptWrittenByChunksIsTheMergedScript() throws Exception {
+        HarConvertorParameters streamed = createParameters("by_chunks");
+        ConversionProgress streamedProgress = new ConversionProgress();
+        assertEquals(null, HarConvertorProcess.convert(streamed, streamedProgress, false));
+
+        HarConvertorParameters inMemory = createParameters("in_memory");
+        ConversionProgress inMemoryProgress = new ConversionProgress();
+        JmxDocument merged = HarConvertorProcess.convert(inMemory, inMemoryProgress, true);
+        assertNotNull(merged, "the script to load is kept in memory");
+        HarConvertorProcess.writeScript(inMemory, inMemoryProgress, merged);
+
+        assertTrue(streamedProgress.getMetrics().getChunks() >= 3, "chunks = " + streamedProgress.getMetrics().getChunks());
+        assertEquals(ENTRIES, streamedProgress.getMetrics().getSamplers(), "samplers");
+        String streamedXml = read(streamed.getFileJmxOut()).replace("by_chunks", "in_memory");
+        String inMemoryXml = read(inMemory.getFileJmxOut());
+        assertFalse(streamedXml.contains("__HAR_SPILL_"), "the spilled bodies must be restored");
+        assertTrue(streamedXml.contains(har.getAbsolutePath()), "the HAR file name in place of the chunk name");
+        assertEquals(inMemoryXml, streamedXml);
+    }
+
+    private HarConvertorParameters createParameters(String name) {
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(new File(tempDir.toFile(), name + ".jmx").getAbsolutePath());
+        parameters.setRecordXmlOut(new File(tempDir.toFile(), name + ".xml").getAbsolutePath());
+        parameters.setStreamingMode(true);
+        parameters.setSpillBodyThreshold(10000);
+        // a new page every entry, the chunks are cut at the max entries
+        parameters.setCreateNewTransactionAfterRequestMs(50);
+        parameters.setMetricsReport(false);
+        return parameters;
+    }
+
+    private static String read(String file) throws IOException {
+        return new String(Files.readAllBytes(new File(file).toPath()), StandardCharsets.UTF_8);
+    }
+}
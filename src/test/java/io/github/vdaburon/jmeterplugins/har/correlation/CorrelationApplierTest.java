@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.correlation;
+
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The extractor of a value is added to the sampler of the entry returning the value, not to the last sampler
+ * with the same url, e.g. for a single page application calling /graphql for all its requests.
+ */
+class CorrelationApplierTest {
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("correlation-applier-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void extractorOnTheProducerAmongTheSameUrl() throws Exception {
+        CorrelationIndex index = new CorrelationIndex();
+        index.addEntry(HarTestFiles.entry(0, "https://example.com/graphql", "application/json", "{\"sessionId\": \"sess1234abcd\"}"));
+        index.addEntry(HarTestFiles.entry(1, "https://example.com/graphql", "application/json", "{\"cartId\": \"cart5678efgh\"}"));
+        index.addEntry(HarTestFiles.entry(2, "https://example.com/graphql?s=sess1234abcd", "application/json", "{}"));
+        index.addEntry(HarTestFiles.entry(3, "https://example.com/cart?c=cart5678efgh&s=sess1234abcd", "application/json", "{}"));
+        JmxDocument script = createScript(
+                "/graphql", "",
+                "/graphql", "",
+                "/graphql?s=sess1234abcd", "",
+                "/cart?c=cart5678efgh&s=sess1234abcd", "X-Session: sess1234abcd");
+
+        CorrelationApplier applier = new CorrelationApplier(index.getCorrelations());
+        applier.apply(script);
+
+        List<Element> samplers = getSamplers(script);
+        assertEquals(2, applier.getApplied());
+        assertEquals("[Extract sessionId]", getExtractors(samplers.get(0)).toString(), "the first /graphql returns the session");
+        assertEquals("[Extract cartId]", getExtractors(samplers.get(1)).toString(), "the second /graphql returns the cart");
+        assertTrue(getExtractors(samplers.get(2)).isEmpty() && getExtractors(samplers.get(3)).isEmpty());
+        assertEquals("/graphql?s=${sessionId}", JmxDocument.getPropertyValue(samplers.get(2), "HTTPSampler.path"));
+        assertEquals("/cart?c=${cartId}&s=${sessionId}", JmxDocument.getPropertyValue(samplers.get(3), "HTTPSampler.path"));
+        Element headerManager = JmxDocument.getTestElements(JmxDocument.getHashTreeOf(samplers.get(3))).get(0);
+        assertEquals("X-Session: ${sessionId}", headerManager.getTextContent().trim(), "the children of the sampler");
+        assertEquals(4, applier.getReplacements());
+    }
+
+    @Test
+    void urlEncodedValueIsReplacedByTheEncodedVariable() throws Exception {
+        CorrelationIndex index = new CorrelationIndex();
+        index.addEntry(HarTestFiles.entry(0, "https://example.com/login", "application/json", "{\"state\": \"x1/y2+z3=abc9\"}"));
+        index.addEntry(HarTestFiles.entry(1, "https://example.com/callback?state=x1%2Fy2%2Bz3%3Dabc9", "text/html", "<html/>"));
+        JmxDocument script = createScript("/login", "", "/callback?state=x1%2Fy2%2Bz3%3Dabc9", "");
+
+        CorrelationApplier applier = new CorrelationApplier(index.getCorrelations());
+        applier.apply(script);
+
+        List<Element> samplers = getSamplers(script);
+        assertEquals("[Extract state]", getExtractors(samplers.get(0)).toString());
+        Element extractor = JmxDocument.getTestElements(JmxDocument.getHashTreeOf(samplers.get(0))).get(0);
+        assertEquals("\"state\"\\s*:\\s*\"([^\"]+)\"", JmxDocument.getPropertyValue(extractor, "RegexExtractor.regex"));
+        assertEquals("false", JmxDocument.getPropertyValue(extractor, "RegexExtractor.useHeaders"));
+        assertEquals("/callback?state=${__urlencode(${state})}", JmxDocument.getPropertyValue(samplers.get(1), "HTTPSampler.path"));
+    }
+
+    @Test
+    void noExtractorWithoutProducerSampler() throws Exception {
+        CorrelationIndex index = new CorrelationIndex();
+        index.addEntry(HarTestFiles.entry(0, "https://example.com/login", "application/json", "{\"token\": \"t0k3nABCDEF\"}"));
+        index.addEntry(HarTestFiles.entry(1, "https://example.com/home?t=t0k3nABCDEF", "text/html", "<html/>"));
+        // the login entry is not converted, e.g. excluded by the url filter of the converter
+        JmxDocument script = createScript("/home?t=t0k3nABCDEF", "");
+
+        CorrelationApplier applier = new CorrelationApplier(index.getCorrelations());
+        applier.apply(script);
+
+        assertEquals(1, index.getCorrelations().size());
+        assertEquals(0, applier.getApplied());
+        assertEquals("/home?t=t0k3nABCDEF", JmxDocument.getPropertyValue(getSamplers(script).get(0), "HTTPSampler.path"));
+    }
+
+    /**
+     * @param pathAndHeaders the path of each sampler then its header or "" for no Header Manager
+     * @return a script with the samplers of example.com in the Thread Group
+     */
+    private JmxDocument createScript(String... pathAndHeaders) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jmeterTestPlan version=\"1.2\" properties=\"5.0\" jmeter=\"5.5\">\n<hashTree>\n");
+        sb.append("<TestPlan guiclass=\"TestPlanGui\" testclass=\"TestPlan\" testname=\"HAR Imported\" enabled=\"true\"/>\n<hashTree>\n");
+        sb.append("<ThreadGroup guiclass=\"ThreadGroupGui\" testclass=\"ThreadGroup\" testname=\"Thread Group\" enabled=\"true\"/>\n<hashTree>\n");
+        for (int i = 0; i < pathAndHeaders.length; i += 2) {
+            sb.append("<HTTPSamplerProxy guiclass=\"HttpTestSampleGui\" testclass=\"HTTPSamplerProxy\" testname=\"").append(i / 2 + 1)
+                    .append("\" enabled=\"true\">\n<stringProp name=\"HTTPSampler.domain\">example.com</stringProp>\n")
+                    .append("<stringProp name=\"HTTPSampler.path\">").append(pathAndHeaders[i].replace("&", "&amp;")).append("</stringProp>\n")
+                    .append("</HTTPSamplerProxy>\n<hashTree>\n");
+            if (!pathAndHeaders[i + 1].isEmpty()) {
+                sb.append("<HeaderManager guiclass=\"HeaderPanel\" testclass=\"HeaderManager\" testname=\"HTTP Header Manager\" enabled=\"true\">")
+                        .append(pathAndHeaders[i + 1]).append("</HeaderManager>\n<hashTree/>\n");
+            }
+            sb.append("</hashTree>\n");
+        }
+        sb.append("</hashTree>\n</hashTree>\n</hashTree>\n</jmeterTestPlan>\n");
+        File file = new File(tempDir.toFile(), "script.jmx");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return JmxDocument.load(file);
+    }
+
+    private static List<Element> getSamplers(JmxDocument script) {
+        List<Element> samplers = new ArrayList<>();
+        JmxDocument.findSamplers(script.getThreadGroupHashTree(), samplers);
+        return samplers;
+    }
+
+    private static List<String> getExtractors(Element sampler) {
+        List<String> extractors = new ArrayList<>();
+        for (Element child : JmxDocument.getTestElements(JmxDocument.getHashTreeOf(sampler))) {
+            if ("RegexExtractor".equals(child.getTagName())) {
+                extractors.add(child.getAttribute("testname"));
+            }
+        }
+        return extractors;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.correlation;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorrelationIndexTest {
+
+    @Test
+    void splitTokensAtTheSeparators() {
+        // the scheme is cut at the colon
+        assertEquals(Arrays.asList("//example.com/api/items", "token=a1b2c3d4e5", "a1b2c3d4e5"),
+                CorrelationIndex.splitTokens("https://example.com/api/items?token=a1b2c3d4e5&x=1"));
+        // the json keys and values, the short tokens are not kept
+        assertEquals(Arrays.asList("sessionId", "s3ss10nXYZ"),
+                CorrelationIndex.splitTokens("{\"sessionId\": \"s3ss10nXYZ\", \"n\": 1}"));
+        // the value after '=' is kept only if long enough
+        assertEquals(Collections.singletonList("longname=abc"), CorrelationIndex.splitTokens("longname=abc"));
+        assertEquals(Collections.emptyList(), CorrelationIndex.splitTokens(""));
+        assertEquals(Collections.singletonList("Bearer.a1b2c3d4"), CorrelationIndex.splitTokens("Bearer.a1b2c3d4"));
+    }
+
+    @Test
+    void tokenLikeValues() {
+        assertTrue(CorrelationIndex.isTokenLike("a1b2c3d4"), "letters and digits");
+        assertTrue(CorrelationIndex.isTokenLike("eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiIxIn0"), "jwt");
+        assertFalse(CorrelationIndex.isTokenLike("a1b2c3d"), "too short");
+        assertFalse(CorrelationIndex.isTokenLike("abcdefghij"), "no digit");
+        assertFalse(CorrelationIndex.isTokenLike("1234567890"), "no letter");
+        assertFalse(CorrelationIndex.isTokenLike("a1b2 c3d4e5"), "space");
+        assertFalse(CorrelationIndex.isTokenLike("https://cdn1.example.com"), "url");
+        assertFalse(CorrelationIndex.isTokenLike("2024-01-01T00:00:00Z"), "date");
+        char[] tooLong = new char[CorrelationIndex.K_MAX_TOKEN_LENGTH + 1];
+        Arrays.fill(tooLong, 'a');
+        tooLong[0] = '1';
+        assertFalse(CorrelationIndex.isTokenLike(new String(tooLong)), "too long");
+    }
+
+    @Test
+    void urlEncodedValueIsFound() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.addEntry(HarTestFiles.entry(0, "https://example.com/login", "application/json", "{\"state\": \"x1/y2+z3=abc9\"}"));
+        index.addEntry(HarTestFiles.entry(1, "https://example.com/callback?state=x1%2Fy2%2Bz3%3Dabc9", "text/html", "<html/>"));
+
+        Map<String, Correlation> correlations = index.getCorrelations();
+        Correlation correlation = correlations.get("x1/y2+z3=abc9");
+        assertNotNull(correlation, "correlations = " + correlations);
+        assertEquals("state", correlation.getName());
+        assertEquals(Correlation.Source.JSON, correlation.getSource());
+        assertEquals(1, correlation.getConsumers());
+        assertEquals(correlation, CorrelationIndex.find(correlations, "x1%2Fy2%2Bz3%3Dabc9"));
+        assertNull(CorrelationIndex.find(correlations, "x1%2Fy2%2Bz3%3Dabc8"));
+    }
+
+    @Test
+    void valueSentInTheSameEntryIsNotACorrelation() {
+        CorrelationIndex index = new CorrelationIndex();
+        ObjectNode entry = HarTestFiles.entry(0, "https://example.com/echo?v=a1b2c3d4e5", "application/json", "{\"v\": \"a1b2c3d4e5\"}");
+        index.addEntry(entry);
+        assertEquals(1, index.getIndexedValues());
+        assertTrue(index.getCorrelations().isEmpty());
+    }
+
+    @Test
+    void producerOccurrenceByHostPath() {
+        CorrelationIndex index = new CorrelationIndex();
+        index.addEntry(HarTestFiles.entry(0, "https://example.com/graphql", "application/json", "{\"sessionId\": \"sess1234abcd\"}"));
+        index.addEntry(HarTestFiles.entry(1, "https://example.com/other", "application/json", "{}"));
+        index.addEntry(HarTestFiles.entry(2, "https://example.com/graphql?op=cart", "application/json", "{\"cartId\": \"cart5678efgh\"}"));
+        ObjectNode consumer = HarTestFiles.entry(3, "https://example.com/api/cart?cart=cart5678efgh", "application/json", "{}");
+        ((ArrayNode) consumer.path("request").path("headers")).addObject().put("name", "X-Session").put("value", "sess1234abcd");
+        index.addEntry(consumer);
+
+        Correlation session = index.getCorrelations().get("sess1234abcd");
+        Correlation cart = index.getCorrelations().get("cart5678efgh");
+        assertEquals("example.com/graphql", session.getProducerHostPath());
+        assertEquals(1, session.getProducerOccurrence());
+        assertEquals(0, session.getProducerIndex());
+        assertEquals("example.com/graphql", cart.getProducerHostPath());
+        assertEquals(2, cart.getProducerOccurrence());
+        assertEquals(2, cart.getProducerIndex());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.external;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorProcess;
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionMarksTest {
+    /** 2024-01-01T00:00:00Z, the time of the first entry of HarTestFiles */
+    private static final long T0 = 1704067200000L;
+
+    @Test
+    void csvErrors() {
+        assertCsvError("2024-01-01T00:00:00Z;TRANSACTION;login\n", "line 1 must be");
+        assertCsvError("2024-01-01T00:00:00Z;TRANSACTION;login;start\n2024-01-01 00:00:01;TRANSACTION;login;stop\n", "line 2 timestamp");
+        assertCsvError("2024-01-01T00:00:00Z;MARK;login;start\n", "line 1 second field");
+        assertCsvError("\n2024-01-01T00:00:00Z;TRANSACTION;login;begin\n", "line 2 type");
+    }
+
+    @Test
+    void csvWithByteOrderMarkOffsetAndBlankLines() throws IOException {
+        TransactionMarks marks = TransactionMarks.parseCsv(new StringReader("\uFEFF2024-01-01T01:00:00+01:00;TRANSACTION;login;start\n"
+                + "\n  \n2024-01-01T00:00:01.500;transaction;login;STOP\n"));
+        assertEquals(1, marks.size());
+        assertEquals(2, marks.getMarkCount());
+        assertEquals("login", marks.getName(0));
+        assertEquals(T0, marks.getStartMillis(0), "offset +01:00");
+        assertEquals(T0 + 1500, marks.getEndMillis(0), "without offset for GMT");
+        assertEquals(0, marks.getWarningCount());
+    }
+
+    @Test
+    void jsonErrors() {
+        assertJsonError("{\"marks\": []}", "must contain an array");
+        assertJsonError("[{\"timestamp\": 1000, \"type\": \"start\"}]", "mark 0 without name");
+        assertJsonError("[{\"name\": \"a\", \"timestamp\": 1000, \"type\": \"start\"}, {\"name\": \"a\", \"timestamp\": \"x\", \"type\": \"end\"}]",
+                "mark 1 timestamp");
+        assertJsonError("[{\"name\": \"a\", \"timestamp\": \"1000\", \"type\": \"pause\"}]", "mark 0 type");
+        assertThrows(IOException.class, () -> TransactionMarks.parseJson(new StringReader("[{\"name\": ")), "malformed json");
+    }
+
+    @Test
+    void jsonMarksInAField() throws IOException {
+        TransactionMarks marks = TransactionMarks.parseJson(new StringReader("{\"version\": 1, \"data\": {\"marks\": ["
+                + "{\"name\": \"login\", \"type\": \"start\", \"timestamp\": 1000},"
+                + "{\"name\": \"login\", \"type\": \"end\", \"timestamp\": \"2000\"}]}}"));
+        assertEquals(1, marks.size());
+        assertEquals(1000, marks.getStartMillis(0));
+        assertEquals(2000, marks.getEndMillis(0));
+    }
+
+    @Test
+    void marksArePaired() throws IOException {
+        TransactionMarks marks = TransactionMarks.parseJson(new StringReader("["
+                + mark("a", "start", 1000) + "," + mark("a", "stop", 2000) + ","
+                + mark("b", "start", 3000) + ","
+                // b not stopped, ends at the start of c
+                + mark("c", "start", 4000) + ","
+                // the stop of another name ends the transaction started
+                + mark("d", "stop", 5000) + ","
+                + mark("e", "stop", 6000) + ","
+                // without stop, ends with the HAR
+                + mark("f", "start", 7000) + "]"));
+
+        assertEquals(4, marks.size());
+        assertEquals("a b c f", marks.getName(0) + " " + marks.getName(1) + " " + marks.getName(2) + " " + marks.getName(3));
+        assertEquals(4000, marks.getEndMillis(1));
+        assertEquals(5000, marks.getEndMillis(2));
+        assertEquals(Long.MAX_VALUE, marks.getEndMillis(3));
+        assertEquals(4, marks.getWarningCount());
+        List<String> warnings = marks.getWarnings();
+        assertTrue(warnings.get(0).contains("'b'") && warnings.get(0).contains("not stopped"), warnings.get(0));
+        assertTrue(warnings.get(1).contains("stop of 'd'") && warnings.get(1).contains("ends the transaction 'c'"), warnings.get(1));
+        assertTrue(warnings.get(2).contains("stop of 'e'") && warnings.get(2).contains("without start"), warnings.get(2));
+        assertTrue(warnings.get(3).contains("'f'") && warnings.get(3).contains("without stop"), warnings.get(3));
+    }
+
+    @Test
+    void marksNotInTheTimeOrderAreSorted() throws IOException {
+        TransactionMarks marks = TransactionMarks.parseJson(new StringReader("["
+                + mark("b", "start", 3000) + "," + mark("b", "stop", 4000) + ","
+                + mark("a", "start", 1000) + "," + mark("a", "stop", 2000) + "]"));
+        assertEquals("a", marks.getName(0));
+        assertEquals("b", marks.getName(1));
+        assertEquals(1, marks.getWarningCount());
+        assertTrue(marks.getWarnings().get(0).contains("not in the time order at mark 2"), marks.getWarnings().get(0));
+    }
+
+    @Test
+    void findAtTheIntervalEdges() throws IOException {
+        // b stops when c starts : the time of both is in c, the last transaction started
+        TransactionMarks marks = TransactionMarks.parseJson(new StringReader("["
+                + mark("a", "start", 1000) + "," + mark("a", "stop", 2000) + ","
+                + mark("b", "start", 3000) + "," + mark("b", "stop", 4000) + ","
+                + mark("c", "start", 4000) + "," + mark("c", "stop", 5000) + "]"));
+
+        assertEquals(-1, marks.find(-1), "no startedDateTime");
+        assertEquals(-1, marks.find(999), "before the first start");
+        assertEquals(0, marks.find(1000), "start included");
+        assertEquals(0, marks.find(2000), "stop included");
+        assertEquals(-1, marks.find(2001), "between 2 transactions");
+        assertEquals(1, marks.find(3999));
+        assertEquals(2, marks.find(4000), "stop of b and start of c");
+        assertEquals(2, marks.find(5000));
+        assertEquals(-1, marks.find(5001), "after the last stop");
+    }
+
+    @Test
+    void entryCounterFindsTheTransactionsWithoutEntry() throws IOException {
+        TransactionMarks marks = TransactionMarks.parseJson(new StringReader("["
+                + mark("a", "start", 1000) + "," + mark("a", "stop", 2000) + ","
+                + mark("b", "start", 3000) + "," + mark("b", "stop", 4000) + "]"));
+        TransactionMarks.EntryCounter counter = new TransactionMarks.EntryCounter(marks);
+        counter.addEntry(1500);
+        counter.addEntry(-1);
+        assertEquals(1, counter.getWithoutEntry());
+        List<String> mismatches = counter.getMismatches();
+        assertEquals("1 transactions of 2 without HAR entry", mismatches.get(0));
+        assertTrue(mismatches.get(1).contains("'b'"), mismatches.get(1));
+        assertEquals(2, mismatches.size(), "the marks are in the HAR time");
+
+        // marks in local time 2 hours before GMT
+        TransactionMarks.EntryCounter offset = new TransactionMarks.EntryCounter(marks);
+        offset.addEntry(1000 + 7_200_000L);
+        offset.addEntry(4000 + 7_200_000L);
+        List<String> offsetMismatches = offset.getMismatches();
+        assertEquals(2, offset.getWithoutEntry());
+        assertTrue(offsetMismatches.get(offsetMismatches.size() - 1).contains("offset -2.00 hours"), offsetMismatches.toString());
+    }
+
+    @Test
+    void entriesCheckedWhenTheHarIsConvertedByTheLibrary() throws Exception {
+        Path tempDir = Files.createTempDirectory("transaction-marks-test-");
+        try {
+            List<ObjectNode> entries = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                entries.add(HarTestFiles.entry(i, "https://example.com/page" + i, "text/html", "<html/>"));
+            }
+            File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "site.har"), entries);
+            File csv = new File(tempDir.toFile(), "marks.csv");
+            Files.write(csv.toPath(), ("2024-01-01T00:00:00Z;TRANSACTION;home;start\n2024-01-01T00:00:00.250Z;TRANSACTION;home;stop\n"
+                    + "2024-01-02T00:00:00Z;TRANSACTION;tomorrow;start\n2024-01-02T00:00:01Z;TRANSACTION;tomorrow;stop\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            HarConvertorParameters parameters = new HarConvertorParameters();
+            parameters.setFileHarIn(har.getAbsolutePath());
+            parameters.setFileJmxOut(new File(tempDir.toFile(), "site.jmx").getAbsolutePath());
+            parameters.setExternalFileInfoIn(csv.getAbsolutePath());
+            parameters.setMetricsReport(false);
+            assertFalse(parameters.isHarRewriteNeeded(), "converted by the library only");
+            ConversionProgress progress = new ConversionProgress();
+
+            HarConvertorProcess.convert(parameters, progress);
+
+            assertEquals(1, progress.getMetrics().getExternalTransactionsWithoutEntry());
+        } finally {
+            HarTestFiles.deleteDirectory(tempDir);
+        }
+    }
+
+    private static String mark(String name, String type, long timestamp) {
+        return "{\"name\": \"" + name + "\", \"type\": \"" + type + "\", \"timestamp\": " + timestamp + "}";
+    }
+
+    private static void assertCsvError(String csv, String message) {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> TransactionMarks.parseCsv(new StringReader(csv)));
+        assertTrue(ex.getMessage().contains(message), ex.getMessage());
+    }
+
+    private static void assertJsonError(String json, String message) {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> TransactionMarks.parseJson(new StringReader(json)));
+        assertTrue(ex.getMessage().contains(message), ex.getMessage());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlFilterTest {
+
+    @Test
+    void hostAndItsParentDomains() throws IOException {
+        UrlFilter filter = parse("exclude host Analytics.example.com", "exclude host cdn.net");
+
+        assertEquals(1, findExcludeLine(filter, "https://analytics.example.com/collect"));
+        assertEquals(1, findExcludeLine(filter, "https://a.b.ANALYTICS.example.com/collect"), "sub domain");
+        assertEquals(2, findExcludeLine(filter, "https://static.cdn.net/app.js"));
+        assertNull(filter.findExcludeRule("https://example.com/"), "the parent domain is not excluded");
+        assertNull(filter.findExcludeRule("https://notcdn.net/"), "a parent domain by the dots only");
+        assertNull(filter.findExcludeRule("https://www.example.com/cdn.net/"), "the path is not the host");
+    }
+
+    @Test
+    void shortestPrefixWins() throws IOException {
+        UrlFilter filter = parse(
+                "# the longer prefix is declared first",
+                "exclude prefix https://example.com/static/img/",
+                "exclude prefix https://example.com/static/",
+                "exclude prefix https://example.com/static/",
+                "exclude prefix https://example.com/st");
+
+        assertEquals(5, findExcludeLine(filter, "https://example.com/static/img/logo.png"));
+        assertEquals(5, findExcludeLine(filter, "https://example.com/st"), "the whole url");
+        assertNull(filter.findExcludeRule("https://example.com/s"), "shorter than the prefix");
+        assertNull(filter.findExcludeRule("https://example.com/api/static/"));
+        assertNull(filter.findExcludeRule("HTTPS://example.com/static/"), "the prefix is case sensitive");
+
+        UrlFilter duplicate = parse("exclude prefix https://example.com/a", "exclude prefix https://example.com/a");
+        assertEquals(1, findExcludeLine(duplicate, "https://example.com/a/b"), "the first rule of a duplicate prefix");
+    }
+
+    @Test
+    void hostThenPrefixThenRegex() throws IOException {
+        UrlFilter filter = parse(
+                "exclude regex .*\\.css",
+                "exclude prefix https://cdn.example.org/",
+                "exclude host example.com");
+
+        assertEquals(3, findExcludeLine(filter, "https://example.com/site.css"));
+        assertEquals(2, findExcludeLine(filter, "https://cdn.example.org/site.css"));
+        assertEquals(1, findExcludeLine(filter, "https://example.com.evil.org/site.css"), "neither the host nor the prefix");
+        assertNull(filter.findExcludeRule("https://other.org/site.css?v=1"), "the regex matches the whole url");
+    }
+
+    @Test
+    void excludeWinsOverInclude() throws IOException {
+        UrlFilterStatistics statistics = new UrlFilterStatistics(parse(
+                "include host example.com",
+                "exclude prefix https://example.com/static/",
+                "exclude host google-analytics.com"));
+
+        assertTrue(statistics.isKept("https://www.example.com/home"));
+        assertFalse(statistics.isKept("https://example.com/static/app.js"), "included then excluded");
+        assertFalse(statistics.isKept("https://other.org/home"), "not included");
+        assertFalse(statistics.isKept("https://www.google-analytics.com/collect"), "excluded and not included");
+
+        assertEquals(1, statistics.getKept());
+        assertEquals(3, statistics.getDropped());
+        // the rule counted is the rule which decides
+        UrlFilterRule include = statistics.getFilter().getRules().get(0);
+        UrlFilterRule excludeStatic = statistics.getFilter().getRules().get(1);
+        UrlFilterRule excludeAnalytics = statistics.getFilter().getRules().get(2);
+        assertEquals(2, statistics.getHits(include));
+        assertEquals(1, statistics.getHits(excludeStatic));
+        assertEquals(0, statistics.getHits(excludeAnalytics), "the url is dropped by the include rules first");
+    }
+
+    @Test
+    void withoutIncludeRuleAllTheUrlsAreIncluded() throws IOException {
+        UrlFilterStatistics statistics = new UrlFilterStatistics(parse("exclude regex (?i).*\\.(png|jpe?g)"));
+        assertFalse(statistics.getFilter().hasIncludeRules());
+        assertTrue(statistics.isKept("https://example.com/"));
+        assertFalse(statistics.isKept("https://example.com/logo.PNG"));
+    }
+
+    @Test
+    void hostOfTheUrl() {
+        assertEquals("www.example.com", UrlFilter.getHost("https://WWW.Example.com/path?q=1#top"));
+        assertEquals("example.com", UrlFilter.getHost("https://example.com"));
+        assertEquals("example.com", UrlFilter.getHost("https://example.com?q=1"));
+        assertEquals("example.com", UrlFilter.getHost("https://example.com#top"));
+        assertEquals("example.com", UrlFilter.getHost("https://example.com:8443/path"), "port");
+        assertEquals("example.com", UrlFilter.getHost("https://user@example.com/path"), "user info");
+        assertEquals("example.com", UrlFilter.getHost("https://user:p@ss@example.com:8443/path"), "user info with a password");
+        assertEquals("example.com", UrlFilter.getHost("https://example.com/path?mail=a@b.org"), "@ after the host");
+        assertEquals("[::1]", UrlFilter.getHost("http://[::1]/path"), "IPv6 literal");
+        assertEquals("[2001:db8::1]", UrlFilter.getHost("http://user@[2001:DB8::1]:8080/path"), "IPv6 literal with user info and port");
+        assertEquals("example.com", UrlFilter.getHost("example.com/path"), "without scheme");
+        assertEquals("", UrlFilter.getHost("https:///path"));
+    }
+
+    @Test
+    void invalidRules() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> parse("", "exclude host"));
+        assertTrue(ex.getMessage().contains("line 2"), ex.getMessage());
+        ex = assertThrows(IllegalArgumentException.class, () -> parse("drop host example.com"));
+        assertTrue(ex.getMessage().contains("line 1"), ex.getMessage());
+        ex = assertThrows(IllegalArgumentException.class, () -> parse("exclude regex (unclosed"));
+        assertTrue(ex.getMessage().contains("invalid regular expression"), ex.getMessage());
+    }
+
+    private static UrlFilter parse(String... lines) throws IOException {
+        return UrlFilter.parse(new StringReader(String.join("\n", lines)));
+    }
+
+    private static int findExcludeLine(UrlFilter filter, String url) {
+        UrlFilterRule rule = filter.findExcludeRule(url);
+        return rule == null ? -1 : rule.getLineNumber();
+    }
+}
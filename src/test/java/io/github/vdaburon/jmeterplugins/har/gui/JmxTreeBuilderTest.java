@@ -0,0 +1,217 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.gui;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorParameters;
+import io.github.vdaburon.jmeterplugins.har.HarConvertorProcess;
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import io.github.vdaburon.jmeterplugins.har.jmx.JmxDocument;
+
+import org.apache.jmeter.save.SaveService;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.JMeterProperty;
+import org.apache.jmeter.testelement.property.MultiProperty;
+import org.apache.jmeter.testelement.property.PropertyIterator;
+import org.apache.jmeter.testelement.property.TestElementProperty;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jorphan.collections.HashTree;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The tree built from the DOM of a converted script must be the tree loaded by SaveService from the script file,
+ * compared test element by test element and property by property.
+ */
+class JmxTreeBuilderTest {
+    private static final String TOKEN = "a1b2c3d4e5f6g7h8";
+    private static final String[] JMETER_PROPERTIES = { "jmeter.properties", "saveservice.properties", "upgrade.properties" };
+
+    private static Path tempDir;
+
+    @BeforeAll
+    static void initJMeter() throws IOException {
+        tempDir = Files.createTempDirectory("tree-builder-test-");
+        // a JMeter home with the properties of ApacheJMeter_config, read by SaveService and NameUpdater
+        File bin = new File(tempDir.toFile(), "bin");
+        assertTrue(bin.mkdirs());
+        for (String name : JMETER_PROPERTIES) {
+            try (InputStream in = JmxTreeBuilderTest.class.getResourceAsStream("/bin/" + name)) {
+                assertNotNull(in, "bin/" + name + " of ApacheJMeter_config not in the test class path");
+                Files.copy(in, new File(bin, name).toPath());
+            }
+        }
+        JMeterUtils.setJMeterHome(tempDir.toFile().getAbsolutePath());
+        JMeterUtils.loadJMeterProperties(new File(bin, "jmeter.properties").getAbsolutePath());
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void treeIsTheTreeLoadedBySaveService() throws Exception {
+        File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "site.har"), createEntries());
+        HarConvertorParameters parameters = new HarConvertorParameters();
+        parameters.setFileHarIn(har.getAbsolutePath());
+        parameters.setFileJmxOut(new File(tempDir.toFile(), "site.jmx").getAbsolutePath());
+        parameters.setStreamingMode(true);
+        parameters.setAutoCorrelation(true);
+        parameters.setCompactHeaders(true);
+        parameters.setWebSocketPDoornbosch(true);
+        parameters.setWsBatchMinFrames(3);
+        parameters.setMetricsReport(false);
+        ConversionProgress progress = new ConversionProgress();
+
+        // the same steps as Convert and Load : the tree is built from the script in memory then the script is written
+        JmxDocument script = HarConvertorProcess.convert(parameters, progress, true);
+        assertNotNull(script, "the script to load is kept in memory");
+        HashTree built = JmxTreeBuilder.build(script);
+        HarConvertorProcess.writeScript(parameters, progress, script);
+        HashTree loaded = SaveService.loadTree(new File(parameters.getFileJmxOut()));
+
+        Map<String, Integer> counts = new TreeMap<>();
+        compareTrees(loaded, built, "", counts);
+        assertTrue(counts.containsKey("RegexExtractor"), "correlation extractor in the script, elements = " + counts);
+        assertTrue(counts.containsKey("HeaderManager"), "Header Manager in the script, elements = " + counts);
+        assertTrue(counts.containsKey("LoopController"), "WebSocket loop in the script, elements = " + counts);
+        assertTrue(counts.containsKey("SingleReadWebSocketSampler"), "WebSocket sampler in the script, elements = " + counts);
+        // the common headers are moved in the Header Manager of the Thread Group
+        List<String> threadGroupChildren = new ArrayList<>();
+        HashTree testPlanTree = built.getTree(built.list().iterator().next());
+        HashTree threadGroupTree = testPlanTree.getTree(testPlanTree.list().iterator().next());
+        for (Object child : threadGroupTree.list()) {
+            threadGroupChildren.add(child.getClass().getSimpleName());
+        }
+        assertTrue(threadGroupChildren.contains("HeaderManager"), "Thread Group children = " + threadGroupChildren);
+    }
+
+    /**
+     * A login returning a token sent again in the url and in a header of the next requests, the same browser headers
+     * in all the requests and a WebSocket reading the same frame 5 times
+     */
+    private static List<ObjectNode> createEntries() {
+        List<ObjectNode> entries = new ArrayList<>();
+        ObjectNode login = HarTestFiles.entry(0, "https://example.com/api/login", "application/json",
+                "{\"accessToken\": \"" + TOKEN + "\", \"user\": \"john\"}");
+        entries.add(login);
+        entries.add(HarTestFiles.entry(1, "https://example.com/api/items?token=" + TOKEN, "application/json", "[]"));
+        ObjectNode item = HarTestFiles.entry(2, "https://example.com/api/items/2", "application/json", "{}");
+        addHeader(item, "X-Auth-Token", TOKEN);
+        entries.add(item);
+        ObjectNode webSocket = HarTestFiles.entry(3, "wss://example.com/ws/prices", "", null);
+        ((ObjectNode) webSocket.path("response")).put("status", 101).put("statusText", "Switching Protocols");
+        webSocket.put("_resourceType", "websocket");
+        ArrayNode messages = webSocket.putArray("_webSocketMessages");
+        messages.addObject().put("type", "send").put("time", 1704067200.35).put("opcode", 1).put("data", "subscribe");
+        for (int i = 0; i < 5; i++) {
+            messages.addObject().put("type", "receive").put("time", 1704067200.4 + i / 100.0).put("opcode", 1).put("data", "tick");
+        }
+        entries.add(webSocket);
+        for (ObjectNode entry : entries) {
+            addHeader(entry, "User-Agent", "Mozilla/5.0 (X11; Linux x86_64) Firefox/120.0");
+            addHeader(entry, "Accept-Language", "en-US,en;q=0.5");
+        }
+        return entries;
+    }
+
+    private static void addHeader(ObjectNode entry, String name, String value) {
+        ((ArrayNode) entry.path("request").path("headers")).addObject().put("name", name).put("value", value);
+    }
+
+    private static void compareTrees(HashTree expected, HashTree actual, String path, Map<String, Integer> counts) {
+        List<Object> expectedElements = new ArrayList<>(expected.list());
+        List<Object> actualElements = new ArrayList<>(actual.list());
+        assertEquals(getNames(expectedElements), getNames(actualElements), "children of " + path);
+        for (int i = 0; i < expectedElements.size(); i++) {
+            TestElement expectedElement = (TestElement) expectedElements.get(i);
+            TestElement actualElement = (TestElement) actualElements.get(i);
+            String elementPath = path + "/" + expectedElement.getName();
+            assertEquals(expectedElement.getClass(), actualElement.getClass(), elementPath);
+            assertEquals(getProperties(expectedElement), getProperties(actualElement), elementPath);
+            String type = expectedElement.getClass().getName();
+            counts.merge(type.substring(type.lastIndexOf('.') + 1), 1, Integer::sum);
+            compareTrees(expected.getTree(expectedElement), actual.getTree(actualElement), elementPath, counts);
+        }
+    }
+
+    private static List<String> getNames(List<Object> elements) {
+        List<String> names = new ArrayList<>();
+        for (Object element : elements) {
+            names.add(element.getClass().getSimpleName() + " " + ((TestElement) element).getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return the properties of the element by name, with the type and the value of each property,
+     * the properties of the element and collection properties are flattened with their path
+     */
+    private static Map<String, String> getProperties(TestElement element) {
+        Map<String, String> properties = new TreeMap<>();
+        addProperties(element.propertyIterator(), "", properties);
+        return properties;
+    }
+
+    private static void addProperties(PropertyIterator iterator, String prefix, Map<String, String> properties) {
+        int index = 0;
+        while (iterator.hasNext()) {
+            JMeterProperty property = iterator.next();
+            String key = prefix.endsWith("[") ? prefix + index + "]" : prefix + property.getName();
+            index++;
+            String type = property.getClass().getSimpleName();
+            if (property instanceof TestElementProperty) {
+                TestElement value = ((TestElementProperty) property).getElement();
+                properties.put(key, type + " " + value.getClass().getName());
+                addProperties(value.propertyIterator(), key + ".", properties);
+            } else if (property instanceof MultiProperty) {
+                properties.put(key, type + " size=" + countProperties(((MultiProperty) property).iterator()));
+                addProperties(((MultiProperty) property).iterator(), key + "[", properties);
+            } else {
+                properties.put(key, type + " " + property.getStringValue());
+            }
+        }
+    }
+
+    private static int countProperties(PropertyIterator iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+}
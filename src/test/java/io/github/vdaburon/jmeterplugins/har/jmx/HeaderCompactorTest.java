@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The headers of each sampler, merged by JMeter from the Header Managers of the sampler and of its parents,
+ * must be the same after the compaction.
+ */
+class HeaderCompactorTest {
+    private static final String BROWSER = "User-Agent: Firefox/120.0|Accept-Language: en-US";
+
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("header-compactor-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void headersCommonToAllThePagesAreInTheThreadGroup() throws Exception {
+        JmxDocument script = createScript(
+                "Page 1", "/home", BROWSER + "|Accept: text/html",
+                "Page 1", "/api/user", BROWSER + "|Accept: application/json",
+                "Page 2", "/api/items", BROWSER + "|Accept: application/json|X-Token: a1",
+                "Page 2", "/api/cart", BROWSER + "|Accept: application/json");
+        Map<String, Map<String, String>> before = getEffectiveHeaders(script);
+
+        HeaderCompactor compactor = new HeaderCompactor();
+        compactor.compact(script);
+
+        assertEquals(before, getEffectiveHeaders(script));
+        assertEquals("[HTTP Header Manager (all pages)]", getManagerNames(script.getThreadGroupHashTree()).toString());
+        // Accept is kept by /home with another value, it is shared in Page 2 only
+        assertEquals("[HTTP Header Manager (Page 2)]", getManagerNames(getPageHashTree(script, "Page 2")).toString());
+        assertEquals(2, compactor.getManagersAdded());
+        assertEquals(1, compactor.getManagersRemoved(), "all the headers of /api/cart are shared");
+        assertEquals(10, compactor.getHeadersRemoved());
+    }
+
+    @Test
+    void samplerWithoutHeaderKeepsNoHeader() throws Exception {
+        JmxDocument script = createScript(
+                "Page 1", "/home", BROWSER + "|Accept: text/html",
+                "Page 1", "/api/user", BROWSER,
+                "Page 2", "/ws", "",
+                "Page 2", "/api/items", BROWSER);
+        Map<String, Map<String, String>> before = getEffectiveHeaders(script);
+
+        HeaderCompactor compactor = new HeaderCompactor();
+        compactor.compact(script);
+
+        assertEquals(before, getEffectiveHeaders(script));
+        assertEquals("{}", getEffectiveHeaders(script).get("/ws").toString());
+        assertEquals("[]", getManagerNames(script.getThreadGroupHashTree()).toString(), "/ws would receive the shared headers");
+        assertEquals("[HTTP Header Manager (Page 1)]", getManagerNames(getPageHashTree(script, "Page 1")).toString(),
+                "the headers are still shared by page");
+        assertEquals("[]", getManagerNames(getPageHashTree(script, "Page 2")).toString());
+        assertEquals(1, compactor.getManagersAdded());
+        assertEquals(1, compactor.getManagersRemoved());
+        assertEquals(4, compactor.getHeadersRemoved());
+    }
+
+    /**
+     * @param pagePathHeaders the page, the path and the headers "name: value" separated by '|' of each sampler,
+     *                        "" for no Header Manager, the samplers of a page are consecutive
+     * @return a script with a Transaction Controller by page in the Thread Group
+     */
+    private JmxDocument createScript(String... pagePathHeaders) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jmeterTestPlan version=\"1.2\" properties=\"5.0\" jmeter=\"5.5\">\n<hashTree>\n");
+        sb.append("<TestPlan guiclass=\"TestPlanGui\" testclass=\"TestPlan\" testname=\"HAR Imported\" enabled=\"true\"/>\n<hashTree>\n");
+        sb.append("<ThreadGroup guiclass=\"ThreadGroupGui\" testclass=\"ThreadGroup\" testname=\"Thread Group\" enabled=\"true\"/>\n<hashTree>\n");
+        String page = null;
+        for (int i = 0; i < pagePathHeaders.length; i += 3) {
+            if (!pagePathHeaders[i].equals(page)) {
+                if (page != null) {
+                    sb.append("</hashTree>\n");
+                }
+                page = pagePathHeaders[i];
+                sb.append("<TransactionController guiclass=\"TransactionControllerGui\" testclass=\"TransactionController\" testname=\"")
+                        .append(page).append("\" enabled=\"true\"/>\n<hashTree>\n");
+            }
+            sb.append("<HTTPSamplerProxy guiclass=\"HttpTestSampleGui\" testclass=\"HTTPSamplerProxy\" testname=\"")
+                    .append(pagePathHeaders[i + 1]).append("\" enabled=\"true\">\n")
+                    .append("<stringProp name=\"HTTPSampler.domain\">example.com</stringProp>\n")
+                    .append("<stringProp name=\"HTTPSampler.path\">").append(pagePathHeaders[i + 1]).append("</stringProp>\n")
+                    .append("</HTTPSamplerProxy>\n<hashTree>\n");
+            if (!pagePathHeaders[i + 2].isEmpty()) {
+                sb.append("<HeaderManager guiclass=\"HeaderPanel\" testclass=\"HeaderManager\" testname=\"HTTP Header Manager\" enabled=\"true\">\n")
+                        .append("<collectionProp name=\"HeaderManager.headers\">\n");
+                for (String header : pagePathHeaders[i + 2].split("\\|")) {
+                    int colon = header.indexOf(':');
+                    sb.append("<elementProp name=\"\" elementType=\"Header\">\n")
+                            .append("<stringProp name=\"Header.name\">").append(header.substring(0, colon)).append("</stringProp>\n")
+                            .append("<stringProp name=\"Header.value\">").append(header.substring(colon + 1).trim()).append("</stringProp>\n")
+                            .append("</elementProp>\n");
+                }
+                sb.append("</collectionProp>\n</HeaderManager>\n<hashTree/>\n");
+            }
+            sb.append("</hashTree>\n");
+        }
+        sb.append("</hashTree>\n</hashTree>\n</hashTree>\n</hashTree>\n</jmeterTestPlan>\n");
+        File file = new File(tempDir.toFile(), "script.jmx");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return JmxDocument.load(file);
+    }
+
+    /**
+     * @return the headers of each sampler by path, the Header Managers of the parents then of the sampler,
+     * the header of the nearest Header Manager replaces a header with the same name like the merge of JMeter
+     */
+    private static Map<String, Map<String, String>> getEffectiveHeaders(JmxDocument script) {
+        Map<String, Map<String, String>> headersBySampler = new LinkedHashMap<>();
+        List<Element> samplers = new ArrayList<>();
+        JmxDocument.findSamplers(script.getThreadGroupHashTree(), samplers);
+        for (Element sampler : samplers) {
+            List<Element> scopes = new ArrayList<>();
+            scopes.add(JmxDocument.getHashTreeOf(sampler));
+            for (Node node = sampler.getParentNode(); node instanceof Element; node = node.getParentNode()) {
+                scopes.add(0, (Element) node);
+            }
+            Map<String, String> headers = new TreeMap<>();
+            for (Element scope : scopes) {
+                for (Element element : JmxDocument.getTestElements(scope)) {
+                    if (HeaderCompactor.HEADER_MANAGER.equals(element.getTagName())) {
+                        for (Element header : getChildElements(JmxDocument.getProperty(element, "HeaderManager.headers"))) {
+                            headers.put(JmxDocument.getPropertyValue(header, "Header.name"), JmxDocument.getPropertyValue(header, "Header.value"));
+                        }
+                    }
+                }
+            }
+            headersBySampler.put(JmxDocument.getPropertyValue(sampler, "HTTPSampler.path"), headers);
+        }
+        return headersBySampler;
+    }
+
+    private static List<Element> getChildElements(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    private static List<String> getManagerNames(Element hashTree) {
+        List<String> names = new ArrayList<>();
+        for (Element element : JmxDocument.getTestElements(hashTree)) {
+            if (HeaderCompactor.HEADER_MANAGER.equals(element.getTagName())) {
+                names.add(element.getAttribute("testname"));
+            }
+        }
+        return names;
+    }
+
+    private static Element getPageHashTree(JmxDocument script, String page) {
+        for (Element element : JmxDocument.getTestElements(script.getThreadGroupHashTree())) {
+            if (page.equals(element.getAttribute("testname"))) {
+                return JmxDocument.getHashTreeOf(element);
+            }
+        }
+        return null;
+    }
+}
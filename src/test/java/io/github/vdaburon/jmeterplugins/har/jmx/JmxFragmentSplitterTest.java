@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.jmx;
+
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JmxFragmentSplitterTest {
+    private Path tempDir;
+    private File jmxOut;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("fragment-splitter-test-");
+        jmxOut = new File(tempDir.toFile(), "site.jmx");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void pagesAreGroupedInFragments() throws Exception {
+        JmxDocument script = createScript(5);
+        JmxFragmentSplitter splitter = new JmxFragmentSplitter(2);
+        splitter.split(script, jmxOut);
+        splitter.writeFragments();
+
+        assertEquals(3, splitter.getFragments());
+        List<File> files = JmxFragmentSplitter.listFragmentFiles(jmxOut);
+        assertEquals(3, files.size());
+        assertEquals(Arrays.asList("Page 1", "Page 2"), getPageNames(files.get(0)));
+        assertEquals(Arrays.asList("Page 3", "Page 4"), getPageNames(files.get(1)));
+        assertEquals(Arrays.asList("Page 5"), getPageNames(files.get(2)));
+        // the samplers stay under their page
+        JmxDocument fragment = JmxDocument.load(files.get(0));
+        List<Element> samplers = new ArrayList<>();
+        JmxDocument.findSamplers(fragment.getTestPlanHashTree(), samplers);
+        assertEquals(4, samplers.size());
+    }
+
+    @Test
+    void includeControllersReplaceThePages() throws Exception {
+        JmxDocument script = createScript(3);
+        JmxFragmentSplitter splitter = new JmxFragmentSplitter(2);
+        splitter.split(script, jmxOut);
+        splitter.writeFragments();
+
+        List<Element> children = JmxDocument.getTestElements(script.getThreadGroupHashTree());
+        assertEquals(Arrays.asList("CookieManager", "IncludeController", "IncludeController", "ResultCollector"), getTagNames(children));
+        assertEquals("Include Pages 1 to 2", children.get(1).getAttribute("testname"));
+        assertEquals("Include Pages 3 to 3", children.get(2).getAttribute("testname"));
+        List<File> files = JmxFragmentSplitter.listFragmentFiles(jmxOut);
+        for (int i = 0; i < files.size(); i++) {
+            String includePath = JmxDocument.getPropertyValue(children.get(i + 1), "IncludeController.includepath");
+            assertEquals("site_fragments/" + files.get(i).getName(), includePath);
+            // resolved from the directory of the script like the FileServer base of JMeter
+            assertEquals(files.get(i).getCanonicalFile(), new File(jmxOut.getParentFile(), includePath).getCanonicalFile());
+        }
+        List<Element> samplers = new ArrayList<>();
+        JmxDocument.findSamplers(script.getThreadGroupHashTree(), samplers);
+        assertTrue(samplers.isEmpty(), "the samplers are moved in the fragments");
+    }
+
+    @Test
+    void fragmentsOfAPreviousConversionAreDeleted() throws Exception {
+        File fragmentsDir = JmxFragmentSplitter.getFragmentsDir(jmxOut);
+        assertTrue(fragmentsDir.mkdirs());
+        File stale = new File(fragmentsDir, "fragment_003.jmx");
+        File other = new File(fragmentsDir, "notes.txt");
+        Files.write(stale.toPath(), "stale".getBytes(StandardCharsets.UTF_8));
+        Files.write(other.toPath(), "notes".getBytes(StandardCharsets.UTF_8));
+        File kept = new File(fragmentsDir, "fragment_001.jmx");
+        Files.write(kept.toPath(), "previous".getBytes(StandardCharsets.UTF_8));
+
+        JmxFragmentSplitter splitter = new JmxFragmentSplitter(2);
+        splitter.split(createScript(4), jmxOut);
+        splitter.writeFragments();
+
+        assertFalse(stale.exists(), "fragment of the previous conversion not in the new script");
+        assertTrue(other.exists(), "not a fragment file");
+        assertEquals(Arrays.asList("Page 1", "Page 2"), getPageNames(kept), "fragment overwritten");
+        assertEquals(2, JmxFragmentSplitter.listFragmentFiles(jmxOut).size());
+    }
+
+    /**
+     * @param pages the count of Transaction Controllers, with 2 samplers each
+     * @return a script with a Cookie Manager before the pages and a listener after the pages
+     */
+    private JmxDocument createScript(int pages) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jmeterTestPlan version=\"1.2\" properties=\"5.0\" jmeter=\"5.5\">\n<hashTree>\n");
+        sb.append("<TestPlan guiclass=\"TestPlanGui\" testclass=\"TestPlan\" testname=\"HAR Imported\" enabled=\"true\"/>\n<hashTree>\n");
+        sb.append("<ThreadGroup guiclass=\"ThreadGroupGui\" testclass=\"ThreadGroup\" testname=\"Thread Group\" enabled=\"true\"/>\n<hashTree>\n");
+        sb.append("<CookieManager guiclass=\"CookiePanel\" testclass=\"CookieManager\" testname=\"HTTP Cookie Manager\" enabled=\"true\"/>\n<hashTree/>\n");
+        for (int page = 1; page <= pages; page++) {
+            sb.append("<TransactionController guiclass=\"TransactionControllerGui\" testclass=\"TransactionController\" testname=\"Page ")
+                    .append(page).append("\" enabled=\"true\"/>\n<hashTree>\n");
+            for (int sampler = 1; sampler <= 2; sampler++) {
+                sb.append("<HTTPSamplerProxy guiclass=\"HttpTestSampleGui\" testclass=\"HTTPSamplerProxy\" testname=\"/page")
+                        .append(page).append('_').append(sampler).append("\" enabled=\"true\">\n")
+                        .append("<stringProp name=\"HTTPSampler.domain\">example.com</stringProp>\n")
+                        .append("<stringProp name=\"HTTPSampler.path\">/page").append(page).append('_').append(sampler).append("</stringProp>\n")
+                        .append("</HTTPSamplerProxy>\n<hashTree/>\n");
+            }
+            sb.append("</hashTree>\n");
+        }
+        sb.append("<ResultCollector guiclass=\"ViewResultsFullVisualizer\" testclass=\"ResultCollector\" testname=\"View Results Tree\" enabled=\"true\"/>\n<hashTree/>\n");
+        sb.append("</hashTree>\n</hashTree>\n</hashTree>\n</jmeterTestPlan>\n");
+        File file = new File(tempDir.toFile(), "source.jmx");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return JmxDocument.load(file);
+    }
+
+    private static List<String> getPageNames(File fragmentFile) throws IOException {
+        JmxDocument fragment = JmxDocument.load(fragmentFile);
+        Element testFragment = JmxDocument.getTestElements(fragment.getTestPlanHashTree()).get(0);
+        assertEquals("TestFragmentController", testFragment.getTagName());
+        List<String> names = new ArrayList<>();
+        for (Element element : JmxDocument.getTestElements(JmxDocument.getHashTreeOf(testFragment))) {
+            assertEquals(JmxChunkMerger.TRANSACTION_CONTROLLER, element.getTagName());
+            names.add(element.getAttribute("testname"));
+        }
+        return names;
+    }
+
+    private static List<String> getTagNames(List<Element> elements) {
+        List<String> names = new ArrayList<>();
+        for (Element element : elements) {
+            names.add(element.getTagName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodySpillStoreTest {
+    private Path tempDir;
+    private BodySpillStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("body-spill-test-");
+        store = new BodySpillStore(new File(tempDir.toFile(), "bodies.spill"), 1000);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void base64ImageIsSpilledAndRestoredEncoded() throws IOException {
+        String image = HarTestFiles.base64Text(50000);
+        ObjectNode entry = HarTestFiles.entry(0, "https://example.com/logo.png", "image/png", image);
+        ((ObjectNode) entry.path("response").path("content")).put("encoding", "base64");
+
+        store.spillEntry(entry);
+
+        ObjectNode content = (ObjectNode) entry.path("response").path("content");
+        String placeholder = content.path("text").asText();
+        assertTrue(placeholder.startsWith(store.getPrefix()), "the image must be replaced by a placeholder");
+        assertFalse(content.has("encoding"), "the library must read the placeholder as a text");
+        assertEquals(1, store.getCount());
+
+        StringWriter out = new StringWriter();
+        assertEquals(1, store.restoreXml(new StringReader("<responseData>" + placeholder + "</responseData>"), out));
+        assertEquals("<responseData>" + image + "</responseData>", out.toString());
+    }
+
+    @Test
+    void formPostDataIsKeptInline() throws IOException {
+        String form = "a=" + HarTestFiles.base64Text(3000);
+        ObjectNode entry = HarTestFiles.entry(0, "https://example.com/login", "text/html", "ok");
+        ObjectNode postData = ((ObjectNode) entry.path("request")).putObject("postData");
+        postData.put("mimeType", "application/x-www-form-urlencoded");
+        postData.put("text", form);
+
+        store.spillEntry(entry);
+
+        assertEquals(form, postData.path("text").asText());
+        assertEquals(0, store.getCount());
+        assertEquals(form.length(), store.getLongestInline());
+    }
+
+    @Test
+    void sameBodyIsStoredOnce() throws IOException {
+        String body = HarTestFiles.base64Text(5000);
+        ObjectNode first = HarTestFiles.entry(0, "https://example.com/app.js", "application/javascript", body);
+        ObjectNode second = HarTestFiles.entry(1, "https://example.com/app.js", "application/javascript", body);
+
+        store.spillEntry(first);
+        store.spillEntry(second);
+
+        assertEquals(first.path("response").path("content").path("text").asText(),
+                second.path("response").path("content").path("text").asText());
+        assertEquals(1, store.getCount());
+        assertEquals(1, store.getDuplicates());
+        assertEquals(body, store.restoreText(second.path("response").path("content").path("text").asText()));
+    }
+}
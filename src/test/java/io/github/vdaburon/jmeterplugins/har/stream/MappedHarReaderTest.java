@@ -0,0 +1,175 @@
+/*
+ * Copyright 2024 Vincent DABURON
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.github.vdaburon.jmeterplugins.har.stream;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.vdaburon.jmeterplugins.har.ConversionProgress;
+import io.github.vdaburon.jmeterplugins.har.HarTestFiles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The entries found by the byte pre-scan of MappedHarReader must be the entries read by HarStreamReader.
+ * The segments are a few bytes long, so the entries, the strings and the escapes are on 2 segments or more.
+ */
+class MappedHarReaderTest {
+    private static final int JACKSON_MAX = 100000;
+    private static final int THREADS = 2;
+    private static final long[] SEGMENT_BYTES = { 7, 64, 1000 };
+
+    // the strings look like the json structure, the scan must only follow the structure outside the strings
+    private static final String TRICKY_HAR = "{\"log\": {\n"
+            + "  \"version\": \"1.2\",\n"
+            + "  \"creator\": {\"name\": \"a \\\"log\\\": {\\\"entries\\\": [ ] } \\\\\", \"version\": \"1\"},\n"
+            + "  \"pages\": [{\"id\": \"page_1\", \"title\": \"entries\", \"entries\": [{\"id\": 1}]}],\n"
+            + "  \"comment\": \"\\\"entries\\\": [{\",\n"
+            + "  \"entries\": [\n"
+            + "    {\"startedDateTime\": \"2024-01-01T00:00:00.000Z\", \"time\": 10,\n"
+            + "     \"request\": {\"method\": \"GET\", \"url\": \"https://example.com/a?q=}]{\", \"headers\": [], \"entries\": []},\n"
+            + "     \"response\": {\"status\": 200, \"content\": {\"mimeType\": \"text/html\", \"text\": \"<p>}]} \\\"{[\\\" \\\\\"}},\n"
+            + "     \"timings\": {\"wait\": 5}},\n"
+            + "    {\"startedDateTime\": \"2024-01-01T00:00:01.000Z\", \"time\": 20, \"entries\": {\"entries\": [1, 2]},\n"
+            + "     \"request\": {\"method\": \"POST\", \"url\": \"https://example.com/b\", \"headers\": [],\n"
+            + "       \"postData\": {\"mimeType\": \"application/json\", \"text\": \"{\\\"entries\\\": [\\\"\\\\\\\\\\\"]}\"}},\n"
+            + "     \"response\": {\"status\": 200, \"content\": {\"mimeType\": \"text/plain\", \"text\": \"\u00e9t\u00e9 \u20ac \ud83d\ude00 \\u00e9\"}},\n"
+            + "     \"timings\": {\"wait\": 7}},\n"
+            + "    {\"startedDateTime\": \"2024-01-01T00:00:02.000Z\", \"time\": 30,\n"
+            + "     \"request\": {\"method\": \"GET\", \"url\": \"https://example.com/c\", \"headers\": []},\n"
+            + "     \"response\": {\"status\": 204, \"content\": {\"mimeType\": \"\", \"text\": \"\\\\\"}},\n"
+            + "     \"timings\": {\"wait\": 1}}\n"
+            + "  ]\n"
+            + "}}\n";
+
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("mapped-har-test-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HarTestFiles.deleteDirectory(tempDir);
+    }
+
+    @Test
+    void trickyStringsGiveTheSameEntries() throws Exception {
+        File har = write("tricky.har", TRICKY_HAR);
+        List<ObjectNode> expected = readStreaming(har);
+        assertEquals(3, expected.size());
+
+        for (long segmentBytes : SEGMENT_BYTES) {
+            assertEquals(expected, readMapped(har, segmentBytes), "segment of " + segmentBytes + " bytes");
+        }
+    }
+
+    @Test
+    void generatedEntriesGiveTheSameEntries() throws Exception {
+        List<ObjectNode> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(HarTestFiles.entry(i, "https://example.com/page/" + i + "?a=\"}]", "text/html",
+                    "<div class=\"entries\">{" + i + "}] \\ \u00e9</div>"));
+        }
+        File har = HarTestFiles.writeHar(new File(tempDir.toFile(), "generated.har"), entries);
+        List<ObjectNode> expected = readStreaming(har);
+        assertEquals(50, expected.size());
+
+        for (long segmentBytes : SEGMENT_BYTES) {
+            assertEquals(expected, readMapped(har, segmentBytes), "segment of " + segmentBytes + " bytes");
+        }
+    }
+
+    @Test
+    void logWithoutEntriesIsNotMapped() throws Exception {
+        File har = write("no_entries.har", "{\"log\": {\"version\": \"1.2\", \"pages\": [{\"entries\": []}],"
+                + " \"comment\": \"\\\"entries\\\": []\"}, \"entries\": [{\"time\": 1}]}");
+        try (InputStream in = new FileInputStream(har)) {
+            assertThrows(IOException.class, () -> new HarStreamReader(in, JACKSON_MAX));
+        }
+        for (long segmentBytes : SEGMENT_BYTES) {
+            assertNull(open(har, segmentBytes), "segment of " + segmentBytes + " bytes");
+        }
+    }
+
+    @Test
+    void truncatedFileIsNotMapped() throws Exception {
+        byte[] bytes = TRICKY_HAR.getBytes(StandardCharsets.UTF_8);
+        // cut in the middle of the second entry then at the end of the entries array
+        for (int length : new int[] { bytes.length / 2, TRICKY_HAR.lastIndexOf(']') }) {
+            File har = new File(tempDir.toFile(), "truncated_" + length + ".har");
+            Files.write(har.toPath(), Arrays.copyOf(bytes, length));
+            for (long segmentBytes : SEGMENT_BYTES) {
+                assertNull(open(har, segmentBytes), "length " + length + ", segment of " + segmentBytes + " bytes");
+            }
+        }
+    }
+
+    private File write(String name, String json) throws IOException {
+        File file = new File(tempDir.toFile(), name);
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static MappedHarReader open(File har, long segmentBytes) throws InterruptedException {
+        return MappedHarReader.open(har, JACKSON_MAX, THREADS, new ConversionProgress(), 0, segmentBytes);
+    }
+
+    private static List<ObjectNode> readStreaming(File har) throws IOException {
+        List<ObjectNode> entries = new ArrayList<>();
+        try (InputStream in = new FileInputStream(har);
+             HarStreamReader reader = new HarStreamReader(in, JACKSON_MAX)) {
+            ObjectNode entry;
+            while ((entry = reader.nextEntry()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static List<ObjectNode> readMapped(File har, long segmentBytes) throws Exception {
+        List<ObjectNode> entries = new ArrayList<>();
+        MappedHarReader reader = open(har, segmentBytes);
+        assertNotNull(reader, "the pre-scan failed with segment of " + segmentBytes + " bytes");
+        try {
+            ObjectNode entry;
+            while ((entry = reader.nextEntry()) != null) {
+                entries.add(entry);
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+}